@@ -8,7 +8,9 @@ import ai.core.AI;
 import ai.core.ParameterSpecification;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import rts.*;
+import rts.units.Unit;
 import rts.units.UnitTypeTable;
 
 /**
@@ -16,6 +18,11 @@ import rts.units.UnitTypeTable;
  * @author santi
  */
 public class RandomAI extends AI {    
+    Random r = new Random();
+    // one per thread, since the same policy might be used by several threads at a time:
+    ThreadLocal<PlayoutActionGenerator> generators = ThreadLocal.withInitial(PlayoutActionGenerator::new);
+
+    
     public RandomAI(UnitTypeTable utt) {
     }
     
@@ -48,6 +55,34 @@ public class RandomAI extends AI {
             return new PlayerAction();
         }
     }
+
+
+    @Override
+    public void issueAction(int player, GameState gs) {
+        // The same as PlayerActionGenerator.getRandom, but with the actions of the
+        // playout action generator, and issuing the player action it reuses:
+        if (!gs.canExecuteAnyAction(player)) return;
+        PlayoutActionGenerator generator = generators.get();
+        PlayerAction pa = generator.start(gs, null);
+        for(Unit u:gs.getPhysicalGameState().getUnits()) {
+            if (u.getPlayer()==player && gs.getActionAssignment(u)==null) {
+                generator.generate(u, gs);
+                UnitAction l[] = generator.actions;
+                int n = generator.nActions;
+                while(true) {
+                    // remove a random action until one is consistent (the "none" action always is):
+                    int i = r.nextInt(n);
+                    UnitAction ua = l[i];
+                    if (generator.consistent(u, ua, gs)) {
+                        generator.addUnitAction(pa, u, ua, gs);
+                        break;
+                    }
+                    l[i] = l[--n];
+                }
+            }
+        }
+        gs.issue(pa);
+    }
     
     
     @Override
@@ -26,6 +26,8 @@ public class RandomBiasedAI extends AI {
     static final double REGULAR_ACTION_WEIGHT = 1;
     static final double BIASED_ACTION_WEIGHT = 5;
     Random r = new Random();
+    // one per thread, since the same policy might be used by several threads at a time:
+    ThreadLocal<PlayoutActionGenerator> generators = ThreadLocal.withInitial(PlayoutActionGenerator::new);
 
     
     public RandomBiasedAI(UnitTypeTable utt) {
@@ -49,33 +51,38 @@ public class RandomBiasedAI extends AI {
     
     @Override
     public PlayerAction getAction(int player, GameState gs) {
+        if (!gs.canExecuteAnyAction(player)) return new PlayerAction();
+        return generateAction(player, gs, new PlayerAction());
+    }
+
+
+    @Override
+    public void issueAction(int player, GameState gs) {
+        // the player action reused by the generator is issued (and forgotten) right away:
+        if (gs.canExecuteAnyAction(player)) gs.issue(generateAction(player, gs, null));
+    }
+
+
+    PlayerAction generateAction(int player, GameState gs, PlayerAction pa) {
         // attack, harvest and return have 5 times the probability of other actions
         PhysicalGameState pgs = gs.getPhysicalGameState();
-        PlayerAction pa = new PlayerAction();
-        
-        if (!gs.canExecuteAnyAction(player)) return pa;
+        PlayoutActionGenerator generator = generators.get();
 
         // Generate the reserved resources:
-        for(Unit u:pgs.getUnits()) {
-            UnitActionAssignment uaa = gs.getActionAssignment(u);
-            if (uaa!=null) {
-                ResourceUsage ru = uaa.action.resourceUsage(u, pgs);
-                pa.getResourceUsage().merge(ru);
-            }
-        }
+        pa = generator.start(gs, pa);
         
         for(Unit u:pgs.getUnits()) {
             if (u.getPlayer()==player) {
                 if (gs.getActionAssignment(u)==null) {
-                    List<UnitAction> l = u.getUnitActions(gs);
-                    UnitAction none = null;
-                    int nActions = l.size();
-                    double []distribution = new double[nActions];
+                    generator.generate(u, gs);
+                    UnitAction l[] = generator.actions;
+                    int nActions = generator.nActions;
+                    UnitAction none = l[nActions-1];
+                    double distribution[] = generator.weights;
 
                     // Implement "bias":
-                    int i = 0;
-                    for(UnitAction a:l) {
-                        if (a.getType()==UnitAction.TYPE_NONE) none = a;
+                    for(int i = 0;i<nActions;i++) {
+                        UnitAction a = l[i];
                         if (a.getType()==UnitAction.TYPE_ATTACK_LOCATION ||
                             a.getType()==UnitAction.TYPE_HARVEST ||
                             a.getType()==UnitAction.TYPE_RETURN) {
@@ -83,21 +90,18 @@ public class RandomBiasedAI extends AI {
                         } else {
                             distribution[i]=REGULAR_ACTION_WEIGHT;
                         }
-                        i++;
                     }
                         
                     try {
-                        UnitAction ua = l.get(Sampler.weighted(distribution));
-                        if (ua.resourceUsage(u, pgs).consistentWith(pa.getResourceUsage(), gs)) {
-                            ResourceUsage ru = ua.resourceUsage(u, pgs);
-                            pa.getResourceUsage().merge(ru);                        
-                            pa.addUnitAction(u, ua);
+                        UnitAction ua = l[Sampler.weighted(distribution, nActions)];
+                        if (generator.consistent(u, ua, gs)) {
+                            generator.addUnitAction(pa, u, ua, gs);
                         } else {
-                            pa.addUnitAction(u, none);
+                            generator.addUnitAction(pa, u, none, gs);
                         }
                     } catch (Exception ex) {
                         ex.printStackTrace();
-                        pa.addUnitAction(u, none);
+                        generator.addUnitAction(pa, u, none, gs);
                     }
                 }
             }
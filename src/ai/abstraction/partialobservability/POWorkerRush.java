@@ -36,7 +36,7 @@ public class POWorkerRush extends WorkerRush {
     }
 
     public AI clone() {
-        return new POWorkerRush(utt, pf);
+        return new POWorkerRush(utt, pf.clone());
     }
 
     public void meleeUnitBehavior(Unit u, Player p, GameState gs) {
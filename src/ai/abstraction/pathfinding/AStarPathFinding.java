@@ -4,6 +4,8 @@
  */
 package ai.abstraction.pathfinding;
 
+import ai.core.TranspositionTable;
+import java.util.Arrays;
 import rts.GameState;
 import rts.PhysicalGameState;
 import rts.ResourceUsage;
@@ -18,7 +20,15 @@ import rts.units.Unit;
  * 
  * The code looks a bit weird, since this version of A* uses static data structures to avoid any
  * memory allocation penalty. It only reallocates memory when asked to path-find for first time,
- * or in a map that is bigger than the previous time. 
+ * or in a map that is bigger than the previous time. The open list is a binary heap, and the
+ * per-cell arrays are marked with the number of the search that last wrote them, so that they
+ * do not need to be cleared for every search.
+ * 
+ * Paths are cached by (start, target, range) for every position along them, together with
+ * the cells that were found blocked during the search. A cached path is reused as long as the
+ * rest of the path is still free and none of those cells has been freed (if more cells become
+ * blocked, the path is still a shortest one), so that units following a path, and scripted 
+ * AIs that ask for the same paths every frame, do not repeat the searches.
  * 
  */
 public class AStarPathFinding extends PathFinding {
@@ -26,14 +36,55 @@ public class AStarPathFinding extends PathFinding {
     public static int iterations = 0;   // this is a debugging variable    
     public static int accumlength = 0;   // this is a debugging variable    
     
-    Boolean free[][] = null;
-    int closed[] = null;
-    int open[] = null;  // open list
-    int heuristic[] = null;     // heuristic value of the elements in 'open'
-    int parents[] = null;
+    int searchID = 0;       // number of the current search (the marks below are only valid if equal to it)
+    int free[] = null;      // searchID if the cell is free, -searchID if not, anything else if not checked yet
+    int inOpenOrClosed[] = null;    // searchID if the cell has been added to the open list
+    int closed[] = null;    // parent of each closed cell
+    int closedMark[] = null;    // searchID if the cell is closed
     int cost[] = null;     // cost of reaching a given position so far
-    int inOpenOrClosed[] = null;
-    int openinsert = 0;
+    
+    // open list: binary heap of (f, -insertion), so that among the positions with the
+    // same f, the last one inserted is expanded first:
+    long open[] = null;
+    int openSize = 0;
+    int insertions = 0;
+    int insertedPos[] = null;       // position and parent of each insertion
+    int insertedParent[] = null;
+    
+    // cells found blocked in the last search:
+    int blocked[] = null;
+    int nBlocked = 0;
+    // path found in the last search (from start to goal):
+    int path[] = null;
+    int pathLength = 0;
+    
+    public static int CACHE_SIZE_LOG2 = 9;
+    TranspositionTable<CachedPath> cache = new TranspositionTable<>(CACHE_SIZE_LOG2);
+    int cacheWidth = -1;
+    int cacheHeight = -1;
+    boolean useCache = true;
+    
+    static class CachedPath {
+        int direction;      // direction of the first step, or -1 if no action is returned
+        int path[];         // path this one is a suffix of (null if there is no path)
+        int index;          // position of the start in "path"
+        int blocked[];      // cells found blocked when searching for "path"
+    }
+    
+    
+    public AStarPathFinding() {
+    }
+    
+    
+    public AStarPathFinding(boolean a_useCache) {
+        useCache = a_useCache;
+    }
+
+
+    @Override
+    public PathFinding clone() {
+        return new AStarPathFinding(useCache);
+    }
     
     
     // This fucntion finds the shortest path from 'start' to 'targetpos' and then returns
@@ -51,27 +102,107 @@ public class AStarPathFinding extends PathFinding {
         PhysicalGameState pgs = gs.getPhysicalGameState();
         int w = pgs.getWidth();
         int h = pgs.getHeight();
-        if (free==null || free.length<w*h) {
-            free = new Boolean[w][h];        
-            closed = new int[w*h];
-            open = new int[w*h];
-            heuristic = new int[w*h];
-            parents = new int[w*h];
-            inOpenOrClosed = new int[w*h];
-            cost = new int[w*h];
+        if (w!=cacheWidth || h!=cacheHeight) {
+            cache.clear();
+            cacheWidth = w;
+            cacheHeight = h;
         }
-        for(int y = 0, i = 0;y<h;y++) {
-            for(int x = 0;x<w;x++,i++) {
-                free[x][y] = null;
-                closed[i] = -1;           
-                inOpenOrClosed[i] = 0;
+        int startPos = start.getY()*w + start.getX();
+        if (!useCache) {
+            if (!search(start, targetpos, range, gs, ru) || pathLength<2) return null;
+            return new UnitAction(UnitAction.TYPE_MOVE, direction(path[0], path[1], w));
+        }
+        CachedPath cp = cache.get(cacheKey(startPos, targetpos, range));
+        if (cp==null || !stillValid(cp, w, gs, ru)) {
+            boolean found = search(start, targetpos, range, gs, ru);
+            int blocked2[] = Arrays.copyOf(blocked, nBlocked);
+            if (found) {
+                // every suffix of the path is cached as the path from its first position:
+                int path2[] = Arrays.copyOf(path, pathLength);
+                for(int i = pathLength-1;i>=0;i--) {
+                    cp = new CachedPath();
+                    cp.direction = (i<pathLength-1 ? direction(path2[i], path2[i+1], w):-1);
+                    cp.path = path2;
+                    cp.index = i;
+                    cp.blocked = blocked2;
+                    cache.put(cacheKey(path2[i], targetpos, range), cp);
+                }
+            } else {
+                cp = new CachedPath();
+                cp.direction = -1;
+                cp.blocked = blocked2;
+                cache.put(cacheKey(startPos, targetpos, range), cp);
             }
         }
-        if (ru!=null) {
-            for(int pos:ru.getPositionsUsed()) {
-                free[pos%w][pos/w] = false;
+        // a new action is returned each time, since actions cache their resource usage:
+        if (cp.direction==-1) return null;
+        return new UnitAction(UnitAction.TYPE_MOVE, cp.direction);
+    }
+    
+    
+    static long cacheKey(int startPos, int targetpos, int range) {
+        return startPos + ((long)targetpos<<21) + ((long)range<<42);
+    }
+    
+    
+    static int direction(int pos, int next, int w) {
+        if (next == pos+w) return UnitAction.DIRECTION_DOWN;
+        if (next == pos-1) return UnitAction.DIRECTION_LEFT;
+        if (next == pos-w) return UnitAction.DIRECTION_UP;
+        return UnitAction.DIRECTION_RIGHT;
+    }
+    
+    
+    /*
+     * Whether the rest of a cached path is still free, and the cells that were
+     * found blocked when searching for it are still blocked
+     */
+    boolean stillValid(CachedPath cp, int w, GameState gs, ResourceUsage ru) {
+        if (cp.path!=null) {
+            for(int i = cp.index+1;i<cp.path.length;i++) {
+                if (!free(cp.path[i], w, gs, ru)) return false;
             }
         }
+        for(int pos:cp.blocked) {
+            if (free(pos, w, gs, ru)) return false;
+        }
+        return true;
+    }
+    
+    
+    static boolean free(int pos, int w, GameState gs, ResourceUsage ru) {
+        return (ru==null || !ru.usesPosition(pos)) && gs.free(pos%w, pos/w);
+    }
+    
+    
+    /*
+     * A* search, leaves the path found (if any) in 'path'
+     */
+    boolean search(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        int w = pgs.getWidth();
+        int h = pgs.getHeight();
+        if (free==null || free.length<w*h) {
+            free = new int[w*h];
+            inOpenOrClosed = new int[w*h];
+            closed = new int[w*h];
+            closedMark = new int[w*h];
+            cost = new int[w*h];
+            open = new long[w*h];
+            insertedPos = new int[w*h];
+            insertedParent = new int[w*h];
+            blocked = new int[w*h];
+            path = new int[w*h];
+            searchID = 0;
+        }
+        if (searchID==Integer.MAX_VALUE) {
+            Arrays.fill(free, 0);
+            Arrays.fill(inOpenOrClosed, 0);
+            Arrays.fill(closedMark, 0);
+            searchID = 0;
+        }
+        searchID++;
+        nBlocked = 0;
         int targetx = targetpos%w;
         int targety = targetpos/w;
         int sq_range = range*range;
@@ -86,47 +217,18 @@ public class AStarPathFinding extends PathFinding {
         assert(start.getY()>=0);
         assert(start.getY()<h);
         
-        openinsert = 0;
-        open[openinsert] = startPos;
-        heuristic[openinsert] = manhattanDistance(start.getX(), start.getY(), targetx, targety);
-        parents[openinsert] = startPos;
-        inOpenOrClosed[startPos] = 1;
+        openSize = 0;
+        insertions = 0;
         cost[startPos] = 0;
-        openinsert++;
+        addToOpen(startPos, startPos, manhattanDistance(start.getX(), start.getY(), targetx, targety));
 //        System.out.println("Looking for path from: " + start.getX() + "," + start.getY() + " to " + targetx + "," + targety);
-        while(openinsert>0) {
-            
-            // debugging code:
-            /*
-            System.out.println("open: ");
-            for(int i = 0;i<openinsert;i++) {
-                System.out.print(" [" + (open[i]%w) + "," + (open[i]/w) + " -> "+ cost[open[i]] + "+" + heuristic[i] + "]");
-            }
-            System.out.println("");
-            for(int i = 0;i<h;i++) {
-                for(int j = 0;j<w;j++) {
-                    if (j==start.getX() && i==start.getY()) {
-                        System.out.print("s");
-                    } else if (j==targetx && i==targety) {
-                        System.out.print("t");
-                    } else if (!free[j][i]) {
-                        System.out.print("X");
-                    } else {
-                        if (inOpenOrClosed[j+i*w]==0) { 
-                            System.out.print(".");
-                        } else {
-                            System.out.print("o");
-                        }
-                    }
-                }
-                System.out.println("");
-            }
-            */
+        while(openSize>0) {
             iterations++;
-            openinsert--;
-            int pos = open[openinsert];
-            int parent = parents[openinsert];
-            if (closed[pos]!=-1) continue;            
+            int insertion = removeFirstFromOpen();
+            int pos = insertedPos[insertion];
+            int parent = insertedParent[insertion];
+            if (closedMark[pos]==searchID) continue;
+            closedMark[pos] = searchID;
             closed[pos] = parent;
 
             int x = pos%w;
@@ -134,53 +236,69 @@ public class AStarPathFinding extends PathFinding {
 
             if (((x-targetx)*(x-targetx)+(y-targety)*(y-targety))<=sq_range) {
                 // path found, backtrack:
-                int last = pos;
 //                System.out.println("- Path from " + start.getX() + "," + start.getY() + " to " + targetpos%w + "," + targetpos/w + " (range " + range + ") in " + iterations + " iterations");
+                pathLength = 0;
+                path[pathLength++] = pos;
                 while(parent!=pos) {
-                    last = pos;
                     pos = parent;
                     parent = closed[pos];
+                    path[pathLength++] = pos;
                     accumlength++;
 //                    System.out.println("    " + pos%w + "," + pos/w);
                 }
-                if (last == pos+w) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN);
-                if (last == pos-1) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT);
-                if (last == pos-w) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP);
-                if (last == pos+1) return new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT);
-                return null;
+                for(int i = 0, j = pathLength-1;i<j;i++,j--) {
+                    int tmp = path[i];
+                    path[i] = path[j];
+                    path[j] = tmp;
+                }
+                return true;
             }
-            if (y>0 && inOpenOrClosed[pos-w] == 0) {
-                if (free[x][y-1]==null) free[x][y-1]=gs.free(x, y-1);
-                assert(free[x][y-1]!=null);
-                if (free[x][y-1]) {
-                    addToOpen(x,y-1,pos-w,pos,manhattanDistance(x, y-1, targetx, targety));
+            if (y>0 && inOpenOrClosed[pos-w]!=searchID) {
+                if (isFree(x, y-1, pos-w, gs, ru)) {
+                    cost[pos-w] = cost[pos]+1;
+                    addToOpen(pos-w,pos,manhattanDistance(x, y-1, targetx, targety));
                 }
             }
-            if (x<pgs.getWidth()-1 && inOpenOrClosed[pos+1] == 0) {
-                if (free[x+1][y]==null) free[x+1][y]=gs.free(x+1, y);
-                assert(free[x+1][y]!=null);
-                if (free[x+1][y]) {
-                    addToOpen(x+1,y,pos+1,pos,manhattanDistance(x+1, y, targetx, targety));
+            if (x<w-1 && inOpenOrClosed[pos+1]!=searchID) {
+                if (isFree(x+1, y, pos+1, gs, ru)) {
+                    cost[pos+1] = cost[pos]+1;
+                    addToOpen(pos+1,pos,manhattanDistance(x+1, y, targetx, targety));
                 }
             }
-            if (y<pgs.getHeight()-1 && inOpenOrClosed[pos+w] == 0) {
-                if (free[x][y+1]==null) free[x][y+1]=gs.free(x, y+1);
-                assert(free[x][y+1]!=null);
-                if (free[x][y+1]) {
-                    addToOpen(x,y+1,pos+w,pos,manhattanDistance(x, y+1, targetx, targety));
+            if (y<h-1 && inOpenOrClosed[pos+w]!=searchID) {
+                if (isFree(x, y+1, pos+w, gs, ru)) {
+                    cost[pos+w] = cost[pos]+1;
+                    addToOpen(pos+w,pos,manhattanDistance(x, y+1, targetx, targety));
                 }
             }
-            if (x>0 && inOpenOrClosed[pos-1] == 0) {
-                if (free[x-1][y]==null) free[x-1][y]=gs.free(x-1, y);
-                assert(free[x-1][y]!=null);
-                if (free[x-1][y]) {
-                    addToOpen(x-1,y,pos-1,pos,manhattanDistance(x-1, y, targetx, targety));
+            if (x>0 && inOpenOrClosed[pos-1]!=searchID) {
+                if (isFree(x-1, y, pos-1, gs, ru)) {
+                    cost[pos-1] = cost[pos]+1;
+                    addToOpen(pos-1,pos,manhattanDistance(x-1, y, targetx, targety));
                 }
             }              
         }
-        return null;
+        return false;
+    }
+    
+    
+    /*
+     * Checks (only the first time in each search) whether a cell is free, and 
+     * records it in 'blocked' if it is not
+     */
+    boolean isFree(int x, int y, int pos, GameState gs, ResourceUsage ru) {
+        if (free[pos]==searchID) return true;
+        if (free[pos]==-searchID) return false;
+        if ((ru==null || !ru.usesPosition(pos)) && gs.free(x, y)) {
+            free[pos] = searchID;
+            return true;
+        }
+        free[pos] = -searchID;
+        blocked[nBlocked++] = pos;
+        return false;
     }          
     
+    
     /*
      * This function is like the previous one, but doesn't try to reach 'target', but just to 
      * reach a position adjacent to 'target'
@@ -205,45 +323,47 @@ public class AStarPathFinding extends PathFinding {
         return false;
     }
     
-    // and keep the "open" list sorted:
-    void addToOpen(int x, int y, int newPos, int oldPos, int h) {
-        cost[newPos] = cost[oldPos]+1;
+    /*
+     * Adds a position to the open list ('cost' must already be set)
+     */
+    void addToOpen(int newPos, int oldPos, int h) {
+        int insertion = insertions++;
+        insertedPos[insertion] = newPos;
+        insertedParent[insertion] = oldPos;
+        inOpenOrClosed[newPos] = searchID;
         
-        // find the right position for the insert:
-        for(int i = openinsert-1;i>=0;i--) {
-            if (heuristic[i]+cost[open[i]]>=h+cost[newPos]) {
-//                System.out.println("Inserting at " + (i+1) + " / " + openinsert);
-                // shift all the elements:
-                for(int j = openinsert;j>=i+1;j--) {
-                    open[j] = open[j-1];
-                    heuristic[j] = heuristic[j-1];
-                    parents[j] = parents[j-1];
-                }
-                
-                // insert at i+1:
-                open[i+1] = newPos;
-                heuristic[i+1] = h;
-                parents[i+1] = oldPos;
-                openinsert++;
-                inOpenOrClosed[newPos] = 1;
-                return;
-            }
-        }        
-        // i = -1;
-//        System.out.println("Inserting at " + 0 + " / " + openinsert);
-        // shift all the elements:
-        for(int j = openinsert;j>=1;j--) {
-            open[j] = open[j-1];
-            heuristic[j] = heuristic[j-1];
-            parents[j] = parents[j-1];
+        // sift up:
+        long key = ((long)(h + cost[newPos])<<32) | (Integer.MAX_VALUE - insertion);
+        int i = openSize++;
+        while(i>0) {
+            int parent = (i-1)>>1;
+            if (open[parent]<=key) break;
+            open[i] = open[parent];
+            i = parent;
         }
-
-        // insert at i+1:
-        open[0] = newPos;
-        heuristic[0] = h;
-        parents[0] = oldPos;
-        openinsert++;
-        inOpenOrClosed[newPos] = 1;
+        open[i] = key;
+    }
+    
+    
+    /*
+     * Removes the first element of the open list, and returns its insertion number
+     */
+    int removeFirstFromOpen() {
+        long first = open[0];
+        long key = open[--openSize];
+        
+        // sift down:
+        int i = 0;
+        while(true) {
+            int child = 2*i+1;
+            if (child>=openSize) break;
+            if (child+1<openSize && open[child+1]<open[child]) child++;
+            if (key<=open[child]) break;
+            open[i] = open[child];
+            i = child;
+        }
+        if (openSize>0) open[i] = key;
+        return Integer.MAX_VALUE - (int)first;
     }
     
     
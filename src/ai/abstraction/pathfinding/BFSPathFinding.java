@@ -57,7 +57,7 @@ public class BFSPathFinding extends PathFinding {
             }
         }
         if (ru!=null) {
-            for(int pos:ru.getPositionsUsed()) {
+            for(int pos = ru.nextPositionUsed(0);pos>=0;pos = ru.nextPositionUsed(pos+1)) {
                 free[pos%w][pos/w] = false;
             }
         }
@@ -169,5 +169,10 @@ public class BFSPathFinding extends PathFinding {
         if (findPathToPositionInRange(start,targetpos,range,gs,ru)!=null) return true;
         return false;
     }
-        
+
+
+    @Override
+    public PathFinding clone() {
+        return new BFSPathFinding();
+    }
 }
@@ -218,4 +218,9 @@ public class FloodFillPathFinding extends PathFinding {
 		return findPathToPositionInRange(start, targetpos, 1, gs, ru);
 	}
 
+	@Override
+	public PathFinding clone() {
+		return new FloodFillPathFinding();
+	}
+
 }
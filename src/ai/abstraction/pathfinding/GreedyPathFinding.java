@@ -36,7 +36,7 @@ public class GreedyPathFinding extends PathFinding {
             int y = y1 + dy[i];
             if (x>=0 && x<pgs.getWidth() &&
                 y>=0 && y<pgs.getHeight() && gs.free(x,y)) {
-                if (ru!=null && ru.getPositionsUsed().contains(x+y*w)) continue;
+                if (ru!=null && ru.usesPosition(x+y*w)) continue;
                 int d = (x2 - x)*(x2 - x) + (y2 - y)*(y2 - y);
                 if (direction==-1 || d<min_d) {
                     min_d = d;
@@ -75,7 +75,7 @@ public class GreedyPathFinding extends PathFinding {
             int y = y1 + dy[i];
             if (x>=0 && x<pgs.getWidth() &&
                 y>=0 && y<pgs.getHeight() && gs.free(x,y)) {
-                if (ru!=null && ru.getPositionsUsed().contains(x+y*w)) continue;
+                if (ru!=null && ru.usesPosition(x+y*w)) continue;
                 int d = (x2 - x)*(x2 - x) + (y2 - y)*(y2 - y);
                 if (direction==-1 || d<min_d) {
                     min_d = d;
@@ -112,5 +112,10 @@ public class GreedyPathFinding extends PathFinding {
         if (findPathToPositionInRange(start,targetpos,range,gs,ru)!=null) return true;
         return false;
     }
-        
+
+
+    @Override
+    public PathFinding clone() {
+        return new GreedyPathFinding();
+    }
 }
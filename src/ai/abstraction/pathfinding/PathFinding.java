@@ -20,6 +20,13 @@ public abstract class PathFinding {
     public abstract UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru);
     public abstract UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru);
 
+    /**
+     * Returns a new path finder configured like this one, but that does not
+     * share its search buffers or cache (so that each can be used by a
+     * different thread, e.g., in the AIs of concurrent games)
+     */
+    public abstract PathFinding clone();
+
     public String toString() {
         return getClass().getSimpleName();
     }
@@ -144,7 +144,7 @@ public class AHTNAI extends AIWithComputationBudget {
     @Override
     public AI clone() {
         try {
-            return new AHTNAI(domainFileName, TIME_BUDGET, ITERATIONS_BUDGET, PLAYOUT_LOOKAHEAD, ef, playoutAI);
+            return new AHTNAI(domainFileName, TIME_BUDGET, ITERATIONS_BUDGET, PLAYOUT_LOOKAHEAD, ef, playoutAI.clone());
         }catch(Exception e) {
             e.printStackTrace();
             return null;
@@ -26,8 +26,18 @@ public abstract class AI {
     public abstract PlayerAction getAction(int player, GameState gs) throws Exception;
     
     
+    // Issues the action of "player" directly in "gs" (the same as "gs.issue(getAction(player, gs))").
+    // AIs used as playout policies can override it to avoid creating a new PlayerAction every game cycle.
+    public void issueAction(int player, GameState gs) throws Exception
+    {
+        gs.issue(getAction(player, gs));
+    }
+    
+    
     @Override
     public abstract AI clone();   // this function is NOT supposed to do an exact clone with all the internal state, etc.
+                                  // (but clones should not share mutable helpers, like path finders or playout
+                                  // policies, so that they can be used by different threads)
                                   // just a copy of the AI with the same configuration.
         
     public abstract List<ParameterSpecification> getParameters();
@@ -0,0 +1,81 @@
+package ai.core;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the garbage collections that happen while an AI is searching:
+ * "startFrame" and "endFrame" are called around each call to
+ * computeDuringOneGameFrame, and the collections (and the time spent in them,
+ * as reported by the JVM) between both calls are accumulated.
+ * Notice that the collections are those of the whole JVM, so if several AIs are
+ * running at the same time, the collections of one will also be counted by the others.
+ * @author santi
+ */
+public class GCStatistics {
+    long startCount = 0;
+    long startTime = 0;
+
+    public long frames = 0;
+    public long framesWithGC = 0;
+    public long collections = 0;
+    public long time = 0;           // milliseconds
+    public long maxTimePerFrame = 0;
+
+
+    public void startFrame() {
+        startCount = totalCollections();
+        startTime = totalCollectionTime();
+    }
+
+
+    public void endFrame() {
+        long count = totalCollections() - startCount;
+        long t = totalCollectionTime() - startTime;
+        frames++;
+        if (count>0) framesWithGC++;
+        collections += count;
+        time += t;
+        if (t>maxTimePerFrame) maxTimePerFrame = t;
+    }
+
+
+    public void reset() {
+        frames = 0;
+        framesWithGC = 0;
+        collections = 0;
+        time = 0;
+        maxTimePerFrame = 0;
+    }
+
+
+    /**
+     * Number of garbage collections so far, added over all the collectors of the JVM
+     */
+    public static long totalCollections() {
+        long count = 0;
+        for(GarbageCollectorMXBean gc:ManagementFactory.getGarbageCollectorMXBeans()) {
+            long c = gc.getCollectionCount();
+            if (c>0) count += c;
+        }
+        return count;
+    }
+
+
+    /**
+     * Time (in milliseconds) spent in garbage collections so far, added over all the collectors of the JVM
+     */
+    public static long totalCollectionTime() {
+        long time = 0;
+        for(GarbageCollectorMXBean gc:ManagementFactory.getGarbageCollectorMXBeans()) {
+            long t = gc.getCollectionTime();
+            if (t>0) time += t;
+        }
+        return time;
+    }
+
+
+    public String toString() {
+        return "GC: " + collections + " collections (" + time + "ms) in " + framesWithGC + " of " + frames + " frames, max GC time per frame: " + maxTimePerFrame + "ms";
+    }
+}
@@ -0,0 +1,99 @@
+package ai.core;
+
+/**
+ * Keeps the nodes of the search trees of an AI from one search to the next, so
+ * that they can be reinitialized and reused instead of allocating new ones (and
+ * leaving the old ones to the garbage collector) every time a node is expanded.
+ *
+ * The pool works as an arena: "get" hands out the nodes in the pool in order,
+ * and "reset" makes all of them available again (so it can only be called once
+ * nothing in the old tree is referenced anymore, typically at the start of a new
+ * search). When all the nodes in the pool are in use, "get" returns null, and the
+ * caller creates a new node and gives it to the pool with "add". Once the pool
+ * holds "capacity" nodes, new nodes are not added, and are collected as usual.
+ *
+ * Searches that keep their nodes in a stack (like the minimax AIs) can also give
+ * back the last node they obtained with "release", as soon as they pop it.
+ * @author santi
+ */
+public class NodePool<T> {
+    Object nodes[];
+    int size = 0;       // nodes in the pool
+    int next = 0;       // nodes[0..next-1] are in use, nodes[next..size-1] are free
+
+    // statistics:
+    long recycled = 0;
+    long allocated = 0;
+    long dropped = 0;
+
+
+    public NodePool(int capacity) {
+        nodes = new Object[capacity];
+    }
+
+
+    /**
+     * Returns a free node from the pool (to be reinitialized by the caller), or
+     * null if all the nodes in the pool are in use
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        if (next<size) {
+            recycled++;
+            return (T)nodes[next++];
+        }
+        allocated++;
+        return null;
+    }
+
+
+    /**
+     * Adds "node" (newly created by the caller after "get" returned null) to the
+     * pool, as a node in use, if the pool is not full
+     */
+    public void add(T node) {
+        if (size<nodes.length) {
+            nodes[size++] = node;
+            next = size;
+        } else {
+            dropped++;
+        }
+    }
+
+
+    /**
+     * Makes "node" free again, if it is the last node handed out by the pool
+     * (otherwise, for example if it was never added to the pool, nothing happens)
+     */
+    public void release(T node) {
+        if (next>0 && nodes[next-1]==node) next--;
+    }
+
+
+    /**
+     * Makes all the nodes in the pool free
+     */
+    public void reset() {
+        next = 0;
+    }
+
+
+    public int getCapacity() {
+        return nodes.length;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public int inUse() {
+        return next;
+    }
+
+
+    public String toString() {
+        return "node pool: " + size + "/" + nodes.length + " nodes, " + recycled + " recycled, " + allocated + " allocated (" + dropped + " not pooled)";
+    }
+}
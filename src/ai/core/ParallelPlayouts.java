@@ -0,0 +1,109 @@
+package ai.core;
+
+import ai.evaluation.EvaluationFunction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import rts.GameState;
+
+/**
+ * Runs batches of playouts from the same game state in parallel (leaf
+ * parallelization), on a pool of worker threads. Each worker thread uses its
+ * own clone of the playout policy (and thus, its own random number generator).
+ * @author santi
+ */
+public class ParallelPlayouts {
+    ForkJoinPool pool;
+    AI policy;
+    ThreadLocal<AI> policies;
+
+
+    /**
+     * @param nThreads number of worker threads
+     * @param a_policy playout policy (it is cloned for each worker thread)
+     */
+    public ParallelPlayouts(int nThreads, AI a_policy) {
+        pool = new ForkJoinPool(nThreads);
+        policy = a_policy;
+        policies = ThreadLocal.withInitial(() -> policy.clone());
+    }
+
+
+    public int getThreads() {
+        return pool.getParallelism();
+    }
+
+
+    public AI getPolicy() {
+        return policy;
+    }
+
+
+    /**
+     * Runs "n" playouts of "lookahead" cycles from "gs", and returns the sum of
+     * their evaluations (from the point of view of "player", discounted by the
+     * time elapsed since "referenceTime"). "gs" is not modified. The final
+     * states of all the playouts are evaluated together, as a batch.
+     * @param gs
+     * @param n
+     * @param lookahead
+     * @param player
+     * @param ef
+     * @param referenceTime
+     * @return
+     * @throws Exception
+     */
+    public double run(GameState gs, int n, int lookahead, int player, EvaluationFunction ef, int referenceTime) throws Exception {
+        // the copies are created here, since cloning modifies the original state:
+        GameState states[] = new GameState[n];
+        List<Callable<Void>> tasks = new ArrayList<>(n);
+        for(int i = 0;i<n;i++) {
+            final GameState gs2 = gs.cloneCopyOnWrite();
+            states[i] = gs2;
+            tasks.add(() -> {
+                simulate(gs2, gs2.getTime() + lookahead, policies.get());
+                return null;
+            });
+        }
+
+        for(Future<Void> f:pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch(ExecutionException e) {
+                if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+                throw e;
+            }
+        }
+
+        float scores[] = new float[n];
+        ef.evaluate(player, 1-player, states, n, scores);
+        double accum = 0;
+        for(int i = 0;i<n;i++) {
+            int time = states[i].getTime() - referenceTime;
+            accum += scores[i]*Math.pow(0.99,time/10.0);
+        }
+        return accum;
+    }
+
+
+    public static void simulate(GameState gs, int time, AI policy) throws Exception {
+        boolean gameover = false;
+
+        do{
+            if (gs.isComplete()) {
+                gameover = gs.cycle();
+            } else {
+                policy.issueAction(0, gs);
+                policy.issueAction(1, gs);
+            }
+        }while(!gameover && gs.getTime()<time);
+    }
+
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,73 @@
+package ai.core;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size table that associates game state hashes (see
+ * {@link rts.GameState#getHash()}) with search information (the values of
+ * minimax nodes, MCTS nodes, etc.), so that states reached through different
+ * sequences of actions can share it. When two hashes fall in the same slot,
+ * the newest one replaces the oldest, so memory use does not grow with the search.
+ * @author santi
+ */
+public class TranspositionTable<T> {
+    long keys[];
+    Object values[];
+    int mask;
+
+    // statistics:
+    public long hits = 0;
+    public long misses = 0;
+
+
+    /**
+     * Creates a table with 2^log2size slots
+     * @param log2size
+     */
+    public TranspositionTable(int log2size) {
+        keys = new long[1<<log2size];
+        values = new Object[1<<log2size];
+        mask = keys.length-1;
+    }
+
+
+    /**
+     * Returns the information stored for a hash, or null if there is none
+     * @param hash
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long hash) {
+        int idx = index(hash);
+        if (values[idx]!=null && keys[idx]==hash) {
+            hits++;
+            return (T)values[idx];
+        }
+        misses++;
+        return null;
+    }
+
+
+    /**
+     * Stores the information for a hash, replacing whatever was in its slot
+     * @param hash
+     * @param value
+     */
+    public void put(long hash, T value) {
+        int idx = index(hash);
+        keys[idx] = hash;
+        values[idx] = value;
+    }
+
+
+    public void clear() {
+        Arrays.fill(values, null);
+        hits = 0;
+        misses = 0;
+    }
+
+
+    int index(long hash) {
+        return (int)(hash ^ (hash>>>32)) & mask;
+    }
+}
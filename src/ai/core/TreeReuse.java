@@ -0,0 +1,40 @@
+package ai.core;
+
+import java.util.List;
+import rts.GameState;
+import rts.units.Unit;
+
+/**
+ * For search AIs that keep their tree from one call to getAction to the next.
+ * Instead of building a new tree for the state they are asked about, they
+ * look in the previous tree for the node reached by the actions that were
+ * actually executed (their own and the opponent's), and make it the new root,
+ * keeping the statistics gathered under it and dropping the rest of the tree.
+ * @author santi
+ */
+public class TreeReuse {
+
+    /**
+     * Returns whether "nodeState" (the state of a node of a search tree) is
+     * the same as "gs": same time, resources, units and unit action
+     * assignments. Unlike GameState.equals, the IDs of the units must match
+     * too, so that the actions stored in the tree can be issued in "gs".
+     * @param nodeState
+     * @param gs
+     * @return
+     */
+    public static boolean sameState(GameState nodeState, GameState gs) {
+        if (nodeState==null || nodeState.getTime()!=gs.getTime()) return false;
+        if (!nodeState.equals(gs)) return false;
+        List<Unit> units1 = nodeState.getUnits();
+        List<Unit> units2 = gs.getUnits();
+        for(int i = 0;i<units1.size();i++) {
+            Unit u1 = units1.get(i);
+            Unit u2 = units2.get(i);
+            if (u1.getID()!=u2.getID() ||
+                u1.getPlayer()!=u2.getPlayer() ||
+                u1.getResources()!=u2.getResources()) return false;
+        }
+        return true;
+    }
+}
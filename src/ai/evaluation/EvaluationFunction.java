@@ -16,6 +16,21 @@ public abstract class EvaluationFunction {
     public abstract float evaluate(int maxplayer, int minplayer, GameState gs);
     public abstract float upperBound(GameState gs);
     
+    /**
+     * Evaluates the first "n" states of "states" at once, storing the results
+     * in "scores" (the same values "evaluate" would return). Subclasses can
+     * override it to first gather what they need from all the states into
+     * primitive arrays, and then compute all the scores in simple loops.
+     * @param maxplayer
+     * @param minplayer
+     * @param states
+     * @param n
+     * @param scores
+     */
+    public void evaluate(int maxplayer, int minplayer, GameState states[], int n, float scores[]) {
+        for(int i = 0;i<n;i++) scores[i] = evaluate(maxplayer, minplayer, states[i]);
+    }
+    
     public String toString() {
         return getClass().getSimpleName();
     }
@@ -5,7 +5,7 @@
 package ai.evaluation;
 
 import rts.GameState;
-import rts.PhysicalGameState;
+import rts.UnitSums;
 import rts.units.*;
 
 /**
@@ -28,63 +28,108 @@ public class LanchesterEvaluationFunction extends EvaluationFunction {
         return (float) (1.0f/( 1.0f + Math.pow(Math.E,(0.0f - x))));
       }
     
+    /**
+     * The terms of each unit (unit score, building score, 1 for non-building
+     * units, and resources carried), which the game states keep summed up per
+     * player (see GameState.getUnitSums), so that evaluating a state does not
+     * need to go through all the units
+     */
+    static final UnitSums.Terms TERMS = new UnitSums.Terms() {
+        public int getNumberOfTerms() {
+            return 4;
+        }
+
+        public void unitTerms(Unit u, GameState gs, double terms[]) {
+            int index = weightIndex(gs);
+            UnitTypeTable utt = gs.getUnitTypeTable();
+            terms[0] = terms[1] = terms[2] = 0;
+            terms[3] = u.getResources();
+            //UNITS
+            if(u.getType() == utt.getUnitType("Base"))
+            {
+                terms[1] = W_BASE[index]*u.getHitPoints();
+            }
+            else if(u.getType() == utt.getUnitType("Barracks"))
+            {
+                terms[1] = W_RAX[index]*u.getHitPoints();
+            }
+            else if(u.getType() == utt.getUnitType("Worker"))
+            {
+                terms[2] = 1;
+                terms[0] = W_WORKER[index]*u.getHitPoints();
+            }
+            else if(u.getType() == utt.getUnitType("Light"))
+            {
+                terms[2] = 1;
+                terms[0] = W_LIGHT[index]*u.getHitPoints()/(float)u.getMaxHitPoints();
+            }
+            else if(u.getType() == utt.getUnitType("Ranged"))
+            {
+                terms[2] = 1;
+                terms[0] = W_RANGE[index]*u.getHitPoints();
+            }
+            else if(u.getType() == utt.getUnitType("Heavy"))
+            {
+                terms[2] = 1;
+                terms[0] = W_HEAVY[index]*u.getHitPoints()/(float)u.getMaxHitPoints();
+            }
+        }
+    };
+    
     public float evaluate(int maxplayer, int minplayer, GameState gs) {
     	return 2.0f*sigmoid(base_score(maxplayer,gs) - base_score(minplayer,gs))-1.0f;
     }
-
-    public float base_score(int player, GameState gs) {
-    	PhysicalGameState pgs = gs.getPhysicalGameState();
-    	int index = 0;
-    	switch(pgs.getWidth()){
+    
+    /**
+     * Gathers the unit sums of both players from all the states into primitive
+     * arrays first, and then computes all the evaluations in loops over them
+     */
+    public void evaluate(int maxplayer, int minplayer, GameState states[], int n, float scores[]) {
+        float score[] = new float[2*n];
+        float score_buildings[] = new float[2*n];
+        float nr_units[] = new float[2*n];
+        float carried[] = new float[2*n];       // already weighted
+        float mined[] = new float[2*n];         // already weighted
+        for(int i = 0;i<n;i++) {
+            GameState gs = states[i];
+            int index = weightIndex(gs);
+            UnitSums sums = gs.getUnitSums(TERMS);
+            for(int j = 0;j<2;j++) {
+                int player = (j==0 ? maxplayer:minplayer);
+                int k = 2*i + j;
+                score[k] = (float)sums.getSum(player, 0);
+                score_buildings[k] = (float)sums.getSum(player, 1);
+                nr_units[k] = (float)sums.getSum(player, 2);
+                carried[k] = (float)sums.getSum(player, 3) * W_MINERALS_CARRIED[index];
+                mined[k] = gs.getPlayer(player).getResources() * W_MINERALS_MINED[index];
+            }
+        }
+        for(int k = 0;k<2*n;k++) {
+            score[k] = (float)(score[k] * Math.pow(nr_units[k], order-1));
+        }
+        for(int k = 0;k<2*n;k++) {
+            score[k] += score_buildings[k] + carried[k] + mined[k];
+        }
+        for(int i = 0;i<n;i++) {
+            scores[i] = 2.0f*sigmoid(score[2*i] - score[2*i+1])-1.0f;
+        }
+    }
+    
+    static int weightIndex(GameState gs) {
+    	switch(gs.getPhysicalGameState().getWidth()){
     	case 128:
-    		index = 1;
-    		break;
+    		return 1;
     	}
+    	return 0;
+    }
 
-    	float score = 0.0f;
-    	float score_buildings = 0.0f;
-        float nr_units = 0.0f;
-        float res_carried = 0.0f;
-        
-        UnitTypeTable utt = gs.getUnitTypeTable();
-        	
-        for(Unit u:pgs.getUnits()) {
-            if (u.getPlayer()==player) {
-            	
-            	res_carried += u.getResources();
-           		//UNITS
-        		if(u.getType() == utt.getUnitType("Base"))
-        		{
-        			score_buildings += W_BASE[index]*u.getHitPoints();
-        		}
-        		else if(u.getType() == utt.getUnitType("Barracks"))
-            	{
-        			score_buildings += W_RAX[index]*u.getHitPoints();
-
-            	}
-            	else if(u.getType() == utt.getUnitType("Worker"))
-            	{
-            		nr_units += 1;
-            		score += W_WORKER[index]*u.getHitPoints();
-            	}
-            	else if(u.getType() == utt.getUnitType("Light"))
-            	{
-            		nr_units += 1;
-            		score += W_LIGHT[index]*u.getHitPoints()/(float)u.getMaxHitPoints();
-            	}
-            	else if(u.getType() == utt.getUnitType("Ranged"))
-            	{
-            		nr_units += 1;
-            		score += W_RANGE[index]*u.getHitPoints();
-            	}
-            	else if(u.getType() == utt.getUnitType("Heavy"))
-            	{
-            		nr_units += 1;
-            		score += W_HEAVY[index]*u.getHitPoints()/(float)u.getMaxHitPoints();
-            	}
-            }
-            
-        }
+    public float base_score(int player, GameState gs) {
+        int index = weightIndex(gs);
+        UnitSums sums = gs.getUnitSums(TERMS);
+        float score = (float)sums.getSum(player, 0);
+        float score_buildings = (float)sums.getSum(player, 1);
+        float nr_units = (float)sums.getSum(player, 2);
+        float res_carried = (float)sums.getSum(player, 3);
         
         score = (float) (score * Math.pow(nr_units, order-1));
         
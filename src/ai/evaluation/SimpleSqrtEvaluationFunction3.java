@@ -5,7 +5,7 @@
 package ai.evaluation;
 
 import rts.GameState;
-import rts.PhysicalGameState;
+import rts.UnitSums;
 import rts.units.*;
 
 /**
@@ -20,6 +20,22 @@ public class SimpleSqrtEvaluationFunction3 extends EvaluationFunction {
     public static float RESOURCE_IN_WORKER = 10;
     public static float UNIT_BONUS_MULTIPLIER = 40.0f;
     
+    /**
+     * The score of each unit, which the game states keep summed up per player
+     * (see GameState.getUnitSums), so that evaluating a state does not need to
+     * go through all the units
+     */
+    static final UnitSums.Terms TERMS = new UnitSums.Terms() {
+        public int getNumberOfTerms() {
+            return 1;
+        }
+        
+        public void unitTerms(Unit u, GameState gs, double terms[]) {
+            terms[0] = u.getResources() * RESOURCE_IN_WORKER + 
+                       (float)(UNIT_BONUS_MULTIPLIER * u.getCost()*Math.sqrt( u.getHitPoints()/u.getMaxHitPoints() ));
+        }
+    };
+    
     
     public float evaluate(int maxplayer, int minplayer, GameState gs) {
         float s1 = base_score(maxplayer,gs);
@@ -28,19 +44,27 @@ public class SimpleSqrtEvaluationFunction3 extends EvaluationFunction {
         return  (2*s1 / (s1 + s2))-1;
     }
     
-    public float base_score(int player, GameState gs) {
-        PhysicalGameState pgs = gs.getPhysicalGameState();
-        float score = gs.getPlayer(player).getResources()*RESOURCE;
-        boolean anyunit = false;
-        for(Unit u:pgs.getUnits()) {
-            if (u.getPlayer()==player) {
-                anyunit = true;
-                score += u.getResources() * RESOURCE_IN_WORKER;
-                score += UNIT_BONUS_MULTIPLIER * u.getCost()*Math.sqrt( u.getHitPoints()/u.getMaxHitPoints() );
-            }
+    /**
+     * Gathers the base scores of both players from all the states first, and
+     * then computes all the evaluations in a single loop over primitive arrays
+     */
+    public void evaluate(int maxplayer, int minplayer, GameState states[], int n, float scores[]) {
+        float s1[] = new float[n];
+        float s2[] = new float[n];
+        for(int i = 0;i<n;i++) {
+            s1[i] = base_score(maxplayer, states[i]);
+            s2[i] = base_score(minplayer, states[i]);
         }
-        if (!anyunit) return 0;
-        return score;
+        for(int i = 0;i<n;i++) {
+            float total = s1[i] + s2[i];
+            scores[i] = (total == 0 ? 0.5f:(2*s1[i] / total)-1);
+        }
+    }
+    
+    public float base_score(int player, GameState gs) {
+        UnitSums sums = gs.getUnitSums(TERMS);
+        if (sums.getNumberOfUnits(player)==0) return 0;
+        return (float)(gs.getPlayer(player).getResources()*RESOURCE + sums.getSum(player, 0));
     }    
     
     public float upperBound(GameState gs) {
@@ -103,7 +103,7 @@ public class ActionInterdependenceModel extends BayesianModel {
             for(int j = 0;j<nfeatures;j++) {
                 distributions[j].addObservation(y, x[j]);
             }
-            List<Integer> l = i_l.get(i).getPossibleActions(allPossibleActions);            
+            List<Integer> l = i_l.get(i).getPossibleActions(this);            
             for(int idx1:l) {
                 action_allowed_counts_prior[idx1]++;
                 if (idx1==y) {
@@ -146,10 +146,7 @@ public class ActionInterdependenceModel extends BayesianModel {
                 List<UnitAction> possibleUnitActions = u.getUnitActions(i_l.get(i).gs);
                 List<Integer> possibleUnitActionIndexes = new ArrayList<>();
                 for(UnitAction ua : possibleUnitActions) {
-                    if (ua.getType()==UnitAction.TYPE_ATTACK_LOCATION) {
-                        ua = new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, ua.getLocationX() - u.getX(), ua.getLocationY() - u.getY());
-                    }
-                    int idx = allPossibleActions.indexOf(ua);
+                    int idx = actionIndex(ua, u);
                     if (idx<0) throw new Exception("Unknown action: " + ua);
                     possibleUnitActionIndexes.add(idx);
                 } 
@@ -226,7 +223,7 @@ public class ActionInterdependenceModel extends BayesianModel {
     
         
     public double[] predictDistribution(int []x, TrainingInstance ti, double correction) {
-        List<Integer> l = ti.getPossibleActions(allPossibleActions);            
+        List<Integer> l = ti.getPossibleActions(this);            
         double d[] = new double[Ysize];
         double n_factors = 1; // this includes the prior
         
@@ -7,6 +7,7 @@ package ai.machinelearning.bayes;
 
 import ai.machinelearning.bayes.featuregeneration.FeatureGenerator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import ai.stochastic.UnitActionProbabilityDistribution;
 import org.jdom.Element;
@@ -32,12 +33,91 @@ public abstract class BayesianModel extends UnitActionProbabilityDistribution {
     protected FeatureGenerator featureGenerator = null;
     protected String name = null;
     
+    // indexes of the actions in "allPossibleActions", to find them without
+    // comparing them one by one (see "actionIndex"):
+    int noneIndex = -1;
+    int directionIndex[][] = null;      // by action type and direction
+    UnitType unitTypes[] = null;
+    int produceIndex[][] = null;        // by unit type ID and direction
+    int maxAttackRange = 0;
+    int attackIndex[] = null;           // by relative attack position
+    
     public BayesianModel(UnitTypeTable utt, FeatureGenerator fg, String a_name) {
         super(utt);
         allPossibleActions = generateAllPossibleUnitActions(utt);
+        indexActions(utt);
         featureGenerator = fg;
         name = a_name;
     }
+    
+    
+    void indexActions(UnitTypeTable utt) {
+        unitTypes = utt.getUnitTypes().toArray(new UnitType[0]);
+        directionIndex = new int[UnitAction.NUMBER_OF_ACTION_TYPES][4];
+        produceIndex = new int[unitTypes.length][4];
+        maxAttackRange = 0;
+        for(UnitAction ua:allPossibleActions) {
+            if (ua.getType()==UnitAction.TYPE_ATTACK_LOCATION) {
+                maxAttackRange = Math.max(maxAttackRange, Math.max(Math.abs(ua.getLocationX()), Math.abs(ua.getLocationY())));
+            }
+        }
+        int side = maxAttackRange*2+1;
+        attackIndex = new int[side*side];
+        for(int []l:directionIndex) Arrays.fill(l, -1);
+        for(int []l:produceIndex) Arrays.fill(l, -1);
+        Arrays.fill(attackIndex, -1);
+        for(int i = allPossibleActions.size()-1;i>=0;i--) {
+            // (backwards, so that the first occurrence is kept, like with "indexOf")
+            UnitAction ua = allPossibleActions.get(i);
+            switch(ua.getType()) {
+                case UnitAction.TYPE_NONE: if (ua.getDirection()==10) noneIndex = i; break;
+                case UnitAction.TYPE_MOVE:
+                case UnitAction.TYPE_HARVEST:
+                case UnitAction.TYPE_RETURN: directionIndex[ua.getType()][ua.getDirection()] = i; break;
+                case UnitAction.TYPE_PRODUCE: produceIndex[ua.getUnitType().ID][ua.getDirection()] = i; break;
+                case UnitAction.TYPE_ATTACK_LOCATION:
+                    attackIndex[(ua.getLocationX()+maxAttackRange)*side + ua.getLocationY()+maxAttackRange] = i;
+                    break;
+            }
+        }
+    }
+    
+    
+    /**
+     * Returns the index in "allPossibleActions" of the action "ua" (the same as
+     * allPossibleActions.indexOf(ua), but without comparing it with every action).
+     * If "u" is not null, attack actions are translated to coordinates relative
+     * to it first, as in "allPossibleActions"
+     * @param ua
+     * @param u
+     * @return the index, or -1 if the action is not in "allPossibleActions"
+     */
+    public int actionIndex(UnitAction ua, Unit u) {
+        if (ua.getType()!=UnitAction.TYPE_NONE && ua.getType()!=UnitAction.TYPE_ATTACK_LOCATION &&
+            (ua.getDirection()<0 || ua.getDirection()>=4)) return -1;
+        switch(ua.getType()) {
+            case UnitAction.TYPE_NONE:
+                return (ua.getDirection()==10 ? noneIndex:-1);
+            case UnitAction.TYPE_MOVE:
+            case UnitAction.TYPE_HARVEST:
+            case UnitAction.TYPE_RETURN:
+                return directionIndex[ua.getType()][ua.getDirection()];
+            case UnitAction.TYPE_PRODUCE:
+                {
+                    UnitType ut = ua.getUnitType();
+                    if (ut==null || ut.ID<0 || ut.ID>=unitTypes.length || unitTypes[ut.ID]!=ut) return -1;
+                    return produceIndex[ut.ID][ua.getDirection()];
+                }
+            case UnitAction.TYPE_ATTACK_LOCATION:
+                {
+                    int ox = ua.getLocationX() - (u==null ? 0:u.getX());
+                    int oy = ua.getLocationY() - (u==null ? 0:u.getY());
+                    if (ox<-maxAttackRange || ox>maxAttackRange || oy<-maxAttackRange || oy>maxAttackRange) return -1;
+                    return attackIndex[(ox+maxAttackRange)*(maxAttackRange*2+1) + oy+maxAttackRange];
+                }
+        }
+        return -1;
+    }
 
 
     @Override
@@ -122,12 +202,8 @@ public abstract class BayesianModel extends UnitActionProbabilityDistribution {
                 
         double total = 0;
         for(int i = 0;i<l.size();i++) {
-            UnitAction ua = l.get(i);
-            // translate the attack actions to relative coordinates:
-            if (ua.getType()==UnitAction.TYPE_ATTACK_LOCATION) {
-                ua = new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, ua.getLocationX() - u.getX(), ua.getLocationY() - u.getY());
-            }            
-            int idx = allPossibleActions.indexOf(ua);
+            // (attack actions are translated to relative coordinates):
+            int idx = actionIndex(l.get(i), u);
             filtered[i] = d[idx];
             total += d[idx];
         }
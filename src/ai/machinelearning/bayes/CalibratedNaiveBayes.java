@@ -94,10 +94,7 @@ public class CalibratedNaiveBayes extends BayesianModel {
                 List<UnitAction> possibleUnitActions = u.getUnitActions(i_l.get(i).gs);
                 List<Integer> possibleUnitActionIndexes = new ArrayList<>();
                 for(UnitAction ua : possibleUnitActions) {
-                    if (ua.getType()==UnitAction.TYPE_ATTACK_LOCATION) {
-                        ua = new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, ua.getLocationX() - u.getX(), ua.getLocationY() - u.getY());
-                    }
-                    int idx = allPossibleActions.indexOf(ua);
+                    int idx = actionIndex(ua, u);
                     if (idx<0) throw new Exception("Unknown action: " + ua);
                     possibleUnitActionIndexes.add(idx);
                 } 
@@ -42,4 +42,17 @@ public class TrainingInstance {
         }            
         return l;
     }
+    
+    
+    /**
+     * The same as getPossibleActions(model.allPossibleActions), but finding the
+     * indexes with model.actionIndex
+     */
+    public List<Integer> getPossibleActions(BayesianModel model) {
+        List<Integer> l = new ArrayList<>();
+        for(UnitAction ua:u.getUnitActions(gs)) {
+            l.add(model.actionIndex(ua, u));
+        }            
+        return l;
+    }
 }
@@ -10,7 +10,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.List;
-import org.jdom.input.SAXBuilder;
 import rts.GameState;
 import rts.Trace;
 import rts.TraceEntry;
@@ -29,8 +28,8 @@ public abstract class FeatureGenerator {
         File folder = new File(tracesfolder);
         for(File file:folder.listFiles()) {        
             String fileName = file.getAbsolutePath();
-            if (fileName.endsWith(".xml")) {
-                Trace t = new Trace(new SAXBuilder().build(fileName).getRootElement());
+            if (fileName.endsWith(".xml") || fileName.endsWith(Trace.BINARY_EXTENSION)) {
+                Trace t = Trace.load(fileName);
                 traces.add(t);
             }
         }      
@@ -160,7 +160,7 @@ public class InformedNaiveMCTS extends AIWithComputationBudget implements Interr
         
     
     public AI clone() {
-        return new InformedNaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy, bias, ef, utt);
+        return new InformedNaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), bias, ef, utt);
     }    
     
     
@@ -320,8 +320,8 @@ public class InformedNaiveMCTS extends AIWithComputationBudget implements Interr
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(playoutPolicy.getAction(0, gs));
-                gs.issue(playoutPolicy.getAction(1, gs));
+                playoutPolicy.issueAction(0, gs);
+                playoutPolicy.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
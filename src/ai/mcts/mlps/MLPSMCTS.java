@@ -79,7 +79,7 @@ public class MLPSMCTS extends AIWithComputationBudget implements InterruptibleAI
         
     
     public AI clone() {
-        return new MLPSMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, C, randomAI, ef);
+        return new MLPSMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, C, randomAI.clone(), ef);
     }    
     
     
@@ -233,8 +233,8 @@ public class MLPSMCTS extends AIWithComputationBudget implements InterruptibleAI
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(randomAI.getAction(0, gs));
-                gs.issue(randomAI.getAction(1, gs));
+                randomAI.issueAction(0, gs);
+                randomAI.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
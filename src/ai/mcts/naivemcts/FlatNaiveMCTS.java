@@ -0,0 +1,223 @@
+package ai.mcts.naivemcts;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.core.TranspositionTable;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.MCTSNode;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * NaiveMCTS storing its tree in a NaiveMCTSTree (flat arrays, with long
+ * action codes) instead of NaiveMCTSNode objects. It searches in the same
+ * way, and has the same parameters; the arrays of the tree are reused from
+ * one search to the next.
+ * @author santi
+ */
+public class FlatNaiveMCTS extends NaiveMCTS {
+    protected NaiveMCTSTree flatTree = new NaiveMCTSTree(MCTSNode.r);
+    protected int root = NaiveMCTSTree.NONE;
+    protected TranspositionTable<Integer> flatTranspositions = null;
+
+
+    public FlatNaiveMCTS(UnitTypeTable utt) {
+        this(100,-1,100,10,
+             0.3f, 0.0f, 0.4f,
+             new RandomBiasedAI(),
+             new SimpleSqrtEvaluationFunction3(), true);
+    }
+
+
+    public FlatNaiveMCTS(int available_time, int max_playouts, int lookahead, int max_depth,
+                               float e_l, float discout_l,
+                               float e_g, float discout_g,
+                               float e_0, float discout_0,
+                               AI policy, EvaluationFunction a_ef,
+                               boolean fensa) {
+        super(available_time, max_playouts, lookahead, max_depth, e_l, discout_l, e_g, discout_g, e_0, discout_0, policy, a_ef, fensa);
+    }
+
+
+    public FlatNaiveMCTS(int available_time, int max_playouts, int lookahead, int max_depth, float e_l, float e_g, float e_0, AI policy, EvaluationFunction a_ef, boolean fensa) {
+        super(available_time, max_playouts, lookahead, max_depth, e_l, e_g, e_0, policy, a_ef, fensa);
+    }
+
+
+    public FlatNaiveMCTS(int available_time, int max_playouts, int lookahead, int max_depth, float e_l, float e_g, float e_0, int a_global_strategy, AI policy, EvaluationFunction a_ef, boolean fensa) {
+        super(available_time, max_playouts, lookahead, max_depth, e_l, e_g, e_0, a_global_strategy, policy, a_ef, fensa);
+    }
+
+
+    public void reset() {
+        super.reset();
+        flatTree.clear();
+        root = NaiveMCTSTree.NONE;
+    }
+
+
+    public AI clone() {
+        FlatNaiveMCTS clone = new FlatNaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), ef, forceExplorationOfNonSampledActions);
+        clone.global_strategy = global_strategy;
+        clone.useTranspositionTable = useTranspositionTable;
+        clone.reuseTree = reuseTree;
+        return clone;
+    }
+
+
+    public void startNewComputation(int a_player, GameState gs) throws Exception {
+        int reused = NaiveMCTSTree.NONE;
+        if (reuseTree && root!=NaiveMCTSTree.NONE && a_player==player &&
+            (flatTree.transpositions!=null) == useTranspositionTable) reused = flatTree.findNode(root, gs);
+        player = a_player;
+        current_iteration = 0;
+        if (reused!=NaiveMCTSTree.NONE) {
+            if (DEBUG>=1) System.out.println("FlatNaiveMCTS reusing a subtree with " + flatTree.getVisitCount(reused) + " playouts");
+            root = flatTree.makeRoot(reused);
+        } else {
+            TranspositionTable<Integer> transpositions = null;
+            if (useTranspositionTable) {
+                if (flatTranspositions==null) flatTranspositions = new TranspositionTable<>(16);
+                flatTranspositions.clear();
+                transpositions = flatTranspositions;
+            }
+            root = flatTree.reset(player, 1-player, gs, ef.upperBound(gs), current_iteration++, forceExplorationOfNonSampledActions, transpositions);
+        }
+
+        if (flatTree.getType(root)==-1) {
+            max_actions_so_far = 0;
+        } else {
+            max_actions_so_far = Math.max(flatTree.getNumberOfPlayerActions(root),max_actions_so_far);
+        }
+        gs_to_start_from = gs;
+
+        epsilon_l = initial_epsilon_l;
+        epsilon_g = initial_epsilon_g;
+        epsilon_0 = initial_epsilon_0;
+    }
+
+
+    public void resetSearch() {
+        super.resetSearch();
+        flatTree.clear();
+        root = NaiveMCTSTree.NONE;
+    }
+
+
+    public boolean iteration(int player) throws Exception {
+        int leaf = flatTree.selectLeaf(root, epsilon_l, epsilon_g, epsilon_0, global_strategy, MAX_TREE_DEPTH, current_iteration++);
+
+        GameState gs2 = flatTree.getGameState(leaf).cloneCopyOnWrite();
+        simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
+
+        int time = gs2.getTime() - gs_to_start_from.getTime();
+        double evaluation = ef.evaluate(player, 1-player, gs2)*Math.pow(0.99,time/10.0);
+
+        flatTree.propagateEvaluation(leaf, evaluation);
+
+        // update the epsilon values:
+        epsilon_0*=discount_0;
+        epsilon_l*=discount_l;
+        epsilon_g*=discount_g;
+        total_runs++;
+        return true;
+    }
+
+
+    public PlayerAction getBestActionSoFar() {
+        int edge = getRootEdge(getMostVisitedActionIdx());
+        if (edge==NaiveMCTSTree.NONE) {
+            if (DEBUG>=1) System.out.println("FlatNaiveMCTS no children selected. Returning an empty asction");
+            return new PlayerAction();
+        }
+        if (DEBUG>=1) {
+            int best = flatTree.getChild(edge);
+            System.out.println("FlatNaiveMCTS selected children " + flatTree.getAction(edge) + " explored " + flatTree.getVisitCount(best) + " Avg evaluation: " + (flatTree.getAccumEvaluation(best)/((double)flatTree.getVisitCount(best))));
+        }
+        return flatTree.getAction(edge);
+    }
+
+
+    /**
+     * Returns the index of the most visited child of the root (in order of
+     * creation, see getRootEdge), or -1 if it has no children
+     */
+    public int getMostVisitedActionIdx() {
+        total_actions_issued++;
+        if (root==NaiveMCTSTree.NONE) return -1;
+        if (DEBUG>=2) {
+            System.out.println("Number of playouts: " + flatTree.getVisitCount(root));
+            flatTree.printUnitActionTable(root);
+        }
+        int bestIdx = -1;
+        int bestVisits = 0;
+        int idx = 0;
+        for(int edge = flatTree.getFirstEdge(root);edge!=NaiveMCTSTree.NONE;edge = flatTree.getNextEdge(edge), idx++) {
+            int child = flatTree.getChild(edge);
+            if (DEBUG>=2) {
+                System.out.println("child " + flatTree.getAction(edge) + " explored " + flatTree.getVisitCount(child) + " Avg evaluation: " + (flatTree.getAccumEvaluation(child)/((double)flatTree.getVisitCount(child))));
+            }
+            if (bestIdx == -1 || flatTree.getVisitCount(child)>bestVisits) {
+                bestIdx = idx;
+                bestVisits = flatTree.getVisitCount(child);
+            }
+        }
+        return bestIdx;
+    }
+
+
+    /**
+     * Returns the index of the child of the root with the highest average
+     * evaluation (in order of creation, see getRootEdge), or -1 if it has no children
+     */
+    public int getHighestEvaluationActionIdx() {
+        total_actions_issued++;
+        if (root==NaiveMCTSTree.NONE) return -1;
+        int bestIdx = -1;
+        double bestEvaluation = 0;
+        int idx = 0;
+        for(int edge = flatTree.getFirstEdge(root);edge!=NaiveMCTSTree.NONE;edge = flatTree.getNextEdge(edge), idx++) {
+            int child = flatTree.getChild(edge);
+            double evaluation = flatTree.getAccumEvaluation(child)/((double)flatTree.getVisitCount(child));
+            if (bestIdx == -1 || evaluation>bestEvaluation) {
+                bestIdx = idx;
+                bestEvaluation = evaluation;
+            }
+        }
+        return bestIdx;
+    }
+
+
+    /**
+     * Returns the edge to the idx-th child of the root (NONE if idx is -1)
+     * @param idx
+     * @return
+     */
+    public int getRootEdge(int idx) {
+        if (idx<0) return NaiveMCTSTree.NONE;
+        int edge = flatTree.getFirstEdge(root);
+        for(int i = 0;i<idx;i++) edge = flatTree.getNextEdge(edge);
+        return edge;
+    }
+
+
+    /**
+     * Returns null, since the tree is not made of NaiveMCTSNode objects (see
+     * getFlatTree and getRoot)
+     */
+    public NaiveMCTSNode getTree() {
+        return null;
+    }
+
+
+    public NaiveMCTSTree getFlatTree() {
+        return flatTree;
+    }
+
+
+    public int getRoot() {
+        return root;
+    }
+}
@@ -7,7 +7,10 @@ package ai.mcts.naivemcts;
 import ai.*;
 import ai.core.AI;
 import ai.core.AIWithComputationBudget;
+import ai.core.GCStatistics;
+import ai.core.NodePool;
 import ai.core.ParameterSpecification;
+import ai.core.TranspositionTable;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import java.util.ArrayList;
@@ -55,11 +58,27 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     public int global_strategy = NaiveMCTSNode.E_GREEDY;
     public boolean forceExplorationOfNonSampledActions = true;
     
+    // if true, tree nodes reached through different action orders but with the 
+    // same state (same GameState.getHash) are merged:
+    public boolean useTranspositionTable = false;
+    protected TranspositionTable<NaiveMCTSNode> transpositions = null;
+    
+    // if true, the tree is kept from one decision to the next: if the state of 
+    // the new decision is in the previous tree (it is the state reached by the
+    // actions both players executed), its node becomes the new root (see 
+    // NaiveMCTSNode.makeRoot), instead of starting from an empty tree:
+    public boolean reuseTree = false;
+    
+    // if not null, the nodes of the tree are recycled from one search to the
+    // next (see NodePool), up to the capacity of the pool:
+    protected NodePool<NaiveMCTSNode> nodePool = null;
+    
     // statistics:
     public long total_runs = 0;
     public long total_cycles_executed = 0;
     public long total_actions_issued = 0;
     public long total_time = 0;
+    public GCStatistics gcStatistics = new GCStatistics();
     
     
     public NaiveMCTS(UnitTypeTable utt) {
@@ -133,7 +152,11 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         
     
     public AI clone() {
-        return new NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy, ef, forceExplorationOfNonSampledActions);
+        NaiveMCTS clone = new NaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, discount_l, epsilon_g, discount_g, epsilon_0, discount_0, playoutPolicy.clone(), ef, forceExplorationOfNonSampledActions);
+        clone.useTranspositionTable = useTranspositionTable;
+        clone.reuseTree = reuseTree;
+        clone.setNodePoolCapacity(getNodePoolCapacity());
+        return clone;
     }    
     
     
@@ -150,9 +173,28 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     
     
     public void startNewComputation(int a_player, GameState gs) throws Exception {
+        NaiveMCTSNode reused = null;
+        if (reuseTree && tree!=null && a_player==player &&
+            (tree.transpositions!=null) == useTranspositionTable) reused = tree.findNode(gs);
         player = a_player;
         current_iteration = 0;
-        tree = new NaiveMCTSNode(player, 1-player, gs, null, ef.upperBound(gs), current_iteration++, forceExplorationOfNonSampledActions);
+        if (reused!=null) {
+            if (DEBUG>=1) System.out.println("NaiveMCTS reusing a subtree with " + reused.visit_count + " playouts");
+            reused.makeRoot();
+            tree = reused;
+        } else {
+            // nothing from the previous tree is kept, so all its nodes can be recycled:
+            if (nodePool!=null) nodePool.reset();
+            if (useTranspositionTable) {
+                if (transpositions==null) transpositions = new TranspositionTable<>(16);
+                transpositions.clear();
+                tree = NaiveMCTSNode.newNode(nodePool, player, 1-player, gs, null, ef.upperBound(gs), current_iteration++, forceExplorationOfNonSampledActions);
+                tree.transpositions = transpositions;
+                transpositions.put(gs.getHash(), tree);
+            } else {
+                tree = NaiveMCTSNode.newNode(nodePool, player, 1-player, gs, null, ef.upperBound(gs), current_iteration++, forceExplorationOfNonSampledActions);
+            }
+        }
         
         if (tree.moveGenerator==null) {
             max_actions_so_far = 0;
@@ -176,6 +218,7 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
 
     public void computeDuringOneGameFrame() throws Exception {        
         if (DEBUG>=2) System.out.println("Search...");
+        gcStatistics.startFrame();
         long start = System.currentTimeMillis();
         long end = start;
         long count = 0;
@@ -186,6 +229,7 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
             if (TIME_BUDGET>=0 && (end - start)>=TIME_BUDGET) break; 
             if (ITERATIONS_BUDGET>=0 && count>=ITERATIONS_BUDGET) break;             
         }
+        gcStatistics.endFrame();
 //        System.out.println("HL: " + count + " time: " + (System.currentTimeMillis() - start) + " (" + available_time + "," + max_playouts + ")");
         total_time += (end - start);
         total_cycles_executed++;
@@ -197,7 +241,7 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         NaiveMCTSNode leaf = tree.selectLeaf(player, 1-player, epsilon_l, epsilon_g, epsilon_0, global_strategy, MAX_TREE_DEPTH, current_iteration++);
 
         if (leaf!=null) {            
-            GameState gs2 = leaf.gs.clone();
+            GameState gs2 = leaf.gs.cloneCopyOnWrite();
             simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
 
             int time = gs2.getTime() - gs_to_start_from.getTime();
@@ -300,8 +344,8 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(playoutPolicy.getAction(0, gs));
-                gs.issue(playoutPolicy.getAction(1, gs));
+                playoutPolicy.issueAction(0, gs);
+                playoutPolicy.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
@@ -326,7 +370,9 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
                ", runs per action: " + (total_runs/(float)total_actions_issued) + 
                ", runs per cycle: " + (total_runs/(float)total_cycles_executed) + 
                ", average time per cycle: " + (total_time/(float)total_cycles_executed) + 
-               ", max branching factor: " + max_actions_so_far;
+               ", max branching factor: " + max_actions_so_far +
+               ", " + gcStatistics +
+               (nodePool!=null ? ", " + nodePool:"");
     }
     
     
@@ -350,6 +396,9 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
 
         parameters.add(new ParameterSpecification("ForceExplorationOfNonSampledActions",boolean.class,true));
+        parameters.add(new ParameterSpecification("UseTranspositionTable",boolean.class,false));
+        parameters.add(new ParameterSpecification("ReuseTree",boolean.class,false));
+        parameters.add(new ParameterSpecification("NodePoolCapacity",int.class,0));
         
         return parameters;
     }    
@@ -463,4 +512,34 @@ public class NaiveMCTS extends AIWithComputationBudget implements InterruptibleA
     {
         forceExplorationOfNonSampledActions = fensa;
     }    
+    
+    public boolean getUseTranspositionTable() {
+        return useTranspositionTable;
+    }
+    
+    public void setUseTranspositionTable(boolean a_useTranspositionTable) {
+        useTranspositionTable = a_useTranspositionTable;
+    }
+    
+    public boolean getReuseTree() {
+        return reuseTree;
+    }
+    
+    public void setReuseTree(boolean a_reuseTree) {
+        reuseTree = a_reuseTree;
+    }
+    
+    
+    public int getNodePoolCapacity() {
+        return (nodePool==null ? 0:nodePool.getCapacity());
+    }
+    
+    
+    /**
+     * Sets the number of nodes to recycle from one search to the next (0 to not
+     * recycle them)
+     */
+    public void setNodePoolCapacity(int a_capacity) {
+        nodePool = (a_capacity>0 ? new NodePool<>(a_capacity):null);
+    }
 }
@@ -4,6 +4,9 @@
  */
 package ai.mcts.naivemcts;
 
+import ai.core.NodePool;
+import ai.core.TranspositionTable;
+import ai.core.TreeReuse;
 import ai.mcts.MCTSNode;
 import java.math.BigInteger;
 import java.util.*;
@@ -33,9 +36,50 @@ public class NaiveMCTSNode extends MCTSNode {
     public List<UnitActionTableEntry> unitActionTable = null;
     double evaluation_bound;    // this is the maximum positive value that the evaluation function can return
     public BigInteger multipliers[];
+    
+    // nodes of the tree by the hash of their states, shared by all the nodes of 
+    // the tree (null if transpositions are not merged). When a new player action 
+    // leads to a state that is already in the tree, its node is shared (and "parent" 
+    // is updated to the node it was last reached from, so that evaluations are 
+    // propagated along the path that was followed):
+    TranspositionTable<NaiveMCTSNode> transpositions = null;
+
+
+    // the pool the nodes of the tree are obtained from (null if nodes are not
+    // pooled), shared by all the nodes of the tree:
+    NodePool<NaiveMCTSNode> pool = null;
 
 
     public NaiveMCTSNode(int maxplayer, int minplayer, GameState a_gs, NaiveMCTSNode a_parent, double a_evaluation_bound, int a_creation_ID, boolean fensa) throws Exception {
+        init(maxplayer, minplayer, a_gs, a_parent, a_evaluation_bound, a_creation_ID, fensa);
+    }
+
+
+    NaiveMCTSNode() {
+    }
+
+
+    /**
+     * Returns a node initialized as the constructor would, reusing a free node
+     * of "a_pool" if there is one ("a_pool" can be null)
+     */
+    public static NaiveMCTSNode newNode(NodePool<NaiveMCTSNode> a_pool, int maxplayer, int minplayer, GameState a_gs, NaiveMCTSNode a_parent, double a_evaluation_bound, int a_creation_ID, boolean fensa) throws Exception {
+        NaiveMCTSNode node = (a_pool==null ? null:a_pool.get());
+        if (node==null) {
+            node = new NaiveMCTSNode();
+            if (a_pool!=null) a_pool.add(node);
+        }
+        node.pool = a_pool;
+        node.init(maxplayer, minplayer, a_gs, a_parent, a_evaluation_bound, a_creation_ID, fensa);
+        return node;
+    }
+
+
+    /**
+     * Sets all the fields of the node (a node from a NodePool reuses the lists
+     * and arrays of its previous use when it can)
+     */
+    void init(int maxplayer, int minplayer, GameState a_gs, NaiveMCTSNode a_parent, double a_evaluation_bound, int a_creation_ID, boolean fensa) throws Exception {
         parent = a_parent;
         gs = a_gs;
         if (parent==null) depth = 0;
@@ -43,6 +87,12 @@ public class NaiveMCTSNode extends MCTSNode {
         evaluation_bound = a_evaluation_bound;
         creation_ID = a_creation_ID;
         forceExplorationOfNonSampledActions = fensa;
+        transpositions = (a_parent!=null ? a_parent.transpositions:null);
+        accum_evaluation = 0;
+        visit_count = 0;
+        hasMoreActions = true;
+        moveGenerator = null;
+        childrenMap.clear();
         
         while (gs.winner() == -1 &&
                !gs.gameover() &&
@@ -52,60 +102,65 @@ public class NaiveMCTSNode extends MCTSNode {
         }
         if (gs.winner() != -1 || gs.gameover()) {
             type = -1;
+            actions = null;
+            children = null;
+            unitActionTable = null;
+            multipliers = null;
         } else if (gs.canExecuteAnyAction(maxplayer)) {
             type = 0;
-            moveGenerator = new PlayerActionGenerator(gs, maxplayer);
-            actions = new ArrayList<PlayerAction>();
-            children = new ArrayList<MCTSNode>();
-            unitActionTable = new LinkedList<UnitActionTableEntry>();
-            multipliers = new BigInteger[moveGenerator.getChoices().size()];
-            BigInteger baseMultiplier = BigInteger.ONE;
-            int idx = 0;
-            for (Pair<Unit, List<UnitAction>> choice : moveGenerator.getChoices()) {
-                UnitActionTableEntry ae = new UnitActionTableEntry();
-                ae.u = choice.m_a;
-                ae.nactions = choice.m_b.size();
-                ae.actions = choice.m_b;
-                ae.accum_evaluation = new double[ae.nactions];
-                ae.visit_count = new int[ae.nactions];
-                for (int i = 0; i < ae.nactions; i++) {
-                    ae.accum_evaluation[i] = 0;
-                    ae.visit_count[i] = 0;
-                }
-                unitActionTable.add(ae);
-                multipliers[idx] = baseMultiplier;
-                baseMultiplier = baseMultiplier.multiply(BigInteger.valueOf(ae.nactions));
-                idx++;
-             }
+            initUnitActionTable(maxplayer);
         } else if (gs.canExecuteAnyAction(minplayer)) {
             type = 1;
-            moveGenerator = new PlayerActionGenerator(gs, minplayer);
-            actions = new ArrayList<PlayerAction>();
-            children = new ArrayList<MCTSNode>();
-            unitActionTable = new LinkedList<UnitActionTableEntry>();
-            multipliers = new BigInteger[moveGenerator.getChoices().size()];
-            BigInteger baseMultiplier = BigInteger.ONE;
-            int idx = 0;
-            for (Pair<Unit, List<UnitAction>> choice : moveGenerator.getChoices()) {
-                UnitActionTableEntry ae = new UnitActionTableEntry();
-                ae.u = choice.m_a;
-                ae.nactions = choice.m_b.size();
-                ae.actions = choice.m_b;
-                ae.accum_evaluation = new double[ae.nactions];
-                ae.visit_count = new int[ae.nactions];
-                for (int i = 0; i < ae.nactions; i++) {
-                    ae.accum_evaluation[i] = 0;
-                    ae.visit_count[i] = 0;
-                }
-                unitActionTable.add(ae);
-                multipliers[idx] = baseMultiplier;
-                baseMultiplier = baseMultiplier.multiply(BigInteger.valueOf(ae.nactions));
-                idx++;
-           }
+            initUnitActionTable(minplayer);
         } else {
             type = -1;
             System.err.println("NaiveMCTSNode: This should not have happened...");
         }
+        if (transpositions!=null) transpositions.put(gs.getHash(), this);
+    }
+
+
+    void initUnitActionTable(int player) throws Exception {
+        moveGenerator = new PlayerActionGenerator(gs, player);
+        if (actions==null) actions = new ArrayList<PlayerAction>();
+                      else actions.clear();
+        if (children==null) children = new ArrayList<MCTSNode>();
+                       else children.clear();
+        // the entries of a recycled node are reused:
+        List<UnitActionTableEntry> oldTable = unitActionTable;
+        unitActionTable = new LinkedList<UnitActionTableEntry>();
+        multipliers = new BigInteger[moveGenerator.getChoices().size()];
+        BigInteger baseMultiplier = BigInteger.ONE;
+        int idx = 0;
+        for (Pair<Unit, List<UnitAction>> choice : moveGenerator.getChoices()) {
+            UnitActionTableEntry ae = (oldTable!=null && !oldTable.isEmpty() ? oldTable.remove(0):new UnitActionTableEntry());
+            ae.u = choice.m_a;
+            ae.nactions = choice.m_b.size();
+            ae.actions = choice.m_b;
+            if (ae.accum_evaluation==null || ae.accum_evaluation.length<ae.nactions) {
+                ae.accum_evaluation = new double[ae.nactions];
+                ae.visit_count = new int[ae.nactions];
+            }
+            for (int i = 0; i < ae.nactions; i++) {
+                ae.accum_evaluation[i] = 0;
+                ae.visit_count[i] = 0;
+            }
+            unitActionTable.add(ae);
+            multipliers[idx] = baseMultiplier;
+            baseMultiplier = baseMultiplier.multiply(BigInteger.valueOf(ae.nactions));
+            idx++;
+        }
+    }
+
+    
+    /**
+     * Creates the root of a tree that merges the nodes of states reached through
+     * different action orders, using "a_transpositions" to find them
+     */
+    public NaiveMCTSNode(int maxplayer, int minplayer, GameState a_gs, double a_evaluation_bound, int a_creation_ID, boolean fensa, TranspositionTable<NaiveMCTSNode> a_transpositions) throws Exception {
+        this(maxplayer, minplayer, a_gs, null, a_evaluation_bound, a_creation_ID, fensa);
+        transpositions = a_transpositions;
+        transpositions.put(gs.getHash(), this);
     }
 
     
@@ -133,6 +188,7 @@ public class NaiveMCTSNode extends MCTSNode {
             NaiveMCTSNode selected = null;
             if (global_strategy==E_GREEDY) selected = selectFromAlreadySampledEpsilonGreedy(epsilon_g);
             else if (global_strategy==UCB1) selected = selectFromAlreadySampledUCB1(C);
+            selected.parent = this;
             return selected.selectLeaf(maxplayer, minplayer, epsilon_l, epsilon_g, epsilon_0, global_strategy, max_depth, a_creation_ID);
         }  else {
             // sample from the local MABs (this might recursively call "selectLeaf" internally):
@@ -194,6 +250,21 @@ public class NaiveMCTSNode extends MCTSNode {
     
     
     public NaiveMCTSNode selectLeafUsingLocalMABs(int maxplayer, int minplayer, float epsilon_l, float epsilon_g, float epsilon_0, int global_strategy, int max_depth, int a_creation_ID) throws Exception {   
+        int nchildren = children.size();
+        NaiveMCTSNode pate = sampleChildUsingLocalMABs(maxplayer, minplayer, epsilon_l, a_creation_ID);
+        // new children are returned as leaves:
+        if (children.size()>nchildren) return pate;
+
+        pate.parent = this;
+        return pate.selectLeaf(maxplayer, minplayer, epsilon_l, epsilon_g, epsilon_0, global_strategy, max_depth, a_creation_ID);
+    }
+    
+    
+    /**
+     * Samples a player action using the local MABs, and returns the child it 
+     * leads to, creating it if it did not exist
+     */
+    public NaiveMCTSNode sampleChildUsingLocalMABs(int maxplayer, int minplayer, float epsilon_l, int a_creation_ID) throws Exception {   
         PlayerAction pa2;
         BigInteger actionCode;       
 
@@ -314,14 +385,24 @@ public class NaiveMCTSNode extends MCTSNode {
         NaiveMCTSNode pate = childrenMap.get(actionCode);
         if (pate==null) {
             actions.add(pa2);            
-            GameState gs2 = gs.cloneIssue(pa2);
-            NaiveMCTSNode node = new NaiveMCTSNode(maxplayer, minplayer, gs2.clone(), this, evaluation_bound, a_creation_ID, forceExplorationOfNonSampledActions);
+            GameState gs2 = gs.cloneIssue(pa2).cloneCopyOnWrite();
+            NaiveMCTSNode node = null;
+            if (transpositions!=null) {
+                while (gs2.winner() == -1 &&
+                       !gs2.gameover() &&
+                       !gs2.canExecuteAnyAction(maxplayer) &&
+                       !gs2.canExecuteAnyAction(minplayer)) {
+                    gs2.cycle();
+                }
+                node = transpositions.get(gs2.getHash());
+                if (node!=null) node.parent = this;
+            }
+            if (node==null) node = newNode(pool, maxplayer, minplayer, gs2, this, evaluation_bound, a_creation_ID, forceExplorationOfNonSampledActions);
             childrenMap.put(actionCode,node);
             children.add(node);          
             return node;                
         }
-
-        return pate.selectLeaf(maxplayer, minplayer, epsilon_l, epsilon_g, epsilon_0, global_strategy, max_depth, a_creation_ID);
+        return pate;
     }
     
     
@@ -340,29 +421,163 @@ public class NaiveMCTSNode extends MCTSNode {
 //        if (child!=null) System.out.println(evaluation);
 
         // update the unitAction table:
-        if (child != null) {
-            int idx = children.indexOf(child);
-            PlayerAction pa = actions.get(idx);
+        if (child != null) updateUnitActionTable(child, evaluation, 1);
+
+        if (parent != null) {
+            ((NaiveMCTSNode)parent).propagateEvaluation(evaluation, this);
+        }
+    }
+    
+    
+    /**
+     * Adds "evaluation" and "visits" to the statistics of the unit actions of the
+     * player action that leads to "child"
+     */
+    void updateUnitActionTable(NaiveMCTSNode child, double evaluation, int visits) {
+        int idx = children.indexOf(child);
+        PlayerAction pa = actions.get(idx);
 
-            for (Pair<Unit, UnitAction> ua : pa.getActions()) {
-                UnitActionTableEntry actionTable = getActionTableEntry(ua.m_a);
-                idx = actionTable.actions.indexOf(ua.m_b);
+        for (Pair<Unit, UnitAction> ua : pa.getActions()) {
+            UnitActionTableEntry actionTable = getActionTableEntry(ua.m_a);
+            idx = actionTable.actions.indexOf(ua.m_b);
 
-                if (idx==-1) {
-                    System.out.println("Looking for action: " + ua.m_b);
-                    System.out.println("Available actions are: " + actionTable.actions);
+            if (idx==-1) {
+                System.out.println("Looking for action: " + ua.m_b);
+                System.out.println("Available actions are: " + actionTable.actions);
+            }
+
+            actionTable.accum_evaluation[idx] += evaluation;
+            actionTable.visit_count[idx] += visits;
+        }
+    }
+    
+    
+    /**
+     * Same as selectLeaf, for trees searched by several threads at once (see 
+     * ParallelNaiveMCTS). The child of each node is chosen (and created, if new) 
+     * while holding the lock of the node, and "virtualLoss" lost playouts are added
+     * to its statistics (see addVirtualLoss), so that other threads tend to follow 
+     * other paths until the result of the playout is propagated with 
+     * propagateEvaluationConcurrently, which removes them. 
+     * The statistics of a node (and those of the unit actions leading to it) are 
+     * only modified while holding the lock of its parent. Its children, actions
+     * and unit action table are built when the node is created (while holding the
+     * lock of its parent, before other threads can reach it) and only modified 
+     * while holding its own lock. The resource usages that actions and assignments
+     * cache, which are shared by several nodes, are published through volatile 
+     * fields. Transpositions are not merged in this mode.
+     */
+    public NaiveMCTSNode selectLeafConcurrently(int maxplayer, int minplayer, float epsilon_l, float epsilon_g, float epsilon_0, int global_strategy, int max_depth, int a_creation_ID, int virtualLoss) throws Exception {
+        NaiveMCTSNode node = this;
+        while(true) {
+            NaiveMCTSNode child;
+            boolean isNew;
+            synchronized(node) {
+                if (node.unitActionTable == null) return node;
+                if (node.depth>=max_depth) return node;
+                int nchildren = node.children.size();
+                if (nchildren>0 && r.nextFloat()>=epsilon_0) {
+                    if (global_strategy==E_GREEDY) child = node.selectFromAlreadySampledEpsilonGreedy(epsilon_g);
+                    else child = node.selectFromAlreadySampledUCB1(C);
+                } else {
+                    child = node.sampleChildUsingLocalMABs(maxplayer, minplayer, epsilon_l, a_creation_ID);
                 }
-                
-                actionTable.accum_evaluation[idx] += evaluation;
-                actionTable.visit_count[idx]++;
+                isNew = node.children.size()>nchildren;
+                node.addVirtualLoss(child, virtualLoss);
+            }
+            if (isNew) return child;
+            node = child;
+        }
+    }
+    
+    
+    /**
+     * Adds "n" playouts lost by the player that moves in this node to the statistics
+     * of "child" and of the unit actions that lead to it ("n" is negative to remove them)
+     */
+    void addVirtualLoss(NaiveMCTSNode child, int n) {
+        if (n==0) return;
+        double loss = (type==0 ? -evaluation_bound : evaluation_bound);
+        child.accum_evaluation += n*loss;
+        child.visit_count += n;
+        updateUnitActionTable(child, n*loss, n);
+    }
+    
+    
+    /**
+     * Same as propagateEvaluation (called on the leaf), for leaves returned by 
+     * selectLeafConcurrently: also removes the virtual loss added along the path
+     */
+    public void propagateEvaluationConcurrently(double evaluation, int virtualLoss) {
+        NaiveMCTSNode node = this;
+        NaiveMCTSNode parent = (NaiveMCTSNode)node.parent;
+        while(parent!=null) {
+            synchronized(parent) {
+                parent.addVirtualLoss(node, -virtualLoss);
+                node.accum_evaluation += evaluation;
+                node.visit_count++;
+                parent.updateUnitActionTable(node, evaluation, 1);
             }
+            node = parent;
+            parent = (NaiveMCTSNode)node.parent;
+        }
+        synchronized(node) {
+            node.accum_evaluation += evaluation;
+            node.visit_count++;
         }
+    }
 
-        if (parent != null) {
-            ((NaiveMCTSNode)parent).propagateEvaluation(evaluation, this);
+    /**
+     * Returns the node under this one (or this one) whose state is "a_gs" (see
+     * TreeReuse.sameState), or null if there is none. Nodes past the time of
+     * "a_gs" are not explored.
+     */
+    public NaiveMCTSNode findNode(GameState a_gs) {
+        Set<NaiveMCTSNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<NaiveMCTSNode> open = new ArrayDeque<>();
+        open.add(this);
+        visited.add(this);
+        while(!open.isEmpty()) {
+            NaiveMCTSNode node = open.poll();
+            if (TreeReuse.sameState(node.gs, a_gs)) return node;
+            if (node.children==null) continue;
+            for(MCTSNode child:node.children) {
+                if (child.gs.getTime()<=a_gs.getTime() && visited.add((NaiveMCTSNode)child)) open.add((NaiveMCTSNode)child);
+            }
         }
+        return null;
     }
 
+
+    /**
+     * Makes this node the root of its tree, keeping the nodes under it: their
+     * depths become their distance to this node, and the transposition table
+     * (if any) is left with only them, so that the rest of the tree can be
+     * garbage collected.
+     */
+    public void makeRoot() {
+        parent = null;
+        depth = 0;
+        if (transpositions!=null) transpositions.clear();
+        Set<NaiveMCTSNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<NaiveMCTSNode> open = new ArrayDeque<>();
+        open.add(this);
+        visited.add(this);
+        while(!open.isEmpty()) {
+            NaiveMCTSNode node = open.poll();
+            if (transpositions!=null) transpositions.put(node.gs.getHash(), node);
+            if (node.children==null) continue;
+            for(MCTSNode child:node.children) {
+                if (visited.add((NaiveMCTSNode)child)) {
+                    child.parent = node;
+                    child.depth = node.depth+1;
+                    open.add((NaiveMCTSNode)child);
+                }
+            }
+        }
+    }
+
+
     public void printUnitActionTable() {
         for (UnitActionTableEntry uat : unitActionTable) {
             System.out.println("Actions for unit " + uat.u);
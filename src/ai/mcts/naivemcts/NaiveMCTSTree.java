@@ -0,0 +1,862 @@
+package ai.mcts.naivemcts;
+
+import ai.core.TranspositionTable;
+import ai.core.TreeReuse;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.PlayerActionGenerator;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.units.Unit;
+import util.Pair;
+import util.Sampler;
+
+/**
+ * A NaiveMCTS tree stored in flat arrays (see FlatNaiveMCTS), as an
+ * alternative to a tree of NaiveMCTSNode objects. Nodes, the edges between
+ * them, the unit action tables of the nodes (the local MABs) and their
+ * statistics are identified by integers, and their fields are stored in
+ * parallel arrays indexed by them, which grow as needed and are reused when
+ * the tree is cleared.
+ *
+ * The player actions of a node are identified by a long code (the index of
+ * the action of each unit, in a mixed radix with the number of actions of
+ * each unit), and the children are found by looking up (node, code) in an
+ * open-addressing table. Nodes whose number of player actions does not fit in
+ * a long use BigInteger codes (and a HashMap) instead, as NaiveMCTSNode does.
+ *
+ * The search does the same as NaiveMCTSNode (consuming the random numbers in
+ * the same order), so both trees choose the same actions.
+ * @author santi
+ */
+public class NaiveMCTSTree {
+    public static final int NONE = -1;
+
+    static final int INITIAL_CAPACITY = 256;
+
+    int maxplayer, minplayer;
+    double evaluation_bound;
+    boolean forceExplorationOfNonSampledActions = true;
+    Random r;
+    TranspositionTable<Integer> transpositions = null;
+
+    // nodes:
+    int nNodes = 0;
+    int nodeType[] = new int[INITIAL_CAPACITY];        // 0: max, 1: min, -1: game over
+    int nodeDepth[] = new int[INITIAL_CAPACITY];
+    int nodeParent[] = new int[INITIAL_CAPACITY];      // the node it was last reached from
+    int nodeParentEdge[] = new int[INITIAL_CAPACITY];  // the edge it was last reached through
+    int nodeCreationID[] = new int[INITIAL_CAPACITY];
+    double nodeAccumEvaluation[] = new double[INITIAL_CAPACITY];
+    int nodeVisitCount[] = new int[INITIAL_CAPACITY];
+    GameState nodeState[] = new GameState[INITIAL_CAPACITY];
+    int nodeFirstEntry[] = new int[INITIAL_CAPACITY];  // unit action table: entries [first, first + n)
+    int nodeEntries[] = new int[INITIAL_CAPACITY];
+    int nodeFirstEdge[] = new int[INITIAL_CAPACITY];   // children, in order of creation
+    int nodeLastEdge[] = new int[INITIAL_CAPACITY];
+    int nodeChildren[] = new int[INITIAL_CAPACITY];
+    Object nodeBigChildren[] = new Object[INITIAL_CAPACITY];   // HashMap<BigInteger,Integer>, for nodes with too many player actions
+
+    // unit action table entries (one per unit that can act in a node):
+    int nEntries = 0;
+    Unit entryUnit[] = new Unit[INITIAL_CAPACITY];
+    Object entryActions[] = new Object[INITIAL_CAPACITY];  // List<UnitAction>
+    int entryNActions[] = new int[INITIAL_CAPACITY];
+    int entryFirstStat[] = new int[INITIAL_CAPACITY];      // statistics: [first, first + nactions)
+    long entryMultiplier[] = new long[INITIAL_CAPACITY];   // 0 in nodes with BigInteger codes
+
+    // statistics of the unit actions:
+    int nStats = 0;
+    double statAccumEvaluation[] = new double[INITIAL_CAPACITY];
+    int statVisitCount[] = new int[INITIAL_CAPACITY];
+
+    // edges (parent to child):
+    int nEdges = 0;
+    int edgeChild[] = new int[INITIAL_CAPACITY];
+    int edgeNext[] = new int[INITIAL_CAPACITY];
+    PlayerAction edgeAction[] = new PlayerAction[INITIAL_CAPACITY];
+    int edgeFirstChoice[] = new int[INITIAL_CAPACITY];     // the action chosen for each entry of the parent (NONE if none)
+
+    int nChoices = 0;
+    int choices[] = new int[INITIAL_CAPACITY];
+
+    // children by (node, long code):
+    int childTableSize = 0;
+    int childTableNode[] = new int[INITIAL_CAPACITY];
+    long childTableCode[] = new long[INITIAL_CAPACITY];
+    int childTableEdge[] = new int[INITIAL_CAPACITY];      // NONE if the slot is empty
+
+    // buffers for sampling:
+    double distributions[][] = new double[16][];
+    int notSampledYet[] = new int[16];
+    int sampled[] = new int[16];
+
+    // buffers for findNode and makeRoot:
+    int nReachable = 0;
+    int reachableQueue[] = new int[0];
+    boolean reachableVisited[] = new boolean[0];
+    int nodeMap[] = new int[0];
+    int edgeMap[] = new int[0];
+
+
+    public NaiveMCTSTree(Random a_r) {
+        r = a_r;
+        Arrays.fill(childTableEdge, NONE);
+    }
+
+
+    /**
+     * Removes all the nodes, and creates a new root for "gs" (keeping the
+     * arrays, so that they do not need to be allocated again)
+     * @param a_maxplayer
+     * @param a_minplayer
+     * @param gs
+     * @param a_evaluation_bound
+     * @param a_creation_ID
+     * @param fensa
+     * @param a_transpositions null if transpositions are not merged (see NaiveMCTSNode)
+     * @return the root
+     * @throws Exception
+     */
+    public int reset(int a_maxplayer, int a_minplayer, GameState gs, double a_evaluation_bound, int a_creation_ID, boolean fensa, TranspositionTable<Integer> a_transpositions) throws Exception {
+        clear();
+        maxplayer = a_maxplayer;
+        minplayer = a_minplayer;
+        evaluation_bound = a_evaluation_bound;
+        forceExplorationOfNonSampledActions = fensa;
+        transpositions = a_transpositions;
+        return newNode(gs, NONE, NONE, a_creation_ID);
+    }
+
+
+    /**
+     * Removes all the nodes
+     */
+    public void clear() {
+        // release the references, so that they can be garbage collected:
+        Arrays.fill(nodeState, 0, nNodes, null);
+        Arrays.fill(nodeBigChildren, 0, nNodes, null);
+        Arrays.fill(entryUnit, 0, nEntries, null);
+        Arrays.fill(entryActions, 0, nEntries, null);
+        Arrays.fill(edgeAction, 0, nEdges, null);
+        if (childTableSize>0) Arrays.fill(childTableEdge, NONE);
+        nNodes = nEntries = nStats = nEdges = nChoices = childTableSize = 0;
+    }
+
+
+    public int getNumberOfNodes() {
+        return nNodes;
+    }
+
+
+    public int getType(int node) {
+        return nodeType[node];
+    }
+
+
+    public int getDepth(int node) {
+        return nodeDepth[node];
+    }
+
+
+    public GameState getGameState(int node) {
+        return nodeState[node];
+    }
+
+
+    public double getAccumEvaluation(int node) {
+        return nodeAccumEvaluation[node];
+    }
+
+
+    public int getVisitCount(int node) {
+        return nodeVisitCount[node];
+    }
+
+
+    public int getNumberOfChildren(int node) {
+        return nodeChildren[node];
+    }
+
+
+    /**
+     * Returns the first edge to the children of "node" (NONE if it has none);
+     * the rest can be obtained with getNextEdge
+     * @param node
+     * @return
+     */
+    public int getFirstEdge(int node) {
+        return nodeFirstEdge[node];
+    }
+
+
+    public int getNextEdge(int edge) {
+        return edgeNext[edge];
+    }
+
+
+    public int getChild(int edge) {
+        return edgeChild[edge];
+    }
+
+
+    public PlayerAction getAction(int edge) {
+        return edgeAction[edge];
+    }
+
+
+    /**
+     * Returns the number of player actions of "node" (capped at Long.MAX_VALUE,
+     * as PlayerActionGenerator.getSize)
+     * @param node
+     * @return
+     */
+    public long getNumberOfPlayerActions(int node) {
+        long size = 1;
+        for(int e = nodeFirstEntry[node];e<nodeFirstEntry[node]+nodeEntries[node];e++) {
+            long tmp = entryNActions[e];
+            if (Long.MAX_VALUE / size <= tmp) return Long.MAX_VALUE;
+            size *= tmp;
+        }
+        return size;
+    }
+
+
+    int newNode(GameState gs, int parent, int parentEdge, int creation_ID) throws Exception {
+        int node = nNodes;
+        if (node == nodeType.length) growNodes();
+        nNodes++;
+        nodeParent[node] = parent;
+        nodeParentEdge[node] = parentEdge;
+        nodeDepth[node] = (parent==NONE ? 0:nodeDepth[parent]+1);
+        nodeCreationID[node] = creation_ID;
+        nodeAccumEvaluation[node] = 0;
+        nodeVisitCount[node] = 0;
+        nodeState[node] = gs;
+        nodeFirstEntry[node] = nEntries;
+        nodeEntries[node] = 0;
+        nodeFirstEdge[node] = nodeLastEdge[node] = NONE;
+        nodeChildren[node] = 0;
+        nodeBigChildren[node] = null;
+
+        while (gs.winner() == -1 &&
+               !gs.gameover() &&
+               !gs.canExecuteAnyAction(maxplayer) &&
+               !gs.canExecuteAnyAction(minplayer)) {
+            gs.cycle();
+        }
+        if (gs.winner() != -1 || gs.gameover()) {
+            nodeType[node] = -1;
+        } else if (gs.canExecuteAnyAction(maxplayer)) {
+            nodeType[node] = 0;
+            addUnitActionTable(node, new PlayerActionGenerator(gs, maxplayer));
+        } else if (gs.canExecuteAnyAction(minplayer)) {
+            nodeType[node] = 1;
+            addUnitActionTable(node, new PlayerActionGenerator(gs, minplayer));
+        } else {
+            nodeType[node] = -1;
+            System.err.println("NaiveMCTSTree: This should not have happened...");
+        }
+        if (transpositions!=null) transpositions.put(gs.getHash(), node);
+        return node;
+    }
+
+
+    void addUnitActionTable(int node, PlayerActionGenerator moveGenerator) {
+        List<Pair<Unit,List<UnitAction>>> l = moveGenerator.getChoices();
+        long multiplier = 1;
+        boolean bigCodes = false;
+        for(Pair<Unit,List<UnitAction>> choice:l) {
+            int e = nEntries;
+            if (e == entryUnit.length) growEntries();
+            nEntries++;
+            int nactions = choice.m_b.size();
+            entryUnit[e] = choice.m_a;
+            entryActions[e] = choice.m_b;
+            entryNActions[e] = nactions;
+            entryFirstStat[e] = nStats;
+            if (nStats + nactions > statVisitCount.length) growStats(nStats + nactions);
+            Arrays.fill(statAccumEvaluation, nStats, nStats + nactions, 0);
+            Arrays.fill(statVisitCount, nStats, nStats + nactions, 0);
+            nStats += nactions;
+            if (!bigCodes && Long.MAX_VALUE / multiplier < nactions) bigCodes = true;
+            entryMultiplier[e] = (bigCodes ? 0:multiplier);
+            if (!bigCodes) multiplier *= nactions;
+        }
+        nodeEntries[node] = l.size();
+        if (bigCodes) nodeBigChildren[node] = new HashMap<BigInteger,Integer>();
+    }
+
+
+    /**
+     * Same as NaiveMCTSNode.selectLeaf, starting from "node"
+     */
+    public int selectLeaf(int node, float epsilon_l, float epsilon_g, float epsilon_0, int global_strategy, int max_depth, int a_creation_ID) throws Exception {
+        while(true) {
+            if (nodeType[node] == -1) return node;
+            if (nodeDepth[node]>=max_depth) return node;
+
+            int edge;
+            if (nodeChildren[node]>0 && r.nextFloat()>=epsilon_0) {
+                // sample from the global MAB:
+                if (global_strategy==NaiveMCTSNode.E_GREEDY) edge = selectFromAlreadySampledEpsilonGreedy(node, epsilon_g);
+                else edge = selectFromAlreadySampledUCB1(node, NaiveMCTSNode.C);
+            } else {
+                // sample from the local MABs:
+                int nchildren = nodeChildren[node];
+                edge = sampleChildUsingLocalMABs(node, epsilon_l, a_creation_ID);
+                // new children are returned as leaves:
+                if (nodeChildren[node]>nchildren) return edgeChild[edge];
+            }
+            int child = edgeChild[edge];
+            nodeParent[child] = node;
+            nodeParentEdge[child] = (transpositions==null ? edge:firstEdgeTo(node, child));
+            node = child;
+        }
+    }
+
+
+    int selectFromAlreadySampledEpsilonGreedy(int node, float epsilon_g) {
+        if (r.nextFloat()>=epsilon_g) {
+            int best = NONE;
+            double bestEvaluation = 0;
+            for(int edge = nodeFirstEdge[node];edge!=NONE;edge = edgeNext[edge]) {
+                int child = edgeChild[edge];
+                double evaluation = nodeAccumEvaluation[child]/nodeVisitCount[child];
+                if (best==NONE ||
+                    (nodeType[node]==0 && evaluation>bestEvaluation) ||
+                    (nodeType[node]!=0 && evaluation<bestEvaluation)) {
+                    best = edge;
+                    bestEvaluation = evaluation;
+                }
+            }
+            return best;
+        } else {
+            // choose one at random from the ones seen so far:
+            int idx = r.nextInt(nodeChildren[node]);
+            int edge = nodeFirstEdge[node];
+            for(int i = 0;i<idx;i++) edge = edgeNext[edge];
+            return edge;
+        }
+    }
+
+
+    int selectFromAlreadySampledUCB1(int node, float C) {
+        int best = NONE;
+        double bestScore = 0;
+        for(int edge = nodeFirstEdge[node];edge!=NONE;edge = edgeNext[edge]) {
+            int child = edgeChild[edge];
+            double exploitation = nodeAccumEvaluation[child] / nodeVisitCount[child];
+            double exploration = Math.sqrt(Math.log((double)nodeVisitCount[node])/nodeVisitCount[child]);
+            if (nodeType[node]==0) {
+                // max node:
+                exploitation = (evaluation_bound + exploitation)/(2*evaluation_bound);
+            } else {
+                exploitation = (evaluation_bound - exploitation)/(2*evaluation_bound);
+            }
+            double tmp = C*exploitation + exploration;
+            if (best==NONE || tmp>bestScore) {
+                best = edge;
+                bestScore = tmp;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Same as NaiveMCTSNode.sampleChildUsingLocalMABs: samples a player action
+     * using the local MABs, and returns the edge to the child it leads to,
+     * creating it if it did not exist
+     */
+    int sampleChildUsingLocalMABs(int node, float epsilon_l, int a_creation_ID) throws Exception {
+        int firstEntry = nodeFirstEntry[node];
+        int n = nodeEntries[node];
+        int type = nodeType[node];
+        if (distributions.length < n) {
+            distributions = Arrays.copyOf(distributions, n*2);
+            notSampledYet = new int[n*2];
+            sampled = new int[n*2];
+        }
+
+        // For each unit, rank the unitActions according to preference:
+        for(int k = 0;k<n;k++) {
+            int e = firstEntry + k;
+            int nactions = entryNActions[e];
+            int first = entryFirstStat[e];
+            double dist[] = distributions[k];
+            if (dist == null || dist.length != nactions) dist = distributions[k] = new double[nactions];
+            int bestIdx = -1;
+            double bestEvaluation = 0;
+            int visits = 0;
+            for(int i = 0;i<nactions;i++) {
+                int visit_count = statVisitCount[first+i];
+                if (bestIdx==-1 ||
+                    (visits!=0 && visit_count==0) ||
+                    (visits!=0 && type==0 && (statAccumEvaluation[first+i]/visit_count)>bestEvaluation) ||
+                    (visits!=0 && type!=0 && (statAccumEvaluation[first+i]/visit_count)<bestEvaluation)) {
+                    bestIdx = i;
+                    if (visit_count>0) bestEvaluation = (statAccumEvaluation[first+i]/visit_count);
+                                  else bestEvaluation = 0;
+                    visits = visit_count;
+                }
+                dist[i] = epsilon_l/nactions;
+            }
+            if (statVisitCount[first+bestIdx]!=0) {
+                dist[bestIdx] = (1-epsilon_l) + (epsilon_l/nactions);
+            } else {
+                if (forceExplorationOfNonSampledActions) {
+                    for(int j = 0;j<nactions;j++)
+                        if (statVisitCount[first+j]>0) dist[j] = 0;
+                }
+            }
+            notSampledYet[k] = k;
+        }
+
+        // Select the best combination that results in a valid playeraction by epsilon-greedy sampling:
+        GameState gs = nodeState[node];
+        ResourceUsage base_ru = new ResourceUsage();
+        for(Unit u:gs.getUnits()) {
+            UnitAction ua = gs.getUnitAction(u);
+            if (ua!=null) {
+                ResourceUsage ru = ua.resourceUsage(u, gs.getPhysicalGameState());
+                base_ru.merge(ru);
+            }
+        }
+
+        PlayerAction pa2 = new PlayerAction();
+        pa2.setResourceUsage(base_ru.clone());
+        long actionCode = 0;
+        int nNotSampledYet = n;
+        while(nNotSampledYet>0) {
+            int idx = r.nextInt(nNotSampledYet);
+            int k = notSampledYet[idx];
+            System.arraycopy(notSampledYet, idx+1, notSampledYet, idx, nNotSampledYet-idx-1);
+            nNotSampledYet--;
+
+            int e = firstEntry + k;
+            sampled[k] = NONE;
+            try {
+                @SuppressWarnings("unchecked")
+                List<UnitAction> actions = (List<UnitAction>)entryActions[e];
+                Unit u = entryUnit[e];
+                double distribution[] = distributions[k];
+
+                // try one at random:
+                int code = Sampler.weighted(distribution);
+                UnitAction ua = actions.get(code);
+                ResourceUsage r2 = ua.resourceUsage(u, gs.getPhysicalGameState());
+                if (!pa2.getResourceUsage().consistentWith(r2, gs)) {
+                    // sample at random, eliminating the ones that have not worked so far:
+                    List<Double> dist_l = new ArrayList<Double>();
+                    List<Integer> dist_outputs = new ArrayList<Integer>();
+                    for(int j = 0;j<distribution.length;j++) {
+                        dist_l.add(distribution[j]);
+                        dist_outputs.add(j);
+                    }
+                    do{
+                        int idx2 = dist_outputs.indexOf(code);
+                        dist_l.remove(idx2);
+                        dist_outputs.remove(idx2);
+                        code = (Integer)Sampler.weighted(dist_l, dist_outputs);
+                        ua = actions.get(code);
+                        r2 = ua.resourceUsage(u, gs.getPhysicalGameState());
+                    }while(!pa2.getResourceUsage().consistentWith(r2, gs));
+                }
+
+                if (gs.getUnit(u.getID())==null) throw new Error("Issuing an action to an inexisting unit!!!");
+
+                pa2.getResourceUsage().merge(r2);
+                pa2.addUnitAction(u, ua);
+                sampled[k] = code;
+                actionCode += code*entryMultiplier[e];
+            } catch(Exception ex) {
+                // the unit is left without action (as in NaiveMCTSNode):
+                ex.printStackTrace();
+            }
+        }
+
+        // find the child:
+        @SuppressWarnings("unchecked")
+        HashMap<BigInteger,Integer> bigChildren = (HashMap<BigInteger,Integer>)nodeBigChildren[node];
+        BigInteger bigActionCode = null;
+        int edge;
+        if (bigChildren!=null) {
+            bigActionCode = BigInteger.ZERO;
+            BigInteger multiplier = BigInteger.ONE;
+            for(int k = 0;k<n;k++) {
+                if (sampled[k]!=NONE) bigActionCode = bigActionCode.add(BigInteger.valueOf(sampled[k]).multiply(multiplier));
+                multiplier = multiplier.multiply(BigInteger.valueOf(entryNActions[firstEntry + k]));
+            }
+            Integer tmp = bigChildren.get(bigActionCode);
+            edge = (tmp==null ? NONE:tmp);
+        } else {
+            edge = findChild(node, actionCode);
+        }
+        if (edge!=NONE) return edge;
+
+        // create it:
+        GameState gs2 = gs.cloneIssue(pa2).cloneCopyOnWrite();
+        edge = newEdge(node, pa2, n);
+        int child = NONE;
+        if (transpositions!=null) {
+            while (gs2.winner() == -1 &&
+                   !gs2.gameover() &&
+                   !gs2.canExecuteAnyAction(maxplayer) &&
+                   !gs2.canExecuteAnyAction(minplayer)) {
+                gs2.cycle();
+            }
+            Integer tmp = transpositions.get(gs2.getHash());
+            if (tmp!=null) {
+                child = tmp;
+                edgeChild[edge] = child;
+                nodeParent[child] = node;
+                nodeParentEdge[child] = firstEdgeTo(node, child);
+            }
+        }
+        if (child==NONE) child = newNode(gs2, node, edge, a_creation_ID);
+        edgeChild[edge] = child;
+        if (bigChildren!=null) {
+            bigChildren.put(bigActionCode, edge);
+        } else {
+            putChild(node, actionCode, edge);
+        }
+        return edge;
+    }
+
+
+    /**
+     * Returns the first edge from "node" to "child". When several player actions
+     * lead to the same child (through transpositions), NaiveMCTSNode updates the
+     * statistics of the unit actions of the first one, so this does the same
+     */
+    int firstEdgeTo(int node, int child) {
+        int edge = nodeFirstEdge[node];
+        while(edgeChild[edge]!=child) edge = edgeNext[edge];
+        return edge;
+    }
+
+
+    int newEdge(int node, PlayerAction pa, int n) {
+        int edge = nEdges;
+        if (edge == edgeChild.length) growEdges();
+        nEdges++;
+        edgeNext[edge] = NONE;
+        edgeAction[edge] = pa;
+        edgeFirstChoice[edge] = nChoices;
+        if (nChoices + n > choices.length) choices = Arrays.copyOf(choices, Math.max(choices.length*2, nChoices + n));
+        System.arraycopy(sampled, 0, choices, nChoices, n);
+        nChoices += n;
+        if (nodeLastEdge[node]==NONE) {
+            nodeFirstEdge[node] = edge;
+        } else {
+            edgeNext[nodeLastEdge[node]] = edge;
+        }
+        nodeLastEdge[node] = edge;
+        nodeChildren[node]++;
+        return edge;
+    }
+
+
+    /**
+     * Same as NaiveMCTSNode.propagateEvaluation (called on the leaf)
+     */
+    public void propagateEvaluation(int leaf, double evaluation) {
+        int node = leaf;
+        int edge = NONE;
+        while(node!=NONE) {
+            nodeAccumEvaluation[node] += evaluation;
+            nodeVisitCount[node]++;
+            if (edge!=NONE) {
+                // update the unit action table:
+                int c = edgeFirstChoice[edge];
+                for(int e = nodeFirstEntry[node];e<nodeFirstEntry[node]+nodeEntries[node];e++,c++) {
+                    if (choices[c]==NONE) continue;     // the unit was left without action
+                    int stat = entryFirstStat[e] + choices[c];
+                    statAccumEvaluation[stat] += evaluation;
+                    statVisitCount[stat]++;
+                }
+            }
+            edge = nodeParentEdge[node];
+            node = nodeParent[node];
+        }
+    }
+
+
+    int findChild(int node, long code) {
+        if (childTableSize==0) return NONE;
+        int mask = childTableEdge.length-1;
+        for(int idx = childTableIndex(node, code) & mask;;idx = (idx+1) & mask) {
+            int edge = childTableEdge[idx];
+            if (edge==NONE) return NONE;
+            if (childTableNode[idx]==node && childTableCode[idx]==code) return edge;
+        }
+    }
+
+
+    void putChild(int node, long code, int edge) {
+        if ((childTableSize+1)*2 > childTableEdge.length) growChildTable();
+        int mask = childTableEdge.length-1;
+        int idx = childTableIndex(node, code) & mask;
+        while(childTableEdge[idx]!=NONE) idx = (idx+1) & mask;
+        childTableNode[idx] = node;
+        childTableCode[idx] = code;
+        childTableEdge[idx] = edge;
+        childTableSize++;
+    }
+
+
+    static int childTableIndex(int node, long code) {
+        long h = (code + node) * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h>>>32));
+    }
+
+
+    void growChildTable() {
+        int oldNode[] = childTableNode;
+        long oldCode[] = childTableCode;
+        int oldEdge[] = childTableEdge;
+        childTableNode = new int[oldEdge.length*2];
+        childTableCode = new long[oldEdge.length*2];
+        childTableEdge = new int[oldEdge.length*2];
+        Arrays.fill(childTableEdge, NONE);
+        childTableSize = 0;
+        for(int i = 0;i<oldEdge.length;i++) {
+            if (oldEdge[i]!=NONE) putChild(oldNode[i], oldCode[i], oldEdge[i]);
+        }
+    }
+
+
+    void growNodes() {
+        int n = nodeType.length*2;
+        nodeType = Arrays.copyOf(nodeType, n);
+        nodeDepth = Arrays.copyOf(nodeDepth, n);
+        nodeParent = Arrays.copyOf(nodeParent, n);
+        nodeParentEdge = Arrays.copyOf(nodeParentEdge, n);
+        nodeCreationID = Arrays.copyOf(nodeCreationID, n);
+        nodeAccumEvaluation = Arrays.copyOf(nodeAccumEvaluation, n);
+        nodeVisitCount = Arrays.copyOf(nodeVisitCount, n);
+        nodeState = Arrays.copyOf(nodeState, n);
+        nodeFirstEntry = Arrays.copyOf(nodeFirstEntry, n);
+        nodeEntries = Arrays.copyOf(nodeEntries, n);
+        nodeFirstEdge = Arrays.copyOf(nodeFirstEdge, n);
+        nodeLastEdge = Arrays.copyOf(nodeLastEdge, n);
+        nodeChildren = Arrays.copyOf(nodeChildren, n);
+        nodeBigChildren = Arrays.copyOf(nodeBigChildren, n);
+    }
+
+
+    void growEntries() {
+        int n = entryUnit.length*2;
+        entryUnit = Arrays.copyOf(entryUnit, n);
+        entryActions = Arrays.copyOf(entryActions, n);
+        entryNActions = Arrays.copyOf(entryNActions, n);
+        entryFirstStat = Arrays.copyOf(entryFirstStat, n);
+        entryMultiplier = Arrays.copyOf(entryMultiplier, n);
+    }
+
+
+    void growStats(int minimum) {
+        int n = Math.max(statVisitCount.length*2, minimum);
+        statAccumEvaluation = Arrays.copyOf(statAccumEvaluation, n);
+        statVisitCount = Arrays.copyOf(statVisitCount, n);
+    }
+
+
+    void growEdges() {
+        int n = edgeChild.length*2;
+        edgeChild = Arrays.copyOf(edgeChild, n);
+        edgeNext = Arrays.copyOf(edgeNext, n);
+        edgeAction = Arrays.copyOf(edgeAction, n);
+        edgeFirstChoice = Arrays.copyOf(edgeFirstChoice, n);
+    }
+
+
+    /**
+     * Same as NaiveMCTSNode.findNode: returns the node under "node" (or "node")
+     * whose state is "gs", or NONE if there is none
+     * @param node
+     * @param gs
+     * @return
+     */
+    public int findNode(int node, GameState gs) {
+        int queue[] = reachable(node, gs.getTime());
+        for(int i = 0;i<nReachable;i++) {
+            if (TreeReuse.sameState(nodeState[queue[i]], gs)) return queue[i];
+        }
+        return NONE;
+    }
+
+
+    /**
+     * Same as NaiveMCTSNode.makeRoot: removes all the nodes that are not under
+     * "node", and makes it the root. The remaining nodes (and their edges, unit
+     * action tables and statistics) are moved to the beginning of the arrays,
+     * keeping their order, so their indexes change.
+     * @param node
+     * @return the new index of "node"
+     */
+    public int makeRoot(int node) {
+        int queue[] = reachable(node, Integer.MAX_VALUE);
+        int n = nReachable;
+        if (nodeMap.length < nNodes) nodeMap = new int[nodeType.length];
+        if (edgeMap.length < nEdges) edgeMap = new int[edgeChild.length];
+        Arrays.fill(nodeMap, 0, nNodes, NONE);
+        Arrays.fill(edgeMap, 0, nEdges, NONE);
+        // the parent of each node is the one it is first reached from, and its
+        // depth the distance to the new root:
+        for(int i = 0;i<n;i++) {
+            nodeMap[queue[i]] = 0;
+            reachableVisited[queue[i]] = false;
+        }
+        nodeDepth[node] = 0;
+        nodeParent[node] = nodeParentEdge[node] = NONE;
+        reachableVisited[node] = true;
+        for(int i = 0;i<n;i++) {
+            int m = queue[i];
+            for(int edge = nodeFirstEdge[m];edge!=NONE;edge = edgeNext[edge]) {
+                edgeMap[edge] = 0;
+                int child = edgeChild[edge];
+                if (!reachableVisited[child]) {
+                    reachableVisited[child] = true;
+                    nodeParent[child] = m;
+                    nodeParentEdge[child] = edge;
+                    nodeDepth[child] = nodeDepth[m]+1;
+                }
+            }
+        }
+
+        // new indexes, in the old order:
+        int newNodes = 0;
+        for(int m = 0;m<nNodes;m++) if (nodeMap[m]!=NONE) nodeMap[m] = newNodes++;
+        int newEdges = 0;
+        for(int e = 0;e<nEdges;e++) if (edgeMap[e]!=NONE) edgeMap[e] = newEdges++;
+
+        // move the nodes, with their unit action tables and statistics:
+        int newEntries = 0, newStats = 0;
+        for(int m = 0;m<nNodes;m++) {
+            int m2 = nodeMap[m];
+            if (m2==NONE) continue;
+            nodeType[m2] = nodeType[m];
+            nodeDepth[m2] = nodeDepth[m];
+            nodeParent[m2] = (nodeParent[m]==NONE ? NONE:nodeMap[nodeParent[m]]);
+            nodeParentEdge[m2] = (nodeParentEdge[m]==NONE ? NONE:edgeMap[nodeParentEdge[m]]);
+            nodeCreationID[m2] = nodeCreationID[m];
+            nodeAccumEvaluation[m2] = nodeAccumEvaluation[m];
+            nodeVisitCount[m2] = nodeVisitCount[m];
+            nodeState[m2] = nodeState[m];
+            int firstEntry = nodeFirstEntry[m];
+            nodeFirstEntry[m2] = newEntries;
+            nodeEntries[m2] = nodeEntries[m];
+            nodeFirstEdge[m2] = (nodeFirstEdge[m]==NONE ? NONE:edgeMap[nodeFirstEdge[m]]);
+            nodeLastEdge[m2] = (nodeLastEdge[m]==NONE ? NONE:edgeMap[nodeLastEdge[m]]);
+            nodeChildren[m2] = nodeChildren[m];
+            nodeBigChildren[m2] = nodeBigChildren[m];
+            if (nodeBigChildren[m2]!=null) {
+                @SuppressWarnings("unchecked")
+                HashMap<BigInteger,Integer> bigChildren = (HashMap<BigInteger,Integer>)nodeBigChildren[m2];
+                bigChildren.replaceAll((code, edge) -> edgeMap[edge]);
+            }
+            for(int e = firstEntry;e<firstEntry+nodeEntries[m];e++) {
+                int nactions = entryNActions[e];
+                entryUnit[newEntries] = entryUnit[e];
+                entryActions[newEntries] = entryActions[e];
+                entryNActions[newEntries] = nactions;
+                entryMultiplier[newEntries] = entryMultiplier[e];
+                System.arraycopy(statAccumEvaluation, entryFirstStat[e], statAccumEvaluation, newStats, nactions);
+                System.arraycopy(statVisitCount, entryFirstStat[e], statVisitCount, newStats, nactions);
+                entryFirstStat[newEntries] = newStats;
+                newStats += nactions;
+                newEntries++;
+            }
+        }
+
+        // move the edges, with their choices:
+        int newChoices = 0;
+        for(int e = 0;e<nEdges;e++) {
+            int e2 = edgeMap[e];
+            if (e2==NONE) continue;
+            int nchoices = (e+1<nEdges ? edgeFirstChoice[e+1]:nChoices) - edgeFirstChoice[e];
+            edgeChild[e2] = nodeMap[edgeChild[e]];
+            edgeNext[e2] = (edgeNext[e]==NONE ? NONE:edgeMap[edgeNext[e]]);
+            edgeAction[e2] = edgeAction[e];
+            System.arraycopy(choices, edgeFirstChoice[e], choices, newChoices, nchoices);
+            edgeFirstChoice[e2] = newChoices;
+            newChoices += nchoices;
+        }
+
+        // the children table, with the new indexes:
+        int oldNode[] = childTableNode;
+        long oldCode[] = childTableCode;
+        int oldEdge[] = childTableEdge;
+        childTableNode = new int[oldEdge.length];
+        childTableCode = new long[oldEdge.length];
+        childTableEdge = new int[oldEdge.length];
+        Arrays.fill(childTableEdge, NONE);
+        childTableSize = 0;
+        for(int i = 0;i<oldEdge.length;i++) {
+            if (oldEdge[i]!=NONE && nodeMap[oldNode[i]]!=NONE) putChild(nodeMap[oldNode[i]], oldCode[i], edgeMap[oldEdge[i]]);
+        }
+
+        // release the references of the removed nodes, so that they can be garbage collected:
+        Arrays.fill(nodeState, newNodes, nNodes, null);
+        Arrays.fill(nodeBigChildren, newNodes, nNodes, null);
+        Arrays.fill(entryUnit, newEntries, nEntries, null);
+        Arrays.fill(entryActions, newEntries, nEntries, null);
+        Arrays.fill(edgeAction, newEdges, nEdges, null);
+        nNodes = newNodes;
+        nEntries = newEntries;
+        nStats = newStats;
+        nEdges = newEdges;
+        nChoices = newChoices;
+
+        if (transpositions!=null) {
+            // in breadth-first order, as NaiveMCTSNode.makeRoot:
+            transpositions.clear();
+            for(int i = 0;i<n;i++) transpositions.put(nodeState[nodeMap[queue[i]]].getHash(), nodeMap[queue[i]]);
+        }
+        return nodeMap[node];
+    }
+
+
+    /**
+     * Puts the nodes under "node" (and "node") that are not past "maxTime" in
+     * the returned array (the first nReachable positions), in breadth-first order
+     */
+    int[] reachable(int node, int maxTime) {
+        if (reachableQueue.length < nNodes) reachableQueue = new int[nodeType.length];
+        if (reachableVisited.length < nNodes) reachableVisited = new boolean[nodeType.length];
+        Arrays.fill(reachableVisited, 0, nNodes, false);
+        int queue[] = reachableQueue;
+        nReachable = 0;
+        queue[nReachable++] = node;
+        reachableVisited[node] = true;
+        for(int i = 0;i<nReachable;i++) {
+            for(int edge = nodeFirstEdge[queue[i]];edge!=NONE;edge = edgeNext[edge]) {
+                int child = edgeChild[edge];
+                if (!reachableVisited[child] && nodeState[child].getTime()<=maxTime) {
+                    reachableVisited[child] = true;
+                    queue[nReachable++] = child;
+                }
+            }
+        }
+        return queue;
+    }
+
+
+    public void printUnitActionTable(int node) {
+        for(int e = nodeFirstEntry[node];e<nodeFirstEntry[node]+nodeEntries[node];e++) {
+            System.out.println("Actions for unit " + entryUnit[e]);
+            for (int i = 0; i < entryNActions[e]; i++) {
+                int stat = entryFirstStat[e] + i;
+                System.out.println("   " + ((List<?>)entryActions[e]).get(i) + " visited " + statVisitCount[stat] + " with average evaluation " + (statAccumEvaluation[stat] / statVisitCount[stat]));
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ai.mcts.naivemcts;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.core.NodePool;
+import ai.core.ParameterSpecification;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * NaiveMCTS running its iterations in several threads. Two modes are supported:
+ * - ROOT: each thread searches its own tree (with its own copy of the game state),
+ *   and the statistics of the children of the roots of all the trees are merged
+ *   (by player action) to choose the action to play.
+ * - TREE: all the threads search the same tree. Each thread adds "VirtualLoss"
+ *   lost playouts to the nodes it goes through while selecting a leaf, so that
+ *   the other threads tend to explore other parts of the tree, and removes them
+ *   when propagating the result of its playout (see
+ *   NaiveMCTSNode.selectLeafConcurrently). Transposition tables are not used in
+ *   this mode.
+ * In both modes, TIME_BUDGET is the time used by all the threads together (i.e.,
+ * the wall clock time), and ITERATIONS_BUDGET the total number of playouts.
+ *
+ * @author santi
+ */
+public class ParallelNaiveMCTS extends NaiveMCTS {
+
+    public enum Parallelism {
+        ROOT,
+        TREE,
+    }
+
+    int nThreads = Runtime.getRuntime().availableProcessors();
+    Parallelism parallelism = Parallelism.TREE;
+    int virtualLoss = 1;
+
+    ExecutorService executor = null;
+    int executorThreads = 0;
+
+    // ROOT parallelism: one search per thread
+    NaiveMCTS searches[] = null;
+
+
+    public ParallelNaiveMCTS(UnitTypeTable utt) {
+        this(100,-1,100,10,
+             0.3f, 0.0f, 0.4f,
+             new RandomBiasedAI(),
+             new SimpleSqrtEvaluationFunction3(), true,
+             Runtime.getRuntime().availableProcessors(), Parallelism.TREE, 1);
+    }
+
+
+    public ParallelNaiveMCTS(int available_time, int max_playouts, int lookahead, int max_depth,
+                             float e_l, float e_g, float e_0,
+                             AI policy, EvaluationFunction a_ef, boolean fensa,
+                             int a_nThreads, Parallelism a_parallelism, int a_virtualLoss) {
+        super(available_time, max_playouts, lookahead, max_depth, e_l, e_g, e_0, policy, a_ef, fensa);
+        nThreads = a_nThreads;
+        parallelism = a_parallelism;
+        virtualLoss = a_virtualLoss;
+    }
+
+
+    public void reset() {
+        super.reset();
+        searches = null;
+    }
+
+
+    public AI clone() {
+        ParallelNaiveMCTS clone = new ParallelNaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, epsilon_l, epsilon_g, epsilon_0, playoutPolicy.clone(), ef, forceExplorationOfNonSampledActions, nThreads, parallelism, virtualLoss);
+        clone.discount_l = discount_l;
+        clone.discount_g = discount_g;
+        clone.discount_0 = discount_0;
+        clone.global_strategy = global_strategy;
+        clone.useTranspositionTable = useTranspositionTable;
+        clone.reuseTree = reuseTree;
+        clone.setNodePoolCapacity(getNodePoolCapacity());
+        return clone;
+    }
+
+
+    public void startNewComputation(int a_player, GameState gs) throws Exception {
+        if (parallelism==Parallelism.ROOT) {
+            player = a_player;
+            gs_to_start_from = gs;
+            // when reusing trees, each thread keeps its search (and its tree) from the previous decision:
+            if (!reuseTree || searches==null || searches.length!=nThreads) searches = new NaiveMCTS[nThreads];
+            for(int i = 0;i<nThreads;i++) {
+                NaiveMCTS search = searches[i];
+                if (search==null) {
+                    search = new NaiveMCTS(TIME_BUDGET,
+                                           (ITERATIONS_BUDGET<0 ? -1:(ITERATIONS_BUDGET+nThreads-1)/nThreads),
+                                           MAXSIMULATIONTIME, MAX_TREE_DEPTH,
+                                           initial_epsilon_l, discount_l,
+                                           initial_epsilon_g, discount_g,
+                                           initial_epsilon_0, discount_0,
+                                           playoutPolicy.clone(), ef, forceExplorationOfNonSampledActions);
+                    search.global_strategy = global_strategy;
+                    search.useTranspositionTable = useTranspositionTable;
+                    search.reuseTree = reuseTree;
+                    search.setNodePoolCapacity(getNodePoolCapacity());
+                    searches[i] = search;
+                }
+                search.startNewComputation(a_player, gs.clone());
+            }
+            tree = searches[0].getTree();
+            max_actions_so_far = Math.max(max_actions_so_far, searches[0].max_actions_so_far);
+        } else {
+            // the tree is shared by all the threads, so nodes cannot be shared through a transposition table
+            // (nor obtained from the node pool, which is not thread safe):
+            boolean tmp = useTranspositionTable;
+            NodePool<NaiveMCTSNode> tmpPool = nodePool;
+            useTranspositionTable = false;
+            nodePool = null;
+            super.startNewComputation(a_player, gs);
+            useTranspositionTable = tmp;
+            nodePool = tmpPool;
+            searches = null;
+        }
+    }
+
+
+    public void resetSearch() {
+        super.resetSearch();
+        searches = null;
+    }
+
+
+    public void computeDuringOneGameFrame() throws Exception {
+        if (DEBUG>=2) System.out.println("Search...");
+        gcStatistics.startFrame();
+        long start = System.currentTimeMillis();
+        List<Callable<Long>> tasks = new ArrayList<>();
+        if (parallelism==Parallelism.ROOT) {
+            for(final NaiveMCTS search:searches) {
+                tasks.add(() -> {
+                    long before = search.total_runs;
+                    search.computeDuringOneGameFrame();
+                    return search.total_runs - before;
+                });
+            }
+        } else {
+            final long deadline = (TIME_BUDGET>=0 ? start + TIME_BUDGET:-1);
+            final AtomicInteger playouts = new AtomicInteger(0);
+            final AtomicInteger creation_ID = new AtomicInteger(current_iteration);
+            for(int i = 0;i<nThreads;i++) {
+                final AI policy = playoutPolicy.clone();
+                tasks.add(() -> treeIterations(policy, deadline, playouts, creation_ID));
+            }
+        }
+
+        for(Future<Long> f:getExecutor().invokeAll(tasks)) {
+            try {
+                total_runs += f.get();
+            } catch(ExecutionException e) {
+                if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+                throw e;
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        gcStatistics.endFrame();
+        total_time += (end - start);
+        total_cycles_executed++;
+    }
+
+
+    /**
+     * Runs iterations over the shared tree until the time or iterations budget
+     * are exhausted, returns the number of iterations run
+     */
+    long treeIterations(AI policy, long deadline, AtomicInteger playouts, AtomicInteger creation_ID) throws Exception {
+        long count = 0;
+        while(true) {
+            if (ITERATIONS_BUDGET>=0 && playouts.getAndIncrement()>=ITERATIONS_BUDGET) break;
+            float e_l, e_g, e_0;
+            synchronized(this) {
+                e_l = epsilon_l;
+                e_g = epsilon_g;
+                e_0 = epsilon_0;
+            }
+            NaiveMCTSNode leaf = tree.selectLeafConcurrently(player, 1-player, e_l, e_g, e_0, global_strategy, MAX_TREE_DEPTH, creation_ID.getAndIncrement(), virtualLoss);
+            GameState gs2;
+            synchronized(leaf) {
+                gs2 = leaf.gs.cloneCopyOnWrite();
+            }
+            simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME, policy);
+
+            int time = gs2.getTime() - gs_to_start_from.getTime();
+            double evaluation = ef.evaluate(player, 1-player, gs2)*Math.pow(0.99,time/10.0);
+
+            leaf.propagateEvaluationConcurrently(evaluation, virtualLoss);
+            count++;
+
+            // update the epsilon values:
+            synchronized(this) {
+                epsilon_0*=discount_0;
+                epsilon_l*=discount_l;
+                epsilon_g*=discount_g;
+            }
+            if (deadline>=0 && System.currentTimeMillis()>=deadline) break;
+        }
+        return count;
+    }
+
+
+    public void simulate(GameState gs, int time, AI policy) throws Exception {
+        boolean gameover = false;
+
+        do{
+            if (gs.isComplete()) {
+                gameover = gs.cycle();
+            } else {
+                policy.issueAction(0, gs);
+                policy.issueAction(1, gs);
+            }
+        }while(!gameover && gs.getTime()<time);
+    }
+
+
+    public PlayerAction getBestActionSoFar() {
+        if (parallelism!=Parallelism.ROOT || searches==null) return super.getBestActionSoFar();
+        total_actions_issued++;
+
+        // merge the children of the roots by player action:
+        Map<BigInteger, PlayerAction> actions = new HashMap<>();
+        Map<BigInteger, Integer> visits = new HashMap<>();
+        Map<BigInteger, Double> evaluations = new HashMap<>();
+        for(NaiveMCTS search:searches) {
+            NaiveMCTSNode root = search.getTree();
+            if (root.children==null) continue;
+            for(Map.Entry<BigInteger, NaiveMCTSNode> e:root.childrenMap.entrySet()) {
+                NaiveMCTSNode child = e.getValue();
+                if (!actions.containsKey(e.getKey())) {
+                    actions.put(e.getKey(), root.actions.get(root.children.indexOf(child)));
+                    visits.put(e.getKey(), 0);
+                    evaluations.put(e.getKey(), 0.0);
+                }
+                visits.put(e.getKey(), visits.get(e.getKey()) + child.visit_count);
+                evaluations.put(e.getKey(), evaluations.get(e.getKey()) + child.accum_evaluation);
+            }
+        }
+
+        BigInteger best = null;
+        for(BigInteger code:actions.keySet()) {
+            if (DEBUG>=2) {
+                System.out.println("child " + actions.get(code) + " explored " + visits.get(code) + " Avg evaluation: " + (evaluations.get(code)/visits.get(code)));
+            }
+            if (best==null || visits.get(code)>visits.get(best)) best = code;
+        }
+        if (best==null) {
+            if (DEBUG>=1) System.out.println("ParallelNaiveMCTS no children selected. Returning an empty asction");
+            return new PlayerAction();
+        }
+        if (DEBUG>=1) {
+            System.out.println("ParallelNaiveMCTS selected children " + actions.get(best) + " explored " + visits.get(best) + " Avg evaluation: " + (evaluations.get(best)/visits.get(best)));
+        }
+
+        // the actions refer to the units of the copies of the game state used by each search:
+        PlayerAction pa = new PlayerAction();
+        for(Pair<Unit,UnitAction> tmp:actions.get(best).getActions()) {
+            pa.addUnitAction(gs_to_start_from.getUnit(tmp.m_a.getID()), tmp.m_b);
+        }
+        pa.setResourceUsage(actions.get(best).getResourceUsage().clone());
+        return pa;
+    }
+
+
+    ExecutorService getExecutor() {
+        if (executor==null || executorThreads!=nThreads) {
+            if (executor!=null) executor.shutdown();
+            executor = Executors.newFixedThreadPool(nThreads, r -> {
+                Thread t = new Thread(r, "ParallelNaiveMCTS");
+                t.setDaemon(true);
+                return t;
+            });
+            executorThreads = nThreads;
+        }
+        return executor;
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + TIME_BUDGET + ", " + ITERATIONS_BUDGET + ", " + MAXSIMULATIONTIME + "," + MAX_TREE_DEPTH + "," + epsilon_l + ", " + discount_l + ", " + epsilon_g + ", " + discount_g + ", " + epsilon_0 + ", " + discount_0 + ", " + playoutPolicy + ", " + ef + ", " + nThreads + ", " + parallelism + ", " + virtualLoss + ")";
+    }
+
+
+    @Override
+    public List<ParameterSpecification> getParameters() {
+        List<ParameterSpecification> parameters = super.getParameters();
+
+        parameters.add(new ParameterSpecification("Threads",int.class,Runtime.getRuntime().availableProcessors()));
+        ParameterSpecification ps_p = new ParameterSpecification("Parallelism",Parallelism.class,Parallelism.TREE);
+        ps_p.addPossibleValue(Parallelism.ROOT);
+        ps_p.addPossibleValue(Parallelism.TREE);
+        parameters.add(ps_p);
+        parameters.add(new ParameterSpecification("VirtualLoss",int.class,1));
+
+        return parameters;
+    }
+
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+
+    public void setThreads(int a_nThreads) {
+        nThreads = a_nThreads;
+    }
+
+
+    public Parallelism getParallelism() {
+        return parallelism;
+    }
+
+
+    public void setParallelism(Parallelism a_parallelism) {
+        parallelism = a_parallelism;
+    }
+
+
+    public int getVirtualLoss() {
+        return virtualLoss;
+    }
+
+
+    public void setVirtualLoss(int a_virtualLoss) {
+        virtualLoss = a_virtualLoss;
+    }
+}
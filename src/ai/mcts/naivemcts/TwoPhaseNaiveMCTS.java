@@ -134,7 +134,7 @@ public class TwoPhaseNaiveMCTS extends AIWithComputationBudget implements Interr
         return new TwoPhaseNaiveMCTS(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, 
                                              phase1_epsilon_l, phase1_epsilon_g, phase1_epsilon_0,
                                              phase2_epsilon_l, phase2_epsilon_g, phase2_epsilon_0,
-                                             phase1_ratio, randomAI, ef, forceExplorationOfNonSampledActions);
+                                             phase1_ratio, randomAI.clone(), ef, forceExplorationOfNonSampledActions);
     }    
     
     
@@ -304,8 +304,8 @@ public class TwoPhaseNaiveMCTS extends AIWithComputationBudget implements Interr
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(randomAI.getAction(0, gs));
-                gs.issue(randomAI.getAction(1, gs));
+                randomAI.issueAction(0, gs);
+                randomAI.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
@@ -130,7 +130,7 @@ public class TwoPhaseNaiveMCTSPerNode extends AIWithComputationBudget implements
         return new TwoPhaseNaiveMCTSPerNode(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, 
                                              phase1_epsilon_l, phase1_epsilon_g, phase1_epsilon_0,
                                              phase2_epsilon_l, phase2_epsilon_g, phase2_epsilon_0,
-                                             phase1_budget, randomAI, ef, forceExplorationOfNonSampledActions);
+                                             phase1_budget, randomAI.clone(), ef, forceExplorationOfNonSampledActions);
     }    
     
     
@@ -288,8 +288,8 @@ public class TwoPhaseNaiveMCTSPerNode extends AIWithComputationBudget implements
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(randomAI.getAction(0, gs));
-                gs.issue(randomAI.getAction(1, gs));
+                randomAI.issueAction(0, gs);
+                randomAI.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
@@ -77,7 +77,7 @@ public class DownsamplingUCT extends AIWithComputationBudget implements Interrup
         
     
     public AI clone() {
-        return new DownsamplingUCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, MAX_TREE_DEPTH, randomAI, ef);
+        return new DownsamplingUCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, MAX_TREE_DEPTH, randomAI.clone(), ef);
     }  
     
     
@@ -180,8 +180,8 @@ public class DownsamplingUCT extends AIWithComputationBudget implements Interrup
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(randomAI.getAction(0, gs));
-                gs.issue(randomAI.getAction(1, gs));
+                randomAI.issueAction(0, gs);
+                randomAI.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
@@ -7,7 +7,11 @@ package ai.mcts.uct;
 import ai.core.AI;
 import ai.RandomBiasedAI;
 import ai.core.AIWithComputationBudget;
+import ai.core.GCStatistics;
+import ai.core.NodePool;
+import ai.core.ParallelPlayouts;
 import ai.core.ParameterSpecification;
+import ai.core.TranspositionTable;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import java.util.ArrayList;
@@ -39,12 +43,40 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     public long total_actions_issued = 0;
     
     long total_runs_this_move = 0;
+    public GCStatistics gcStatistics = new GCStatistics();
         
     int MAXSIMULATIONTIME = 1024;
     int MAX_TREE_DEPTH = 10;
     
     int playerForThisComputation;
     
+    // if true, tree nodes do not store their states: a single state is moved 
+    // along the tree using its undo log (see GameState.getUndoMark). This saves
+    // memory, but it searches fewer nodes per second than cloning states, since
+    // playouts have to be undone too (see tests.UndoLogBenchmark)
+    boolean useUndoLog = false;
+    
+    // if true, tree nodes reached through different action orders but with the 
+    // same state (same GameState.getHash) are merged (ignored when using the undo log):
+    boolean useTranspositionTable = false;
+    TranspositionTable<UCTNode> transpositions = null;
+    
+    // if true, the tree is kept from one decision to the next: if the state of 
+    // the new decision is in the previous tree (it is the state reached by the
+    // actions both players executed), its node becomes the new root (see 
+    // UCTNode.makeRoot), instead of starting from an empty tree (ignored when 
+    // using the undo log):
+    boolean reuseTree = false;
+    
+    // if not null, the nodes of the tree are recycled from one search to the
+    // next (see NodePool), up to the capacity of the pool:
+    NodePool<UCTNode> nodePool = null;
+    
+    // number of playouts run from each selected leaf, in parallel in "playoutThreads" threads:
+    int playoutsPerLeaf = 1;
+    int playoutThreads = Runtime.getRuntime().availableProcessors();
+    ParallelPlayouts parallelPlayouts = null;
+    
     
     public UCT(UnitTypeTable utt) {
         this(100,-1,100,10,
@@ -64,7 +96,9 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     
     public String statisticsString() {
         return "Average runs per cycle: " + ((double)total_runs)/total_cycles_executed +
-               ", Average runs per action: " + ((double)total_runs)/total_actions_issued;
+               ", Average runs per action: " + ((double)total_runs)/total_actions_issued +
+               ", " + gcStatistics +
+               (nodePool!=null ? ", " + nodePool:"");
 
     }
     
@@ -84,7 +118,14 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     
     
     public AI clone() {
-        return new UCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI, ef);
+        UCT clone = new UCT(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAX_TREE_DEPTH, randomAI.clone(), ef);
+        clone.useUndoLog = useUndoLog;
+        clone.useTranspositionTable = useTranspositionTable;
+        clone.reuseTree = reuseTree;
+        clone.setNodePoolCapacity(getNodePoolCapacity());
+        clone.playoutsPerLeaf = playoutsPerLeaf;
+        clone.playoutThreads = playoutThreads;
+        return clone;
     }  
     
     
@@ -102,8 +143,25 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     
     public void startNewComputation(int a_player, GameState gs) throws Exception {
         float evaluation_bound = ef.upperBound(gs);
+        UCTNode reused = null;
+        if (reuseTree && !useUndoLog && tree!=null && a_player==playerForThisComputation &&
+            (tree.transpositions!=null) == useTranspositionTable) reused = tree.findNode(gs);
         playerForThisComputation = a_player;
-        tree = new UCTNode(playerForThisComputation, 1-playerForThisComputation, gs, null, evaluation_bound);
+        if (reused!=null) {
+            if (DEBUG>=1) System.out.println(this.getClass().getSimpleName() + " reusing a subtree with " + reused.visit_count + " playouts");
+            reused.makeRoot();
+            tree = reused;
+        } else {
+            // nothing from the previous tree is kept, so all its nodes can be recycled:
+            if (nodePool!=null) nodePool.reset();
+            tree = UCTNode.newNode(nodePool, playerForThisComputation, 1-playerForThisComputation, gs, null, evaluation_bound);
+            if (useTranspositionTable && !useUndoLog) {
+                if (transpositions==null) transpositions = new TranspositionTable<>(16);
+                transpositions.clear();
+                tree.transpositions = transpositions;
+                transpositions.put(gs.getHash(), tree);
+            }
+        }
         gs_to_start_from = gs;
         total_runs_this_move = 0;
 //        System.out.println(evaluation_bound);
@@ -120,6 +178,7 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
 
     public void computeDuringOneGameFrame() throws Exception {
         if (DEBUG>=2) System.out.println("Search...");
+        gcStatistics.startFrame();
         long start = System.currentTimeMillis();
         int nPlayouts = 0;
         long cutOffTime = start + TIME_BUDGET;
@@ -131,18 +190,21 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
             if (cutOffTime>0 && System.currentTimeMillis() > cutOffTime) break;
             if (ITERATIONS_BUDGET>0 && nPlayouts>ITERATIONS_BUDGET) break;
             monteCarloRun(playerForThisComputation, cutOffTime);
-            nPlayouts++;
+            nPlayouts += playoutsPerLeaf;
         }
         
+        gcStatistics.endFrame();
         total_cycles_executed++;
     }
     
 
     public double monteCarloRun(int player, long cutOffTime) throws Exception {
+        if (useUndoLog) return monteCarloRunUndo(player, cutOffTime);
         UCTNode leaf = tree.UCTSelectLeaf(player, 1-player, cutOffTime, MAX_TREE_DEPTH);
 
         if (leaf!=null) {
-            GameState gs2 = leaf.gs.clone();
+            if (playoutsPerLeaf>1) return playoutBatch(player, leaf, leaf.gs);
+            GameState gs2 = leaf.gs.cloneCopyOnWrite();
             simulate(gs2, gs2.getTime() + MAXSIMULATIONTIME);
 
             int time = gs2.getTime() - gs_to_start_from.getTime();
@@ -166,6 +228,60 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     }
     
     
+    /**
+     * Same as monteCarloRun, but moving "gs_to_start_from" along the tree and 
+     * the playout, and undoing the changes at the end, instead of cloning states
+     */
+    public double monteCarloRunUndo(int player, long cutOffTime) throws Exception {
+        GameState gs = gs_to_start_from;
+        int startTime = gs.getTime();
+        int mark = gs.getUndoMark();
+        UCTNode leaf = tree.UCTSelectLeaf(player, 1-player, cutOffTime, MAX_TREE_DEPTH, gs);
+        if (playoutsPerLeaf>1) {
+            double evaluation = playoutBatch(player, leaf, gs);
+            gs.undo(mark);
+            return evaluation;
+        }
+
+        simulate(gs, gs.getTime() + MAXSIMULATIONTIME);
+
+        int time = gs.getTime() - startTime;
+        double evaluation = ef.evaluate(player, 1-player, gs)*Math.pow(0.99,time/10.0);
+        gs.undo(mark);
+
+        while(leaf!=null) {
+            leaf.accum_evaluation += evaluation;
+            leaf.visit_count++;
+            leaf = leaf.parent;
+        }
+        total_runs++;
+        total_runs_this_move++;
+        return evaluation;
+    }
+    
+    
+    /**
+     * Runs "playoutsPerLeaf" playouts from "gs" (the state of "leaf") in parallel,
+     * and propagates all their evaluations up the tree at once. Returns their average
+     */
+    double playoutBatch(int player, UCTNode leaf, GameState gs) throws Exception {
+        if (parallelPlayouts==null || parallelPlayouts.getThreads()!=playoutThreads || parallelPlayouts.getPolicy()!=randomAI) {
+            if (parallelPlayouts!=null) parallelPlayouts.shutdown();
+            parallelPlayouts = new ParallelPlayouts(playoutThreads, randomAI);
+        }
+        double accum = parallelPlayouts.run(gs, playoutsPerLeaf, MAXSIMULATIONTIME, player, ef, gs_to_start_from.getTime());
+
+        while(leaf!=null) {
+            leaf.accum_evaluation += accum;
+            leaf.visit_count += playoutsPerLeaf;
+            leaf = leaf.parent;
+        }
+        total_runs += playoutsPerLeaf;
+        total_runs_this_move += playoutsPerLeaf;
+        return accum/playoutsPerLeaf;
+    }
+    
+    
     public PlayerAction getBestActionSoFar() {
         total_actions_issued++;
         
@@ -208,7 +324,7 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
         float accum = 0;
         for(int i = 0;i<N;i++) {
             GameState gs2 = gs.cloneIssue(pa);
-            GameState gs3 = gs2.clone();
+            GameState gs3 = gs2.cloneCopyOnWrite();
             simulate(gs3,gs3.getTime() + MAXSIMULATIONTIME);
             int time = gs3.getTime() - gs2.getTime();
             // Discount factor:
@@ -227,8 +343,8 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(randomAI.getAction(0, gs));
-                gs.issue(randomAI.getAction(1, gs));
+                randomAI.issueAction(0, gs);
+                randomAI.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
@@ -251,6 +367,12 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
         
         parameters.add(new ParameterSpecification("DefaultPolicy",AI.class, randomAI));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("UseUndoLog",boolean.class,false));
+        parameters.add(new ParameterSpecification("UseTranspositionTable",boolean.class,false));
+        parameters.add(new ParameterSpecification("ReuseTree",boolean.class,false));
+        parameters.add(new ParameterSpecification("NodePoolCapacity",int.class,0));
+        parameters.add(new ParameterSpecification("PlayoutsPerLeaf",int.class,1));
+        parameters.add(new ParameterSpecification("PlayoutThreads",int.class,Runtime.getRuntime().availableProcessors()));
 
         return parameters;
     }      
@@ -294,4 +416,68 @@ public class UCT extends AIWithComputationBudget implements InterruptibleAI {
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }
+    
+    
+    public boolean getUseUndoLog() {
+        return useUndoLog;
+    }
+    
+    
+    public void setUseUndoLog(boolean a_useUndoLog) {
+        useUndoLog = a_useUndoLog;
+    }
+    
+    
+    public boolean getUseTranspositionTable() {
+        return useTranspositionTable;
+    }
+    
+    
+    public void setUseTranspositionTable(boolean a_useTranspositionTable) {
+        useTranspositionTable = a_useTranspositionTable;
+    }
+    
+    
+    public boolean getReuseTree() {
+        return reuseTree;
+    }
+    
+    
+    public void setReuseTree(boolean a_reuseTree) {
+        reuseTree = a_reuseTree;
+    }
+    
+    
+    public int getNodePoolCapacity() {
+        return (nodePool==null ? 0:nodePool.getCapacity());
+    }
+    
+    
+    /**
+     * Sets the number of nodes to recycle from one search to the next (0 to not
+     * recycle them)
+     */
+    public void setNodePoolCapacity(int a_capacity) {
+        nodePool = (a_capacity>0 ? new NodePool<>(a_capacity):null);
+    }
+    
+    
+    public int getPlayoutsPerLeaf() {
+        return playoutsPerLeaf;
+    }
+    
+    
+    public void setPlayoutsPerLeaf(int a_playoutsPerLeaf) {
+        playoutsPerLeaf = a_playoutsPerLeaf;
+    }
+    
+    
+    public int getPlayoutThreads() {
+        return playoutThreads;
+    }
+    
+    
+    public void setPlayoutThreads(int a_playoutThreads) {
+        playoutThreads = a_playoutThreads;
+    }
 }
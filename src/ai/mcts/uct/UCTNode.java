@@ -4,12 +4,21 @@
  */
 package ai.mcts.uct;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import ai.core.NodePool;
+import ai.core.TranspositionTable;
+import ai.core.TreeReuse;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
+import rts.UndoLog;
 
 /**
  *
@@ -23,6 +32,7 @@ public class UCTNode {
     public int type;    // 0 : max, 1 : min, -1: Game-over
     UCTNode parent = null;
     public GameState gs;
+    UndoLog changes = null;     // when nodes do not store their state, changes from the parent state to this one
     int depth = 0;  // the depth in the tree
     
     boolean hasMoreActions = true;
@@ -33,40 +43,132 @@ public class UCTNode {
     float accum_evaluation = 0;
     int visit_count = 0;
     
+    // nodes of the tree by the hash of their states, shared by all the nodes of 
+    // the tree (null if transpositions are not merged). When a new action leads to
+    // a state that is already in the tree, its node is shared (and "parent" is 
+    // updated to the node it was last reached from, so that evaluations are 
+    // propagated along the path that was followed):
+    TranspositionTable<UCTNode> transpositions = null;
+    
+    // the pool the nodes of the tree are obtained from (null if nodes are not
+    // pooled), shared by all the nodes of the tree:
+    NodePool<UCTNode> pool = null;
+    
     
     public UCTNode(int maxplayer, int minplayer, GameState a_gs, UCTNode a_parent, float bound) throws Exception {
+        init(maxplayer, minplayer, a_gs, a_parent, bound);
+    }
+    
+    
+    UCTNode() {
+    }
+    
+    
+    /**
+     * Returns a node initialized as the constructor would, reusing a free node
+     * of "a_pool" if there is one ("a_pool" can be null)
+     */
+    public static UCTNode newNode(NodePool<UCTNode> a_pool, int maxplayer, int minplayer, GameState a_gs, UCTNode a_parent, float bound) throws Exception {
+        UCTNode node = (a_pool==null ? null:a_pool.get());
+        if (node==null) {
+            node = new UCTNode();
+            if (a_pool!=null) a_pool.add(node);
+        }
+        node.pool = a_pool;
+        node.init(maxplayer, minplayer, a_gs, a_parent, bound);
+        return node;
+    }
+    
+    
+    void init(int maxplayer, int minplayer, GameState a_gs, UCTNode a_parent, float bound) throws Exception {
         parent = a_parent;
         gs = a_gs;
         if (parent==null) depth = 0;
                      else depth = parent.depth+1;        
         evaluation_bound = bound;
-
-        while(gs.winner()==-1 && 
-              !gs.gameover() &&
-              !gs.canExecuteAnyAction(maxplayer) && 
-              !gs.canExecuteAnyAction(minplayer)) gs.cycle();        
+        accum_evaluation = 0;
+        visit_count = 0;
+        hasMoreActions = true;
+        moveGenerator = null;
+        initialize(maxplayer, minplayer, a_gs);
+        transpositions = (parent!=null ? parent.transpositions:null);
+        if (transpositions!=null) transpositions.put(gs.getHash(), this);
+    }
+    
+    
+    /**
+     * Creates the root of a tree that merges the nodes of states reached through
+     * different action orders, using "a_transpositions" to find them
+     */
+    public UCTNode(int maxplayer, int minplayer, GameState a_gs, float bound, TranspositionTable<UCTNode> a_transpositions) throws Exception {
+        this(maxplayer, minplayer, a_gs, null, bound);
+        transpositions = a_transpositions;
+        transpositions.put(gs.getHash(), this);
+    }
+    
+    
+    /**
+     * Creates a node that does not store its state. Instead, it stores the changes 
+     * made to "a_gs" since "mark" (the action leading to this node, plus the cycles 
+     * until a player can act), so that the search can reach it again from the state 
+     * of the parent by redoing them (see UCTSelectLeaf(..., GameState)).
+     */
+    public UCTNode(int maxplayer, int minplayer, GameState a_gs, int mark, UCTNode a_parent, float bound) throws Exception {
+        parent = a_parent;
+        if (parent==null) depth = 0;
+                     else depth = parent.depth+1;        
+        evaluation_bound = bound;
+        initialize(maxplayer, minplayer, a_gs);
+        changes = a_gs.getChangesSince(mark);
+    }
+    
+    
+    void initialize(int maxplayer, int minplayer, GameState gs) throws Exception {
+        advance(maxplayer, minplayer, gs);
         if (gs.winner()!=-1 || gs.gameover()) {
             type = -1;
+            actions = null;
+            children = null;
         } else if (gs.canExecuteAnyAction(maxplayer)) {
             type = 0;
 //            actions = gs.getPlayerActions(maxplayer);
-            moveGenerator = new PlayerActionGenerator(a_gs, maxplayer);
+            moveGenerator = new PlayerActionGenerator(gs, maxplayer);
             moveGenerator.randomizeOrder();
-            actions = new ArrayList<>();
-            children = new ArrayList<>();
+            newLists();
         } else if (gs.canExecuteAnyAction(minplayer)) {
             type = 1;
 //            actions = gs.getPlayerActions(minplayer);
-            moveGenerator = new PlayerActionGenerator(a_gs, minplayer);
+            moveGenerator = new PlayerActionGenerator(gs, minplayer);
             moveGenerator.randomizeOrder();
-            actions = new ArrayList<>();
-            children = new ArrayList<>();
+            newLists();
         } else {
             type = -1;
             System.err.println("RTMCTSNode: This should not have happened...");
         }     
     }
     
+    
+    /**
+     * Empties the lists of actions and children (reusing them if the node is recycled)
+     */
+    void newLists() {
+        if (actions==null) actions = new ArrayList<>();
+                      else actions.clear();
+        if (children==null) children = new ArrayList<>();
+                       else children.clear();
+    }
+    
+    /**
+     * Cycles "gs" until a player can issue actions or the game is over
+     */
+    static void advance(int maxplayer, int minplayer, GameState gs) {
+        while(gs.winner()==-1 && 
+              !gs.gameover() &&
+              !gs.canExecuteAnyAction(maxplayer) && 
+              !gs.canExecuteAnyAction(minplayer)) gs.cycle();        
+    }
+    
+    
     public UCTNode UCTSelectLeaf(int maxplayer, int minplayer, long cutOffTime, int max_depth) throws Exception {
         
         // Cut the tree policy at a predefined depth
@@ -81,8 +183,14 @@ public class UCTNode {
             PlayerAction a = moveGenerator.getNextAction(cutOffTime);
             if (a!=null) {
                 actions.add(a);
-                GameState gs2 = gs.cloneIssue(a);                
-                UCTNode node = new UCTNode(maxplayer, minplayer, gs2.clone(), this, evaluation_bound);
+                GameState gs2 = gs.cloneIssue(a).cloneCopyOnWrite();
+                UCTNode node = null;
+                if (transpositions!=null) {
+                    advance(maxplayer, minplayer, gs2);
+                    node = transpositions.get(gs2.getHash());
+                    if (node!=null) node.parent = this;
+                }
+                if (node==null) node = newNode(pool, maxplayer, minplayer, gs2, this, evaluation_bound);
                 children.add(node);
                 return node;                
             } else {
@@ -106,11 +214,55 @@ public class UCTNode {
 //            return null;
             return this;
         }
+        best.parent = this;
         return best.UCTSelectLeaf(maxplayer, minplayer, cutOffTime, max_depth);
 //        return best;
     }    
     
         
+    /**
+     * Same as UCTSelectLeaf, for trees whose nodes do not store their states. "a_gs"
+     * must be in the state of this node, and it is left in the state of the 
+     * returned leaf (the caller can go back using the undo log of "a_gs").
+     */
+    public UCTNode UCTSelectLeaf(int maxplayer, int minplayer, long cutOffTime, int max_depth, GameState a_gs) throws Exception {
+        
+        // Cut the tree policy at a predefined depth
+        if (depth>=max_depth) return this;        
+        
+        // if non visited children, visit:        
+        if (hasMoreActions) {
+            if (moveGenerator==null) return this;
+            PlayerAction a = moveGenerator.getNextAction(cutOffTime);
+            if (a!=null) {
+                actions.add(a);
+                int mark = a_gs.getUndoMark();
+                a_gs.issue(a);
+                UCTNode node = new UCTNode(maxplayer, minplayer, a_gs, mark, this, evaluation_bound);
+                children.add(node);
+                return node;                
+            } else {
+                hasMoreActions = false;
+            }
+        }
+        
+        // Bandit policy:
+        double best_score = 0;
+        UCTNode best = null;
+        for (UCTNode child : children) {
+            double tmp = childValue(child);
+            if (best==null || tmp>best_score) {
+                best = child;
+                best_score = tmp;
+            }
+        } 
+        
+        if (best==null) return this;
+        a_gs.redo(best.changes);
+        return best.UCTSelectLeaf(maxplayer, minplayer, cutOffTime, max_depth, a_gs);
+    }    
+    
+        
     public double childValue(UCTNode child) {
         double exploitation = ((double)child.accum_evaluation) / child.visit_count;
         double exploration = Math.sqrt(Math.log((double)visit_count)/child.visit_count);
@@ -127,6 +279,57 @@ public class UCTNode {
     }
     
     
+    /**
+     * Returns the node under this one (or this one) whose state is "a_gs" (see
+     * TreeReuse.sameState), or null if there is none. Nodes past the time of
+     * "a_gs" are not explored (nor are nodes that do not store their states).
+     */
+    public UCTNode findNode(GameState a_gs) {
+        Set<UCTNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<UCTNode> open = new ArrayDeque<>();
+        open.add(this);
+        visited.add(this);
+        while(!open.isEmpty()) {
+            UCTNode node = open.poll();
+            if (TreeReuse.sameState(node.gs, a_gs)) return node;
+            if (node.children==null) continue;
+            for(UCTNode child:node.children) {
+                if (child.gs!=null && child.gs.getTime()<=a_gs.getTime() && visited.add(child)) open.add(child);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Makes this node the root of its tree, keeping the nodes under it: their
+     * depths become their distance to this node, and the transposition table
+     * (if any) is left with only them, so that the rest of the tree can be
+     * garbage collected.
+     */
+    public void makeRoot() {
+        parent = null;
+        depth = 0;
+        if (transpositions!=null) transpositions.clear();
+        Set<UCTNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<UCTNode> open = new ArrayDeque<>();
+        open.add(this);
+        visited.add(this);
+        while(!open.isEmpty()) {
+            UCTNode node = open.poll();
+            if (transpositions!=null) transpositions.put(node.gs.getHash(), node);
+            if (node.children==null) continue;
+            for(UCTNode child:node.children) {
+                if (visited.add(child)) {
+                    child.parent = node;
+                    child.depth = node.depth+1;
+                    open.add(child);
+                }
+            }
+        }
+    }
+    
+    
     public void showNode(int depth, int maxdepth) {
         int mostVisitedIdx = -1;
         UCTNode mostVisited = null;
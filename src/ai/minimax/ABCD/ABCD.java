@@ -8,6 +8,7 @@ import ai.abstraction.WorkerRush;
 import ai.abstraction.pathfinding.AStarPathFinding;
 import ai.core.AI;
 import ai.core.ParameterSpecification;
+import ai.core.TranspositionTable;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import ai.minimax.MiniMaxResult;
@@ -16,7 +17,11 @@ import java.util.List;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
+import rts.UnitAction;
+import rts.Zobrist;
+import rts.units.Unit;
 import rts.units.UnitTypeTable;
+import util.Pair;
 
 /**
  *
@@ -38,6 +43,7 @@ public class ABCD extends AI {
     long max_branching_so_far = 0;
     long max_leaves_so_far = 0;
     long max_nodes_so_far = 0;
+    public long total_nodes = 0;    // over all the searches
     
     int MAXDEPTH = 4;
     AI playoutAI = null;
@@ -45,6 +51,26 @@ public class ABCD extends AI {
     EvaluationFunction ef = null;
     protected int defaultNONEduration = 8;
     
+    // if true, the search descends and rewinds a single state using its undo log 
+    // (see GameState.getUndoMark), instead of cloning it at each node:
+    boolean useUndoLog = false;
+    
+    // if true, the values of the states already searched are stored in a 
+    // transposition table (indexed by GameState.getHash), so that states reached 
+    // through different action orders are only searched once:
+    boolean useTranspositionTable = false;
+    TranspositionTable<TranspositionEntry> transpositions = null;
+    
+    static final int TT_EXACT = 0;
+    static final int TT_LOWER_BOUND = 1;
+    static final int TT_UPPER_BOUND = 2;
+    
+    static class TranspositionEntry {
+        int depthLeft;
+        float evaluation;
+        int bound;
+    }
+    
     
     public ABCD(UnitTypeTable utt) {
         this(4, 
@@ -69,7 +95,10 @@ public class ABCD extends AI {
     }
     
     public AI clone() {
-        return new ABCD(MAXDEPTH, playoutAI, maxPlayoutTime, ef);
+        ABCD clone = new ABCD(MAXDEPTH, playoutAI.clone(), maxPlayoutTime, ef);
+        clone.useUndoLog = useUndoLog;
+        clone.useTranspositionTable = useTranspositionTable;
+        return clone;
     }     
     
     public PlayerAction getAction(int player, GameState gs) throws Exception {
@@ -96,13 +125,48 @@ public class ABCD extends AI {
         if (nNodes>max_nodes_so_far) max_nodes_so_far = nNodes;
         nLeaves = 0;
         nNodes = 0;
-        MiniMaxResult bestMove = ABCD(gs, maxplayer, minplayer, alpha, beta, depthLeft, maxplayer);
+        if (useTranspositionTable) {
+            if (transpositions==null) transpositions = new TranspositionTable<>(16);
+            transpositions.clear();
+        } else {
+            transpositions = null;
+        }
+        MiniMaxResult bestMove;
+        if (useUndoLog) {
+            bestMove = ABCDUndo(gs.clone(), maxplayer, minplayer, alpha, beta, depthLeft, maxplayer);
+        } else if (useTranspositionTable) {
+            // (hash a copy, so that "gs" itself does not start maintaining its hash)
+            bestMove = ABCD(gs.cloneCopyOnWrite(), maxplayer, minplayer, alpha, beta, depthLeft, maxplayer);
+        } else {
+            bestMove = ABCD(gs, maxplayer, minplayer, alpha, beta, depthLeft, maxplayer);
+        }
+        total_nodes += nNodes;
         if (DEBUG>=1) System.out.println("ABCD: " + bestMove + " in " + (System.currentTimeMillis()-start));
+        if (useUndoLog && bestMove.action!=null) {
+            // the action refers to the units of the clone, translate it to those of "gs":
+            PlayerAction pa = new PlayerAction();
+            for(Pair<Unit,UnitAction> tmp:bestMove.action.getActions()) {
+                pa.addUnitAction(gs.getUnit(tmp.m_a.getID()), tmp.m_b);
+            }
+            pa.setResourceUsage(bestMove.action.getResourceUsage());
+            return pa;
+        }
         return bestMove.action;
     }
     
 
     public MiniMaxResult ABCD(GameState gs, int maxplayer, int minplayer, float alpha, float beta, int depthLeft, int nextPlayerInSimultaneousNode) throws Exception {
+        if (transpositions==null) return ABCDSearch(gs, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+        long key = Zobrist.mix(gs.getHash(), nextPlayerInSimultaneousNode);
+        MiniMaxResult result = lookupTransposition(key, alpha, beta, depthLeft);
+        if (result!=null) return result;
+        result = ABCDSearch(gs, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+        storeTransposition(key, alpha, beta, depthLeft, result);
+        return result;
+    }
+    
+
+    public MiniMaxResult ABCDSearch(GameState gs, int maxplayer, int minplayer, float alpha, float beta, int depthLeft, int nextPlayerInSimultaneousNode) throws Exception {
 //        System.out.println("realTimeMinimaxAB(" + alpha + "," + beta + ") at " + gs.getTime());
 //        gs.dumpActionAssignments();
         
@@ -112,7 +176,7 @@ public class ABCD extends AI {
             nLeaves++;
             
             // Run the play out:
-            GameState gs2 = gs.clone();
+            GameState gs2 = gs.cloneCopyOnWrite();
             AI playoutAI1 = playoutAI.clone();
             AI playoutAI2 = playoutAI.clone();
             int timeOut = gs2.getTime() + maxPlayoutTime;
@@ -121,8 +185,8 @@ public class ABCD extends AI {
                 if (gs2.isComplete()) {
                     gameover = gs2.cycle();
                 } else {
-                    gs2.issue(playoutAI1.getAction(0, gs2));
-                    gs2.issue(playoutAI2.getAction(1, gs2));
+                    playoutAI1.issueAction(0, gs2);
+                    playoutAI2.issueAction(1, gs2);
                 }
             }            
             
@@ -184,7 +248,7 @@ public class ABCD extends AI {
             }while(next!=null);
             return best;
         } else {
-            GameState gs2 = gs.clone();
+            GameState gs2 = gs.cloneCopyOnWrite();
             while(gs2.winner()==-1 && 
                   !gs2.gameover() && 
                   !gs2.canExecuteAnyAction(maxplayer) && 
@@ -194,6 +258,128 @@ public class ABCD extends AI {
     }       
     
     
+    /**
+     * Same as ABCD(gs, ...), but modifying "gs" in place and undoing the changes 
+     * after exploring each child, instead of cloning it. "gs" is left unchanged. 
+     * The states of the returned results are null.
+     */
+    public MiniMaxResult ABCDUndo(GameState gs, int maxplayer, int minplayer, float alpha, float beta, int depthLeft, int nextPlayerInSimultaneousNode) throws Exception {
+        if (transpositions==null) return ABCDUndoSearch(gs, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+        long key = Zobrist.mix(gs.getHash(), nextPlayerInSimultaneousNode);
+        MiniMaxResult result = lookupTransposition(key, alpha, beta, depthLeft);
+        if (result!=null) return result;
+        result = ABCDUndoSearch(gs, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+        storeTransposition(key, alpha, beta, depthLeft, result);
+        return result;
+    }
+    
+    
+    public MiniMaxResult ABCDUndoSearch(GameState gs, int maxplayer, int minplayer, float alpha, float beta, int depthLeft, int nextPlayerInSimultaneousNode) throws Exception {
+        nNodes++;
+        int mark = gs.getUndoMark();
+        
+        if (depthLeft<=0 || gs.winner()!=-1) {
+            nLeaves++;
+            
+            // Run the play out:
+            AI playoutAI1 = playoutAI.clone();
+            AI playoutAI2 = playoutAI.clone();
+            int timeOut = gs.getTime() + maxPlayoutTime;
+            boolean gameover = false;
+            while(!gameover && gs.getTime()<timeOut) {
+                if (gs.isComplete()) {
+                    gameover = gs.cycle();
+                } else {
+                    playoutAI1.issueAction(0, gs);
+                    playoutAI2.issueAction(1, gs);
+                }
+            }            
+            float evaluation = ef.evaluate(maxplayer, minplayer, gs);
+            gs.undo(mark);
+            return new MiniMaxResult(null, evaluation, null);
+        }
+        
+        int toMove = -1;        
+        if (gs.canExecuteAnyAction(maxplayer)) {
+            if (gs.canExecuteAnyAction(minplayer)) {
+                toMove = nextPlayerInSimultaneousNode;
+                nextPlayerInSimultaneousNode = 1 - nextPlayerInSimultaneousNode;
+            } else {
+                toMove = maxplayer;
+            }
+        } else {
+            if (gs.canExecuteAnyAction(minplayer)) toMove = minplayer;
+        }
+
+        if (toMove == maxplayer || toMove == minplayer) {
+            PlayerActionGenerator actions = new PlayerActionGenerator(gs, toMove);
+            long l = actions.getSize();
+            if (l>max_branching_so_far) max_branching_so_far = l;
+            MiniMaxResult best = null;
+            PlayerAction next = null;
+            do{
+                next = actions.getNextAction(-1);
+                if (next!=null) {
+                    gs.issue(next);
+                    MiniMaxResult tmp = ABCDUndo(gs, maxplayer, minplayer, alpha, beta, depthLeft-1, nextPlayerInSimultaneousNode);
+                    gs.undo(mark);
+                    if (toMove == maxplayer) {
+                        alpha = Math.max(alpha,tmp.evaluation);
+                        if (best==null || tmp.evaluation>best.evaluation) {
+                            best = tmp;
+                            best.action = next;
+                        }
+                    } else {
+                        beta = Math.min(beta,tmp.evaluation);
+                        if (best==null || tmp.evaluation<best.evaluation) {
+                            best = tmp;
+                            best.action = next;
+                        }
+                    }
+                    if (beta<=alpha) return best;                
+                }
+            }while(next!=null);
+            return best;
+        } else {
+            while(gs.winner()==-1 && 
+                  !gs.gameover() && 
+                  !gs.canExecuteAnyAction(maxplayer) && 
+                  !gs.canExecuteAnyAction(minplayer)) gs.cycle();
+            MiniMaxResult result = ABCDUndo(gs, maxplayer, minplayer, alpha, beta, depthLeft, nextPlayerInSimultaneousNode);
+            gs.undo(mark);
+            return result;
+        }
+    }       
+    
+    
+    /**
+     * Returns the value stored for a state if it was searched at least as deep,
+     * and it is exact or a bound that causes a cut off with the current window
+     */
+    MiniMaxResult lookupTransposition(long key, float alpha, float beta, int depthLeft) {
+        TranspositionEntry e = transpositions.get(key);
+        if (e==null || e.depthLeft<depthLeft) return null;
+        if (e.bound==TT_EXACT ||
+            (e.bound==TT_LOWER_BOUND && e.evaluation>=beta) ||
+            (e.bound==TT_UPPER_BOUND && e.evaluation<=alpha)) {
+            return new MiniMaxResult(null, e.evaluation, null);
+        }
+        return null;
+    }
+    
+    
+    void storeTransposition(long key, float alpha, float beta, int depthLeft, MiniMaxResult result) {
+        if (result==null) return;
+        TranspositionEntry e = new TranspositionEntry();
+        e.depthLeft = depthLeft;
+        e.evaluation = result.evaluation;
+        if (result.evaluation<=alpha) e.bound = TT_UPPER_BOUND;
+        else if (result.evaluation>=beta) e.bound = TT_LOWER_BOUND;
+        else e.bound = TT_EXACT;
+        transpositions.put(key, e);
+    }
+    
+    
     @Override
     public String toString() {
         return getClass().getSimpleName() + "(" + MAXDEPTH + ", " + playoutAI + ", " + maxPlayoutTime + ", " + ef + ")";
@@ -209,6 +395,8 @@ public class ABCD extends AI {
         parameters.add(new ParameterSpecification("PlayoutLookahead",int.class,100));
         parameters.add(new ParameterSpecification("PlayoutAI",AI.class, playoutAI));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("UseUndoLog",boolean.class,false));
+        parameters.add(new ParameterSpecification("UseTranspositionTable",boolean.class,false));
         
         return parameters;
     }       
@@ -252,4 +440,24 @@ public class ABCD extends AI {
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }
+    
+    
+    public boolean getUseUndoLog() {
+        return useUndoLog;
+    }
+    
+    
+    public void setUseUndoLog(boolean a_useUndoLog) {
+        useUndoLog = a_useUndoLog;
+    }
+    
+    
+    public boolean getUseTranspositionTable() {
+        return useTranspositionTable;
+    }
+    
+    
+    public void setUseTranspositionTable(boolean a_useTranspositionTable) {
+        useTranspositionTable = a_useTranspositionTable;
+    }
 }
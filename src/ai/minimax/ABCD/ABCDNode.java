@@ -4,6 +4,7 @@
  */
 package ai.minimax.ABCD;
 
+import ai.core.NodePool;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
@@ -23,11 +24,34 @@ public class ABCDNode {
     public int nextPlayerInSimultaneousNode = 0;
     
     public ABCDNode(int a_type, int a_depth, GameState a_gs, float a_alpha, float a_beta, int npsn) {
+        init(a_type, a_depth, a_gs, a_alpha, a_beta, npsn);
+    }
+    
+    
+    /**
+     * Returns a node initialized as the constructor would, reusing a free node
+     * of "pool" if there is one ("pool" can be null)
+     */
+    public static ABCDNode newNode(NodePool<ABCDNode> pool, int a_type, int a_depth, GameState a_gs, float a_alpha, float a_beta, int npsn) {
+        ABCDNode node = (pool==null ? null:pool.get());
+        if (node==null) {
+            node = new ABCDNode(a_type, a_depth, a_gs, a_alpha, a_beta, npsn);
+            if (pool!=null) pool.add(node);
+        } else {
+            node.init(a_type, a_depth, a_gs, a_alpha, a_beta, npsn);
+        }
+        return node;
+    }
+    
+    
+    void init(int a_type, int a_depth, GameState a_gs, float a_alpha, float a_beta, int npsn) {
         type = a_type;
         depth = a_depth;
         gs = a_gs;
+        actions = null;
         alpha = a_alpha;
         beta = a_beta;
+        best = null;
         nextPlayerInSimultaneousNode = npsn;
     }
 }
@@ -8,6 +8,8 @@ import ai.abstraction.WorkerRush;
 import ai.abstraction.pathfinding.AStarPathFinding;
 import ai.core.AI;
 import ai.core.AIWithComputationBudget;
+import ai.core.GCStatistics;
+import ai.core.NodePool;
 import ai.core.ParameterSpecification;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
@@ -79,6 +81,10 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
         
     boolean treeIsComplete = true;
     List<ABCDNode> stack = null;
+    // if not null, the nodes popped from the stack are recycled (see NodePool),
+    // up to the capacity of the pool:
+    NodePool<ABCDNode> nodePool = null;
+    public GCStatistics gcStatistics = new GCStatistics();
     Pair<PlayerAction,Float> lastResult = null;
     PlayerAction bestMove = null;
     int playerForThisComputation;
@@ -135,7 +141,9 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
 
 
     public AI clone() {
-        return new IDABCD(TIME_BUDGET, ITERATIONS_BUDGET, playoutAI, maxPlayoutTime, ef, performGreedyActionScan);
+        IDABCD clone = new IDABCD(TIME_BUDGET, ITERATIONS_BUDGET, playoutAI.clone(), maxPlayoutTime, ef, performGreedyActionScan);
+        clone.setNodePoolCapacity(getNodePoolCapacity());
+        return clone;
     }
     
 
@@ -166,6 +174,16 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
     
 
     public void computeDuringOneGameFrame() throws Exception {
+        gcStatistics.startFrame();
+        try {
+            iterativeDeepening();
+        } finally {
+            gcStatistics.endFrame();
+        }
+    }
+    
+    
+    void iterativeDeepening() throws Exception {
         int maxplayer = playerForThisComputation;
         int minplayer = 1 - playerForThisComputation;
         int depth = 1;
@@ -302,7 +320,9 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
             nLeaves = 0;
             time_depth = 0;
             stack = new LinkedList<ABCDNode>();
-            head = new ABCDNode(-1, 0, initial_gs, -EvaluationFunction.VICTORY, EvaluationFunction.VICTORY, 0);
+            // the nodes of the previous search are not used anymore:
+            if (nodePool!=null) nodePool.reset();
+            head = ABCDNode.newNode(nodePool, -1, 0, initial_gs, -EvaluationFunction.VICTORY, EvaluationFunction.VICTORY, 0);
             stack.add(head);
             treeIsComplete = true;
         } else {
@@ -355,13 +375,13 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                                     if (gs2.isComplete()) {
                                         gameover = gs2.cycle();
                                     } else {
-                                        gs2.issue(playoutAI1.getAction(0, gs2));
-                                        gs2.issue(playoutAI2.getAction(1, gs2));
+                                        playoutAI1.issueAction(0, gs2);
+                                        playoutAI2.issueAction(1, gs2);
                                     }
                                 }
                                 lastResult = new Pair<PlayerAction,Float>(null,ef.evaluate(maxplayer,minplayer, gs2));
 //                                System.out.println("last result from -1 node");
-                                stack.remove(0);
+                                popNode();
                             } else {
                                 current.type = 2;
                                 if (current.gs.canExecuteAnyAction(maxplayer)) {
@@ -397,7 +417,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                             PlayerAction next = current.actions.getNextAction(cutOffTime);
                             if (next != null) {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new ABCDNode(-1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
+                                stack.add(0, ABCDNode.newNode(nodePool, -1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
                             } else {
                                 // This can only happen if the getNextAction call times out...
                                 break;
@@ -415,7 +435,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                             }
                             if (current.beta <= current.alpha || next == null) {
                                 lastResult = current.best;
-                                stack.remove(0);
+                                popNode();
                                 if (current.actions.getGenerated() > max_branching_so_far) {
                                     max_branching_so_far = current.actions.getGenerated();
                                 }
@@ -423,7 +443,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                                 count_branching_so_far++;
                             } else {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new ABCDNode(-1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
+                                stack.add(0, ABCDNode.newNode(nodePool, -1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
                             }
                         }
                         break;
@@ -445,7 +465,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                             PlayerAction next = current.actions.getNextAction(cutOffTime);
                             if (next != null) {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new ABCDNode(-1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
+                                stack.add(0, ABCDNode.newNode(nodePool, -1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
                             } else {
                                 // This can only happen if the getNextAction call times out...
                                 break;
@@ -459,7 +479,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                             PlayerAction next = current.actions.getNextAction(cutOffTime);
                             if (current.beta <= current.alpha || next == null) {
                                 lastResult = current.best;
-                                stack.remove(0);
+                                popNode();
                                 if (current.actions.getGenerated() > max_branching_so_far) {
                                     max_branching_so_far = current.actions.getGenerated();
                                 }
@@ -467,7 +487,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                                 count_branching_so_far++;
                             } else {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new ABCDNode(-1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
+                                stack.add(0, ABCDNode.newNode(nodePool, -1, current.depth + 1, gs2, current.alpha, current.beta, current.nextPlayerInSimultaneousNode));
                             }
                         }
                         break;
@@ -499,6 +519,15 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
     }
 
 
+    /**
+     * Removes the node at the top of the stack, giving it back to the node pool
+     */
+    void popNode() {
+        ABCDNode node = stack.remove(0);
+        if (nodePool!=null) nodePool.release(node);
+    }
+
+
     public String statisticsString() {
         return
                "avg depth: " + (avg_depth_so_far/(double)count_depth_so_far) +
@@ -512,7 +541,9 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
                " , avg nodes: " + (avg_nodes_so_far/(double)count_nodes_so_far) +
                " , max nodes: " + max_nodes_so_far + 
                " , avg time depth: " + (avg_time_depth_so_far/(double)count_time_depth_so_far) +
-               " , max time depth: " + max_time_depth_so_far;
+               " , max time depth: " + max_time_depth_so_far +
+               " , " + gcStatistics +
+               (nodePool!=null ? " , " + nodePool:"");
     }
     
     
@@ -532,6 +563,7 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
         parameters.add(new ParameterSpecification("PlayoutLookahead",int.class,100));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
         parameters.add(new ParameterSpecification("PerformGreedyActionScan",boolean.class,true));
+        parameters.add(new ParameterSpecification("NodePoolCapacity",int.class,0));
         
         return parameters;
     }  
@@ -575,4 +607,19 @@ public class IDABCD extends AIWithComputationBudget implements InterruptibleAI {
     public void setPerformGreedyActionScan(boolean a_pgas) {
         performGreedyActionScan = a_pgas;
     }
+    
+    
+    public int getNodePoolCapacity() {
+        return (nodePool==null ? 0:nodePool.getCapacity());
+    }
+    
+    
+    /**
+     * Sets the number of nodes to recycle during the search (0 to not recycle
+     * them). Since nodes are recycled as soon as they are popped from the stack,
+     * a capacity around the maximum search depth is enough
+     */
+    public void setNodePoolCapacity(int a_capacity) {
+        nodePool = (a_capacity>0 ? new NodePool<>(a_capacity):null);
+    }
 }
@@ -7,6 +7,8 @@ package ai.minimax.RTMiniMax;
 import ai.evaluation.EvaluationFunctionForwarding;
 import ai.core.AI;
 import ai.core.AIWithComputationBudget;
+import ai.core.GCStatistics;
+import ai.core.NodePool;
 import ai.core.ParameterSpecification;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
@@ -51,6 +53,10 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     int consecutive_frames_searching = 0;
     int last_lookAhead = 1;
     List<RTMiniMaxNode> stack = null;
+    // if not null, the nodes popped from the stack are recycled (see NodePool),
+    // up to the capacity of the pool:
+    NodePool<RTMiniMaxNode> nodePool = null;
+    public GCStatistics gcStatistics = new GCStatistics();
     Pair<PlayerAction,Float> lastResult = null;
     PlayerAction bestMove = null;
     
@@ -82,7 +88,9 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     
     @Override
     public AI clone() {
-        return new IDRTMinimax(TIME_BUDGET, ef);
+        IDRTMinimax clone = new IDRTMinimax(TIME_BUDGET, ef);
+        clone.setNodePoolCapacity(getNodePoolCapacity());
+        return clone;
     }  
     
     
@@ -111,6 +119,16 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     
     @Override
     public void computeDuringOneGameFrame() throws Exception {
+        gcStatistics.startFrame();
+        try {
+            iterativeDeepening();
+        } finally {
+            gcStatistics.endFrame();
+        }
+    }
+    
+    
+    void iterativeDeepening() throws Exception {
         int maxplayer = playerForThisComputation;
         int minplayer = 1 - playerForThisComputation;
         int lookAhead = 1;
@@ -176,7 +194,9 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
         RTMiniMaxNode head;
         if (stack==null) {
             stack = new LinkedList<RTMiniMaxNode>();
-            head = new RTMiniMaxNode(0,initial_gs,-EvaluationFunctionForwarding.VICTORY, EvaluationFunctionForwarding.VICTORY);
+            // the nodes of the previous search are not used anymore:
+            if (nodePool!=null) nodePool.reset();
+            head = RTMiniMaxNode.newNode(nodePool, 0,initial_gs,-EvaluationFunctionForwarding.VICTORY, EvaluationFunctionForwarding.VICTORY);
             stack.add(head);
         } else {
             if (stack.isEmpty()) return lastResult.m_a;
@@ -201,7 +221,7 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
                                 }
                                 nLeaves++;
                                 lastResult = new Pair<PlayerAction,Float>(null,ef.evaluate(maxplayer, minplayer, current.gs));
-                                stack.remove(0);    
+                                popNode();    
                             } else if (current.gs.canExecuteAnyAction(maxplayer)) {
                                 current.type = 0;
                             } else if (current.gs.canExecuteAnyAction(minplayer)) {
@@ -221,7 +241,7 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
                             PlayerAction next = current.actions.getNextAction(cutOffTime);                            
                             if (next!=null) {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new RTMiniMaxNode(-1,gs2,current.alpha, current.beta));
+                                stack.add(0, RTMiniMaxNode.newNode(nodePool, -1, gs2,current.alpha, current.beta));
                             } else {
                                 // This can only happen if the getNextAction call times out...
                                 break;
@@ -235,11 +255,11 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
                             PlayerAction next = current.actions.getNextAction(cutOffTime);
                             if (current.beta<=current.alpha || next == null) {
                                 lastResult = current.best;
-                                stack.remove(0);
+                                popNode();
                                 if (current.actions.getGenerated()>max_branching_so_far) max_branching_so_far = current.actions.getGenerated();
                             } else {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new RTMiniMaxNode(-1,gs2,current.alpha, current.beta));
+                                stack.add(0, RTMiniMaxNode.newNode(nodePool, -1, gs2,current.alpha, current.beta));
                             }
                         }
                         break;
@@ -253,7 +273,7 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
                             PlayerAction next = current.actions.getNextAction(cutOffTime);                            
                             if (next!=null) {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new RTMiniMaxNode(-1,gs2,current.alpha, current.beta));
+                                stack.add(0, RTMiniMaxNode.newNode(nodePool, -1, gs2,current.alpha, current.beta));
                             } else {
                                 // This can only happen if the getNextAction call times out...
                                 break;
@@ -267,11 +287,11 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
                             PlayerAction next = current.actions.getNextAction(cutOffTime);
                             if (current.beta<=current.alpha || next == null) {
                                 lastResult = current.best;
-                                stack.remove(0);
+                                popNode();
                                 if (current.actions.getGenerated()>max_branching_so_far) max_branching_so_far = current.actions.getGenerated();
                             } else {
                                 GameState gs2 = current.gs.cloneIssue(next);
-                                stack.add(0, new RTMiniMaxNode(-1,gs2,current.alpha, current.beta));
+                                stack.add(0, RTMiniMaxNode.newNode(nodePool, -1, gs2,current.alpha, current.beta));
                             }
                         }
                         break;
@@ -319,11 +339,22 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     }
     
     
+    /**
+     * Removes the node at the top of the stack, giving it back to the node pool
+     */
+    void popNode() {
+        RTMiniMaxNode node = stack.remove(0);
+        if (nodePool!=null) nodePool.release(node);
+    }
+    
+    
     public String statisticsString() {
         return "max depth: " + max_depth_so_far + 
                " , max branching factor (potential): " + max_branching_so_far + "(" + max_potential_branching_so_far + ")" +  
                " , max leaves: " + max_leaves_so_far + 
-               " , max consecutive frames: " + max_consecutive_frames_searching_so_far;
+               " , max consecutive frames: " + max_consecutive_frames_searching_so_far +
+               " , " + gcStatistics +
+               (nodePool!=null ? " , " + nodePool:"");
     }    
     
     
@@ -340,6 +371,7 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
         parameters.add(new ParameterSpecification("TimeBudget",int.class,100));
         parameters.add(new ParameterSpecification("IterationsBudget",int.class,-1));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("NodePoolCapacity",int.class,0));
         
         return parameters;
     }    
@@ -353,4 +385,19 @@ public class IDRTMinimax extends AIWithComputationBudget implements Interruptibl
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }    
+    
+    
+    public int getNodePoolCapacity() {
+        return (nodePool==null ? 0:nodePool.getCapacity());
+    }
+    
+    
+    /**
+     * Sets the number of nodes to recycle during the search (0 to not recycle
+     * them). Since nodes are recycled as soon as they are popped from the stack,
+     * a capacity around the maximum search depth is enough
+     */
+    public void setNodePoolCapacity(int a_capacity) {
+        nodePool = (a_capacity>0 ? new NodePool<>(a_capacity):null);
+    }
 }
@@ -39,7 +39,9 @@ public class IDRTMinimaxRandomized extends IDRTMinimax {
 
     
     public AI clone() {
-        return new IDRTMinimaxRandomized(TIME_BUDGET, m_repeats, ef);
+        IDRTMinimaxRandomized clone = new IDRTMinimaxRandomized(TIME_BUDGET, m_repeats, ef);
+        clone.setNodePoolCapacity(getNodePoolCapacity());
+        return clone;
     }
 
 
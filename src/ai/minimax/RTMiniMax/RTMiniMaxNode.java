@@ -4,6 +4,7 @@
  */
 package ai.minimax.RTMiniMax;
 
+import ai.core.NodePool;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.PlayerActionGenerator;
@@ -21,9 +22,32 @@ public class RTMiniMaxNode {
     public Pair<PlayerAction,Float> best;
     
     public RTMiniMaxNode(int a_type, GameState a_gs, float a_alpha, float a_beta) {
+        init(a_type, a_gs, a_alpha, a_beta);
+    }
+    
+    
+    /**
+     * Returns a node initialized as the constructor would, reusing a free node
+     * of "pool" if there is one ("pool" can be null)
+     */
+    public static RTMiniMaxNode newNode(NodePool<RTMiniMaxNode> pool, int a_type, GameState a_gs, float a_alpha, float a_beta) {
+        RTMiniMaxNode node = (pool==null ? null:pool.get());
+        if (node==null) {
+            node = new RTMiniMaxNode(a_type, a_gs, a_alpha, a_beta);
+            if (pool!=null) pool.add(node);
+        } else {
+            node.init(a_type, a_gs, a_alpha, a_beta);
+        }
+        return node;
+    }
+    
+    
+    void init(int a_type, GameState a_gs, float a_alpha, float a_beta) {
         type = a_type;
         gs = a_gs;
+        actions = null;
         alpha = a_alpha;
         beta = a_beta;
+        best = null;
     }
 }
@@ -7,6 +7,7 @@ package ai.montecarlo;
 import ai.core.AI;
 import ai.RandomBiasedAI;
 import ai.core.AIWithComputationBudget;
+import ai.core.ParallelPlayouts;
 import ai.core.ParameterSpecification;
 import ai.evaluation.EvaluationFunction;
 import ai.evaluation.SimpleSqrtEvaluationFunction3;
@@ -54,6 +55,11 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
     long MAXACTIONS = 100;
     int MAXSIMULATIONTIME = 1024;
     
+    // number of playouts run each time an action is evaluated, in parallel in "playoutThreads" threads:
+    int playoutsPerAction = 1;
+    int playoutThreads = Runtime.getRuntime().availableProcessors();
+    ParallelPlayouts parallelPlayouts = null;
+    
     
     public MonteCarlo(UnitTypeTable utt) {
         this(100, -1, 100,
@@ -94,7 +100,10 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
     }    
     
     public AI clone() {
-        return new MonteCarlo(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, randomAI, ef);
+        MonteCarlo clone = new MonteCarlo(TIME_BUDGET, ITERATIONS_BUDGET, MAXSIMULATIONTIME, MAXACTIONS, randomAI.clone(), ef);
+        clone.playoutsPerAction = playoutsPerAction;
+        clone.playoutThreads = playoutThreads;
+        return clone;
     }
     
     
@@ -172,7 +181,7 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
             if (TIME_BUDGET>0 && (System.currentTimeMillis() - start)>=TIME_BUDGET) break;
             if (ITERATIONS_BUDGET>0 && nruns>=ITERATIONS_BUDGET) break;
             monteCarloRun(playerForThisComputation, gs_to_start_from);
-            nruns++;
+            nruns += playoutsPerAction;
         }
         
         total_cycles_executed++;
@@ -185,7 +194,19 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
         PlayerActionTableEntry pate = actions.get(idx);
 
         GameState gs2 = gs.cloneIssue(pate.pa);
-        GameState gs3 = gs2.clone();
+        if (playoutsPerAction>1) {
+            // run a batch of playouts in parallel:
+            if (parallelPlayouts==null || parallelPlayouts.getThreads()!=playoutThreads || parallelPlayouts.getPolicy()!=randomAI) {
+                if (parallelPlayouts!=null) parallelPlayouts.shutdown();
+                parallelPlayouts = new ParallelPlayouts(playoutThreads, randomAI);
+            }
+            pate.accum_evaluation += parallelPlayouts.run(gs2, playoutsPerAction, MAXSIMULATIONTIME, player, ef, gs2.getTime());
+            pate.visit_count += playoutsPerAction;
+            run++;
+            total_runs += playoutsPerAction;
+            return;
+        }
+        GameState gs3 = gs2.cloneCopyOnWrite();
         simulate(gs3,gs3.getTime() + MAXSIMULATIONTIME);
         int time = gs3.getTime() - gs2.getTime();
 
@@ -228,8 +249,8 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(randomAI.getAction(0, gs));
-                gs.issue(randomAI.getAction(1, gs));
+                randomAI.issueAction(0, gs);
+                randomAI.issueAction(1, gs);
             }
         }while(!gameover && gs.getTime()<time);   
     }
@@ -251,6 +272,8 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
         parameters.add(new ParameterSpecification("MaxActions",long.class,100));
         parameters.add(new ParameterSpecification("playoutAI",AI.class, randomAI));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));
+        parameters.add(new ParameterSpecification("PlayoutsPerAction",int.class,1));
+        parameters.add(new ParameterSpecification("PlayoutThreads",int.class,Runtime.getRuntime().availableProcessors()));
         
         return parameters;
     }       
@@ -294,4 +317,24 @@ public class MonteCarlo extends AIWithComputationBudget implements Interruptible
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         ef = a_ef;
     }      
+    
+    
+    public int getPlayoutsPerAction() {
+        return playoutsPerAction;
+    }
+    
+    
+    public void setPlayoutsPerAction(int a_playoutsPerAction) {
+        playoutsPerAction = a_playoutsPerAction;
+    }
+    
+    
+    public int getPlayoutThreads() {
+        return playoutThreads;
+    }
+    
+    
+    public void setPlayoutThreads(int a_playoutThreads) {
+        playoutThreads = a_playoutThreads;
+    }
 }
@@ -114,7 +114,7 @@ public class LSI extends AIWithComputationBudget {
     public AI clone() {
         return new LSI(ITERATIONS_BUDGET, lookAhead, split,
                 estimateType, estimateReuseType, generateType, agentOrderingType, evaluateType,
-                eliteReuse, relaxationType, relaxationLimit, epochal, simulationAi, evalFunction);
+                eliteReuse, relaxationType, relaxationLimit, epochal, simulationAi.clone(), evalFunction);
     }
 
     public PlayerAction getAction(int player, GameState gameState) throws Exception {
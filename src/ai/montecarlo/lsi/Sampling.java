@@ -26,6 +26,8 @@ import util.Sampler;
 
 public class Sampling {
 
+    public static int EVALUATION_BATCH_SIZE = 64;
+
     private final AgentOrderingType agentOrderingType;
     private final int lookAhead;
     private final EvaluationFunction evalFunction;
@@ -43,14 +45,27 @@ public class Sampling {
     public double evaluatePlayerAction(int player, GameState gs, PlayerAction playerAction, int numEval) throws Exception {
         double evalMean = 0;
 
-        for (int step = 0; step < numEval; step++) {
-            GameState gs2 = gs.cloneIssue(playerAction);
-            GameState gs3 = gs2.clone();
-            simulate(gs3, gs3.getTime() + lookAhead);
-            int time = gs3.getTime() - gs2.getTime();
-            double eval = evalFunction.evaluate(player, 1 - player, gs3)*Math.pow(0.99, time / 10.0);
+        // the final states of the simulations are evaluated in batches:
+        GameState states[] = new GameState[Math.max(1, Math.min(numEval, EVALUATION_BATCH_SIZE))];
+        int startTimes[] = new int[states.length];
+        float scores[] = new float[states.length];
+        int step = 0;
+        while (step < numEval) {
+            int n = Math.min(numEval - step, states.length);
+            for (int i = 0; i < n; i++) {
+                GameState gs2 = gs.cloneIssue(playerAction);
+                GameState gs3 = gs2.cloneCopyOnWrite();
+                simulate(gs3, gs3.getTime() + lookAhead);
+                states[i] = gs3;
+                startTimes[i] = gs2.getTime();
+            }
+            evalFunction.evaluate(player, 1 - player, states, n, scores);
+            for (int i = 0; i < n; i++, step++) {
+                int time = states[i].getTime() - startTimes[i];
+                double eval = scores[i]*Math.pow(0.99, time / 10.0);
 
-            evalMean = (step * evalMean + eval) / (step + 1);
+                evalMean = (step * evalMean + eval) / (step + 1);
+            }
         }
 
         return evalMean;
@@ -65,8 +80,8 @@ public class Sampling {
             if (gs.isComplete()) {
                 gameover = gs.cycle();
             } else {
-                gs.issue(simulationAi.getAction(0, gs));
-                gs.issue(simulationAi.getAction(1, gs));
+                simulationAi.issueAction(0, gs);
+                simulationAi.issueAction(1, gs);
             }
         } while (!gameover && gs.getTime() < lookaheadTime);
     }
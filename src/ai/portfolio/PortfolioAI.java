@@ -121,8 +121,8 @@ public class PortfolioAI extends AIWithComputationBudget implements Interruptibl
                             if (gs2.isComplete()) {
                                 gameover = gs2.cycle();
                             } else {
-                                gs2.issue(ai1.getAction(playerForThisComputation, gs2));
-                                gs2.issue(ai2.getAction(1-playerForThisComputation, gs2));
+                                ai1.issueAction(playerForThisComputation, gs2);
+                                ai2.issueAction(1-playerForThisComputation, gs2);
                             }
                         }                
                         scores[i][j] += evaluation.evaluate(playerForThisComputation, 1-playerForThisComputation, gs2);
@@ -252,8 +252,8 @@ public class PGSAI extends AIWithComputationBudget {
             if (gs2.isComplete()) {
                 gameover = gs2.cycle();
             } else {
-                gs2.issue(ai1.getAction(player, gs2));
-                gs2.issue(ai2.getAction(1-player, gs2));
+                ai1.issueAction(player, gs2);
+                ai2.issueAction(1-player, gs2);
             }
         }        
         double e = evaluation.evaluate(player, 1-player, gs2);
@@ -264,7 +264,7 @@ public class PGSAI extends AIWithComputationBudget {
 
     @Override
     public AI clone() {
-        return new PGSAI(TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, I, R, evaluation, utt, pf);
+        return new PGSAI(TIME_BUDGET, ITERATIONS_BUDGET, LOOKAHEAD, I, R, evaluation, utt, pf.clone());
     }
     
     
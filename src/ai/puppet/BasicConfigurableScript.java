@@ -69,7 +69,7 @@ public class BasicConfigurableScript extends ConfigurableScript<BasicChoicePoint
     }
 
     public ConfigurableScript<BasicChoicePoint> clone() {
-    	BasicConfigurableScript sc = new BasicConfigurableScript(utt, pf);
+    	BasicConfigurableScript sc = new BasicConfigurableScript(utt, pf.clone());
     	sc.choices=choices.clone();
     	sc.choicePoints=choicePoints.clone();
     	sc.choicePointValues=choicePointValues.clone();
@@ -130,8 +130,8 @@ public abstract class PuppetBase extends AIWithComputationBudget {
 			if (gs.isComplete()) {
 				gameover = gs.cycle();
 			} else {
-				gs.issue(ai1.getAction(player1, gs));
-				gs.issue(ai2.getAction(player2, gs));
+				ai1.issueAction(player1, gs);
+				ai2.issueAction(player2, gs);
 			}
 		}    
 	}
@@ -1,8 +1,10 @@
 package ai.puppet;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
+import ai.core.TreeReuse;
 import rts.GameState;
 
 public class PuppetMCTSNode {
@@ -150,6 +152,29 @@ public class PuppetMCTSNode {
 		}
 	}
 	
+	//node under this one (or this one) where "player" moves first in "gs", or null (see TreeReuse.sameState)
+	PuppetMCTSNode findNode(GameState gs, int player){
+		ArrayDeque<PuppetMCTSNode> open=new ArrayDeque<PuppetMCTSNode>();
+		open.add(this);
+		while(!open.isEmpty()){
+			PuppetMCTSNode node=open.poll();
+			if(node.prevMove==null && node.nextPlayerInSimultaneousNode==player
+					&& TreeReuse.sameState(node.gs, gs)){
+				return node;
+			}
+			for(PuppetMCTSNode child:node.children){
+				if(child.gs.getTime()<=gs.getTime())open.add(child);
+			}
+		}
+		return null;
+	}
+
+	//makes this node the root of its tree, keeping the statistics of the nodes under it
+	void makeRoot(){
+		parent=null;
+		index=-1;
+	}
+
 	int player(){
 		return parent!=null?parent.actions[index].player:-1;
 	}
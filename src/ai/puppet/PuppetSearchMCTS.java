@@ -56,6 +56,9 @@ public class PuppetSearchMCTS extends PuppetBase {
 	PuppetMCTSNode root;
 	Plan currentPlan;
 	float C;//UCT exploration constant
+	//if true, new searches start from the node of the previous tree with the current state
+	//(the one reached by the choices both players followed), if there is one, keeping its statistics
+	boolean reuseTree=false;
         
         
         public PuppetSearchMCTS(UnitTypeTable utt) {
@@ -117,6 +120,7 @@ public class PuppetSearchMCTS extends PuppetBase {
 		clone.currentPlan = currentPlan;
 		clone.lastSearchFrame = lastSearchFrame;
 		clone.lastSearchTime = lastSearchTime;
+		clone.reuseTree = reuseTree;
 		return clone;
 	}
 
@@ -168,7 +172,15 @@ public class PuppetSearchMCTS extends PuppetBase {
 		setC(gs);
 		lastSearchFrame=gs.getTime();
 		lastSearchTime=System.currentTimeMillis();
-		root=new PuppetMCTSNode(gs.clone(),script,C,player,eval.upperBound(gs));
+		PuppetMCTSNode previous=(root!=null?root:currentPlan.node);
+		PuppetMCTSNode reused=(reuseTree&&previous!=null?previous.findNode(gs, player):null);
+		if(reused!=null){
+			if(DEBUG>=1)System.out.println("Reusing a subtree with "+reused.total_visit_count+" playouts");
+			reused.makeRoot();
+			root=reused;
+		}else{
+			root=new PuppetMCTSNode(gs.clone(),script,C,player,eval.upperBound(gs));
+		}
 		allLeaves+=totalLeaves;
 		allTime+=totalTime;
 		allSearches++;
@@ -260,6 +272,7 @@ public class PuppetSearchMCTS extends PuppetBase {
         parameters.add(new ParameterSpecification("Policy",AI.class,policy1));
 //        parameters.add(new ParameterSpecification("Script",ConfigurableScript.class, script));
         parameters.add(new ParameterSpecification("EvaluationFunction", EvaluationFunction.class, new SimpleSqrtEvaluationFunction3()));        
+        parameters.add(new ParameterSpecification("ReuseTree",boolean.class,false));
         
         return parameters;
     }   
@@ -307,5 +320,15 @@ public class PuppetSearchMCTS extends PuppetBase {
     public void setEvaluationFunction(EvaluationFunction a_ef) {
         eval = a_ef;
     }      
+
+
+    public boolean getReuseTree() {
+        return reuseTree;
+    }
+    
+    
+    public void setReuseTree(boolean a_reuseTree) {
+        reuseTree = a_reuseTree;
+    }      
     
 }
@@ -61,7 +61,7 @@ public class SingleChoiceConfigurableScript extends ConfigurableScript<SingleCho
 		AI scripts2[]=new AI[scripts.length];
 		for(int i=0;i<scripts.length;i++)
 			scripts2[i]=scripts[i].clone();
-    	SingleChoiceConfigurableScript sc = new SingleChoiceConfigurableScript(pf,scripts2);
+    	SingleChoiceConfigurableScript sc = new SingleChoiceConfigurableScript(pf.clone(),scripts2);
     	sc.choices=choices.clone();
     	sc.choicePoints=choicePoints.clone();
     	sc.choicePointValues=choicePointValues.clone();
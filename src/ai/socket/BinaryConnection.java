@@ -0,0 +1,167 @@
+package ai.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages of the binary protocol used by SocketAI (LANGUAGE_BINARY) and
+ * BinarySocketWrapperAI, sent through a (blocking) NIO SocketChannel.
+ *
+ * Each message is an int with its length (not counting the int itself), a byte
+ * with its type (one of the MESSAGE_ constants), and its content. Strings are
+ * written as an int length followed by their UTF-8 bytes. The client sends:
+ * - MESSAGE_BUDGET: int time budget, int iterations budget (reply: MESSAGE_ACK)
+ * - MESSAGE_UTT: the unit type table, as a JSON string (reply: MESSAGE_ACK)
+ * - MESSAGE_GET_ACTION: byte player, and a game state (see rts.GameStateDeltaWriter).
+ *   Reply: MESSAGE_ACTION: int number of unit actions, and for each: long unit ID,
+ *   and the action (see rts.UnitAction.toBinary)
+ * - MESSAGE_PRE_GAME_ANALYSIS: long milliseconds, string read/write folder (empty
+ *   if none), and a game state (reply: MESSAGE_ACK)
+ * - MESSAGE_GAME_OVER: byte winner (reply: MESSAGE_ACK)
+ * The server sends MESSAGE_WELCOME (with a string) when the connection is opened.
+ * Game states are written as differences with respect to the previous one,
+ * so MESSAGE_UTT also tells the server to forget the previous game states.
+ *
+ * @author santi
+ */
+public class BinaryConnection {
+    public static final int MESSAGE_WELCOME = 0;
+    public static final int MESSAGE_ACK = 1;
+    public static final int MESSAGE_BUDGET = 2;
+    public static final int MESSAGE_UTT = 3;
+    public static final int MESSAGE_GET_ACTION = 4;
+    public static final int MESSAGE_ACTION = 5;
+    public static final int MESSAGE_PRE_GAME_ANALYSIS = 6;
+    public static final int MESSAGE_GAME_OVER = 7;
+
+    /**
+     * A buffer where messages are written (an int with the length, that is
+     * filled in by toByteBuffer, the type and the content), reused for all of them
+     */
+    public static class MessageBuffer extends ByteArrayOutputStream {
+        public MessageBuffer() {
+            super(1024);
+        }
+
+        public ByteBuffer toByteBuffer() {
+            // write the length at the beginning:
+            int length = count - 4;
+            buf[0] = (byte)(length>>>24);
+            buf[1] = (byte)(length>>>16);
+            buf[2] = (byte)(length>>>8);
+            buf[3] = (byte)length;
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    SocketChannel channel;
+    MessageBuffer outBuffer = new MessageBuffer();
+    DataOutputStream out = new DataOutputStream(outBuffer);
+    ByteBuffer header = ByteBuffer.allocate(4);
+    ByteBuffer in = ByteBuffer.allocate(1024);
+
+
+    public BinaryConnection(SocketChannel a_channel) throws IOException {
+        channel = a_channel;
+        channel.configureBlocking(true);
+        channel.socket().setTcpNoDelay(true);
+    }
+
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+
+    /**
+     * Starts a new message, returning the stream where to write its content,
+     * which is sent when calling send()
+     * @param type
+     * @return
+     * @throws IOException
+     */
+    public DataOutputStream startMessage(int type) throws IOException {
+        outBuffer.reset();
+        out.writeInt(0);    // the length is filled in when sending
+        out.writeByte(type);
+        return out;
+    }
+
+
+    public void send() throws IOException {
+        out.flush();
+        ByteBuffer b = outBuffer.toByteBuffer();
+        while(b.hasRemaining()) channel.write(b);
+    }
+
+
+    public void sendMessage(int type) throws IOException {
+        startMessage(type);
+        send();
+    }
+
+
+    /**
+     * Receives the next message, returning a buffer with its content (only
+     * valid until the next call to receive)
+     * @param expectedType the type of message expected (or -1 to accept any)
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer receive(int expectedType) throws IOException {
+        header.clear();
+        readFully(header);
+        header.flip();
+        int length = header.getInt();
+        if (in.capacity() < length) in = ByteBuffer.allocate(Math.max(length, in.capacity()*2));
+        in.clear();
+        in.limit(length);
+        readFully(in);
+        in.flip();
+        int type = in.get();
+        if (expectedType != -1 && type != expectedType) {
+            throw new IOException("BinaryConnection: expected message " + expectedType + ", but received " + type);
+        }
+        return in;
+    }
+
+
+    /**
+     * The type of the last message received
+     * @return
+     */
+    public int lastMessageType() {
+        return in.get(0);
+    }
+
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    void readFully(ByteBuffer b) throws IOException {
+        while(b.hasRemaining()) {
+            if (channel.read(b) < 0) throw new EOFException("BinaryConnection: connection closed");
+        }
+    }
+
+
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        byte bytes[] = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    public static String readString(ByteBuffer in) {
+        byte bytes[] = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ai.socket;
+
+import ai.abstraction.WorkerRush;
+import ai.core.AIWithComputationBudget;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import rts.GameState;
+import rts.GameStateDeltaReader;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * Server side of the binary protocol of SocketAI (see BinaryConnection).
+ *
+ * @author santi
+ */
+public class BinarySocketWrapperAI {
+    public static int DEBUG = 0;
+
+
+    public static void main(String[] args) throws Exception {
+        DEBUG = 1;
+        runServer(new WorkerRush(new UnitTypeTable()), 9898);
+    }
+
+
+    /**
+     * Connects to a microRTS instance that hosts games (see rts.MicroRTS, with
+     * launch_mode=SERVER), and plays with "ai" until the connection is closed
+     */
+    public static void runClient(AIWithComputationBudget ai, String serverAddress, int port) throws Exception {
+        new SocketWrapperAI(SocketChannel.open(new InetSocketAddress(serverAddress, port)), 0, ai).run();
+    }
+
+
+    public static void runServer(AIWithComputationBudget ai, int socket) throws Exception {
+        if (DEBUG>=1) System.out.println("BinarySocketWrapperAI server is running.");
+        int clientNumber = 0;
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(socket));
+        try {
+            while (true) {
+                new SocketWrapperAI(listener.accept(), clientNumber++, (AIWithComputationBudget)ai.clone()).start();
+            }
+        } finally {
+            listener.close();
+        }
+    }
+
+
+    private static class SocketWrapperAI extends Thread {
+        SocketChannel channel = null;
+        int clientNumber = 0;
+        int time_budget = 100;
+        int iterations_budget = 0;
+        UnitTypeTable utt = null;
+        GameStateDeltaReader stateReader = null;
+        AIWithComputationBudget ai = null;
+
+
+        public SocketWrapperAI(SocketChannel channel, int clientNumber, AIWithComputationBudget a_ai) {
+            this.channel = channel;
+            this.clientNumber = clientNumber;
+            ai = a_ai;
+            if (DEBUG>=1) System.out.println("New connection with client# " + clientNumber + " at " + channel);
+        }
+
+
+        public void run() {
+            try {
+                BinaryConnection connection = new BinaryConnection(channel);
+
+                // Send a welcome message to the client.
+                BinaryConnection.writeString(connection.startMessage(BinaryConnection.MESSAGE_WELCOME),
+                                             "BinarySocketWrapperAI: you are client #" + clientNumber);
+                connection.send();
+
+                // Get messages from the client, one by one
+                while (true) {
+                    ByteBuffer in;
+                    try {
+                        in = connection.receive(-1);
+                    } catch(EOFException e) {
+                        break;
+                    }
+
+                    switch(connection.lastMessageType()) {
+                        case BinaryConnection.MESSAGE_BUDGET:
+                            time_budget = in.getInt();
+                            iterations_budget = in.getInt();
+                            if (DEBUG>=1) System.out.println("setting the budget to: " + time_budget  + ", " + iterations_budget);
+
+                            // reset the AI:
+                            ai.reset();
+                            ai.setTimeBudget(time_budget);
+                            ai.setIterationsBudget(iterations_budget);
+                            connection.sendMessage(BinaryConnection.MESSAGE_ACK);
+                            break;
+
+                        case BinaryConnection.MESSAGE_UTT:
+                        {
+                            String utt_json = BinaryConnection.readString(in);
+                            if (DEBUG>=1) System.out.println("setting the utt to: " + utt_json);
+                            utt = UnitTypeTable.fromJSON(utt_json);
+                            stateReader = new GameStateDeltaReader(utt);
+                            ai.reset(utt);
+                            connection.sendMessage(BinaryConnection.MESSAGE_ACK);
+                            break;
+                        }
+
+                        case BinaryConnection.MESSAGE_GET_ACTION:
+                        {
+                            int player = in.get();
+                            if (DEBUG>=1) System.out.println("getAction for player " + player);
+                            GameState gs = stateReader.read(in);
+                            if (DEBUG>=1) System.out.println(gs);
+
+                            // generate an action and send it through the socket:
+                            PlayerAction pa = ai.getAction(player, gs);
+                            DataOutputStream out = connection.startMessage(BinaryConnection.MESSAGE_ACTION);
+                            out.writeInt(pa.getActions().size());
+                            for(Pair<Unit,UnitAction> uaa:pa.getActions()) {
+                                out.writeLong(uaa.m_a.getID());
+                                uaa.m_b.toBinary(out);
+                            }
+                            connection.send();
+                            if (DEBUG>=1) System.out.println("action sent!");
+                            break;
+                        }
+
+                        case BinaryConnection.MESSAGE_PRE_GAME_ANALYSIS:
+                        {
+                            long milliseconds = in.getLong();
+                            String readWriteFolder = BinaryConnection.readString(in);
+                            if (DEBUG>=1) System.out.println("preGameAnalysis");
+                            GameState gs = stateReader.read(in);
+                            if (DEBUG>=1) System.out.println(gs);
+
+                            if (!readWriteFolder.isEmpty()) {
+                                ai.preGameAnalysis(gs, milliseconds, readWriteFolder);
+                            } else {
+                                ai.preGameAnalysis(gs, milliseconds);
+                            }
+                            connection.sendMessage(BinaryConnection.MESSAGE_ACK);
+                            break;
+                        }
+
+                        case BinaryConnection.MESSAGE_GAME_OVER:
+                        {
+                            int winner = in.get();
+                            if (DEBUG>=1) System.out.println("gameOver " + winner);
+                            ai.gameOver(winner);
+                            connection.sendMessage(BinaryConnection.MESSAGE_ACK);
+                            break;
+                        }
+
+                        default:
+                            throw new IOException("Unknown message type " + connection.lastMessageType());
+                    }
+                }
+            } catch (Exception e) {
+                System.out.println("Error handling client# " + clientNumber + ": " + e);
+                e.printStackTrace();
+            } finally {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                System.out.println("Connection with client# " + clientNumber + " closed");
+            }
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ import java.net.Socket;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
+import util.ByteBufferWriter;
 
 /**
  *
@@ -31,13 +32,22 @@ public class JSONSocketWrapperAI {
     }
     
     
+    /**
+     * Connects to a microRTS instance that hosts games (see rts.MicroRTS, with
+     * launch_mode=SERVER), and plays with "ai" until the connection is closed
+     */
+    public static void runClient(AIWithComputationBudget ai, String serverAddress, int port) throws Exception {
+        new SocketWrapperAI(new Socket(serverAddress, port), 0, ai).run();
+    }
+
+
     public static void runServer(AIWithComputationBudget ai, int socket) throws Exception {
         if (DEBUG>=1) System.out.println("JSONSocketWrapperAI server is running.");
         int clientNumber = 0;
         ServerSocket listener = new ServerSocket(socket);
         try {
             while (true) {
-                new SocketWrapperAI(listener.accept(), clientNumber++, ai).start();
+                new SocketWrapperAI(listener.accept(), clientNumber++, (AIWithComputationBudget)ai.clone()).start();
             }
         } finally {
             listener.close();
@@ -71,6 +81,8 @@ public class JSONSocketWrapperAI {
                 BufferedReader in = new BufferedReader(
                         new InputStreamReader(socket.getInputStream()));
                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                // the actions are written to a buffer, that is reused from frame to frame:
+                ByteBufferWriter buffer = new ByteBufferWriter();
 
                 // Send a welcome message to the client.
                 out.println("JSONSocketWrapperAI: you are client #" + clientNumber);
@@ -115,9 +127,10 @@ public class JSONSocketWrapperAI {
                         
                         // generate an action and send it through the socket:
                         PlayerAction pa = ai.getAction(player, gs);
-                        pa.toJSON(out);
-                        out.append("\n");
-                        out.flush();
+                        buffer.reset();
+                        pa.toJSON(buffer);
+                        buffer.write('\n');
+                        buffer.writeTo(socket.getOutputStream());
                         if (DEBUG>=1) System.out.println("action sent!");
                     } else if (input.startsWith("preGameAnalysis")) {
                         String []tokens = input.split(" ");
@@ -9,17 +9,26 @@ import ai.core.AI;
 import ai.core.AIWithComputationBudget;
 import ai.core.ParameterSpecification;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
 import org.jdom.Element;
 import org.jdom.input.SAXBuilder;
 import rts.GameState;
+import rts.GameStateDeltaWriter;
 import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
 import rts.units.UnitTypeTable;
+import util.ByteBufferWriter;
 import util.XMLWriter;
 
 /**
@@ -31,6 +40,7 @@ public class SocketAI extends AIWithComputationBudget {
     
     public static final int LANGUAGE_XML = 1;
     public static final int LANGUAGE_JSON = 2;
+    public static final int LANGUAGE_BINARY = 3;    // see BinaryConnection
     
     UnitTypeTable utt = null;
             
@@ -40,6 +50,9 @@ public class SocketAI extends AIWithComputationBudget {
     Socket socket = null;
     BufferedReader in_pipe = null;
     PrintWriter out_pipe = null;
+    BinaryConnection binary = null;
+    GameStateDeltaWriter stateWriter = new GameStateDeltaWriter();
+    ByteBufferWriter json_buffer = new ByteBufferWriter();
     
     public SocketAI(UnitTypeTable a_utt) {
         super(100,-1);
@@ -71,6 +84,12 @@ public class SocketAI extends AIWithComputationBudget {
         utt = a_utt;
         try {
             this.socket = socket;
+            if (communication_language == LANGUAGE_BINARY) {
+                binary = new BinaryConnection(socket.getChannel());
+                binary.receive(BinaryConnection.MESSAGE_WELCOME);
+                reset();
+                return;
+            }
             in_pipe = new BufferedReader(new InputStreamReader(socket.getInputStream()));
             out_pipe = new PrintWriter(socket.getOutputStream(), true);
 
@@ -91,7 +110,8 @@ public class SocketAI extends AIWithComputationBudget {
      * @param mi The iterations budget in milliseconds
      * @param a_utt The unit type table.
      * @param a_language The communication layer to use.
-     * @param socket The socket the ai will communicate over.
+     * @param socket The socket the ai will communicate over (if a_language is
+     *               LANGUAGE_BINARY, it must have been created by a SocketChannel).
      */
     public static SocketAI createFromExistingSocket(int mt, int mi, UnitTypeTable a_utt, int a_language, Socket socket) {
         return new SocketAI(mt, mi, a_utt, a_language, socket);
@@ -99,6 +119,16 @@ public class SocketAI extends AIWithComputationBudget {
     
     
     public void connectToServer() throws Exception {
+        if (communication_language == LANGUAGE_BINARY) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(serverAddress, serverPort));
+            socket = channel.socket();
+            binary = new BinaryConnection(channel);
+            binary.receive(BinaryConnection.MESSAGE_WELCOME);
+            if (DEBUG>=1) System.out.println("SocketAI: welcome message received");
+            reset();
+            return;
+        }
+
         // Make connection and initialize streams
         socket = new Socket(serverAddress, serverPort);
         in_pipe = new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -117,6 +147,24 @@ public class SocketAI extends AIWithComputationBudget {
     @Override
     public void reset() {
         try {
+            if (communication_language == LANGUAGE_BINARY) {
+                DataOutputStream out = binary.startMessage(BinaryConnection.MESSAGE_BUDGET);
+                out.writeInt(TIME_BUDGET);
+                out.writeInt(ITERATIONS_BUDGET);
+                binary.send();
+                binary.receive(BinaryConnection.MESSAGE_ACK);
+
+                // the utt is sent only once, and the game states after it only
+                // contain the differences with respect to the previous one:
+                StringWriter utt_json = new StringWriter();
+                utt.toJSON(utt_json);
+                BinaryConnection.writeString(binary.startMessage(BinaryConnection.MESSAGE_UTT), utt_json.toString());
+                binary.send();
+                binary.receive(BinaryConnection.MESSAGE_ACK);
+                stateWriter.reset();
+                if (DEBUG>=1) System.out.println("SocketAI: budget and UTT sent");
+                return;
+            }
             // set the game parameters:
             out_pipe.append("budget " + TIME_BUDGET + " " + ITERATIONS_BUDGET + "\n");
             out_pipe.flush();
@@ -161,9 +209,27 @@ public class SocketAI extends AIWithComputationBudget {
 
     @Override
     public PlayerAction getAction(int player, GameState gs) throws Exception {
+        if (communication_language == LANGUAGE_BINARY) {
+            DataOutputStream out = binary.startMessage(BinaryConnection.MESSAGE_GET_ACTION);
+            out.writeByte(player);
+            stateWriter.write(gs, out);
+            binary.send();
+
+            // parse the action:
+            ByteBuffer in = binary.receive(BinaryConnection.MESSAGE_ACTION);
+            PlayerAction pa = new PlayerAction();
+            int n = in.getInt();
+            for(int i = 0;i<n;i++) {
+                Unit u = gs.getUnit(in.getLong());
+                pa.addUnitAction(u, UnitAction.fromBinary(in, utt));
+            }
+            pa.fillWithNones(gs, player, 10);
+            return pa;
+        }
+
         // send the game state:
-        out_pipe.append("getAction " + player + "\n");
         if (communication_language == LANGUAGE_XML) {
+            out_pipe.append("getAction " + player + "\n");
             XMLWriter w = new XMLWriter(out_pipe, " ");
             gs.toxml(w);
             w.getWriter().append("\n");
@@ -183,9 +249,7 @@ public class SocketAI extends AIWithComputationBudget {
             pa.fillWithNones(gs, player, 10);
             return pa;
         } else if (communication_language == LANGUAGE_JSON) {
-            gs.toJSON(out_pipe);
-            out_pipe.append("\n");
-            out_pipe.flush();
+            sendJSON("getAction " + player, gs);
             
             // wait to get an action:
             //while(!in_pipe.ready());
@@ -205,10 +269,14 @@ public class SocketAI extends AIWithComputationBudget {
     @Override
     public void preGameAnalysis(GameState gs, long milliseconds) throws Exception 
     {
+        if (communication_language == LANGUAGE_BINARY) {
+            binaryPreGameAnalysis(gs, milliseconds, "");
+            return;
+        }
         // send the game state:
-        out_pipe.append("preGameAnalysis " + milliseconds + "\n");
         switch (communication_language) {
             case LANGUAGE_XML:
+                out_pipe.append("preGameAnalysis " + milliseconds + "\n");
                 XMLWriter w = new XMLWriter(out_pipe, " ");
                 gs.toxml(w);
                 w.flush();
@@ -219,9 +287,7 @@ public class SocketAI extends AIWithComputationBudget {
                 break;
                 
             case LANGUAGE_JSON:
-                gs.toJSON(out_pipe);
-                out_pipe.append("\n");
-                out_pipe.flush();
+                sendJSON("preGameAnalysis " + milliseconds, gs);
                 // wait for ack:
                 in_pipe.readLine();
                 break;
@@ -235,10 +301,14 @@ public class SocketAI extends AIWithComputationBudget {
     @Override
     public void preGameAnalysis(GameState gs, long milliseconds, String readWriteFolder) throws Exception 
     {
+        if (communication_language == LANGUAGE_BINARY) {
+            binaryPreGameAnalysis(gs, milliseconds, readWriteFolder);
+            return;
+        }
         // send the game state:
-        out_pipe.append("preGameAnalysis " + milliseconds + "  \""+readWriteFolder+"\"\n");
         switch (communication_language) {
             case LANGUAGE_XML:
+                out_pipe.append("preGameAnalysis " + milliseconds + "  \""+readWriteFolder+"\"\n");
                 XMLWriter w = new XMLWriter(out_pipe, " ");
                 gs.toxml(w);
                 w.flush();
@@ -249,9 +319,7 @@ public class SocketAI extends AIWithComputationBudget {
                 break;
                 
             case LANGUAGE_JSON:
-                gs.toJSON(out_pipe);
-                out_pipe.append("\n");
-                out_pipe.flush();
+                sendJSON("preGameAnalysis " + milliseconds + "  \""+readWriteFolder+"\"", gs);
                 // wait for ack:
                 in_pipe.readLine();
                 break;
@@ -262,9 +330,43 @@ public class SocketAI extends AIWithComputationBudget {
     }
     
     
+    /**
+     * Sends a command line followed by a game state in JSON, in a single write
+     * (the JSON is written to a buffer that is reused from frame to frame)
+     */
+    void sendJSON(String command, GameState gs) throws Exception {
+        out_pipe.flush();
+        json_buffer.reset();
+        json_buffer.write(command);
+        json_buffer.write('\n');
+        gs.toJSON(json_buffer);
+        json_buffer.write('\n');
+        json_buffer.writeTo(socket.getOutputStream());
+        socket.getOutputStream().flush();
+    }
+
+
+    void binaryPreGameAnalysis(GameState gs, long milliseconds, String readWriteFolder) throws Exception
+    {
+        DataOutputStream out = binary.startMessage(BinaryConnection.MESSAGE_PRE_GAME_ANALYSIS);
+        out.writeLong(milliseconds);
+        BinaryConnection.writeString(out, readWriteFolder);
+        stateWriter.write(gs, out);
+        binary.send();
+        // wait for ack:
+        binary.receive(BinaryConnection.MESSAGE_ACK);
+    }
+    
+    
     @Override
     public void gameOver(int winner) throws Exception
     {
+        if (communication_language == LANGUAGE_BINARY) {
+            binary.startMessage(BinaryConnection.MESSAGE_GAME_OVER).writeByte(winner);
+            binary.send();
+            binary.receive(BinaryConnection.MESSAGE_ACK);
+            return;
+        }
         // send the game state:
         out_pipe.append("gameOver " + winner + "\n");
         out_pipe.flush();
@@ -33,6 +33,15 @@ public class XMLSocketWrapperAI {
     }
     
     
+    /**
+     * Connects to a microRTS instance that hosts games (see rts.MicroRTS, with
+     * launch_mode=SERVER), and plays with "ai" until the connection is closed
+     */
+    public static void runClient(AIWithComputationBudget ai, String serverAddress, int port) throws Exception {
+        new SocketWrapperAI(new Socket(serverAddress, port), 0, ai).run();
+    }
+
+
     public static void runServer(AIWithComputationBudget ai, int socket) throws Exception {
         if (DEBUG>=1) System.out.println("XMLSocketWrapperAI server is running.");
         int clientNumber = 0;
@@ -117,7 +126,6 @@ public class XMLSocketWrapperAI {
                         PlayerAction pa = ai.getAction(player, gs);
                         XMLWriter xml = new XMLWriter(out," ");
                         pa.toxml(xml);
-                        xml.flush();
                         out.append("\n");
                         out.flush();
                         if (DEBUG>=1) System.out.println("action sent!");
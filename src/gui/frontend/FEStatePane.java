@@ -42,6 +42,8 @@ import ai.evaluation.SimpleSqrtEvaluationFunction3;
 import ai.mcts.informedmcts.InformedNaiveMCTS;
 import ai.mcts.mlps.MLPSMCTS;
 import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.naivemcts.ParallelNaiveMCTS;
+import ai.mcts.naivemcts.FlatNaiveMCTS;
 import ai.mcts.uct.UCT;
 import ai.mcts.uct.UCTFirstPlayUrgency;
 import ai.mcts.uct.UCTUnitActions;
@@ -147,6 +149,8 @@ public class FEStatePane extends JPanel {
                    UCTFirstPlayUrgency.class,
                    DownsamplingUCT.class, 
                    NaiveMCTS.class,
+                   ParallelNaiveMCTS.class,
+                   FlatNaiveMCTS.class,
                    BS3_NaiveMCTS.class,
                    MLPSMCTS.class,
                    AHTNAI.class,
@@ -232,6 +236,7 @@ public class FEStatePane extends JPanel {
                             }
                         }
                         pgs.getUnits().clear();
+                        pgs.resetUnitGrid();
                         statePanel.repaint();
                     }
                 });
@@ -33,6 +33,7 @@ import javax.swing.JTextArea;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
 import javax.swing.text.DefaultCaret;
+import rts.GameMetricsWriter;
 import rts.units.UnitTypeTable;
 import tournaments.FixedOpponentsTournament;
 import tournaments.LoadTournamentAIs;
@@ -67,6 +68,7 @@ public class FETournamentPane extends JPanel {
     JFormattedTextField timeBudgetField = null;
     JFormattedTextField iterationsBudgetField = null;
     JFormattedTextField preAnalysisTimeField = null;
+    JFormattedTextField concurrentGamesField = null;
     
     JComboBox unitTypeTableBox = null;
     JCheckBox fullObservabilityCheckBox = null;
@@ -323,6 +325,7 @@ public class FETournamentPane extends JPanel {
                 timeBudgetField = FEStatePane.addTextField(p2left,"Time Budget:", "100", 5);
                 iterationsBudgetField = FEStatePane.addTextField(p2left,"Iterations Budget:", "-1", 8);
                 preAnalysisTimeField = FEStatePane.addTextField(p2left,"pre-Analisys time budget:", "1000", 8);
+                concurrentGamesField = FEStatePane.addTextField(p2left,"Concurrent games:", "1", 4);
                 p2left.setMaximumSize(new Dimension(1000,1000));    // something sufficiently big for all these options
                 p2.add(p2left);            
             }            
@@ -400,6 +403,7 @@ public class FETournamentPane extends JPanel {
                     int timeBudget = Integer.parseInt(timeBudgetField.getText());
                     int iterationsBudget = Integer.parseInt(iterationsBudgetField.getText());
                     int preAnalysisBudget = Integer.parseInt(preAnalysisTimeField.getText());
+                    int concurrentGames = Integer.parseInt(concurrentGamesField.getText());
                     
                     boolean fullObservability = fullObservabilityCheckBox.isSelected();
                     boolean selfMatches = selfMatchesCheckBox.isSelected();
@@ -418,6 +422,7 @@ public class FETournamentPane extends JPanel {
                     file.mkdir();
                     String tournamentfolder = file.getName();
                     final File fileToUse = new File(tournamentfolder + "/tournament.csv");
+                    final String metricsFile = tournamentfolder + "/games.csv";
                     final String tracesFolder = (tracesCheckBox.isSelected() ? tournamentfolder + "/traces":null);
                                                             
                     if (tournamentType.equals(TOURNAMENT_ROUNDROBIN)) {
@@ -431,6 +436,7 @@ public class FETournamentPane extends JPanel {
                                     public void run() {
                                         try {
                                             Writer writer = new FileWriter(fileToUse);
+                                            GameMetricsWriter metricsWriter = GameMetricsWriter.open(metricsFile);
                                             Writer writerProgress = new JTextAreaWriter(tournamentProgressTextArea);
                                             RoundRobinTournament.runTournament(selectedAIs, -1, maps, 
                                                                                iterations, maxGameLength, timeBudget, iterationsBudget, 
@@ -438,8 +444,9 @@ public class FETournamentPane extends JPanel {
                                                                                fullObservability, selfMatches, timeOutCheck, gcCheck, preGameAnalysis, 
                                                                                utt, tracesFolder,
                                                                                writer, writerProgress,
-                                                                               tournamentfolder);
+                                                                               tournamentfolder, concurrentGames, metricsWriter);
                                             writer.close();
+                                            metricsWriter.close();
                                         } catch(Exception e2) {
                                             e2.printStackTrace();
                                         }
@@ -463,6 +470,7 @@ public class FETournamentPane extends JPanel {
                                     public void run() {
                                         try {
                                             Writer writer = new FileWriter(fileToUse);
+                                            GameMetricsWriter metricsWriter = GameMetricsWriter.open(metricsFile);
                                             Writer writerProgress = new JTextAreaWriter(tournamentProgressTextArea);
                                             FixedOpponentsTournament.runTournament(selectedAIs, opponentAIs, maps, 
                                                                                iterations, maxGameLength, timeBudget, iterationsBudget, 
@@ -470,8 +478,9 @@ public class FETournamentPane extends JPanel {
                                                                                fullObservability, timeOutCheck, gcCheck, preGameAnalysis, 
                                                                                utt, tracesFolder,
                                                                                writer, writerProgress,
-                                                                               tournamentfolder);
+                                                                               tournamentfolder, concurrentGames, metricsWriter);
                                             writer.close();
+                                            metricsWriter.close();
                                         } catch(Exception e2) {
                                             e2.printStackTrace();
                                         }
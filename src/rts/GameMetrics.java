@@ -0,0 +1,66 @@
+package rts;
+
+import util.LatencyHistogram;
+
+/**
+ * What happened in a game played by a GameRunner: its result, how long it
+ * took, and how much time each AI took to decide its actions.
+ * @author santi
+ */
+public class GameMetrics {
+    // set by whoever schedules the game (for reporting purposes only):
+    public int iteration = -1;
+    public String map = null;
+
+    public String ai1, ai2;
+    public int cycles = 0;
+    public long wallTime = 0;      // in milliseconds
+    public int winner = -1;
+    public int crashed = -1;       // player whose AI threw an exception, or -1
+    public int timedout = -1;      // player whose AI exceeded its time budget, or -1
+
+    // per player:
+    public LatencyHistogram actionTimes[] = {new LatencyHistogram(), new LatencyHistogram()};
+    public int overBudget[] = {0, 0};
+    public int overTwiceBudget[] = {0, 0};
+    public double overBudgetTime[] = {0, 0};        // in milliseconds
+    public double overTwiceBudgetTime[] = {0, 0};   // in milliseconds
+
+
+    public GameMetrics(String a_ai1, String a_ai2) {
+        ai1 = a_ai1;
+        ai2 = a_ai2;
+    }
+
+
+    /**
+     * Records the time taken by a call to getAction
+     * @param player
+     * @param nanos
+     * @param timeBudget in milliseconds
+     */
+    public void addActionTime(int player, long nanos, int timeBudget) {
+        actionTimes[player].add(nanos);
+        long millis = nanos/1000000;
+        if (millis>timeBudget) {
+            overBudget[player]++;
+            overBudgetTime[player] += millis;
+            if (millis>timeBudget*2) {
+                overTwiceBudget[player]++;
+                overTwiceBudgetTime[player] += millis;
+            }
+        }
+    }
+
+
+    /**
+     * Describes the time usage of one of the AIs in a single line (times in milliseconds)
+     * @param player
+     * @return
+     */
+    public String timeUsageString(int player) {
+        return "average:  " + actionTimes[player].getMean() +
+               ", # times over budget: " + overBudget[player] + " (avg " + (overBudgetTime[player]/overBudget[player]) +
+               ") , # times over 2*budget: " + overTwiceBudget[player] + " (avg " + (overTwiceBudgetTime[player]/overTwiceBudget[player]) + ")";
+    }
+}
@@ -0,0 +1,122 @@
+package rts;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import util.LatencyHistogram;
+
+/**
+ * Writes the GameMetrics of a sequence of games, one line per game, as soon
+ * as each game ends, either as CSV (with a header line), or as JSON lines.
+ * Several threads can write to the same GameMetricsWriter.
+ * @author santi
+ */
+public class GameMetricsWriter {
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSONL = 1;
+
+    static final String COLUMNS[] = {"iteration", "map", "ai1", "ai2", "cycles", "wall_time_ms", "winner", "crashed", "timedout"};
+    static final String PLAYER_COLUMNS[] = {"actions", "mean_ms", "p50_ms", "p99_ms", "max_ms", "over_budget", "over_twice_budget"};
+
+    Writer w;
+    int format;
+    boolean headerWritten = false;
+
+
+    public GameMetricsWriter(Writer a_w, int a_format) {
+        w = a_w;
+        format = a_format;
+    }
+
+
+    /**
+     * Creates a writer for a file, in JSON lines format if its name ends in
+     * ".jsonl" or ".json", and in CSV otherwise
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static GameMetricsWriter open(String fileName) throws IOException {
+        int format = (fileName.endsWith(".jsonl") || fileName.endsWith(".json") ? FORMAT_JSONL:FORMAT_CSV);
+        return new GameMetricsWriter(new FileWriter(fileName), format);
+    }
+
+
+    public synchronized void write(GameMetrics m) throws IOException {
+        List<String> names = columnNames();
+        List<Object> values = new ArrayList<>();
+        values.add(m.iteration);
+        values.add(m.map);
+        values.add(m.ai1);
+        values.add(m.ai2);
+        values.add(m.cycles);
+        values.add(m.wallTime);
+        values.add(m.winner);
+        values.add(m.crashed);
+        values.add(m.timedout);
+        for(int player = 0;player<2;player++) {
+            LatencyHistogram h = m.actionTimes[player];
+            values.add(h.getCount());
+            values.add(h.getMean());
+            values.add(h.getPercentile(0.5));
+            values.add(h.getPercentile(0.99));
+            values.add(h.getMax());
+            values.add(m.overBudget[player]);
+            values.add(m.overTwiceBudget[player]);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (format==FORMAT_CSV) {
+            if (!headerWritten) {
+                sb.append(String.join(",", names)).append("\n");
+                headerWritten = true;
+            }
+            for(int i = 0;i<values.size();i++) {
+                if (i>0) sb.append(",");
+                Object v = values.get(i);
+                if (v==null) {
+                    // empty field
+                } else if (v instanceof String) {
+                    sb.append("\"").append(((String)v).replace("\"", "\"\"")).append("\"");
+                } else {
+                    sb.append(v);
+                }
+            }
+        } else {
+            sb.append("{");
+            for(int i = 0;i<values.size();i++) {
+                if (i>0) sb.append(",");
+                sb.append("\"").append(names.get(i)).append("\":");
+                Object v = values.get(i);
+                if (v==null) {
+                    sb.append("null");
+                } else if (v instanceof String) {
+                    sb.append("\"").append(((String)v).replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+                } else {
+                    sb.append(v);
+                }
+            }
+            sb.append("}");
+        }
+        sb.append("\n");
+        w.write(sb.toString());
+        w.flush();
+    }
+
+
+    public synchronized void close() throws IOException {
+        w.close();
+    }
+
+
+    static List<String> columnNames() {
+        List<String> names = new ArrayList<>();
+        for(String c:COLUMNS) names.add(c);
+        for(int player = 0;player<2;player++) {
+            for(String c:PLAYER_COLUMNS) names.add("ai" + (player+1) + "_" + c);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,235 @@
+package rts;
+
+import ai.core.AI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays games between two AIs to completion, as fast as the AIs allow (no
+ * rendering and no waiting between cycles), recording GameMetrics for each.
+ * The same GameRunner can be used to play several games at the same time.
+ * @author santi
+ */
+public class GameRunner {
+
+    public interface GameListener {
+        /**
+         * Called after each game cycle (e.g., to visualize the game)
+         */
+        void cycle(GameState gs);
+    }
+
+    public interface GameHandler {
+        /**
+         * Called once for each game played by runGames
+         */
+        void gameEnded(int index, GameMetrics metrics) throws Exception;
+    }
+
+    UnitTypeTable utt;
+    int maxCycles;
+    int maxInactiveCycles = -1;
+    boolean partiallyObservable = false;
+    int timeBudget = 100;
+    boolean timeoutCheck = false;
+    int timeoutCheckTolerance = 20;
+    boolean catchCrashes = true;
+    boolean runGC = false;
+
+
+    /**
+     * @param a_utt
+     * @param a_maxCycles games that reach this number of cycles end in a tie
+     */
+    public GameRunner(UnitTypeTable a_utt, int a_maxCycles) {
+        utt = a_utt;
+        maxCycles = a_maxCycles;
+    }
+
+
+    /**
+     * Games where no unit action is issued during this number of cycles end
+     * in a tie (-1 to never end games because of inactivity)
+     */
+    public void setMaxInactiveCycles(int a_maxInactiveCycles) {
+        maxInactiveCycles = a_maxInactiveCycles;
+    }
+
+
+    /**
+     * Whether AIs only get to see the part of the game state visible to them
+     */
+    public void setPartiallyObservable(boolean a_partiallyObservable) {
+        partiallyObservable = a_partiallyObservable;
+    }
+
+
+    /**
+     * The time (in milliseconds) that AIs are expected to take for each call to
+     * getAction (used to count the number of times they go over budget)
+     */
+    public void setTimeBudget(int a_timeBudget) {
+        timeBudget = a_timeBudget;
+    }
+
+
+    /**
+     * If "timeoutCheck" is true, an AI that takes more than timeBudget + "tolerance"
+     * milliseconds in a call to getAction loses the game
+     */
+    public void setTimeoutCheck(boolean a_timeoutCheck, int tolerance) {
+        timeoutCheck = a_timeoutCheck;
+        timeoutCheckTolerance = tolerance;
+    }
+
+
+    /**
+     * If "catchCrashes" is true, an AI that throws an exception loses the game.
+     * Otherwise, the exception is thrown by "play".
+     */
+    public void setCatchCrashes(boolean a_catchCrashes) {
+        catchCrashes = a_catchCrashes;
+    }
+
+
+    /**
+     * Whether to call the garbage collector right before each call to getAction
+     * (so that AIs are not charged for the garbage generated by their opponents).
+     * Do not use it when playing several games at a time.
+     */
+    public void setRunGC(boolean a_runGC) {
+        runGC = a_runGC;
+    }
+
+
+    public UnitTypeTable getUnitTypeTable() {
+        return utt;
+    }
+
+
+    public GameMetrics play(AI ai1, AI ai2, PhysicalGameState pgs) throws Exception {
+        return play(ai1, ai2, new GameState(pgs.clone(), utt), null, null);
+    }
+
+
+    /**
+     * Plays a game from "gs" (which is modified) until it is over, or until
+     * it reaches maxCycles or maxInactiveCycles, and notifies the AIs of its result.
+     * @param ai1
+     * @param ai2
+     * @param gs
+     * @param trace if not null, the states and actions of the game are added to it
+     * @param listener if not null, it is notified after each cycle
+     * @return
+     * @throws Exception
+     */
+    public GameMetrics play(AI ai1, AI ai2, GameState gs, Trace trace, GameListener listener) throws Exception {
+        GameMetrics metrics = new GameMetrics(ai1.toString(), ai2.toString());
+        AI ais[] = {ai1, ai2};
+        PlayerAction actions[] = new PlayerAction[2];
+        long times[] = new long[2];
+        long start = System.nanoTime();
+        int lastTimeActionIssued = gs.getTime();
+        boolean gameover = false;
+
+        if (trace != null) trace.addEntry(new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime()));
+        do {
+            for(int player = 0;player<2 && metrics.crashed==-1;player++) {
+                if (runGC) System.gc();
+                GameState playerGS = (partiallyObservable ? new PartiallyObservableGameState(gs, player):gs);
+                try {
+                    long AIstart = System.nanoTime();
+                    actions[player] = ais[player].getAction(player, playerGS);
+                    times[player] = System.nanoTime() - AIstart;
+                } catch (Exception e) {
+                    if (!catchCrashes) throw e;
+                    metrics.crashed = player;
+                }
+            }
+            if (metrics.crashed!=-1) break;
+
+            for(int player = 0;player<2;player++) {
+                metrics.addActionTime(player, times[player], timeBudget);
+            }
+            if (timeoutCheck) {
+                if (times[0]/1000000 > timeBudget + timeoutCheckTolerance) {
+                    metrics.timedout = 0;
+                    break;
+                }
+                if (times[1]/1000000 > timeBudget + timeoutCheckTolerance) {
+                    metrics.timedout = 1;
+                    break;
+                }
+            }
+
+            if (trace != null && (!actions[0].isEmpty() || !actions[1].isEmpty())) {
+                TraceEntry te = new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime());
+                te.addPlayerAction(actions[0].clone());
+                te.addPlayerAction(actions[1].clone());
+                trace.addEntry(te);
+            }
+
+            if (gs.issueSafe(actions[0])) lastTimeActionIssued = gs.getTime();
+            if (gs.issueSafe(actions[1])) lastTimeActionIssued = gs.getTime();
+            gameover = gs.cycle();
+            if (listener != null) listener.cycle(gs);
+        } while (!gameover &&
+                 gs.getTime() < maxCycles &&
+                 (maxInactiveCycles < 0 || gs.getTime() - lastTimeActionIssued < maxInactiveCycles));
+        if (trace != null) trace.addEntry(new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime()));
+
+        if (metrics.crashed != -1) {
+            metrics.winner = 1 - metrics.crashed;
+        } else if (metrics.timedout != -1) {
+            metrics.winner = 1 - metrics.timedout;
+        } else {
+            metrics.winner = gs.winner();
+        }
+        metrics.cycles = gs.getTime();
+        metrics.wallTime = (System.nanoTime() - start)/1000000;
+        ai1.gameOver(metrics.winner);
+        ai2.gameOver(metrics.winner);
+        return metrics;
+    }
+
+
+    /**
+     * Plays "games" one after another if "concurrentGames" is 1, or "concurrentGames"
+     * at a time otherwise. In both cases, "handler" is called (from the calling
+     * thread) once for each game, in the same order as in "games".
+     */
+    public static void runGames(List<? extends Callable<GameMetrics>> games, int concurrentGames, GameHandler handler) throws Exception {
+        if (concurrentGames<=1) {
+            for(int i = 0;i<games.size();i++) {
+                handler.gameEnded(i, games.get(i).call());
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrentGames);
+        try {
+            List<Future<GameMetrics>> results = new ArrayList<>();
+            for(Callable<GameMetrics> game:games) {
+                results.add(executor.submit(game));
+            }
+            for(int i = 0;i<games.size();i++) {
+                GameMetrics metrics;
+                try {
+                    metrics = results.get(i).get();
+                } catch(ExecutionException e) {
+                    if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+                    throw e;
+                }
+                handler.gameEnded(i, metrics);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -20,6 +20,8 @@ public class GameSettings {
     private LaunchMode launchMode;
 
     private int serializationType = 1; // Default is JSON
+    private int serverMaxGames = 1;     // games hosted at the same time (see RemoteGameServer)
+    private int serverThreads = 1;
 
     // Maps
     private String mapLocation = "";
@@ -38,7 +40,7 @@ public class GameSettings {
     private GameSettings( LaunchMode launchMode, String serverAddress, int serverPort, 
                           int serializationType, String mapLocation, int maxCycles, 
                           boolean partiallyObservable, int uttVersion, int confictPolicy, 
-                          String AI1, String AI2) {
+                          String AI1, String AI2, int serverMaxGames, int serverThreads) {
         this.launchMode = launchMode;
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
@@ -50,6 +52,8 @@ public class GameSettings {
         this.conflictPolicy = confictPolicy;
         this.AI1 = AI1;
         this.AI2 = AI2;
+        this.serverMaxGames = serverMaxGames;
+        this.serverThreads = serverThreads;
     }
 
     public String getServerAddress() {
@@ -60,6 +64,14 @@ public class GameSettings {
         return serverPort;
     }
 
+    public int getServerMaxGames() {
+        return serverMaxGames;
+    }
+
+    public int getServerThreads() {
+        return serverThreads;
+    }
+
     public int getSerializationType() {
         return serializationType;
     }
@@ -125,11 +137,13 @@ public class GameSettings {
         LaunchMode launchMode = LaunchMode.valueOf(prop.getProperty("launch_mode"));
         String AI1 = prop.getProperty("AI1");
         String AI2 = prop.getProperty("AI2");
+        int serverMaxGames = readIntegerProperty(prop, "server_max_games", 1);
+        int serverThreads = readIntegerProperty(prop, "server_threads", Runtime.getRuntime().availableProcessors());
 
         return new GameSettings(launchMode, serverAddress, serverPort,
                                 serializationType, mapLocation, maxCycles,
                                 partiallyObservable, uttVersion, conflictPolicy, 
-                                AI1, AI2);
+                                AI1, AI2, serverMaxGames, serverThreads);
     }
     
     
@@ -149,6 +163,10 @@ public class GameSettings {
         sb.append("Server Address: ").append( getServerAddress() ).append("\n");
         sb.append("Server Port: ").append( getServerPort() ).append("\n");
         sb.append("Serialization Type: ").append( getSerializationType()).append("\n");
+        if (getServerMaxGames() > 1) {
+            sb.append("Server Max Games: ").append( getServerMaxGames() ).append("\n");
+            sb.append("Server Threads: ").append( getServerThreads() ).append("\n");
+        }
         sb.append("Map Location: ").append( getMapLocation() ).append("\n");
         sb.append("Max Cycles: ").append( getMaxCycles() ).append("\n");
         sb.append("Partially Observable: ").append( isPartiallyObservable() ).append("\n");
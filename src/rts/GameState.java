@@ -10,6 +10,8 @@ import org.jdom.Element;
 import rts.units.Unit;
 import rts.units.UnitType;
 import rts.units.UnitTypeTable;
+import util.ByteBufferWriter;
+import util.JSONReader;
 import util.Pair;
 import util.XMLWriter;
 
@@ -25,9 +27,44 @@ public class GameState {
     
     protected int time = 0;
     protected PhysicalGameState pgs = null;
-    protected HashMap<Unit,UnitActionAssignment> unitActions = new LinkedHashMap<>();
+    protected UnitActionTable unitActions = new UnitActionTable();
     protected UnitTypeTable utt = null;
 
+    /**
+     * Cells that will be used by pending MOVE/PRODUCE actions (cell index to the 
+     * unit executing the action). Built lazily, and kept up to date by issue, cycle
+     * and removeUnit
+     */
+    protected Unit reservedCells[] = null;
+    
+    /**
+     * Changes made to this state since the undo log was started (null if no log 
+     * is being recorded). See {@link #getUndoMark()}
+     */
+    protected UndoLog undoLog = null;
+    
+    /**
+     * Zobrist hash of the units (see {@link #getHash()}), maintained once the hash 
+     * has been requested ("hashing"). The keys of the units that are about to be 
+     * modified are removed from "unitsHash", and the units are kept in "changedUnits" 
+     * until the next call to getHash, which adds their new keys back
+     */
+    protected boolean hashing = false;
+    protected long unitsHash = 0;
+    protected List<Unit> changedUnits = null;
+    
+    /**
+     * Per-player sums of unit terms requested through {@link #getUnitSums(UnitSums.Terms)}
+     * (null if none), which are updated in the same way as the hash
+     */
+    protected List<UnitSums> unitSums = null;
+    
+    /**
+     * Cells observable by each player, requested through {@link #getVisibilityMap(int)}
+     * (null if none), which are updated in the same way as the hash
+     */
+    protected VisibilityMap visibilityMaps[] = null;
+
     /**
      * Initializes the GameState with a PhysicalGameState and a UnitTypeTable
      * @param a_pgs
@@ -51,8 +88,26 @@ public class GameState {
      * @param u
      */
     public void removeUnit(Unit u) {
+        unitRemoved(u);
+        if (undoLog!=null) {
+            int idx = pgs.units.indexOf(u);
+            if (idx>=0) undoLog.unitRemoved(u, idx);
+            if (unitActions.containsKey(u)) snapshotUnitActions();
+        }
         pgs.removeUnit(u);
-        unitActions.remove(u);
+        UnitActionAssignment uaa = unitActions.remove(u);
+        if (uaa!=null) releaseCells(uaa);
+    }
+    
+    
+    /**
+     * Adds a unit to the game
+     * @param u
+     */
+    public void addUnit(Unit u) {
+        pgs.addUnit(u);
+        unitAdded(u);
+        if (undoLog!=null) undoLog.unitAdded(u, pgs.units.size()-1);
     }
     
     /**
@@ -85,7 +140,17 @@ public class GameState {
      * Returns a map with the units and the actions assigned to them
      * @return
      */
-    public HashMap<Unit,UnitActionAssignment> getUnitActions() {
+    public Map<Unit,UnitActionAssignment> getUnitActions() {
+        return unitActions;
+    }
+    
+    /**
+     * Returns the table with the units and the actions assigned to them (the
+     * same object as {@link #getUnitActions()}, with methods that take units 
+     * directly and the hash of the assignments)
+     * @return
+     */
+    public UnitActionTable getUnitActionTable() {
         return unitActions;
     }
     
@@ -167,20 +232,401 @@ public class GameState {
      */
     public boolean free(int x, int y) {
         if (pgs.getTerrain(x, y)!=PhysicalGameState.TERRAIN_NONE) return false;
-        for(Unit u:pgs.units) {
-            if (u.getX()==x && u.getY()==y) return false;
+        if (pgs.getUnitAt(x, y)!=null) return false;
+        if (!pgs.insideMap(x, y)) return true;
+        int idx = x + y*pgs.getWidth();
+        Unit u = getReservedCells()[idx];
+        if (u==null) return true;
+        UnitActionAssignment uaa = unitActions.get(u);
+        if (uaa!=null && reservedCell(u, uaa.action)==idx) return false;
+        // the action assignments were modified from outside, rebuild the reservations:
+        reservedCells = null;
+        return getReservedCells()[idx]==null;
+    }
+    
+    
+    /**
+     * Returns the index of the cell that an action will use once completed 
+     * (the target of a MOVE or PRODUCE action), or -1 if it does not use any
+     * @param u
+     * @param a
+     * @return
+     */
+    int reservedCell(Unit u, UnitAction a) {
+        if (a.type!=UnitAction.TYPE_MOVE &&
+            a.type!=UnitAction.TYPE_PRODUCE) return -1;
+        int d = a.getDirection();
+        if (d<UnitAction.DIRECTION_UP || d>UnitAction.DIRECTION_LEFT) return -1;
+        int x = u.getX() + UnitAction.DIRECTION_OFFSET_X[d];
+        int y = u.getY() + UnitAction.DIRECTION_OFFSET_Y[d];
+        if (!pgs.insideMap(x, y)) return -1;
+        return x + y*pgs.getWidth();
+    }
+    
+    
+    /**
+     * Returns the reserved cell grid, (re)building it if needed
+     * @return
+     */
+    Unit[] getReservedCells() {
+        int n = pgs.getWidth()*pgs.getHeight();
+        if (reservedCells==null || reservedCells.length!=n) {
+            if (undoLog!=null) undoLog.reservedGridReplaced(reservedCells);
+            reservedCells = new Unit[n];
+            for(UnitActionAssignment uaa:unitActions.values()) reserveCells(uaa);
         }
-        for(UnitActionAssignment ua:unitActions.values()) {
-            if (ua.action.type==UnitAction.TYPE_MOVE ||
-                ua.action.type==UnitAction.TYPE_PRODUCE) {
-                Unit u = ua.unit;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_UP && u.getX()==x && u.getY()==y+1) return false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_RIGHT && u.getX()==x-1 && u.getY()==y) return false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_DOWN && u.getX()==x && u.getY()==y-1) return false;
-                if (ua.action.getDirection()==UnitAction.DIRECTION_LEFT && u.getX()==x+1 && u.getY()==y) return false;
+        return reservedCells;
+    }
+    
+    
+    /**
+     * Returns a version of "u" that can be modified in place (see 
+     * {@link PhysicalGameState#getWritableUnit(Unit)}), updating its action 
+     * assignment if the unit had to be copied
+     * @param u
+     * @return
+     */
+    public Unit getWritableUnit(Unit u) {
+        Unit u2 = pgs.getWritableUnit(u);
+        if (u2!=u && unitActions.containsKey(u)) {
+            IdentityHashMap<Unit,Unit> replacements = new IdentityHashMap<>();
+            replacements.put(u, u2);
+            replaceAssignedUnits(replacements);
+        }
+        if (undoLog!=null) undoLog.unitChanged(u2);
+        unitWillChange(u2);
+        return u2;
+    }
+    
+    
+    /**
+     * Notifies that the resources of a player are about to change (so that the
+     * change can be undone)
+     * @param p
+     */
+    void playerWillChange(Player p) {
+        if (undoLog!=null) undoLog.playerChanged(p);
+    }
+    
+    
+    /**
+     * Makes writable (see {@link #getWritableUnit(Unit)}) all the units of a
+     * list of action assignments, updating the assignments in a single pass
+     * @param l the assignments, which are replaced by the updated ones
+     */
+    void makeAssignedUnitsWritable(List<UnitActionAssignment> l) {
+        if (!pgs.isCopyOnWrite()) return;
+        IdentityHashMap<Unit,Unit> replacements = null;
+        for(UnitActionAssignment uaa:l) {
+            Unit u2 = pgs.getWritableUnit(uaa.unit);
+            if (u2!=uaa.unit) {
+                if (replacements==null) replacements = new IdentityHashMap<>();
+                replacements.put(uaa.unit, u2);
             }
         }
-        return true;
+        if (replacements==null) return;
+        replaceAssignedUnits(replacements);
+        ListIterator<UnitActionAssignment> it = l.listIterator();
+        while(it.hasNext()) {
+            UnitActionAssignment uaa = it.next();
+            if (replacements.containsKey(uaa.unit)) it.set(unitActions.get(replacements.get(uaa.unit)));
+        }
+    }
+    
+    
+    /**
+     * Rebuilds the action assignments replacing some units by others, 
+     * preserving the order in which actions were assigned
+     * @param replacements
+     */
+    void replaceAssignedUnits(IdentityHashMap<Unit,Unit> replacements) {
+        for(UnitActionAssignment uaa:unitActions.values()) {
+            Unit u2 = replacements.get(uaa.unit);
+            if (u2!=null) {
+                // (the copies have the same IDs, so they keep the position of the originals)
+                UnitActionAssignment uaa2 = new UnitActionAssignment(u2, uaa.action, uaa.time);
+                uaa2.hash = uaa.hash;
+                unitActions.put(u2, uaa2);
+                if (reservedCells!=null) {
+                    int idx = reservedCell(uaa.unit, uaa.action);
+                    if (idx>=0 && reservedCells[idx]==uaa.unit) reservedCells[idx] = u2;
+                }
+            }
+        }
+    }
+    
+    
+    void reserveCells(UnitActionAssignment uaa) {
+        if (reservedCells==null) return;
+        int idx = reservedCell(uaa.unit, uaa.action);
+        if (idx>=0) {
+            if (undoLog!=null) undoLog.reservedCellChanged(idx, reservedCells[idx]);
+            reservedCells[idx] = uaa.unit;
+        }
+    }
+    
+    
+    void releaseCells(UnitActionAssignment uaa) {
+        if (reservedCells==null) return;
+        int idx = reservedCell(uaa.unit, uaa.action);
+        if (idx>=0 && reservedCells[idx]==uaa.unit) {
+            if (undoLog!=null) undoLog.reservedCellChanged(idx, uaa.unit);
+            reservedCells[idx] = null;
+        }
+    }
+    
+    
+    /**
+     * Replaces the action assignment table by a copy, logging the previous one.
+     * Used before removing assignments while recording the undo log, since 
+     * reinserting them later would not preserve their order
+     */
+    void snapshotUnitActions() {
+        undoLog.assignmentsReplaced(unitActions);
+        unitActions = new UnitActionTable(unitActions);
+    }
+    
+    
+    /**
+     * Starts recording an undo log (if it was not being recorded already), and 
+     * returns a mark that identifies the current point of the log. All the changes 
+     * made from then on through issue, cycle, removeUnit, etc. can be reverted by 
+     * calling {@link #undo(int)} with the mark. This lets search algorithms descend 
+     * and rewind a single state in place, instead of cloning it for each node.
+     * 
+     * While recording, units must only be modified through the GameState, and
+     * assignments must not be modified through {@link #getUnitActions()}.
+     * States obtained with {@link #cloneIssue(PlayerAction)} share the map with 
+     * this state, and so they should not be cycled.
+     * @return
+     */
+    public int getUndoMark() {
+        if (undoLog==null) {
+            if (hashing) updateUnitsHash();
+            if (unitSums!=null) {
+                for(UnitSums s:unitSums) s.update();
+            }
+            if (visibilityMaps!=null) {
+                for(VisibilityMap m:visibilityMaps) if (m!=null) m.update();
+            }
+            if (pgs.isCopyOnWrite()) {
+                // units shared with other states cannot be restored in place:
+                IdentityHashMap<Unit,Unit> replacements = pgs.makeAllUnitsWritable();
+                if (!replacements.isEmpty() && !unitActions.isEmpty()) replaceAssignedUnits(replacements);
+            }
+            undoLog = new UndoLog();
+        }
+        return undoLog.size();
+    }
+    
+    
+    /**
+     * Reverts all the changes made since "mark" was obtained with {@link #getUndoMark()}
+     * @param mark
+     */
+    public void undo(int mark) {
+        List<UndoLog.Change> changes = undoLog.changes;
+        for(int i = changes.size()-1;i>=mark;i--) {
+            UndoLog.apply(changes.get(i), this);
+        }
+        changes.subList(mark, changes.size()).clear();
+    }
+    
+    
+    /**
+     * Returns the changes made since "mark" was obtained with {@link #getUndoMark()}.
+     * After undoing them, they can be reapplied with {@link #redo(UndoLog)}
+     * @param mark
+     * @return
+     */
+    public UndoLog getChangesSince(int mark) {
+        return undoLog.subLog(mark);
+    }
+    
+    
+    /**
+     * Reapplies a set of changes obtained with {@link #getChangesSince(int)} and 
+     * undone afterwards. The state must be the same it was when the changes were
+     * first made. The changes are recorded in the undo log, so they can be undone
+     * again.
+     * @param changes
+     */
+    public void redo(UndoLog changes) {
+        getUndoMark();
+        for(UndoLog.Change c:changes.changes) {
+            UndoLog.apply(c, this);
+            undoLog.changes.add(c);
+        }
+    }
+    
+    
+    /**
+     * Stops recording the undo log, discarding it
+     */
+    public void stopUndoLog() {
+        undoLog = null;
+    }
+    
+    
+    /**
+     * Returns a 64 bit Zobrist hash of the state: units (type, owner, position, hit 
+     * points and resources), players' resources, pending action assignments and
+     * game time (see {@link Zobrist}). The first call computes it from scratch, and 
+     * from then on it is updated incrementally as the state changes through issue, 
+     * cycle, removeUnit, etc. (and clones of the state inherit it). So, as with the 
+     * undo log, units must then only be modified through the GameState.
+     * @return
+     */
+    public long getHash() {
+        if (!hashing) {
+            unitsHash = 0;
+            for(Unit u:pgs.getUnits()) unitsHash ^= Zobrist.unitKey(u);
+            changedUnits = new ArrayList<>();
+            hashing = true;
+        } else {
+            updateUnitsHash();
+        }
+        long h = unitsHash ^ unitActions.getHash() ^ Zobrist.timeKey(time);
+        for(Player p:pgs.getPlayers()) h ^= Zobrist.playerKey(p);
+        return h;
+    }
+    
+    
+    /**
+     * Adds the keys of the units modified since the last call back to the hash
+     */
+    void updateUnitsHash() {
+        for(Unit u:changedUnits) unitsHash ^= Zobrist.unitKey(u);
+        changedUnits.clear();
+    }
+    
+    
+    /**
+     * Notifies that a unit is about to be modified (so that the hash and the
+     * unit sums can be updated)
+     * @param u
+     */
+    void unitWillChange(Unit u) {
+        if (unitSums!=null) {
+            for(int i = 0;i<unitSums.size();i++) unitSums.get(i).unitWillChange(u);
+        }
+        if (visibilityMaps!=null) {
+            for(VisibilityMap m:visibilityMaps) if (m!=null) m.unitWillChange(u);
+        }
+        if (!hashing) return;
+        for(int i = 0;i<changedUnits.size();i++) {
+            if (changedUnits.get(i)==u) return;
+        }
+        unitsHash ^= Zobrist.unitKey(u);
+        changedUnits.add(u);
+    }
+    
+    
+    void unitAdded(Unit u) {
+        if (unitSums!=null) {
+            for(int i = 0;i<unitSums.size();i++) unitSums.get(i).unitAdded(u);
+        }
+        if (visibilityMaps!=null) {
+            for(VisibilityMap m:visibilityMaps) if (m!=null) m.unitAdded(u);
+        }
+        if (hashing) unitsHash ^= Zobrist.unitKey(u);
+    }
+    
+    
+    void unitRemoved(Unit u) {
+        if (unitSums!=null) {
+            for(int i = 0;i<unitSums.size();i++) unitSums.get(i).unitRemoved(u);
+        }
+        if (visibilityMaps!=null) {
+            for(VisibilityMap m:visibilityMaps) if (m!=null) m.unitRemoved(u);
+        }
+        if (!hashing) return;
+        for(int i = 0;i<changedUnits.size();i++) {
+            if (changedUnits.get(i)==u) {
+                // its key was already removed:
+                changedUnits.remove(i);
+                return;
+            }
+        }
+        unitsHash ^= Zobrist.unitKey(u);
+    }
+    
+    
+    /**
+     * Returns per-player sums of the terms defined by "terms" over the units
+     * (for example, the terms of an evaluation function). The first call
+     * computes them going through all the units, and from then on they are
+     * updated incrementally as the state changes through issue, cycle,
+     * removeUnit, etc., and copies of the state inherit them. So, as with the
+     * hash, units must then only be modified through the GameState (units
+     * added or removed directly to the PhysicalGameState are detected, and
+     * cause the sums to be recomputed).
+     * @param terms
+     * @return
+     */
+    public UnitSums getUnitSums(UnitSums.Terms terms) {
+        if (unitSums==null) {
+            unitSums = new ArrayList<>(1);
+        } else {
+            for(int i = 0;i<unitSums.size();i++) {
+                if (unitSums.get(i).definition==terms) return unitSums.get(i);
+            }
+        }
+        UnitSums s = new UnitSums(terms, this);
+        unitSums.add(s);
+        return s;
+    }
+    
+    
+    /**
+     * Returns the cells observable by "player". The first call computes them
+     * going through the units of the player, and from then on they are
+     * updated incrementally as the state changes through issue, cycle,
+     * removeUnit, etc., and copies of the state made with {@link #clone()}
+     * inherit them (search algorithms do not need them, so the cheaper copies
+     * do not). As with the hash, units must then only be modified through the
+     * GameState.
+     * @param player
+     * @return
+     */
+    public VisibilityMap getVisibilityMap(int player) {
+        if (visibilityMaps==null) {
+            visibilityMaps = new VisibilityMap[Math.max(2, player+1)];
+        } else if (player >= visibilityMaps.length) {
+            visibilityMaps = Arrays.copyOf(visibilityMaps, player+1);
+        }
+        if (visibilityMaps[player]==null) visibilityMaps[player] = new VisibilityMap(player, this);
+        return visibilityMaps[player];
+    }
+    
+    
+    /**
+     * Makes "gs" (a copy of this state) inherit the visibility maps of this state
+     * @param gs
+     */
+    void copyVisibilityTo(GameState gs) {
+        if (visibilityMaps==null) return;
+        gs.visibilityMaps = new VisibilityMap[visibilityMaps.length];
+        for(int i = 0;i<visibilityMaps.length;i++) {
+            if (visibilityMaps[i]!=null) gs.visibilityMaps[i] = visibilityMaps[i].copy(gs);
+        }
+    }
+    
+    
+    /**
+     * Makes "gs" (a copy of this state) inherit the hash and the unit sums of this state
+     * @param gs
+     */
+    void copyHashTo(GameState gs) {
+        if (unitSums!=null) {
+            gs.unitSums = new ArrayList<>(unitSums.size());
+            for(UnitSums s:unitSums) gs.unitSums.add(s.copy(gs));
+        }
+        if (!hashing) return;
+        updateUnitsHash();
+        gs.hashing = true;
+        gs.unitsHash = unitsHash;
+        gs.changedUnits = new ArrayList<>();
     }
     
    
@@ -225,6 +671,7 @@ public class GameState {
      */
     public boolean issue(PlayerAction pa) {
         boolean returnValue = false;
+        if (undoLog!=null) undoLog.timeChanged(time, unitCancelationCounter);
         
         for(Pair<Unit,UnitAction> p:pa.actions) {
 //            if (p.m_a==null) {
@@ -236,9 +683,12 @@ public class GameState {
 //            } else 
 //            {
                 // check for conflicts:
-                ResourceUsage ru = p.m_b.resourceUsage(p.m_a, pgs);
-                for(UnitActionAssignment uaa:unitActions.values()) {
-                    if (!uaa.action.resourceUsage(uaa.unit, pgs).consistentWith(ru, this)) {
+                UnitAction issued = p.m_b;
+                ResourceUsage ru = issued.resourceUsage(p.m_a, pgs);
+                int positionSlot = conflictingSlot(ru);
+                for(int slot = nextConflictCandidate(0, positionSlot);slot>=0;slot = nextConflictCandidate(slot+1, positionSlot)) {
+                    UnitActionAssignment uaa = unitActions.assignments[slot];
+                    if (!uaa.getResourceUsage(pgs).consistentWith(ru, this)) {
                         // conflicting actions:
                         if (uaa.time==time) {
                             // The actions were issued in the same game cycle, so it's normal
@@ -265,7 +715,11 @@ public class GameState {
                             int duration2 = p.m_b.ETA(p.m_a);
                             if (cancel_old) {
 //                                System.out.println("Old action canceled: " + uaa.unit.getID() + ", " + uaa.action);
-                                uaa.action = new UnitAction(UnitAction.TYPE_NONE,Math.min(duration1,duration2));
+                                // (the assignment is replaced rather than modified, since it might be shared with other states)
+                                releaseCells(uaa);
+                                UnitActionAssignment canceled = new UnitActionAssignment(uaa.unit, new UnitAction(UnitAction.TYPE_NONE,Math.min(duration1,duration2)), uaa.time);
+                                if (undoLog!=null) undoLog.assignmentChanged(uaa.unit, uaa);
+                                unitActions.put(uaa.unit, canceled);
                             }
                             if (cancel_new) {
 //                                System.out.println("New action canceled: " + p.m_a.getID() + ", " + p.m_b);
@@ -276,11 +730,11 @@ public class GameState {
                             // (probably in one of the AIs)
                             System.err.println("Inconsistent actions were executed!");
                             System.err.println(uaa);
-                            System.err.println("  Resources: " + uaa.action.resourceUsage(uaa.unit, pgs));
+                            System.err.println("  Resources: " + uaa.getResourceUsage(pgs));
                             System.err.println(p.m_a + " assigned action " + p.m_b + " at time " + time);
                             System.err.println("  Resources: " + ru);
                             System.err.println("Player resources: " + pgs.getPlayer(0).getResources() + ", " + pgs.getPlayer(1).getResources());
-                            System.err.println("Resource Consistency: " + uaa.action.resourceUsage(uaa.unit, pgs).consistentWith(ru, this));
+                            System.err.println("Resource Consistency: " + uaa.getResourceUsage(pgs).consistentWith(ru, this));
                             
                             try {
                                 throw new Exception("dummy");   // just to be able to print the stack trace
@@ -295,7 +749,12 @@ public class GameState {
                 }
                 
                 UnitActionAssignment uaa = new UnitActionAssignment(p.m_a, p.m_b, time);
-                unitActions.put(p.m_a,uaa);
+                // (the resource usage of shared actions is not stored in them, so it is not looked up again):
+                if (p.m_b==issued) uaa.resourceUsage = ru;
+                UnitActionAssignment old = unitActions.put(p.m_a,uaa);
+                if (undoLog!=null) undoLog.assignmentChanged(p.m_a, old);
+                if (old!=null) releaseCells(old);
+                reserveCells(uaa);
                 if (p.m_b.type!=UnitAction.TYPE_NONE) returnValue = true;
 //                System.out.println("Issuing action " + p.m_b + " to " + p.m_a);                
 //            }
@@ -304,6 +763,55 @@ public class GameState {
     }
     
     
+    /**
+     * Returns the slot (in the action table) of the assignment that will use the 
+     * position used by an action with resource usage "ru" (found through the reserved 
+     * cell grid), or -1 if there is none. Returns -2 if the action might be inconsistent
+     * with any assignment: if it uses several positions, or more resources than a 
+     * player has.
+     * @param ru
+     * @return
+     */
+    int conflictingSlot(ResourceUsage ru) {
+        for(int i = 0;i<ru.resourcesUsed.length;i++) {
+            if (ru.resourcesUsed[i]>0 && 
+                ru.resourcesUsed[i]>pgs.getPlayer(i).getResources()) return -2;
+        }
+        if (ru.nPositionsUsed==0 || unitActions.isEmpty()) return -1;
+        if (ru.nPositionsUsed>1) return -2;
+        int pos = ru.nextPositionUsed(0);
+        Unit cells[] = getReservedCells();
+        if (pos<0 || pos>=cells.length || cells[pos]==null) return -1;
+        int slot = unitActions.slot(cells[pos]);
+        if (slot>=0 && reservedCell(cells[pos], unitActions.assignments[slot].action)==pos) return slot;
+        return -1;
+    }
+    
+    
+    /**
+     * Returns the first slot from "from" on with an assignment that might be 
+     * inconsistent with an action, in the order in which they have to be checked:
+     * the one that uses the same position ("positionSlot", see conflictingSlot), 
+     * and those that use resources. Only the assignments in these slots need to 
+     * be checked.
+     * @param from
+     * @param positionSlot
+     * @return the slot, or -1 if there are no more
+     */
+    int nextConflictCandidate(int from, int positionSlot) {
+        if (positionSlot==-2) {
+            while(from<unitActions.end) {
+                if (unitActions.assignments[from]!=null) return from;
+                from++;
+            }
+            return -1;
+        }
+        int next = unitActions.producing.nextSetBit(from);
+        if (positionSlot>=from && (next<0 || positionSlot<next)) return positionSlot;
+        return next;
+    }
+    
+    
     /**
      * Issues a player action, with additional checks for validity. This function is slower
      * than "issue", and should not be used internally by any AI. It is used externally in the main loop
@@ -330,7 +838,7 @@ public class GameState {
             }
             
             // get the unit that corresponds to that action (since the state might have been closed):
-            if (pgs.units.indexOf(p.m_a)==-1) {
+            if (pgs.getUnitAt(p.m_a.getX(), p.m_a.getY())!=p.m_a) {
                 boolean found = false;
                 for(Unit u:pgs.units) {
                     if (u.getClass()==p.m_a.getClass() &&
@@ -413,7 +921,7 @@ public class GameState {
         for(Unit u2:pgs.getUnits()) {
             UnitActionAssignment uaa = unitActions.get(u2);
             if (uaa!=null) {
-                ResourceUsage ru = uaa.action.resourceUsage(u2, pgs);
+                ResourceUsage ru = uaa.getResourceUsage(pgs);
                 empty.r.merge(ru);
             }
         }
@@ -441,7 +949,7 @@ public class GameState {
 //            if (u.getPlayer()==pID) {
                 UnitActionAssignment uaa = unitActions.get(u);
                 if (uaa!=null) {
-                    ResourceUsage ru = uaa.action.resourceUsage(u, pgs);
+                    ResourceUsage ru = uaa.getResourceUsage(pgs);
                     empty.r.merge(ru);
                 }
 //            }
@@ -476,7 +984,7 @@ public class GameState {
 //            if (u.getPlayer()==pID) {
                 UnitActionAssignment uaa = unitActions.get(u);
                 if (uaa!=null) {
-                    ResourceUsage ru = uaa.action.resourceUsage(u, pgs);
+                    ResourceUsage ru = uaa.getResourceUsage(pgs);
                     empty.r.merge(ru);
                 }
 //            }
@@ -526,16 +1034,25 @@ public class GameState {
      * @return whether the game was over
      */
     public boolean cycle() {
+        if (undoLog!=null) undoLog.timeChanged(time, unitCancelationCounter);
         time++;
         
-        List<UnitActionAssignment> readyToExecute = new LinkedList<UnitActionAssignment>();
-        for(UnitActionAssignment uaa:unitActions.values()) {
-            if (uaa.action.ETA(uaa.unit)+uaa.time<=time) readyToExecute.add(uaa);
+        List<UnitActionAssignment> readyToExecute = null;
+        for(int i = 0;i<unitActions.end;i++) {
+            UnitActionAssignment uaa = unitActions.assignments[i];
+            if (uaa!=null && uaa.action.ETA(uaa.unit)+uaa.time<=time) {
+                if (readyToExecute==null) readyToExecute = new ArrayList<>();
+                readyToExecute.add(uaa);
+            }
         }
+        if (readyToExecute==null) return gameover();
+        makeAssignedUnitsWritable(readyToExecute);
+        if (undoLog!=null) snapshotUnitActions();
                 
         // execute the actions:
         for(UnitActionAssignment uaa:readyToExecute) {
             unitActions.remove(uaa.unit);
+            releaseCells(uaa);
             
 //            System.out.println("Executing action for " + u + " issued at time " + uaa.time + " with duration " + uaa.action.ETA(uaa.unit));
             
@@ -552,10 +1069,13 @@ public class GameState {
     public void forceExecuteAllActions() {
         List<UnitActionAssignment> readyToExecute = new LinkedList<UnitActionAssignment>();
         for(UnitActionAssignment uaa:unitActions.values()) readyToExecute.add(uaa);
+        makeAssignedUnitsWritable(readyToExecute);
+        if (undoLog!=null) snapshotUnitActions();
                 
         // execute all the actions:
         for(UnitActionAssignment uaa:readyToExecute) {
             unitActions.remove(uaa.unit);
+            releaseCells(uaa);
             uaa.action.execute(uaa.unit,this);
         }
     }
@@ -567,24 +1087,65 @@ public class GameState {
         GameState gs = new GameState(pgs.clone(), utt);
         gs.time = time;
         gs.unitCancelationCounter = unitCancelationCounter;
+        copyHashTo(gs);
+        copyVisibilityTo(gs);
+        if (unitActions.isEmpty()) return gs;
+        // map each unit to its copy (the cloned unit list preserves the order):
+        IdentityHashMap<Unit,Unit> copies = new IdentityHashMap<>();
+        Iterator<Unit> it = gs.pgs.getUnits().iterator();
+        for(Unit u:pgs.getUnits()) copies.put(u, it.next());
+        gs.unitActions = new UnitActionTable(unitActions.size());
         for(UnitActionAssignment uaa:unitActions.values()) {
-            Unit u = uaa.unit;
-            int idx = pgs.getUnits().indexOf(u);
-            if (idx==-1) {
+            Unit u2 = copies.get(uaa.unit);
+            if (u2==null) {
                 System.out.println("Problematic game state:");
                 System.out.println(this);
                 System.out.println("Problematic action:");
                 System.out.println(uaa);
                 throw new Error("Inconsistent game state during cloning...");
             } else {
-                Unit u2 = gs.pgs.getUnits().get(idx);
-                gs.unitActions.put(u2,new UnitActionAssignment(u2, uaa.action, uaa.time));
+                UnitActionAssignment uaa2 = new UnitActionAssignment(u2, uaa.action, uaa.time);
+                uaa2.hash = uaa.hash;
+                gs.unitActions.put(u2,uaa2);
             }                
         }
         return gs;
     }
     
     
+    /**
+     * Clones the game state lazily: if this state was itself created with
+     * cloneCopyOnWrite, the new state shares the unit objects with it, and they 
+     * are only copied when modified (see {@link PhysicalGameState#cloneCopyOnWrite()}).
+     * This is much cheaper than {@link #clone()} when only a small part of the 
+     * state is going to change, as in search trees and playouts. The units of 
+     * other states (such as the actual game state) are copied, so this state is 
+     * never modified. The units of the new state should only be modified through 
+     * the GameState (issue, cycle, etc.) and {@link #getWritableUnit(Unit)}, and 
+     * unit objects may be replaced by copies the first time they are modified. 
+     * If this state is recording an undo log, this is equivalent to {@link #clone()}.
+     * @return
+     */
+    public GameState cloneCopyOnWrite() {
+        // units of a state recording an undo log are modified in place:
+        if (undoLog!=null) return clone();
+        GameState gs = new GameState(pgs.cloneCopyOnWrite(), utt);
+        gs.time = time;
+        gs.unitCancelationCounter = unitCancelationCounter;
+        gs.unitActions = new UnitActionTable(unitActions);
+        if (reservedCells!=null) gs.reservedCells = reservedCells.clone();
+        if (!pgs.isCopyOnWrite() && !unitActions.isEmpty()) {
+            // the units of this state were copied (the cloned unit list preserves the order):
+            IdentityHashMap<Unit,Unit> copies = new IdentityHashMap<>();
+            Iterator<Unit> it = gs.pgs.getUnits().iterator();
+            for(Unit u:pgs.getUnits()) copies.put(u, it.next());
+            gs.replaceAssignedUnits(copies);
+        }
+        copyHashTo(gs);
+        return gs;
+    }
+    
+    
     /**
      * This method does a quick clone, that shares the same PGS, but different unit assignments
      * @param pa
@@ -595,6 +1156,8 @@ public class GameState {
         gs.time = time;
         gs.unitCancelationCounter = unitCancelationCounter;
         gs.unitActions.putAll(unitActions);
+        if (reservedCells!=null) gs.reservedCells = reservedCells.clone();
+        copyHashTo(gs);
         gs.issue(pa);
         return gs;        
     }
@@ -615,6 +1178,9 @@ public class GameState {
             if (u.getHitPoints() == u.getType().hp) u.setHitPoints(new_type.hp);
             u.setType(new_type);
         }
+        gs.hashing = false;
+        gs.unitSums = null;
+        gs.visibilityMaps = null;
         return gs;
     }
     
@@ -630,7 +1196,7 @@ public class GameState {
         for(Unit u : pgs.getUnits()) {
             UnitActionAssignment uaa = unitActions.get(u);
             if (uaa!=null) {
-                ResourceUsage ru = uaa.action.resourceUsage(u, pgs);
+                ResourceUsage ru = uaa.getResourceUsage(pgs);
                 base_ru.merge(ru);
             }
         }
@@ -671,19 +1237,13 @@ public class GameState {
      * @return
      */
     public boolean integrityCheck() {
-        List<Unit> alreadyUsed = new LinkedList<Unit>();
+        // (the action table cannot assign two actions to the same unit)
         for(UnitActionAssignment uaa:unitActions.values()) {
             Unit u = uaa.unit;
-            int idx = pgs.getUnits().indexOf(u);
-            if (idx==-1) {
+            if (pgs.getUnitAt(u.getX(), u.getY())!=u) {
                 System.err.println("integrityCheck: unit does not exist!");
                 return false;
             }            
-            if (alreadyUsed.contains(u)) {
-                System.err.println("integrityCheck: two actions to the same unit!");
-                return false;
-            }
-            alreadyUsed.add(u);
         }
         return true;
     }
@@ -712,13 +1272,8 @@ public class GameState {
     public String toString() {
         String tmp = "ObservableGameState: " + time + "\n";
         for(Player p:pgs.getPlayers()) tmp += "player " + p.ID + ": " + p.getResources() + "\n";
-        for(Unit u:unitActions.keySet()) {
-            UnitActionAssignment ua = unitActions.get(u);
-            if (ua==null) {
-                tmp += "    " + u + " -> null (ERROR!)\n";
-            } else {
-                tmp += "    " + u + " -> " + ua.time + " " + ua.action + "\n";
-            }
+        for(UnitActionAssignment ua:unitActions.values()) {
+            tmp += "    " + ua.unit + " -> " + ua.time + " " + ua.action + "\n";
         }
         tmp += pgs;
         return tmp;
@@ -733,8 +1288,7 @@ public class GameState {
         w.tagWithAttributes(this.getClass().getName(),"time=\"" + time + "\"");
         pgs.toxml(w);
         w.tag("actions");
-        for(Unit u:unitActions.keySet()) {
-            UnitActionAssignment uaa = unitActions.get(u);
+        for(UnitActionAssignment uaa:unitActions.values()) {
             w.tagWithAttributes("unitAction","ID=\""+uaa.unit.getID()+"\" time=\""+uaa.time+"\"");
             uaa.action.toxml(w);
             w.tag("/unitAction");
@@ -751,15 +1305,20 @@ public class GameState {
      */
     public void toJSON(Writer w) throws Exception {
         w.write("{");
-        w.write("\"time\":" + time + ",\"pgs\":");
+        w.write("\"time\":");
+        ByteBufferWriter.writeLong(w, time);
+        w.write(",\"pgs\":");
         pgs.toJSON(w);
         w.write(",\"actions\":[");
         boolean first = true;
-        for(Unit u:unitActions.keySet()) {
+        for(UnitActionAssignment uaa:unitActions.values()) {
             if (!first) w.write(",");
             first = false;
-            UnitActionAssignment uaa = unitActions.get(u);
-            w.write("{\"ID\":" + uaa.unit.getID() + ", \"time\":"+uaa.time+", \"action\":");
+            w.write("{\"ID\":");
+            ByteBufferWriter.writeLong(w, uaa.unit.getID());
+            w.write(", \"time\":");
+            ByteBufferWriter.writeLong(w, uaa.time);
+            w.write(", \"action\":");
             uaa.action.toJSON(w);
             w.write("}");
         }
@@ -798,8 +1357,74 @@ public class GameState {
      * @param utt
      * @return
      */
-    public static GameState fromJSON(String JSON, UnitTypeTable utt) {        
-        JsonObject o = Json.parse(JSON).asObject();
+    public static GameState fromJSON(String JSON, UnitTypeTable utt) {
+        return fromJSON(new JSONReader(JSON), utt);
+    }
+
+
+    /**
+     * Reads a GameState from JSON, without building the JSON objects first
+     * @param r
+     * @param utt
+     * @return
+     */
+    public static GameState fromJSON(JSONReader r, UnitTypeTable utt) {
+        PhysicalGameState pgs = null;
+        int time = 0;
+        // the actions are kept until the units are known:
+        List<Long> actionIDs = new ArrayList<>();
+        List<Integer> actionTimes = new ArrayList<>();
+        List<UnitAction> actions = new ArrayList<>();
+        r.beginObject();
+        while(r.hasNext()) {
+            String name = r.nextName();
+            if (name.equals("time")) {
+                time = r.nextInt();
+            } else if (name.equals("pgs")) {
+                pgs = PhysicalGameState.fromJSON(r, utt);
+            } else if (name.equals("actions")) {
+                r.beginArray();
+                while(r.hasNext()) {
+                    long ID = -1;
+                    int actionTime = 0;
+                    UnitAction ua = null;
+                    r.beginObject();
+                    while(r.hasNext()) {
+                        String name2 = r.nextName();
+                        if (name2.equals("ID")) ID = r.nextLong();
+                        else if (name2.equals("time")) actionTime = r.nextInt();
+                        else if (name2.equals("action")) ua = UnitAction.fromJSON(r, utt);
+                        else r.skipValue();
+                    }
+                    r.endObject();
+                    actionIDs.add(ID);
+                    actionTimes.add(actionTime);
+                    actions.add(ua);
+                }
+                r.endArray();
+            } else {
+                r.skipValue();
+            }
+        }
+        r.endObject();
+
+        GameState gs = new GameState(pgs, utt);
+        gs.time = time;
+        for(int i = 0;i<actions.size();i++) {
+            Unit u = gs.getUnit(actionIDs.get(i));
+            gs.unitActions.put(u, new UnitActionAssignment(u, actions.get(i), actionTimes.get(i)));
+        }
+        return gs;
+    }
+
+
+    /**
+     * Constructs a GameState from a JSON object
+     * @param o
+     * @param utt
+     * @return
+     */
+    public static GameState fromJSON(JsonObject o, UnitTypeTable utt) {
         PhysicalGameState pgs = PhysicalGameState.fromJSON(o.get("pgs").asObject(), utt);
         GameState gs = new GameState(pgs, utt);
         gs.time = o.getInt("time", 0);
@@ -0,0 +1,131 @@
+package rts;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Rebuilds the game states written by a GameStateDeltaWriter, by applying
+ * the changes in each of them to a copy of the previous one.
+ * @author santi
+ */
+public class GameStateDeltaReader {
+    UnitTypeTable utt;
+    GameState gs = null;
+    Map<Long, Unit> units = new HashMap<>();
+    List<Unit> newUnits = new ArrayList<>();
+    List<Integer> newUnitIndexes = new ArrayList<>();
+
+
+    public GameStateDeltaReader(UnitTypeTable a_utt) {
+        utt = a_utt;
+    }
+
+
+    /**
+     * Reads the next state. The returned state is a copy, so it can be
+     * modified without affecting the next ones.
+     * @param in
+     * @return
+     */
+    public GameState read(ByteBuffer in) {
+        int time = in.getInt();
+        int flags = in.get();
+        if ((flags & GameStateDeltaWriter.FLAG_TERRAIN) != 0) {
+            int width = in.getShort();
+            int height = in.getShort();
+            int terrain[] = new int[width*height];
+            for(int i = 0;i<terrain.length;i++) terrain[i] = in.get();
+            PhysicalGameState pgs = new PhysicalGameState(width, height, terrain);
+            if (gs != null && (flags & GameStateDeltaWriter.FLAG_FULL) == 0) {
+                for(Player p:gs.getPhysicalGameState().getPlayers()) pgs.addPlayer(p);
+                for(Unit u:gs.getPhysicalGameState().getUnits()) pgs.addUnit(u);
+                GameState gs2 = new GameState(pgs, utt);
+                gs2.unitActions.putAll(gs.unitActions);
+                gs = gs2;
+            } else {
+                gs = new GameState(pgs, utt);
+                units.clear();
+            }
+        } else if ((flags & GameStateDeltaWriter.FLAG_FULL) != 0) {
+            gs = new GameState(new PhysicalGameState(gs.pgs.width, gs.pgs.height, gs.pgs.terrain), utt);
+            units.clear();
+        }
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        gs.time = time;
+
+        int nPlayers = in.get();
+        for(int i = 0;i<nPlayers;i++) {
+            int resources = in.getInt();
+            if (i < pgs.getPlayers().size()) {
+                pgs.getPlayer(i).setResources(resources);
+            } else {
+                pgs.addPlayer(new Player(i, resources));
+            }
+        }
+
+        int n = in.getInt();
+        for(int i = 0;i<n;i++) {
+            Unit u = units.remove(in.getLong());
+            if (u != null) {
+                pgs.removeUnit(u);
+                gs.unitActions.remove(u);
+            }
+        }
+
+        // units are moved before adding new ones, so they do not collide:
+        newUnits.clear();
+        newUnitIndexes.clear();
+        n = in.getInt();
+        for(int i = 0;i<n;i++) {
+            long ID = in.getLong();
+            int index = in.getInt();
+            UnitType type = utt.getUnitType(in.getShort());
+            int player = in.get();
+            int x = in.getShort();
+            int y = in.getShort();
+            int resources = in.getInt();
+            int hitpoints = in.getInt();
+            Unit u = units.get(ID);
+            if (u != null && (u.getType() != type || u.getPlayer() != player)) {
+                pgs.removeUnit(u);
+                gs.unitActions.remove(u);
+                u = null;
+            }
+            if (u == null) {
+                u = new Unit(ID, player, type, x, y, resources);
+                units.put(ID, u);
+                newUnits.add(u);
+                newUnitIndexes.add(index);
+            } else {
+                u.setX(x);
+                u.setY(y);
+                u.setResources(resources);
+            }
+            u.setHitPoints(hitpoints);
+        }
+        // new units come sorted by their position, so that they end up in the same order:
+        pgs.resetUnitGrid();
+        for(int i = 0;i<newUnits.size();i++) pgs.addUnit(newUnits.get(i), newUnitIndexes.get(i));
+
+        n = in.getInt();
+        for(int i = 0;i<n;i++) {
+            Unit u = units.get(in.getLong());
+            if (u != null) gs.unitActions.remove(u);
+        }
+        n = in.getInt();
+        for(int i = 0;i<n;i++) {
+            Unit u = units.get(in.getLong());
+            int actionTime = in.getInt();
+            UnitAction ua = UnitAction.fromBinary(in, utt);
+            if (u != null) gs.unitActions.put(u, new UnitActionAssignment(u, ua, actionTime));
+        }
+
+        return gs.clone();
+    }
+}
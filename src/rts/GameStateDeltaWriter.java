@@ -0,0 +1,166 @@
+package rts;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import rts.units.Unit;
+
+/**
+ * Writes a sequence of game states in a compact binary format, where each
+ * state only contains what changed since the previous one (see GameStateDeltaReader,
+ * which rebuilds the states on the other end). The terrain is only written
+ * with the first state, or when it changes (states loaded separately, for
+ * example from a trace, do not share their terrain array, so it is compared).
+ *
+ * Format of each state (big-endian, as written by DataOutput):
+ * - int time
+ * - byte flags: FLAG_FULL (the reader must discard its state), FLAG_TERRAIN
+ * - if FLAG_TERRAIN: short width, short height, width*height bytes of terrain
+ * - byte number of players, and for each: int resources
+ * - int number of removed units, and for each: long ID
+ * - int number of new/changed units, and for each: long ID, int position in
+ *   the unit list (-1 if the unit was already there), short type ID, byte
+ *   player, short x, short y, int resources, int hitpoints
+ * - int number of removed action assignments, and for each: long unit ID
+ * - int number of new/changed action assignments, and for each: long unit ID,
+ *   int time, and the action (see UnitAction.toBinary)
+ *
+ * @author santi
+ */
+public class GameStateDeltaWriter {
+    public static final int FLAG_FULL = 1;
+    public static final int FLAG_TERRAIN = 2;
+
+    static class UnitRecord {
+        int type, player, x, y, resources, hitpoints;
+        int actionTime = -1;
+        UnitAction action = null;
+        int stamp;
+    }
+
+    Map<Long, UnitRecord> units = new HashMap<>();
+    int terrain[] = null;
+    int width = -1, height = -1;
+    int stamp = 0;
+    boolean full = true;
+
+    // reused between calls:
+    List<Unit> changedUnits = new ArrayList<>();
+    List<Integer> changedUnitIndexes = new ArrayList<>();
+    List<UnitActionAssignment> changedActions = new ArrayList<>();
+    List<Long> removedActions = new ArrayList<>();
+
+
+    /**
+     * Forgets the previous states, so that the next one is written completely
+     */
+    public void reset() {
+        units.clear();
+        terrain = null;
+        full = true;
+    }
+
+
+    public void write(GameState gs, DataOutput out) throws IOException {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        int flags = 0;
+        if (full) flags |= FLAG_FULL;
+        if (pgs.getWidth() != width || pgs.getHeight() != height ||
+            (pgs.terrain != terrain && !Arrays.equals(pgs.terrain, terrain))) flags |= FLAG_TERRAIN;
+        out.writeInt(gs.getTime());
+        out.writeByte(flags);
+        if ((flags & FLAG_TERRAIN) != 0) {
+            terrain = pgs.terrain;
+            width = pgs.getWidth();
+            height = pgs.getHeight();
+            out.writeShort(width);
+            out.writeShort(height);
+            for(int i = 0;i<width*height;i++) out.writeByte(terrain[i]);
+        }
+        full = false;
+
+        out.writeByte(pgs.getPlayers().size());
+        for(Player p:pgs.getPlayers()) out.writeInt(p.getResources());
+
+        // find the units that changed:
+        stamp++;
+        changedUnits.clear();
+        changedUnitIndexes.clear();
+        changedActions.clear();
+        removedActions.clear();
+        int index = 0;
+        for(Unit u:pgs.getUnits()) {
+            UnitRecord r = units.get(u.getID());
+            if (r == null || r.type != u.getType().ID || r.player != u.getPlayer()) {
+                r = new UnitRecord();
+                units.put(u.getID(), r);
+                changedUnits.add(u);
+                changedUnitIndexes.add(index);
+            } else if (r.x != u.getX() || r.y != u.getY() ||
+                       r.resources != u.getResources() || r.hitpoints != u.getHitPoints()) {
+                changedUnits.add(u);
+                changedUnitIndexes.add(-1);
+            }
+            index++;
+            r.type = u.getType().ID;
+            r.player = u.getPlayer();
+            r.x = u.getX();
+            r.y = u.getY();
+            r.resources = u.getResources();
+            r.hitpoints = u.getHitPoints();
+            r.stamp = stamp;
+
+            UnitActionAssignment uaa = gs.unitActions.get(u);
+            if (uaa == null) {
+                if (r.action != null) {
+                    removedActions.add(u.getID());
+                    r.action = null;
+                }
+            } else if (r.action == null || r.actionTime != uaa.time || !r.action.equals(uaa.action)) {
+                changedActions.add(uaa);
+                r.action = uaa.action;
+                r.actionTime = uaa.time;
+            }
+        }
+
+        // the units that are not there any more:
+        int nRemoved = 0;
+        for(UnitRecord r:units.values()) if (r.stamp != stamp) nRemoved++;
+        out.writeInt(nRemoved);
+        Iterator<Map.Entry<Long, UnitRecord>> it = units.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Long, UnitRecord> e = it.next();
+            if (e.getValue().stamp != stamp) {
+                out.writeLong(e.getKey());
+                it.remove();
+            }
+        }
+
+        out.writeInt(changedUnits.size());
+        for(int i = 0;i<changedUnits.size();i++) {
+            Unit u = changedUnits.get(i);
+            out.writeLong(u.getID());
+            out.writeInt(changedUnitIndexes.get(i));
+            out.writeShort(u.getType().ID);
+            out.writeByte(u.getPlayer());
+            out.writeShort(u.getX());
+            out.writeShort(u.getY());
+            out.writeInt(u.getResources());
+            out.writeInt(u.getHitPoints());
+        }
+
+        out.writeInt(removedActions.size());
+        for(long ID:removedActions) out.writeLong(ID);
+        out.writeInt(changedActions.size());
+        for(UnitActionAssignment uaa:changedActions) {
+            out.writeLong(uaa.unit.getID());
+            out.writeInt(uaa.time);
+            uaa.action.toBinary(out);
+        }
+    }
+}
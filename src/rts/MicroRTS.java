@@ -1,5 +1,6 @@
 package rts;
 
+import ai.RandomBiasedAI;
 import ai.core.AI;
 import gui.PhysicalGameStatePanel;
 import gui.frontend.FrontEnd;
@@ -33,10 +34,21 @@ public class MicroRTS {
     }
 
     /**
-     * Starts microRTS as a server instance.
+     * Starts microRTS as a server instance. If "server_max_games" is larger than 1,
+     * the games are played without a window, several of them at the same time
+     * (see RemoteGameServer).
      * @param gameSettings The game settings.
      */
     private static void startServer(GameSettings gameSettings) throws Exception {
+        if (gameSettings.getServerMaxGames() > 1) {
+            UnitTypeTable utt = new UnitTypeTable(gameSettings.getUTTVersion(), gameSettings.getConflictPolicy());
+            PhysicalGameState pgs = PhysicalGameState.load(gameSettings.getMapLocation(), utt);
+            new RemoteGameServer(gameSettings.getServerPort(), gameSettings.getSerializationType(), utt, pgs,
+                                 gameSettings.getMaxCycles(), gameSettings.isPartiallyObservable(),
+                                 new RandomBiasedAI(), gameSettings.getServerMaxGames(),
+                                 gameSettings.getServerThreads()).run();
+            return;
+        }
         try(ServerSocket serverSocket = new ServerSocket(gameSettings.getServerPort())) {
             while(true) {
                 try( Socket socket = serverSocket.accept() ) {
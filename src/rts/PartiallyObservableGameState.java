@@ -29,6 +29,10 @@ public class PartiallyObservableGameState extends GameState {
 
 		unitActions.putAll(gs.unitActions);
 
+		// the units of "player" are the same in both states, and so is what they see:
+		visibilityMaps = new VisibilityMap[Math.max(2, player+1)];
+		visibilityMaps[player] = gs.getVisibilityMap(player).copy(this);
+
 		List<Unit> toDelete = new LinkedList<Unit>();
 		for (Unit u : pgs.getUnits()) {
 			if (u.getPlayer() != player) {
@@ -42,19 +46,13 @@ public class PartiallyObservableGameState extends GameState {
     }
 
     /**
-     * Returns whether the position is within view of the player
+     * Returns whether the position is within view of the player (see
+     * {@link VisibilityMap}, which is kept up to date as the units of the
+     * player move)
      * @see rts.GameState#observable(int, int)
      */
     public boolean observable(int x, int y) {
-		for (Unit u : pgs.getUnits()) {
-			if (u.getPlayer() == player) {
-				double d = Math.sqrt((u.getX() - x) * (u.getX() - x) + (u.getY() - y) * (u.getY() - y));
-				if (d <= u.getType().sightRadius)
-					return true;
-			}
-		}
-
-        return false;
+        return getVisibilityMap(player).observable(x, y);
     }
 
     /* (non-Javadoc)
@@ -9,10 +9,18 @@ import java.io.InputStream;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import rts.units.Unit;
 import java.util.LinkedList;
 import java.util.List;
+import util.ByteBufferWriter;
+import util.JSONReader;
 import util.XMLWriter;
 import org.jdom.Element;
 import org.jdom.JDOMException;
@@ -42,6 +50,53 @@ public class PhysicalGameState {
     List<Player> players = new ArrayList<Player>();
     List<Unit> units = new LinkedList<Unit>();
 
+    /**
+     * Occupancy grid (cell index to unit), maintained incrementally by
+     * {@link #addUnit(Unit)}, {@link #removeUnit(Unit)} and
+     * {@link #moveUnit(Unit, int, int)}. It is built lazily, so that clones
+     * that never query positions do not pay for it.
+     */
+    Unit unitGrid[] = null;
+
+    /**
+     * Copy-on-write support (see {@link #cloneCopyOnWrite()}). When
+     * "copyOnWrite" is true, the unit objects may be shared with other maps,
+     * and only those in "ownedUnits" can be modified in place. "ownedUnits" is
+     * only valid while "clones[0]" is still "ownedClones": the clones of a
+     * copy-on-write map increment that counter, so that the units it owned
+     * become shared without the clone modifying the map itself.
+     */
+    boolean copyOnWrite = false;
+    Set<Unit> ownedUnits = null;
+    int clones[] = null;
+    int ownedClones = 0;
+
+    /**
+     * Number of times units have been added, removed or moved through this map
+     * (or its grid has been reset), so that maps sharing its units can tell
+     * when their own grid is out of date.
+     */
+    int unitChanges = 0;
+
+    /**
+     * Map whose unit objects this map shares (see {@link #cloneKeepingUnits()}),
+     * or null. Since those units can be moved by the other map without this one
+     * knowing, the occupancy grid of this map is rebuilt whenever the
+     * "unitChanges" of the other map differ from "sharedUnitChanges" (its value
+     * when the grid was built). Moves made through this map discard the grid
+     * of the other map.
+     */
+    PhysicalGameState unitsSharedWith = null;
+    int sharedUnitChanges = 0;
+
+    /**
+     * The terrain written as a string (as in the XML and JSON representations),
+     * for each terrain array. Since the terrain array is shared amongst the
+     * clones of a map, it is only built once per map rather than every time a
+     * state is serialized.
+     */
+    static final Map<int[], String> terrainStrings = Collections.synchronizedMap(new WeakHashMap<>());
+
     /**
      * Constructs the game state map from a XML
      *
@@ -113,6 +168,7 @@ public class PhysicalGameState {
      */
     public void setWidth(int w) {
         width = w;
+        unitGrid = null;
     }
 
     /**
@@ -123,6 +179,7 @@ public class PhysicalGameState {
      */
     public void setHeight(int h) {
         height = h;
+        unitGrid = null;
     }
 
     /**
@@ -145,6 +202,7 @@ public class PhysicalGameState {
      */
     public void setTerrain(int x, int y, int v) {
         terrain[x + y * width] = v;
+        terrainStrings.remove(terrain);
     }
 
     /**
@@ -176,13 +234,31 @@ public class PhysicalGameState {
      * occupied
      */
     public void addUnit(Unit newUnit) throws IllegalArgumentException {
-        for (Unit existingUnit : units) {
-            if (newUnit.getX() == existingUnit.getX() && newUnit.getY() == existingUnit.getY()) {
-                throw new IllegalArgumentException(
-                        "PhysicalGameState.addUnit: added two units in position: (" + newUnit.getX() + ", " + newUnit.getY() + ")");
-            }
+        addUnit(newUnit, units.size());
+    }
+
+    /**
+     * Adds a new {@link Unit} to the map, at the given position of the unit
+     * list (used to rebuild maps keeping the order of their units)
+     *
+     * @param newUnit
+     * @param index
+     * @throws IllegalArgumentException if the new unit's position is already
+     * occupied
+     */
+    void addUnit(Unit newUnit, int index) throws IllegalArgumentException {
+        if (getUnitAt(newUnit.getX(), newUnit.getY()) != null) {
+            throw new IllegalArgumentException(
+                    "PhysicalGameState.addUnit: added two units in position: (" + newUnit.getX() + ", " + newUnit.getY() + ")");
+        }
+        units.add(index, newUnit);
+        unitChanges++;
+        if (copyOnWrite) {
+            getOwnedUnits().add(newUnit);
+        }
+        if (unitGrid != null && insideMap(newUnit.getX(), newUnit.getY())) {
+            unitGrid[newUnit.getX() + newUnit.getY() * width] = newUnit;
         }
-        units.add(newUnit);
     }
 
     /**
@@ -192,6 +268,198 @@ public class PhysicalGameState {
      */
     public void removeUnit(Unit u) {
         units.remove(u);
+        unitChanges++;
+        if (unitGrid != null && insideMap(u.getX(), u.getY())) {
+            int idx = u.getX() + u.getY() * width;
+            if (unitGrid[idx] == u) {
+                unitGrid[idx] = null;
+            }
+        }
+    }
+
+    /**
+     * Moves a unit of this map to a new position, keeping the occupancy grid
+     * up to date. Units that are already in the map should be moved through
+     * this method rather than through {@link Unit#setX(int)} /
+     * {@link Unit#setY(int)}.
+     *
+     * In copy-on-write maps, "u" must have been obtained through
+     * {@link #getWritableUnit(Unit)}.
+     *
+     * @param u
+     * @param x
+     * @param y
+     */
+    public void moveUnit(Unit u, int x, int y) {
+        unitChanges++;
+        if (unitsSharedWith != null) {
+            // (the grid of this map is kept up to date below, so it does not need rebuilding):
+            boolean upToDate = (unitsSharedWith.unitChanges == sharedUnitChanges);
+            unitsSharedWith.resetUnitGrid();
+            if (upToDate) {
+                sharedUnitChanges = unitsSharedWith.unitChanges;
+            }
+        }
+        if (unitGrid != null) {
+            if (insideMap(u.getX(), u.getY())) {
+                int idx = u.getX() + u.getY() * width;
+                if (unitGrid[idx] == u) {
+                    unitGrid[idx] = null;
+                }
+            }
+            if (insideMap(x, y)) {
+                unitGrid[x + y * width] = u;
+            }
+        }
+        u.setX(x);
+        u.setY(y);
+    }
+
+    /**
+     * Returns a version of "u" that can be modified in place. For regular maps
+     * this is "u" itself. For copy-on-write maps, if "u" might be shared with
+     * other maps, it is replaced in this map by a private copy, which is
+     * returned. Use {@link GameState#getWritableUnit(Unit)} instead when the
+     * map belongs to a GameState, so that action assignments are updated too.
+     *
+     * @param u
+     * @return
+     */
+    public Unit getWritableUnit(Unit u) {
+        if (!copyOnWrite || getOwnedUnits().contains(u)) {
+            return u;
+        }
+        ListIterator<Unit> it = units.listIterator();
+        while (it.hasNext()) {
+            if (it.next() == u) {
+                Unit copy = u.clone();
+                it.set(copy);
+                if (unitGrid != null && insideMap(u.getX(), u.getY())) {
+                    int idx = u.getX() + u.getY() * width;
+                    if (unitGrid[idx] == u) {
+                        unitGrid[idx] = copy;
+                    }
+                }
+                ownedUnits.add(copy);
+                return copy;
+            }
+        }
+        // not a unit of this map:
+        return u;
+    }
+
+    /**
+     * Makes all the units of this map writable (see
+     * {@link #getWritableUnit(Unit)}) in a single pass
+     *
+     * @return a map from the replaced units to their copies
+     */
+    IdentityHashMap<Unit, Unit> makeAllUnitsWritable() {
+        IdentityHashMap<Unit, Unit> replacements = new IdentityHashMap<Unit, Unit>();
+        if (!copyOnWrite) {
+            return replacements;
+        }
+        Set<Unit> owned = getOwnedUnits();
+        ListIterator<Unit> it = units.listIterator();
+        while (it.hasNext()) {
+            Unit u = it.next();
+            if (!owned.contains(u)) {
+                Unit copy = u.clone();
+                it.set(copy);
+                owned.add(copy);
+                replacements.put(u, copy);
+            }
+        }
+        if (unitGrid != null) {
+            for (int i = 0; i < unitGrid.length; i++) {
+                Unit copy = replacements.get(unitGrid[i]);
+                if (copy != null) {
+                    unitGrid[i] = copy;
+                }
+            }
+        }
+        return replacements;
+    }
+
+    /**
+     * Inserts a unit at a given position of the unit list (used to undo
+     * removals)
+     *
+     * @param u
+     * @param index
+     */
+    void insertUnit(Unit u, int index) {
+        units.add(index, u);
+        unitChanges++;
+        if (copyOnWrite) {
+            getOwnedUnits().add(u);
+        }
+        if (unitGrid != null && insideMap(u.getX(), u.getY())) {
+            unitGrid[u.getX() + u.getY() * width] = u;
+        }
+    }
+
+    /**
+     * Returns whether this map might share unit objects with other maps
+     *
+     * @return
+     */
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
+    Set<Unit> getOwnedUnits() {
+        if (ownedUnits == null || ownedClones != clones[0]) {
+            // (the map has been cloned since the units were copied, so they are shared now):
+            ownedUnits = Collections.newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+            ownedClones = clones[0];
+        }
+        return ownedUnits;
+    }
+
+    /**
+     * Discards the occupancy grid, so that it is rebuilt from the unit list on
+     * the next query. Call this after modifying the unit list or unit
+     * positions directly (maps sharing the units will rebuild theirs too).
+     */
+    public void resetUnitGrid() {
+        unitGrid = null;
+        unitChanges++;
+    }
+
+    /**
+     * Returns the occupancy grid, (re)building it if needed
+     *
+     * @return
+     */
+    Unit[] getUnitGrid() {
+        if (unitsSharedWith != null && unitsSharedWith.unitChanges != sharedUnitChanges) {
+            // units shared with the other map have been moved through it:
+            unitGrid = null;
+        }
+        if (unitGrid == null || unitGrid.length != width * height) {
+            if (unitsSharedWith != null) {
+                sharedUnitChanges = unitsSharedWith.unitChanges;
+            }
+            unitGrid = new Unit[width * height];
+            for (Unit u : units) {
+                if (insideMap(u.getX(), u.getY())) {
+                    unitGrid[u.getX() + u.getY() * width] = u;
+                }
+            }
+        }
+        return unitGrid;
+    }
+
+    /**
+     * Returns whether a coordinate is inside the map
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    boolean insideMap(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
     }
 
     /**
@@ -246,12 +514,17 @@ public class PhysicalGameState {
      * @return
      */
     public Unit getUnitAt(int x, int y) {
-        for (Unit u : units) {
-            if (u.getX() == x && u.getY() == y) {
-                return u;
-            }
+        if (!insideMap(x, y)) {
+            return null;
         }
-        return null;
+        Unit u = getUnitGrid()[x + y * width];
+        if (u != null && (u.getX() != x || u.getY() != y)) {
+            // the unit was moved without notifying the map (e.g. units shared
+            // with another map through cloneKeepingUnits), rebuild the grid:
+            resetUnitGrid();
+            u = getUnitGrid()[x + y * width];
+        }
+        return u;
     }
 
     /**
@@ -263,10 +536,29 @@ public class PhysicalGameState {
      * @return
      */
     public Collection<Unit> getUnitsAround(int x, int y, int squareRange) {
-        List<Unit> closeUnits = new LinkedList<Unit>();
-        for (Unit u : units) {
-            if ((Math.abs(u.getX() - x) <= squareRange && Math.abs(u.getY() - y) <= squareRange)) {
-                closeUnits.add(u);
+        List<Unit> closeUnits = new ArrayList<Unit>();
+        int x0 = Math.max(0, x - squareRange);
+        int y0 = Math.max(0, y - squareRange);
+        int x1 = Math.min(width - 1, x + squareRange);
+        int y1 = Math.min(height - 1, y + squareRange);
+        if (x1 < x0 || y1 < y0) {
+            return closeUnits;
+        }
+        if ((x1 - x0 + 1) * (y1 - y0 + 1) > units.size()) {
+            // the area is larger than the number of units, just scan them:
+            for (Unit u : units) {
+                if ((Math.abs(u.getX() - x) <= squareRange && Math.abs(u.getY() - y) <= squareRange)) {
+                    closeUnits.add(u);
+                }
+            }
+            return closeUnits;
+        }
+        for (int i = y0; i <= y1; i++) {
+            for (int j = x0; j <= x1; j++) {
+                Unit u = getUnitAt(j, i);
+                if (u != null) {
+                    closeUnits.add(u);
+                }
             }
         }
         return closeUnits;
@@ -350,9 +642,46 @@ public class PhysicalGameState {
         return pgs;
     }
 
+    /**
+     * Clones the physical game state lazily: if this map is copy-on-write, the
+     * new map shares the unit objects with it, and each of them only copies the
+     * units it modifies (units are copied the first time they are modified
+     * through {@link #getWritableUnit(Unit)}). Otherwise (as in the map of the
+     * actual game, whose units are modified in place) the units are copied.
+     * The new map is copy-on-write, so its units must not be modified directly.
+     * This map is not modified.
+     *
+     * @return
+     */
+    public PhysicalGameState cloneCopyOnWrite() {
+        PhysicalGameState pgs = new PhysicalGameState(width, height, terrain);  // The terrain is shared amongst all instances, since it never changes
+        for (Player p : players) {
+            pgs.players.add(p.clone());
+        }
+        pgs.copyOnWrite = true;
+        pgs.clones = new int[1];
+        if (copyOnWrite) {
+            // the units owned by this map become shared:
+            clones[0]++;
+            pgs.units.addAll(units);
+            if (unitGrid != null) {
+                pgs.unitGrid = unitGrid.clone();
+            }
+        } else {
+            Set<Unit> owned = pgs.getOwnedUnits();
+            for (Unit u : units) {
+                Unit copy = u.clone();
+                pgs.units.add(copy);
+                owned.add(copy);
+            }
+        }
+        return pgs;
+    }
+
     /**
      * Clone the physical game state, but does not clone the units The terrain
-     * is shared amongst all instances, since it never changes
+     * is shared amongst all instances, since it never changes. Units moved
+     * through either map are found by the other (see "unitsSharedWith")
      *
      * @return
      */
@@ -364,6 +693,7 @@ public class PhysicalGameState {
         for (Unit u : units) {
             pgs.units.add(u);
         }
+        pgs.unitsSharedWith = this;
         return pgs;
     }
 
@@ -467,6 +797,25 @@ public class PhysicalGameState {
         return free;
     }
 
+    /**
+     * Returns the terrain as a string with one digit per cell (as written in
+     * the XML and JSON representations of the map)
+     *
+     * @return
+     */
+    public String getTerrainString() {
+        String s = terrainStrings.get(terrain);
+        if (s == null || s.length() != width * height) {
+            StringBuilder tmp = new StringBuilder(height * width);
+            for (int i = 0; i < height * width; i++) {
+                tmp.append(terrain[i]);
+            }
+            s = tmp.toString();
+            terrainStrings.put(terrain, s);
+        }
+        return s;
+    }
+
     /**
      * Writes a XML representation of the map
      *
@@ -474,12 +823,7 @@ public class PhysicalGameState {
      */
     public void toxml(XMLWriter w) {
         w.tagWithAttributes(this.getClass().getName(), "width=\"" + width + "\" height=\"" + height + "\"");
-        StringBuilder tmp = new StringBuilder(height * width);
-
-        for (int i = 0; i < height * width; i++) {
-            tmp.append(terrain[i]);
-        }
-        w.tag("terrain", tmp.toString());
+        w.tag("terrain", getTerrainString());
         w.tag("players");
         for (Player p : players) {
             p.toxml(w);
@@ -501,11 +845,12 @@ public class PhysicalGameState {
      */
     public void toJSON(Writer w) throws Exception {
         w.write("{");
-        w.write("\"width\":" + width + ",\"height\":" + height + ",");
-        w.write("\"terrain\":\"");
-        for (int i = 0; i < height * width; i++) {
-            w.write("" + terrain[i]);
-        }
+        w.write("\"width\":");
+        ByteBufferWriter.writeLong(w, width);
+        w.write(",\"height\":");
+        ByteBufferWriter.writeLong(w, height);
+        w.write(",\"terrain\":\"");
+        w.write(getTerrainString());
         w.write("\",");
         w.write("\"players\":[");
         for (int i = 0; i < players.size(); i++) {
@@ -599,4 +944,58 @@ public class PhysicalGameState {
         return pgs;
     }
 
+    /**
+     * Reads a map from JSON, without building the JSON objects first
+     *
+     * @param r
+     * @param utt
+     * @return
+     */
+    public static PhysicalGameState fromJSON(JSONReader r, UnitTypeTable utt) {
+        int width = 8;
+        int height = 8;
+        String terrainString = null;
+        List<Player> players = new ArrayList<>();
+        List<Unit> units = new ArrayList<>();
+        r.beginObject();
+        while (r.hasNext()) {
+            String name = r.nextName();
+            switch (name) {
+                case "width": width = r.nextInt(); break;
+                case "height": height = r.nextInt(); break;
+                case "terrain": terrainString = r.nextString(); break;
+                case "players":
+                    r.beginArray();
+                    while (r.hasNext()) {
+                        players.add(Player.fromJSON(r));
+                    }
+                    r.endArray();
+                    break;
+                case "units":
+                    r.beginArray();
+                    while (r.hasNext()) {
+                        units.add(Unit.fromJSON(r, utt));
+                    }
+                    r.endArray();
+                    break;
+                default: r.skipValue();
+            }
+        }
+        r.endObject();
+
+        int terrain[] = new int[width * height];
+        for (int i = 0; i < width * height; i++) {
+            terrain[i] = terrainString.charAt(i) - '0';
+        }
+        PhysicalGameState pgs = new PhysicalGameState(width, height, terrain);
+        for (Player p : players) {
+            pgs.addPlayer(p);
+        }
+        for (Unit u : units) {
+            pgs.addUnit(u);
+        }
+
+        return pgs;
+    }
+
 }
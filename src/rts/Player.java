@@ -4,6 +4,8 @@ import com.eclipsesource.json.JsonObject;
 import java.io.Writer;
 
 import org.jdom.Element;
+import util.ByteBufferWriter;
+import util.JSONReader;
 import util.XMLWriter;
 
 /**
@@ -84,7 +86,11 @@ public class Player {
      * @throws Exception
      */
     public void toJSON(Writer w) throws Exception {
-        w.write("{\"ID\":"+ID+", \"resources\":"+resources+"}");
+        w.write("{\"ID\":");
+        ByteBufferWriter.writeLong(w, ID);
+        w.write(", \"resources\":");
+        ByteBufferWriter.writeLong(w, resources);
+        w.write("}");
     }
     
     /**
@@ -109,4 +115,22 @@ public class Player {
         return p;
     }         
 
+    /**
+     * Reads a player from a JSON object, without building the object first
+     * @param r
+     * @return
+     */
+    public static Player fromJSON(JSONReader r) {
+        int ID = -1, resources = 0;
+        r.beginObject();
+        while(r.hasNext()) {
+            String name = r.nextName();
+            if (name.equals("ID")) ID = r.nextInt();
+            else if (name.equals("resources")) resources = r.nextInt();
+            else r.skipValue();
+        }
+        r.endObject();
+        return new Player(ID, resources);
+    }
+
 }
@@ -1,15 +1,13 @@
 package rts;
 
-import com.eclipsesource.json.Json;
-import com.eclipsesource.json.JsonArray;
-import com.eclipsesource.json.JsonObject;
-import com.eclipsesource.json.JsonValue;
 import java.io.Writer;
 import rts.units.Unit;
 import java.util.LinkedList;
 import java.util.List;
 import org.jdom.Element;
 import rts.units.UnitTypeTable;
+import util.ByteBufferWriter;
+import util.JSONReader;
 import util.Pair;
 import util.XMLWriter;
 
@@ -213,6 +211,7 @@ public class PlayerAction {
      */
     public void fillWithNones(GameState s, int pID, int duration) {
         PhysicalGameState pgs = s.getPhysicalGameState();
+        UnitAction none = UnitActionCache.get(s).none(duration);
 		for (Unit u : pgs.getUnits()) {
 			if (u.getPlayer() == pID) {
 				if (s.unitActions.get(u) == null) {
@@ -224,7 +223,7 @@ public class PlayerAction {
 						}
 					}
                     if (!found) {
-                        actions.add(new Pair<Unit,UnitAction>(u, new UnitAction(UnitAction.TYPE_NONE, duration)));
+                        actions.add(new Pair<Unit,UnitAction>(u, none));
                     }
                 }
             }
@@ -314,7 +313,9 @@ public class PlayerAction {
         w.write("[");
         for(Pair<Unit,UnitAction> ua:actions) {
             if (!first) w.write(" ,");
-            w.write("{\"unitID\":" + ua.m_a.getID() + ", \"unitAction\":");
+            w.write("{\"unitID\":");
+            ByteBufferWriter.writeLong(w, ua.m_a.getID());
+            w.write(", \"unitAction\":");
             ua.m_b.toJSON(w);
             w.write("}");
             first = false;
@@ -332,13 +333,14 @@ public class PlayerAction {
      */
     public static PlayerAction fromXML(Element e, GameState gs, UnitTypeTable utt) {
         PlayerAction pa = new PlayerAction();
+        UnitActionCache cache = UnitActionCache.get(utt, gs.getPhysicalGameState().getWidth(), gs.getPhysicalGameState().getHeight());
         List<?> l = e.getChildren("action");
         for(Object o:l) {
             Element action_e = (Element)o;
             int id = Integer.parseInt(action_e.getAttributeValue("unitID"));
             Unit u = gs.getUnit(id);
             UnitAction ua = UnitAction.fromXML(action_e.getChild("UnitAction"), utt);
-            pa.addUnitAction(u, ua);
+            pa.addUnitAction(u, cache.canonical(ua));
         }
         return pa;
     }
@@ -353,14 +355,23 @@ public class PlayerAction {
      */
     public static PlayerAction fromJSON(String JSON, GameState gs, UnitTypeTable utt) {
         PlayerAction pa = new PlayerAction();
-        JsonArray a = Json.parse(JSON).asArray();
-        for(JsonValue v:a.values()) {
-            JsonObject o = v.asObject();
-            int id = o.getInt("unitID", -1);
-            Unit u = gs.getUnit(id);
-            UnitAction ua = UnitAction.fromJSON(o.get("unitAction").asObject(), utt);
-            pa.addUnitAction(u, ua);
+        UnitActionCache cache = UnitActionCache.get(utt, gs.getPhysicalGameState().getWidth(), gs.getPhysicalGameState().getHeight());
+        JSONReader r = new JSONReader(JSON);
+        r.beginArray();
+        while(r.hasNext()) {
+            long id = -1;
+            UnitAction ua = null;
+            r.beginObject();
+            while(r.hasNext()) {
+                String name = r.nextName();
+                if (name.equals("unitID")) id = r.nextLong();
+                else if (name.equals("unitAction")) ua = UnitAction.fromJSON(r, utt);
+                else r.skipValue();
+            }
+            r.endObject();
+            pa.addUnitAction(gs.getUnit(id), cache.canonical(ua));
         }
+        r.endArray();
         return pa;
     }
     
@@ -0,0 +1,205 @@
+package rts;
+
+import java.util.ArrayList;
+import java.util.List;
+import rts.units.Unit;
+import rts.units.UnitType;
+import util.Pair;
+
+/**
+ * Generates the actions of units in the same way as Unit.getUnitActions, but
+ * for playout policies, that generate actions every game cycle and only need
+ * them until they are issued:
+ * - The actions of a unit are left in a reused array ("actions") instead of a new list.
+ * - The actions are the canonical ones of UnitActionCache, instead of created each time.
+ * - The resources used by the actions chosen so far are checked and reserved
+ *   without creating ResourceUsage objects, and the chosen actions are added to
+ *   a reused PlayerAction, to be issued directly.
+ * An instance must not be used by several threads at the same time (policies
+ * that can be shared by several threads keep one per thread).
+ * @author santi
+ */
+public class PlayoutActionGenerator {
+    public static final int NONE_DURATION = 10;
+
+    // the actions of the last unit passed to "generate":
+    public UnitAction actions[] = new UnitAction[16];
+    public int nActions = 0;
+    // scratch space for policies that weight the actions (as long as "actions"):
+    public double weights[] = new double[16];
+
+    // the player action being built (see "start"):
+    PlayerAction playerAction = new PlayerAction();
+    List<Pair<Unit,UnitAction>> pairs = new ArrayList<>();
+    ResourceUsage used = null;
+
+
+    public PlayoutActionGenerator() {
+        playerAction.actions = new ArrayList<>();
+    }
+
+
+    void add(UnitAction ua) {
+        if (nActions==actions.length) {
+            UnitAction tmp[] = new UnitAction[nActions*2];
+            System.arraycopy(actions, 0, tmp, 0, nActions);
+            actions = tmp;
+            weights = new double[actions.length];
+        }
+        actions[nActions++] = ua;
+    }
+
+
+    /**
+     * Leaves in "actions" (the first "nActions") the same actions (and in the
+     * same order) as u.getUnitActions(gs)
+     * @param u
+     * @param gs
+     */
+    public void generate(Unit u, GameState gs) {
+        nActions = 0;
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        UnitActionCache cache = UnitActionCache.get(gs);
+        UnitType type = u.getType();
+        int x = u.getX();
+        int y = u.getY();
+        int player = u.getPlayer();
+        int width = pgs.getWidth();
+        int height = pgs.getHeight();
+
+        Unit uup = pgs.getUnitAt(x,y-1);
+        Unit uright = pgs.getUnitAt(x+1,y);
+        Unit udown = pgs.getUnitAt(x,y+1);
+        Unit uleft = pgs.getUnitAt(x-1,y);
+
+        if (type.canAttack) {
+            if (type.attackRange==1) {
+                if (y>0 && uup!=null && uup.getPlayer()!=player && uup.getPlayer()>=0) add(cache.attack(uup.getX(), uup.getY()));
+                if (x<width-1 && uright!=null && uright.getPlayer()!=player && uright.getPlayer()>=0) add(cache.attack(uright.getX(), uright.getY()));
+                if (y<height-1 && udown!=null && udown.getPlayer()!=player && udown.getPlayer()>=0) add(cache.attack(udown.getX(), udown.getY()));
+                if (x>0 && uleft!=null && uleft.getPlayer()!=player && uleft.getPlayer()>=0) add(cache.attack(uleft.getX(), uleft.getY()));
+            } else {
+                int sqrange = type.attackRange*type.attackRange;
+                for(Unit u2:pgs.getUnits()) {
+                    if (u2.getPlayer()<0 || u2.getPlayer()==player) continue;
+                    int sq_dx = (u2.getX() - x)*(u2.getX() - x);
+                    int sq_dy = (u2.getY() - y)*(u2.getY() - y);
+                    if (sq_dx+sq_dy<=sqrange) add(cache.attack(u2.getX(), u2.getY()));
+                }
+            }
+        }
+
+        if (type.canHarvest) {
+            if (u.getResources()==0) {
+                if (y>0 && uup!=null && uup.getType().isResource) add(cache.harvest(UnitAction.DIRECTION_UP));
+                if (x<width-1 && uright!=null && uright.getType().isResource) add(cache.harvest(UnitAction.DIRECTION_RIGHT));
+                if (y<height-1 && udown!=null && udown.getType().isResource) add(cache.harvest(UnitAction.DIRECTION_DOWN));
+                if (x>0 && uleft!=null && uleft.getType().isResource) add(cache.harvest(UnitAction.DIRECTION_LEFT));
+            }
+            if (u.getResources()>0) {
+                if (y>0 && uup!=null && uup.getType().isStockpile && uup.getPlayer()==player) add(cache.ret(UnitAction.DIRECTION_UP));
+                if (x<width-1 && uright!=null && uright.getType().isStockpile && uright.getPlayer()==player) add(cache.ret(UnitAction.DIRECTION_RIGHT));
+                if (y<height-1 && udown!=null && udown.getType().isStockpile && udown.getPlayer()==player) add(cache.ret(UnitAction.DIRECTION_DOWN));
+                if (x>0 && uleft!=null && uleft.getType().isStockpile && uleft.getPlayer()==player) add(cache.ret(UnitAction.DIRECTION_LEFT));
+            }
+        }
+
+        int tup = (y>0 ? pgs.getTerrain(x, y-1):PhysicalGameState.TERRAIN_WALL);
+        int tright = (x<width-1 ? pgs.getTerrain(x+1, y):PhysicalGameState.TERRAIN_WALL);
+        int tdown = (y<height-1 ? pgs.getTerrain(x, y+1):PhysicalGameState.TERRAIN_WALL);
+        int tleft = (x>0 ? pgs.getTerrain(x-1, y):PhysicalGameState.TERRAIN_WALL);
+
+        if (!type.produces.isEmpty()) {
+            int resources = pgs.getPlayer(player).getResources();
+            for(UnitType ut:type.produces) {
+                if (resources>=ut.cost) {
+                    if (tup==PhysicalGameState.TERRAIN_NONE && uup==null) add(cache.produce(ut, UnitAction.DIRECTION_UP));
+                    if (tright==PhysicalGameState.TERRAIN_NONE && uright==null) add(cache.produce(ut, UnitAction.DIRECTION_RIGHT));
+                    if (tdown==PhysicalGameState.TERRAIN_NONE && udown==null) add(cache.produce(ut, UnitAction.DIRECTION_DOWN));
+                    if (tleft==PhysicalGameState.TERRAIN_NONE && uleft==null) add(cache.produce(ut, UnitAction.DIRECTION_LEFT));
+                }
+            }
+        }
+
+        if (type.canMove) {
+            if (tup==PhysicalGameState.TERRAIN_NONE && uup==null) add(cache.move(UnitAction.DIRECTION_UP));
+            if (tright==PhysicalGameState.TERRAIN_NONE && uright==null) add(cache.move(UnitAction.DIRECTION_RIGHT));
+            if (tdown==PhysicalGameState.TERRAIN_NONE && udown==null) add(cache.move(UnitAction.DIRECTION_DOWN));
+            if (tleft==PhysicalGameState.TERRAIN_NONE && uleft==null) add(cache.move(UnitAction.DIRECTION_LEFT));
+        }
+
+        add(cache.none(NONE_DURATION));
+    }
+
+
+    /**
+     * Starts building an action for a player in "gs": "pa" (or, if "pa" is null,
+     * the PlayerAction reused by this generator) is emptied, and the resources
+     * used by the actions already assigned in "gs" are reserved in it
+     * @param gs
+     * @param pa
+     * @return the player action to add the actions to (with "addUnitAction")
+     */
+    public PlayerAction start(GameState gs, PlayerAction pa) {
+        if (pa==null) {
+            pa = playerAction;
+            pa.actions.clear();
+            pa.r.clear();
+        }
+        used = pa.r;
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        for(Unit u:pgs.getUnits()) {
+            UnitActionAssignment uaa = gs.getActionAssignment(u);
+            if (uaa!=null) used.merge(uaa.getResourceUsage(pgs));
+        }
+        return pa;
+    }
+
+
+    /**
+     * Returns the position used by "ua" if executed by "u" (-1 if it does not use any)
+     */
+    static int positionUsed(Unit u, UnitAction ua, PhysicalGameState pgs) {
+        if (ua.type!=UnitAction.TYPE_MOVE && ua.type!=UnitAction.TYPE_PRODUCE) return -1;
+        return (u.getX() + UnitAction.DIRECTION_OFFSET_X[ua.parameter]) +
+               (u.getY() + UnitAction.DIRECTION_OFFSET_Y[ua.parameter])*pgs.getWidth();
+    }
+
+
+    /**
+     * Returns whether "ua", executed by "u", is consistent with the resources
+     * used by the actions added so far to the player action (the same as
+     * ua.resourceUsage(u, pgs).consistentWith(pa.getResourceUsage(), gs))
+     */
+    public boolean consistent(Unit u, UnitAction ua, GameState gs) {
+        int pos = positionUsed(u, ua, gs.getPhysicalGameState());
+        if (pos>=0 && used.usesPosition(pos)) return false;
+        for(int i = 0;i<used.resourcesUsed.length;i++) {
+            int r = used.resourcesUsed[i];
+            if (ua.type==UnitAction.TYPE_PRODUCE && i==u.getPlayer()) r += ua.unitType.cost;
+            if (r>0 && r>gs.getPlayer(i).getResources()) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Adds "ua" as the action of "u" to the player action, reserving the
+     * resources it uses
+     */
+    public void addUnitAction(PlayerAction pa, Unit u, UnitAction ua, GameState gs) {
+        int pos = positionUsed(u, ua, gs.getPhysicalGameState());
+        if (pos>=0) used.addPosition(pos);
+        if (ua.type==UnitAction.TYPE_PRODUCE) used.resourcesUsed[u.getPlayer()] += ua.unitType.cost;
+        if (pa==playerAction) {
+            int n = pa.actions.size();
+            if (n==pairs.size()) pairs.add(new Pair<>(u, ua));
+            Pair<Unit,UnitAction> p = pairs.get(n);
+            p.m_a = u;
+            p.m_b = ua;
+            pa.actions.add(p);
+        } else {
+            pa.addUnitAction(u, ua);
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package rts;
+
+import ai.core.AI;
+import ai.socket.BinaryConnection;
+import ai.socket.SocketAI;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.jdom.Element;
+import org.jdom.input.SAXBuilder;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.ByteBufferWriter;
+import util.XMLWriter;
+
+/**
+ * Hosts many remote games at the same time (a multi-game version of RemoteGame):
+ * each client that connects plays one game as player 0 against its own copy of
+ * an opponent AI, using the same protocol as SocketAI (XML, JSON or binary),
+ * without a window and without waiting between cycles.
+ *
+ * All the socket input/output is done by a single thread through a Selector,
+ * and each game advances in a pool of worker threads whenever its client
+ * answers, so the number of threads does not depend on the number of games.
+ * At most "maxGames" are played at a time (further connections wait until a
+ * game ends), and messages longer than MAX_MESSAGE_SIZE are not accepted, so
+ * the memory used is bounded.
+ *
+ * @author santi
+ */
+public class RemoteGameServer {
+    public static int DEBUG = 0;
+
+    public static int MAX_MESSAGE_SIZE = 16*1024*1024;
+
+    // the states of a game, according to the message expected from its client:
+    static final int STATE_WELCOME = 0;
+    static final int STATE_BUDGET_ACK = 1;
+    static final int STATE_UTT_ACK = 2;
+    static final int STATE_ACTION = 3;
+    static final int STATE_GAME_OVER_ACK = 4;
+    static final int STATE_CLOSED = 5;
+
+    int port;
+    int language;
+    UnitTypeTable utt;
+    PhysicalGameState pgs;
+    String mapName = null;
+    int maxCycles;
+    boolean partiallyObservable;
+    AI opponent;
+    int maxGames;
+    int nThreads;
+    int timeBudget = 100;
+    int iterationsBudget = 0;
+    GameMetricsWriter metricsWriter = null;
+    String uttString;   // the unit type table is serialized only once, for all the games
+
+    Selector selector;
+    ServerSocketChannel listener;
+    ExecutorService workers;
+    ConcurrentLinkedQueue<Session> processed = new ConcurrentLinkedQueue<>();
+    int activeGames = 0;
+    int gamesStarted = 0;
+
+
+    /**
+     * @param a_port
+     * @param a_language the protocol to use (SocketAI.LANGUAGE_XML, LANGUAGE_JSON or LANGUAGE_BINARY)
+     * @param a_utt
+     * @param a_pgs the map where all the games are played
+     * @param a_maxCycles
+     * @param a_partiallyObservable
+     * @param a_opponent the AI of player 1 (which is cloned for each game)
+     * @param a_maxGames the maximum number of games played at the same time
+     * @param a_nThreads the number of threads that run the games
+     */
+    public RemoteGameServer(int a_port, int a_language, UnitTypeTable a_utt, PhysicalGameState a_pgs,
+                            int a_maxCycles, boolean a_partiallyObservable, AI a_opponent,
+                            int a_maxGames, int a_nThreads) throws Exception {
+        port = a_port;
+        language = a_language;
+        utt = a_utt;
+        pgs = a_pgs;
+        maxCycles = a_maxCycles;
+        partiallyObservable = a_partiallyObservable;
+        opponent = a_opponent;
+        maxGames = a_maxGames;
+        nThreads = a_nThreads;
+
+        StringWriter sw = new StringWriter();
+        if (language == SocketAI.LANGUAGE_XML) {
+            XMLWriter w = new XMLWriter(sw, " ");
+            utt.toxml(w);
+            w.flush();
+        } else {
+            utt.toJSON(sw);
+        }
+        uttString = sw.toString();
+    }
+
+
+    public void setTimeBudget(int a_timeBudget, int a_iterationsBudget) {
+        timeBudget = a_timeBudget;
+        iterationsBudget = a_iterationsBudget;
+    }
+
+
+    /**
+     * The metrics of each game are written to "a_metricsWriter" when it ends
+     * (player 0 is the remote AI)
+     */
+    public void setMetricsWriter(GameMetricsWriter a_metricsWriter, String a_mapName) {
+        metricsWriter = a_metricsWriter;
+        mapName = a_mapName;
+    }
+
+
+    /**
+     * Accepts connections and plays games (it does not return unless there is an error)
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port), maxGames);
+        listener.configureBlocking(false);
+        SelectionKey acceptKey = listener.register(selector, SelectionKey.OP_ACCEPT);
+        workers = Executors.newFixedThreadPool(nThreads);
+        if (DEBUG>=1) System.out.println("RemoteGameServer: listening on port " + port);
+        try {
+            while(true) {
+                selector.select();
+
+                // games that finished processing a message:
+                Session s;
+                while((s = processed.poll()) != null) resume(s);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while(it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key == acceptKey) {
+                        accept();
+                        continue;
+                    }
+                    s = (Session)key.attachment();
+                    try {
+                        if (key.isWritable()) write(s);
+                        if (key.isValid() && key.isReadable()) read(s);
+                    } catch(IOException e) {
+                        if (DEBUG>=1) System.out.println("RemoteGameServer: game " + s.ID + ": " + e);
+                        clientLost(s);
+                    }
+                }
+                // stop accepting connections while the maximum number of games are being played:
+                acceptKey.interestOps(activeGames < maxGames ? SelectionKey.OP_ACCEPT : 0);
+            }
+        } finally {
+            workers.shutdownNow();
+            listener.close();
+            selector.close();
+        }
+    }
+
+
+    void accept() throws IOException {
+        SocketChannel channel = listener.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Session s = new Session(gamesStarted++, channel);
+        s.key = channel.register(selector, SelectionKey.OP_READ, s);
+        activeGames++;
+        if (DEBUG>=1) System.out.println("RemoteGameServer: game " + s.ID + " with " + channel.getRemoteAddress());
+    }
+
+
+    void read(Session s) throws IOException {
+        if (!s.in.hasRemaining()) {
+            if (s.in.capacity() >= MAX_MESSAGE_SIZE) throw new IOException("message too long");
+            ByteBuffer tmp = ByteBuffer.allocate(Math.min(s.in.capacity()*2, MAX_MESSAGE_SIZE));
+            s.in.flip();
+            tmp.put(s.in);
+            s.in = tmp;
+        }
+        if (s.channel.read(s.in) < 0) throw new IOException("connection closed by the client");
+        if (s.hasMessage()) process(s);
+    }
+
+
+    void write(Session s) throws IOException {
+        s.channel.write(s.pending);
+        if (s.pending.hasRemaining()) {
+            s.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        s.pending = null;
+        if (s.state == STATE_CLOSED) {
+            close(s);
+        } else {
+            s.key.interestOps(SelectionKey.OP_READ);
+            if (s.hasMessage()) process(s);
+        }
+    }
+
+
+    /**
+     * Processes the messages received from the client of "s" in a worker thread
+     * (no more input is read for "s" until it is done)
+     */
+    void process(Session s) {
+        s.key.interestOps(0);
+        workers.execute(() -> {
+            try {
+                // messages are processed until there is an answer to send:
+                while(s.state != STATE_CLOSED && s.pending == null && s.hasMessage()) s.processMessage();
+            } catch(Exception e) {
+                e.printStackTrace();
+                s.state = STATE_CLOSED;
+                s.pending = null;
+                if (s.metrics != null && s.metrics.crashed == -1) {
+                    s.metrics.crashed = 0;
+                    s.metrics.winner = 1;
+                }
+            }
+            processed.add(s);
+            selector.wakeup();
+        });
+    }
+
+
+    /**
+     * Called in the selector thread once a worker thread is done with "s"
+     */
+    void resume(Session s) {
+        try {
+            if (s.pending != null) {
+                write(s);
+            } else if (s.state == STATE_CLOSED) {
+                close(s);
+            } else {
+                s.key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch(IOException e) {
+            if (DEBUG>=1) System.out.println("RemoteGameServer: game " + s.ID + ": " + e);
+            clientLost(s);
+        }
+    }
+
+
+    void clientLost(Session s) {
+        if (s.metrics != null && s.metrics.crashed == -1 && s.state != STATE_GAME_OVER_ACK) {
+            s.metrics.crashed = 0;
+            s.metrics.winner = 1;
+        }
+        close(s);
+    }
+
+
+    void close(Session s) {
+        if (!s.channel.isOpen()) return;
+        try {
+            s.channel.close();
+        } catch(IOException e) {
+            e.printStackTrace();
+        }
+        activeGames--;
+        if (s.metrics != null) {
+            s.metrics.cycles = s.gs.getTime();
+            s.metrics.wallTime = (System.nanoTime() - s.startTime)/1000000;
+            if (metricsWriter != null) {
+                try {
+                    metricsWriter.write(s.metrics);
+                } catch(IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (DEBUG>=1) System.out.println("RemoteGameServer: game " + s.ID + " over" +
+                                         (s.metrics == null ? "":", winner: " + s.metrics.winner + " in " + s.metrics.cycles + " cycles"));
+    }
+
+
+    /**
+     * A game with a remote client. It is only accessed by one thread at a time
+     * (the selector thread, or the worker thread processing its messages).
+     */
+    class Session {
+        int ID;
+        SocketChannel channel;
+        SelectionKey key;
+        int state = STATE_WELCOME;
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        ByteBuffer pending = null;  // output not yet written
+
+        // output buffers (text or binary, depending on the language):
+        ByteBufferWriter text = null;
+        BinaryConnection.MessageBuffer binaryBuffer = null;
+        DataOutputStream binary = null;
+        GameStateDeltaWriter stateWriter = null;
+
+        GameState gs = null;
+        GameState view = null;      // the state sent to the client
+        AI ai2 = null;
+        GameMetrics metrics = null;
+        long startTime, requestTime;
+
+
+        Session(int a_ID, SocketChannel a_channel) {
+            ID = a_ID;
+            channel = a_channel;
+            if (language == SocketAI.LANGUAGE_BINARY) {
+                binaryBuffer = new BinaryConnection.MessageBuffer();
+                binary = new DataOutputStream(binaryBuffer);
+                stateWriter = new GameStateDeltaWriter();
+            } else {
+                text = new ByteBufferWriter();
+            }
+        }
+
+
+        /**
+         * Returns the length of the first message in the input buffer (including
+         * its delimiter), or -1 if it has not been completely received yet
+         */
+        int messageLength() {
+            if (language == SocketAI.LANGUAGE_BINARY) {
+                if (in.position() < 4) return -1;
+                int length = 4 + in.getInt(0);
+                return (in.position() >= length ? length : -1);
+            }
+            byte buf[] = in.array();
+            for(int i = 0;i<in.position();i++) {
+                if (buf[i] == '\n') return i + 1;
+            }
+            return -1;
+        }
+
+
+        boolean hasMessage() {
+            return messageLength() != -1;
+        }
+
+
+        String nextLine() {
+            int length = messageLength();
+            int end = length - 1;
+            if (end > 0 && in.array()[end - 1] == '\r') end--;
+            String line = new String(in.array(), 0, end, StandardCharsets.UTF_8);
+            consume(length);
+            return line;
+        }
+
+
+        void consume(int length) {
+            in.flip();
+            in.position(length);
+            in.compact();
+        }
+
+
+        void processMessage() throws Exception {
+            if (language == SocketAI.LANGUAGE_BINARY) {
+                int length = messageLength();
+                ByteBuffer message = ByteBuffer.wrap(in.array(), 4, length - 4);
+                int type = message.get();
+                int expected = (state == STATE_WELCOME ? BinaryConnection.MESSAGE_WELCOME :
+                                state == STATE_ACTION ? BinaryConnection.MESSAGE_ACTION :
+                                                        BinaryConnection.MESSAGE_ACK);
+                if (type != expected) throw new IOException("expected message " + expected + ", but received " + type);
+                if (state == STATE_ACTION) {
+                    PlayerAction pa = new PlayerAction();
+                    int n = message.getInt();
+                    for(int i = 0;i<n;i++) {
+                        Unit u = view.getUnit(message.getLong());
+                        pa.addUnitAction(u, UnitAction.fromBinary(message, utt));
+                    }
+                    consume(length);
+                    actionReceived(pa);
+                } else {
+                    consume(length);
+                    ackReceived();
+                }
+            } else {
+                String line = nextLine();
+                if (state == STATE_ACTION) {
+                    PlayerAction pa;
+                    if (language == SocketAI.LANGUAGE_XML) {
+                        Element action_e = new SAXBuilder().build(new StringReader(line)).getRootElement();
+                        pa = PlayerAction.fromXML(action_e, view, utt);
+                    } else {
+                        pa = PlayerAction.fromJSON(line, view, utt);
+                    }
+                    actionReceived(pa);
+                } else {
+                    // as SocketAI, ignore any extra lines sent with the welcome message or the acks:
+                    while(hasMessage()) nextLine();
+                    ackReceived();
+                }
+            }
+        }
+
+
+        void ackReceived() throws Exception {
+            switch(state) {
+                case STATE_WELCOME:
+                    if (binary != null) {
+                        DataOutputStream out = startMessage(BinaryConnection.MESSAGE_BUDGET);
+                        out.writeInt(timeBudget);
+                        out.writeInt(iterationsBudget);
+                    } else {
+                        startMessage("budget " + timeBudget + " " + iterationsBudget);
+                    }
+                    send();
+                    state = STATE_BUDGET_ACK;
+                    break;
+                case STATE_BUDGET_ACK:
+                    if (binary != null) {
+                        BinaryConnection.writeString(startMessage(BinaryConnection.MESSAGE_UTT), uttString);
+                    } else {
+                        startMessage("utt");
+                        text.write(uttString);
+                        text.write('\n');
+                    }
+                    send();
+                    state = STATE_UTT_ACK;
+                    break;
+                case STATE_UTT_ACK:
+                    gs = new GameState(pgs.clone(), utt);
+                    ai2 = opponent.clone();
+                    ai2.reset();
+                    metrics = new GameMetrics("remote (" + channel.getRemoteAddress() + ")", ai2.toString());
+                    metrics.iteration = ID;
+                    metrics.map = mapName;
+                    startTime = System.nanoTime();
+                    sendState();
+                    state = STATE_ACTION;
+                    break;
+                case STATE_GAME_OVER_ACK:
+                    state = STATE_CLOSED;
+                    break;
+            }
+        }
+
+
+        void actionReceived(PlayerAction pa1) throws Exception {
+            metrics.addActionTime(0, System.nanoTime() - requestTime, timeBudget);
+            pa1.fillWithNones(view, 0, 10);
+
+            PlayerAction pa2 = null;
+            long start = System.nanoTime();
+            try {
+                pa2 = ai2.getAction(1, partiallyObservable ? new PartiallyObservableGameState(gs, 1) : gs);
+            } catch(Exception e) {
+                e.printStackTrace();
+                metrics.crashed = 1;
+            }
+            metrics.addActionTime(1, System.nanoTime() - start, timeBudget);
+
+            boolean gameover = false;
+            if (pa2 != null) {
+                gs.issueSafe(pa1);
+                gs.issueSafe(pa2);
+                gameover = gs.cycle();
+            }
+            if (pa2 == null || gameover || gs.getTime() >= maxCycles) {
+                metrics.winner = (metrics.crashed == 1 ? 0 : gs.winner());
+                ai2.gameOver(metrics.winner);
+                if (binary != null) {
+                    startMessage(BinaryConnection.MESSAGE_GAME_OVER).writeByte(metrics.winner);
+                } else {
+                    startMessage("gameOver " + metrics.winner);
+                }
+                send();
+                state = STATE_GAME_OVER_ACK;
+            } else {
+                sendState();
+            }
+        }
+
+
+        void sendState() throws Exception {
+            view = (partiallyObservable ? new PartiallyObservableGameState(gs, 0) : gs);
+            if (binary != null) {
+                DataOutputStream out = startMessage(BinaryConnection.MESSAGE_GET_ACTION);
+                out.writeByte(0);
+                stateWriter.write(view, out);
+            } else {
+                startMessage("getAction 0");
+                if (language == SocketAI.LANGUAGE_XML) {
+                    XMLWriter w = new XMLWriter(text, " ");
+                    view.toxml(w);
+                    w.flush();
+                } else {
+                    view.toJSON(text);
+                }
+                text.write('\n');
+            }
+            send();
+            requestTime = System.nanoTime();
+        }
+
+
+        void startMessage(String command) {
+            text.reset();
+            text.write(command);
+            text.write('\n');
+        }
+
+
+        DataOutputStream startMessage(int type) throws IOException {
+            binaryBuffer.reset();
+            binary.writeInt(0);     // the length is filled in by toByteBuffer
+            binary.writeByte(type);
+            return binary;
+        }
+
+
+        /**
+         * Leaves the message to be written by the selector thread
+         */
+        void send() throws IOException {
+            if (binary != null) {
+                binary.flush();
+                pending = binaryBuffer.toByteBuffer();
+            } else {
+                pending = text.toByteBuffer();
+            }
+        }
+    }
+}
@@ -1,54 +1,105 @@
 package rts;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
- *
+ * The positions (cells) and player resources used by one or several actions.
+ * Positions are stored as a bit set indexed by cell (x + y*width), so that
+ * checking consistency and merging does not need to allocate anything.
  * @author santi
  */
 public class ResourceUsage {
-    List<Integer> positionsUsed = new LinkedList<>();
+    static final long NO_POSITIONS[] = new long[0];
+
+    long positionsUsed[] = NO_POSITIONS;  // bit "pos" is set if cell "pos" is used
+    int nPositionsUsed = 0;
     int []resourcesUsed = new int[2];   // 2 players is hardcoded here! FIX!!!
 
-    
+    List<Integer> positionsView = null;
+
+
     /**
      * Empty constructor
      */
     public ResourceUsage() {
-        
+
     }
-    
-    
+
+
     /**
      * Returns whether this instance is consistent with another ResourceUsage
-     * in a given game state. Resource usages are consistent if they respect the 
+     * in a given game state. Resource usages are consistent if they respect the
      * players' resource amount and don't have conflicting uses
      * @param anotherUsage
      * @param gs
      * @return
      */
     public boolean consistentWith(ResourceUsage anotherUsage, GameState gs) {
-		for (Integer pos : positionsUsed)
-			if (anotherUsage.positionsUsed.contains(pos))
-				return false;
+        long other[] = anotherUsage.positionsUsed;
+        int n = Math.min(positionsUsed.length, other.length);
+        for (int i = 0; i < n; i++)
+            if ((positionsUsed[i] & other[i]) != 0)
+                return false;
 
 		for (int i = 0; i < resourcesUsed.length; i++) {
             if (resourcesUsed[i] + anotherUsage.resourcesUsed[i] > 0 &&    // this extra condition (which should not be needed), is because
                                                                 // if an AI has a bug and allows execution of actions that
                                                                 // brings resources below 0, this code would fail.
-                resourcesUsed[i] + anotherUsage.resourcesUsed[i] > gs.getPlayer(i).getResources()) return false;            
+                resourcesUsed[i] + anotherUsage.resourcesUsed[i] > gs.getPlayer(i).getResources()) return false;
         }
-        
+
         return true;
     }
 
     /**
-     * Returns the list with used resource positions
+     * Returns the list with used resource positions, in increasing order.
+     * The list is a read-only view of this instance (it reflects later merges).
      * @return
      */
     public List<Integer> getPositionsUsed() {
-        return positionsUsed;
+        if (positionsView == null) positionsView = new PositionsView();
+        return positionsView;
+    }
+
+    /**
+     * Returns whether a position (x + y*width) is used
+     * @param pos
+     * @return
+     */
+    public boolean usesPosition(int pos) {
+        int word = pos >> 6;
+        return pos >= 0 && word < positionsUsed.length && (positionsUsed[word] & (1L << pos)) != 0;
+    }
+
+    /**
+     * Returns the number of positions used
+     * @return
+     */
+    public int getNumberOfPositionsUsed() {
+        return nPositionsUsed;
+    }
+
+    /**
+     * Returns the first used position greater or equal than "from", or -1 if
+     * there is none
+     * @param from
+     * @return
+     */
+    public int nextPositionUsed(int from) {
+        if (from < 0) from = 0;
+        int word = from >> 6;
+        if (word >= positionsUsed.length) return -1;
+        long bits = positionsUsed[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+            word++;
+            if (word == positionsUsed.length) return -1;
+            bits = positionsUsed[word];
+        }
     }
 
     /**
@@ -59,19 +110,42 @@ public class ResourceUsage {
     public int getResourcesUsed(int player) {
         return resourcesUsed[player];
     }
-    
+
+    /**
+     * Marks a position (x + y*width) as used. Negative positions (outside of
+     * the map, used by actions that cannot be executed anyway) are ignored
+     * @param pos
+     */
+    void addPosition(int pos) {
+        if (pos < 0) return;
+        int word = pos >> 6;
+        if (word >= positionsUsed.length) positionsUsed = Arrays.copyOf(positionsUsed, word + 1);
+        long bit = 1L << pos;
+        if ((positionsUsed[word] & bit) == 0) {
+            positionsUsed[word] |= bit;
+            nPositionsUsed++;
+        }
+    }
+
+    /**
+     * Removes all the positions and resources used (keeping the arrays, so that
+     * the instance can be reused)
+     */
+    void clear() {
+        if (nPositionsUsed > 0) Arrays.fill(positionsUsed, 0);
+        nPositionsUsed = 0;
+        resourcesUsed[0] = 0;
+        resourcesUsed[1] = 0;
+    }
+
     /**
      * Merges this and another instance of ResourceUsage into a new one
      * @param other
      * @return
      */
     public ResourceUsage mergeIntoNew(ResourceUsage other) {
-		ResourceUsage newResourceUsage = new ResourceUsage();
-		newResourceUsage.positionsUsed.addAll(positionsUsed);
-		newResourceUsage.positionsUsed.addAll(other.positionsUsed);
-		for (int i = 0; i < resourcesUsed.length; i++) {
-			newResourceUsage.resourcesUsed[i] = resourcesUsed[i] + other.resourcesUsed[i];
-		}
+		ResourceUsage newResourceUsage = clone();
+		newResourceUsage.merge(other);
 		return newResourceUsage;
     }
 
@@ -80,23 +154,68 @@ public class ResourceUsage {
      * @param other
      */
     public void merge(ResourceUsage other) {
-		positionsUsed.addAll(other.positionsUsed);
+        long o[] = other.positionsUsed;
+        if (other.nPositionsUsed > 0) {
+            if (o.length > positionsUsed.length) positionsUsed = Arrays.copyOf(positionsUsed, o.length);
+            for (int i = 0; i < o.length; i++) {
+                long added = o[i] & ~positionsUsed[i];
+                if (added != 0) {
+                    positionsUsed[i] |= added;
+                    nPositionsUsed += Long.bitCount(added);
+                }
+            }
+        }
 		for (int i = 0; i < resourcesUsed.length; i++) {
 			resourcesUsed[i] += other.resourcesUsed[i];
 		}
     }
-    
+
     public ResourceUsage clone() {
         ResourceUsage ru = new ResourceUsage();
-        ru.positionsUsed.addAll(positionsUsed);
+        if (nPositionsUsed > 0) ru.positionsUsed = positionsUsed.clone();
+        ru.nPositionsUsed = nPositionsUsed;
         ru.resourcesUsed[0] = resourcesUsed[0];
         ru.resourcesUsed[1] = resourcesUsed[1];
         return ru;
     }
 
-    
+
     public String toString() {
-        return "ResourceUsage: " + resourcesUsed[0] + "," + resourcesUsed[1] + " positions: " + positionsUsed;
+        return "ResourceUsage: " + resourcesUsed[0] + "," + resourcesUsed[1] + " positions: " + getPositionsUsed();
+    }
+
+
+    class PositionsView extends AbstractList<Integer> {
+        public int size() {
+            return nPositionsUsed;
+        }
+
+        public Integer get(int index) {
+            if (index < 0 || index >= nPositionsUsed) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + nPositionsUsed);
+            int pos = nextPositionUsed(0);
+            for (int i = 0; i < index; i++) pos = nextPositionUsed(pos + 1);
+            return pos;
+        }
+
+        public boolean contains(Object o) {
+            return (o instanceof Integer) && usesPosition((Integer)o);
+        }
+
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                int next = nextPositionUsed(0);
+
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                public Integer next() {
+                    if (next < 0) throw new NoSuchElementException();
+                    int pos = next;
+                    next = nextPositionUsed(pos + 1);
+                    return pos;
+                }
+            };
+        }
     }
-    
 }
@@ -1,8 +1,15 @@
 package rts;
 
-import java.util.LinkedList;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipInputStream;
 import org.jdom.Element;
+import org.jdom.input.SAXBuilder;
 import rts.units.Unit;
 import rts.units.UnitTypeTable;
 import util.Pair;
@@ -13,8 +20,13 @@ import util.XMLWriter;
  * @author santi
  */
 public class Trace {
+    /**
+     * Extension used for the files written with toBinary
+     */
+    public static final String BINARY_EXTENSION = ".trace";
+    
     UnitTypeTable utt = null;
-    List<TraceEntry> entries = new LinkedList<TraceEntry>();
+    List<TraceEntry> entries = new ArrayList<TraceEntry>();
     
     /**
      * Constructs from a UnitTypeTable
@@ -64,6 +76,7 @@ public class Trace {
      */
     public void addEntry(TraceEntry te) {
         entries.add(te);
+        checkpoints.clear();
     }
     
     /**
@@ -79,6 +92,60 @@ public class Trace {
        w.tag("/" + this.getClass().getName());
     }
         
+    /**
+     * Writes a binary representation (see TraceBinaryWriter), which is much
+     * smaller and faster to load than the XML one
+     * @param out
+     * @param compress
+     * @throws IOException
+     */
+    public void toBinary(OutputStream out, boolean compress) throws IOException {
+        TraceBinaryWriter w = new TraceBinaryWriter(out, utt, TraceBinaryWriter.DEFAULT_KEYFRAME_INTERVAL, compress);
+        w.addEntries(this);
+        w.close();
+    }
+
+    
+    /**
+     * Loads a trace from a file, which can be a binary trace (see toBinary),
+     * a XML trace (see toxml), or a zip file containing a XML trace
+     * @param fileName
+     * @return
+     * @throws Exception
+     */
+    public static Trace load(String fileName) throws Exception {
+        return load(fileName, null);
+    }
+
+
+    /**
+     * Loads a trace from a file (see above), overriding its UnitTypeTable with
+     * "a_utt" (if not null)
+     * @param fileName
+     * @param a_utt
+     * @return
+     * @throws Exception
+     */
+    public static Trace load(String fileName, UnitTypeTable a_utt) throws Exception {
+        if (TraceBinaryReader.isBinaryTrace(fileName)) {
+            TraceBinaryReader r = new TraceBinaryReader(fileName, a_utt);
+            Trace t = r.toTrace();
+            r.close();
+            return t;
+        }
+        Element e;
+        if (fileName.endsWith(".zip")) {
+            try (ZipInputStream zip = new ZipInputStream(new FileInputStream(fileName))) {
+                zip.getNextEntry(); // note: this assumes the zip file contains a single trace!
+                e = new SAXBuilder().build(zip).getRootElement();
+            }
+        } else {
+            e = new SAXBuilder().build(fileName).getRootElement();
+        }
+        return (a_utt == null ? new Trace(e):new Trace(e, a_utt));
+    }
+    
+    
     /**
      * Constructs the Trace from a XML element
      * @param e
@@ -112,74 +179,167 @@ public class Trace {
 
     
     
+    /**
+     * Number of cycles between the checkpoints (copies of the game state) that
+     * getGameStateAtCycle stores while replaying the game, and maximum number
+     * of checkpoints kept (the least recently used are discarded)
+     */
+    public static int CHECKPOINT_INTERVAL = 100;
+    public static int MAX_CHECKPOINTS = 100;
+    
     /**
      * this accelerates the function below if traversing a trace sequentially
      */
     GameState getGameStateAtCycle_cache = null; 
     
     /**
-     * Simulates the game from the from the last cached cycle (initialized as null) 
-     * to get the appropriate unit actions.
+     * the checkpoints, indexed by cycle (in least recently used order)
+     */
+    LinkedHashMap<Integer, GameState> checkpoints = new LinkedHashMap<Integer, GameState>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer, GameState> eldest) {
+            return size() > MAX_CHECKPOINTS;
+        }
+    };
+    
+    // used to synchronize the unit IDs (indexed by position in the map):
+    Unit synchronizeIDs_grid[] = null;
+    
+    /**
+     * Simulates the game from the closest checkpoint (or the last state
+     * returned) before "cycle" to get the appropriate unit actions. So, after
+     * the first time the game is replayed, any cycle is at most CHECKPOINT_INTERVAL
+     * cycles away (as long as its checkpoint has not been discarded).
      * Thus, this function can be slow, do not use in the internal loop of any AI!
      * @param cycle
      * @return
      */
     public GameState getGameStateAtCycle(int cycle) {
+        // find the closest state to start from:
+        GameState start = null;
+        if (getGameStateAtCycle_cache != null && getGameStateAtCycle_cache.getTime() <= cycle) {
+            start = getGameStateAtCycle_cache;
+        }
+        int checkpointCycle = -1;
+        for(int c:checkpoints.keySet()) {
+            if (c <= cycle && c > checkpointCycle) checkpointCycle = c;
+        }
+        if (checkpointCycle >= 0 && (start == null || checkpointCycle > start.getTime())) {
+            start = checkpoints.get(checkpointCycle);
+        }
+
         GameState gs = null;
-		for (TraceEntry te : getEntries()) {
-			if (gs == null) {
-				if (getGameStateAtCycle_cache != null && cycle >= getGameStateAtCycle_cache.getTime()) {
-					if (te.getTime() < getGameStateAtCycle_cache.getTime()) {
-						continue;
-					} else {
-						gs = getGameStateAtCycle_cache.clone();
-					}
-				} else {
-					gs = new GameState(te.getPhysicalGameState().clone(), utt);
-				}
-			}
-
-			while (gs.getTime() < te.getTime() && gs.getTime() < cycle) {
-				gs.cycle();
-			}
-
-			// synchronize the traces (some times the unit IDs might go off):
-			for (Unit u1 : gs.getUnits()) {
-				for (Unit u2 : te.getPhysicalGameState().getUnits()) {
-					if (u1.getX() == u2.getX() && u1.getY() == u2.getY() && u1.getType() == u2.getType()
-							&& u1.getID() != u2.getID()) {
-						u1.setID(u2.getID());
-					}
-				}
-			}
-
-			if (gs.getTime() == cycle) {
-				getGameStateAtCycle_cache = gs;
-				return gs;
-			}
-
-			PlayerAction pa0 = new PlayerAction();
-			PlayerAction pa1 = new PlayerAction();
-			for (Pair<Unit, UnitAction> tmp : te.getActions()) {
-				if (tmp.m_a.getPlayer() == 0)
-					pa0.addUnitAction(tmp.m_a, tmp.m_b);
-				if (tmp.m_a.getPlayer() == 1)
-					pa1.addUnitAction(tmp.m_a, tmp.m_b);
-			}
-			gs.issueSafe(pa0);
-			gs.issueSafe(pa1);
-
-			if (gs.getTime() == cycle) {
-				getGameStateAtCycle_cache = gs;
-				return gs;
-			}
+        int first = 0;
+        int lastCheckpoint = -1;
+        if (start != null) {
+            gs = start.clone();
+            first = firstEntryAtOrAfter(start.getTime());
+            lastCheckpoint = start.getTime();
+        }
+        
+        for (int i = first;i<entries.size();i++) {
+            TraceEntry te = entries.get(i);
+            if (gs == null) {
+                gs = new GameState(te.getPhysicalGameState().clone(), utt);
+                lastCheckpoint = gs.getTime();
+            }
 
-		}
-		while (gs.getTime() < cycle)
-			gs.cycle();
+            while (gs.getTime() < te.getTime() && gs.getTime() < cycle) {
+                gs.cycle();
+                if (gs.getTime() - lastCheckpoint >= CHECKPOINT_INTERVAL && gs.getTime() < te.getTime()) {
+                    checkpoints.put(gs.getTime(), gs.clone());
+                    lastCheckpoint = gs.getTime();
+                }
+            }
+
+            // synchronize the traces (some times the unit IDs might go off):
+            synchronizeIDs(gs, te.getPhysicalGameState());
+
+            if (gs.getTime() == cycle) {
+                getGameStateAtCycle_cache = gs;
+                return gs;
+            }
+            if (gs.getTime() - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                checkpoints.put(gs.getTime(), gs.clone());
+                lastCheckpoint = gs.getTime();
+            }
+
+            PlayerAction pa0 = new PlayerAction();
+            PlayerAction pa1 = new PlayerAction();
+            for (Pair<Unit, UnitAction> tmp : te.getActions()) {
+                if (tmp.m_a.getPlayer() == 0)
+                    pa0.addUnitAction(tmp.m_a, tmp.m_b);
+                if (tmp.m_a.getPlayer() == 1)
+                    pa1.addUnitAction(tmp.m_a, tmp.m_b);
+            }
+            gs.issueSafe(pa0);
+            gs.issueSafe(pa1);
+
+            if (gs.getTime() == cycle) {
+                getGameStateAtCycle_cache = gs;
+                return gs;
+            }
+
+        }
+        while (gs.getTime() < cycle) {
+            gs.cycle();
+            if (gs.getTime() - lastCheckpoint >= CHECKPOINT_INTERVAL && gs.getTime() < cycle) {
+                checkpoints.put(gs.getTime(), gs.clone());
+                lastCheckpoint = gs.getTime();
+            }
+        }
 
-		getGameStateAtCycle_cache = gs;
-		return gs;
+        getGameStateAtCycle_cache = gs;
+        return gs;
     }    
     
+    
+    /**
+     * Returns the index of the first entry with time "time" or later (or the
+     * number of entries if there is none)
+     * @param time
+     * @return
+     */
+    int firstEntryAtOrAfter(int time) {
+        int low = 0, high = entries.size();
+        while(low < high) {
+            int mid = (low + high)/2;
+            if (entries.get(mid).getTime() < time) {
+                low = mid+1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    
+    /**
+     * Gives the units in "gs" the IDs of the units of the same type in the same
+     * positions in "pgs"
+     * @param gs
+     * @param pgs
+     */
+    void synchronizeIDs(GameState gs, PhysicalGameState pgs) {
+        int width = pgs.getWidth();
+        int size = width*pgs.getHeight();
+        if (synchronizeIDs_grid == null || synchronizeIDs_grid.length < size) synchronizeIDs_grid = new Unit[size];
+        for (Unit u2 : pgs.getUnits()) {
+            int pos = u2.getX() + u2.getY()*width;
+            if (pos >= 0 && pos < size) synchronizeIDs_grid[pos] = u2;
+        }
+        for (Unit u1 : gs.getUnits()) {
+            int pos = u1.getX() + u1.getY()*width;
+            if (pos < 0 || pos >= size) continue;
+            Unit u2 = synchronizeIDs_grid[pos];
+            if (u2 != null && u1.getX() == u2.getX() && u1.getY() == u2.getY() && 
+                u1.getType() == u2.getType() && u1.getID() != u2.getID()) {
+                u1.setID(u2.getID());
+            }
+        }
+        for (Unit u2 : pgs.getUnits()) {
+            int pos = u2.getX() + u2.getY()*width;
+            if (pos >= 0 && pos < size) synchronizeIDs_grid[pos] = null;
+        }
+    }
+    
 }
@@ -0,0 +1,237 @@
+package rts;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Reads the traces written by TraceBinaryWriter. The file is memory-mapped,
+ * and only the block containing the requested entry is decoded, so single
+ * entries of long traces can be accessed without loading the whole trace
+ * (use toTrace to load all of it).
+ * @author santi
+ */
+public class TraceBinaryReader {
+    UnitTypeTable utt;
+    ByteBuffer file;
+    boolean compressed;
+    int keyframeInterval;
+    int nEntries;
+    long blockPositions[];
+    int blockFirstEntries[];
+    int blockFirstTimes[];
+
+    // the last block that was decoded:
+    int cachedBlock = -1;
+    List<TraceEntry> cachedEntries = null;
+    Inflater inflater = null;
+
+
+    /**
+     * Opens a trace, with the unit type table stored in it
+     * @param fileName
+     * @throws IOException
+     */
+    public TraceBinaryReader(String fileName) throws IOException {
+        this(fileName, null);
+    }
+
+
+    /**
+     * Opens a trace, overriding the unit type table stored in it with "a_utt"
+     * (if not null)
+     * @param fileName
+     * @param a_utt
+     * @throws IOException
+     */
+    public TraceBinaryReader(String fileName, UnitTypeTable a_utt) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("trace too large to be mapped: " + fileName);
+            // the mapping remains valid after closing the channel:
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (file.limit() < 16 || file.getInt(0) != TraceBinaryWriter.MAGIC ||
+            file.getInt(file.limit()-4) != TraceBinaryWriter.MAGIC) {
+            throw new IOException("not a binary trace: " + fileName);
+        }
+        int version = file.get(4);
+        if (version != TraceBinaryWriter.VERSION) throw new IOException("unsupported binary trace version " + version + ": " + fileName);
+        compressed = (file.get(5) & TraceBinaryWriter.FLAG_COMPRESSED) != 0;
+        keyframeInterval = file.getInt(6);
+        if (a_utt != null) {
+            utt = a_utt;
+        } else {
+            ByteBuffer in = file.duplicate();
+            in.position(10);
+            ByteBuffer uttBytes = readData(in);
+            utt = UnitTypeTable.fromJSON(StandardCharsets.UTF_8.decode(uttBytes).toString());
+        }
+
+        nEntries = file.getInt(file.limit()-16);
+        file.position((int)file.getLong(file.limit()-12));
+        int nBlocks = file.getInt();
+        blockPositions = new long[nBlocks];
+        blockFirstEntries = new int[nBlocks];
+        blockFirstTimes = new int[nBlocks];
+        for(int i = 0;i<nBlocks;i++) {
+            blockPositions[i] = file.getLong();
+            blockFirstEntries[i] = file.getInt();
+            blockFirstTimes[i] = file.getInt();
+        }
+    }
+
+
+    /**
+     * Returns whether "fileName" starts like a binary trace
+     * @param fileName
+     * @return
+     */
+    public static boolean isBinaryTrace(String fileName) {
+        try (RandomAccessFile raf = new RandomAccessFile(fileName, "r")) {
+            return raf.length() >= 4 && raf.readInt() == TraceBinaryWriter.MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    public UnitTypeTable getUnitTypeTable() {
+        return utt;
+    }
+
+
+    public int getNumberOfEntries() {
+        return nEntries;
+    }
+
+
+    /**
+     * Returns the number of entries between keyframes (complete game states)
+     * @return
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+
+    /**
+     * Returns the i-th entry. Entries are decoded a block at a time, so
+     * reading consecutive entries is cheap. The returned entries should not be
+     * modified, since they are shared with the next calls.
+     * @param i
+     * @return
+     */
+    public TraceEntry getEntry(int i) {
+        if (i < 0 || i >= nEntries) throw new IndexOutOfBoundsException("entry " + i + " of " + nEntries);
+        int block = findBlock(i);
+        if (block != cachedBlock) {
+            cachedEntries = readBlock(block);
+            cachedBlock = block;
+        }
+        return cachedEntries.get(i - blockFirstEntries[block]);
+    }
+
+
+    /**
+     * Loads all the entries in a Trace
+     * @return
+     */
+    public Trace toTrace() {
+        Trace t = new Trace(utt);
+        for(int block = 0;block<blockPositions.length;block++) {
+            List<TraceEntry> entries = (block == cachedBlock ? cachedEntries:readBlock(block));
+            for(TraceEntry te:entries) t.addEntry(te);
+        }
+        return t;
+    }
+
+
+    public void close() {
+        if (inflater != null) inflater.end();
+        inflater = null;
+        cachedEntries = null;
+        cachedBlock = -1;
+    }
+
+
+    int findBlock(int entry) {
+        int low = 0, high = blockFirstEntries.length-1;
+        while(low < high) {
+            int mid = (low + high + 1)/2;
+            if (blockFirstEntries[mid] <= entry) {
+                low = mid;
+            } else {
+                high = mid-1;
+            }
+        }
+        return low;
+    }
+
+
+    List<TraceEntry> readBlock(int block) {
+        ByteBuffer in = file.duplicate();
+        in.position((int)blockPositions[block]);
+        int n = in.getInt();
+        ByteBuffer data = readData(in);
+
+        GameStateDeltaReader stateReader = new GameStateDeltaReader(utt);
+        List<TraceEntry> entries = new ArrayList<>(n);
+        for(int i = 0;i<n;i++) {
+            GameState gs = stateReader.read(data);
+            PhysicalGameState pgs = gs.getPhysicalGameState();
+            TraceEntry te = new TraceEntry(pgs, gs.getTime());
+            int nActions = data.getInt();
+            for(int j = 0;j<nActions;j++) {
+                Unit u = pgs.getUnit(data.getLong());
+                te.addUnitAction(u, UnitAction.fromBinary(data, utt));
+            }
+            entries.add(te);
+        }
+        return entries;
+    }
+
+
+    /**
+     * Reads data written by TraceBinaryWriter.writeData (decompressing it if
+     * needed)
+     * @param in
+     * @return
+     */
+    ByteBuffer readData(ByteBuffer in) {
+        int size = in.getInt();
+        int storedSize = in.getInt();
+        if (!compressed) {
+            ByteBuffer data = in.slice();
+            data.limit(size);
+            return data;
+        }
+        byte stored[] = new byte[storedSize];
+        in.get(stored);
+        byte raw[] = new byte[size];
+        if (inflater == null) inflater = new Inflater();
+        inflater.reset();
+        inflater.setInput(stored);
+        try {
+            int read = 0;
+            while(read < size && !inflater.finished()) {
+                int k = inflater.inflate(raw, read, size - read);
+                if (k == 0 && inflater.needsInput()) break;
+                read += k;
+            }
+            if (read != size) throw new IllegalStateException("corrupted binary trace");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupted binary trace", e);
+        }
+        return ByteBuffer.wrap(raw);
+    }
+}
@@ -0,0 +1,196 @@
+package rts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * Writes traces in a compact binary format, as an alternative to Trace.toxml.
+ * Entries are grouped in blocks: the first entry of each block (a keyframe)
+ * contains the complete game state, and the rest only what changed since the
+ * previous entry (see GameStateDeltaWriter). Each block can be compressed on
+ * its own, and an index at the end of the file allows TraceBinaryReader to
+ * jump to any of them without reading the previous ones.
+ *
+ * Format (big-endian, as written by DataOutput):
+ * - header: int MAGIC, byte VERSION, byte flags (FLAG_COMPRESSED), int
+ *   keyframe interval, and the unit type table as JSON (int size of the
+ *   UTF-8 bytes, int size as stored, which is smaller if FLAG_COMPRESSED, and
+ *   the stored bytes)
+ * - blocks: int number of entries, and the data (int size, int size as
+ *   stored, and the stored bytes, as for the unit type table). For each entry: the
+ *   game state (see GameStateDeltaWriter), int number of actions, and for each:
+ *   long unit ID and the action (see UnitAction.toBinary)
+ * - index: int number of blocks, and for each: long position in the file, int
+ *   index of its first entry, int time of its first entry
+ * - int number of entries, long position of the index, int MAGIC
+ *
+ * @author santi
+ */
+public class TraceBinaryWriter {
+    public static final int MAGIC = 0x4d525453;  // "MRTS"
+    public static final int VERSION = 1;
+    public static final int FLAG_COMPRESSED = 1;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 64;
+
+    UnitTypeTable utt;
+    DataOutputStream out;
+    long position = 0;
+    int keyframeInterval;
+    boolean compress;
+    int nEntries = 0;
+
+    // the block being written:
+    GameStateDeltaWriter stateWriter = new GameStateDeltaWriter();
+    ByteArrayOutputStream block = new ByteArrayOutputStream();
+    DataOutputStream blockOut = new DataOutputStream(block);
+    int blockEntries = 0;
+    int blockFirstTime = 0;
+    Deflater deflater = null;
+    byte compressed[] = new byte[0];
+
+    // the index:
+    List<Long> blockPositions = new ArrayList<>();
+    List<Integer> blockFirstEntries = new ArrayList<>();
+    List<Integer> blockFirstTimes = new ArrayList<>();
+
+
+    public TraceBinaryWriter(String fileName, UnitTypeTable a_utt, boolean a_compress) throws IOException {
+        this(new FileOutputStream(fileName), a_utt, DEFAULT_KEYFRAME_INTERVAL, a_compress);
+    }
+
+
+    /**
+     * @param a_out
+     * @param a_utt
+     * @param a_keyframeInterval number of entries between complete game states
+     * (higher values make files smaller, but random access slower)
+     * @param a_compress whether to compress the blocks (with Deflater)
+     * @throws IOException
+     */
+    public TraceBinaryWriter(OutputStream a_out, UnitTypeTable a_utt, int a_keyframeInterval, boolean a_compress) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(a_out));
+        utt = a_utt;
+        keyframeInterval = Math.max(1, a_keyframeInterval);
+        compress = a_compress;
+        if (compress) deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        StringWriter sw = new StringWriter();
+        try {
+            utt.toJSON(sw);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        byte uttBytes[] = sw.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(compress ? FLAG_COMPRESSED:0);
+        out.writeInt(keyframeInterval);
+        position = 4 + 1 + 1 + 4;
+        writeData(uttBytes, uttBytes.length);
+    }
+
+
+    /**
+     * Writes an entry. Entries are written in blocks, so the entry might not
+     * reach the output stream until more entries are added or the writer is
+     * closed.
+     * @param te
+     * @throws IOException
+     */
+    public void addEntry(TraceEntry te) throws IOException {
+        if (blockEntries == 0) {
+            stateWriter.reset();
+            blockFirstTime = te.getTime();
+        }
+        GameState gs = new GameState(te.getPhysicalGameState(), utt);
+        gs.time = te.getTime();
+        stateWriter.write(gs, blockOut);
+        blockOut.writeInt(te.getActions().size());
+        for(Pair<Unit,UnitAction> ua:te.getActions()) {
+            blockOut.writeLong(ua.m_a.getID());
+            ua.m_b.toBinary(blockOut);
+        }
+        blockEntries++;
+        if (blockEntries >= keyframeInterval) writeBlock();
+    }
+
+
+    /**
+     * Writes all the entries of a trace
+     * @param t
+     * @throws IOException
+     */
+    public void addEntries(Trace t) throws IOException {
+        for(TraceEntry te:t.getEntries()) addEntry(te);
+    }
+
+
+    /**
+     * Writes the pending entries and the index, and closes the output stream
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (blockEntries > 0) writeBlock();
+        long indexPosition = position;
+        out.writeInt(blockPositions.size());
+        for(int i = 0;i<blockPositions.size();i++) {
+            out.writeLong(blockPositions.get(i));
+            out.writeInt(blockFirstEntries.get(i));
+            out.writeInt(blockFirstTimes.get(i));
+        }
+        out.writeInt(nEntries);
+        out.writeLong(indexPosition);
+        out.writeInt(MAGIC);
+        out.close();
+        if (deflater != null) deflater.end();
+    }
+
+
+    void writeBlock() throws IOException {
+        blockPositions.add(position);
+        blockFirstEntries.add(nEntries);
+        blockFirstTimes.add(blockFirstTime);
+
+        out.writeInt(blockEntries);
+        position += 4;
+        writeData(block.toByteArray(), block.size());
+
+        nEntries += blockEntries;
+        blockEntries = 0;
+        block.reset();
+    }
+
+
+    void writeData(byte data[], int size) throws IOException {
+        int storedSize = size;
+        if (compress) {
+            if (compressed.length < size + 64) compressed = new byte[size + size/8 + 64];
+            deflater.reset();
+            deflater.setInput(data, 0, size);
+            deflater.finish();
+            storedSize = 0;
+            while(!deflater.finished()) {
+                if (storedSize == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length*2);
+                storedSize += deflater.deflate(compressed, storedSize, compressed.length - storedSize);
+            }
+            data = compressed;
+        }
+        out.writeInt(size);
+        out.writeInt(storedSize);
+        out.write(data, 0, storedSize);
+        position += 4 + 4 + storedSize;
+    }
+}
@@ -0,0 +1,217 @@
+package rts;
+
+import java.util.ArrayList;
+import java.util.List;
+import rts.units.Unit;
+
+/**
+ * A sequence of changes made to a {@link GameState} (see {@link GameState#getUndoMark()}).
+ * Each change stores the value that the changed element does not currently have,
+ * and applying it swaps that value with the current one. So, applying the changes
+ * backwards undoes them, and applying them again forwards (after undoing them)
+ * redoes them.
+ * @author santi
+ */
+public class UndoLog {
+    static final int CHANGE_UNIT = 0;           // a unit's position, hit points or resources
+    static final int CHANGE_UNIT_PRESENCE = 1;  // a unit added to / removed from the map
+    static final int CHANGE_PLAYER = 2;         // a player's resources
+    static final int CHANGE_TIME = 3;           // the game time and the unit cancelation counter
+    static final int CHANGE_ASSIGNMENT = 4;     // the action assignment of a unit
+    static final int CHANGE_ASSIGNMENTS = 5;    // the whole action assignment table
+    static final int CHANGE_RESERVED = 6;       // a cell of the reserved cell grid
+    static final int CHANGE_RESERVED_GRID = 7;  // the whole reserved cell grid
+
+    static class Change {
+        int type;
+        Object target;
+        Object value;
+        int a, b, c, d;
+
+        Change(int a_type, Object a_target) {
+            type = a_type;
+            target = a_target;
+        }
+    }
+
+    List<Change> changes = new ArrayList<>();
+
+
+    /**
+     * Number of changes in the log
+     * @return
+     */
+    public int size() {
+        return changes.size();
+    }
+
+
+    Change add(int type, Object target) {
+        Change c = new Change(type, target);
+        changes.add(c);
+        return c;
+    }
+
+
+    void unitChanged(Unit u) {
+        Change c = add(CHANGE_UNIT, u);
+        c.a = u.getX();
+        c.b = u.getY();
+        c.c = u.getHitPoints();
+        c.d = u.getResources();
+    }
+
+
+    void unitAdded(Unit u, int index) {
+        Change c = add(CHANGE_UNIT_PRESENCE, u);
+        c.a = index;
+        c.b = 0;    // undoing removes it
+    }
+
+
+    void unitRemoved(Unit u, int index) {
+        Change c = add(CHANGE_UNIT_PRESENCE, u);
+        c.a = index;
+        c.b = 1;    // undoing inserts it back
+    }
+
+
+    void playerChanged(Player p) {
+        Change c = add(CHANGE_PLAYER, p);
+        c.a = p.getResources();
+    }
+
+
+    void timeChanged(int time, int unitCancelationCounter) {
+        Change c = add(CHANGE_TIME, null);
+        c.a = time;
+        c.b = unitCancelationCounter;
+    }
+
+
+    void assignmentChanged(Unit u, UnitActionAssignment previous) {
+        Change c = add(CHANGE_ASSIGNMENT, u);
+        c.value = previous;
+    }
+
+
+    void assignmentsReplaced(UnitActionTable previous) {
+        Change c = add(CHANGE_ASSIGNMENTS, null);
+        c.value = previous;
+    }
+
+
+    void reservedCellChanged(int idx, Unit previous) {
+        Change c = add(CHANGE_RESERVED, null);
+        c.a = idx;
+        c.value = previous;
+    }
+
+
+    void reservedGridReplaced(Unit previous[]) {
+        Change c = add(CHANGE_RESERVED_GRID, null);
+        c.value = previous;
+    }
+
+
+    /**
+     * Returns a new log with the changes from position "from" on
+     * @param from
+     * @return
+     */
+    UndoLog subLog(int from) {
+        UndoLog l = new UndoLog();
+        l.changes.addAll(changes.subList(from, changes.size()));
+        return l;
+    }
+
+
+    /**
+     * Swaps the value stored in a change with the current one in the game state
+     * @param c
+     * @param gs
+     */
+    static void apply(Change c, GameState gs) {
+        PhysicalGameState pgs = gs.pgs;
+        switch(c.type) {
+            case CHANGE_UNIT:
+                {
+                    Unit u = (Unit)c.target;
+                    int x = u.getX(), y = u.getY(), hp = u.getHitPoints(), r = u.getResources();
+                    gs.unitWillChange(u);
+                    if (c.a!=x || c.b!=y) pgs.moveUnit(u, c.a, c.b);
+                    u.setHitPoints(c.c);
+                    u.setResources(c.d);
+                    c.a = x;
+                    c.b = y;
+                    c.c = hp;
+                    c.d = r;
+                }
+                break;
+            case CHANGE_UNIT_PRESENCE:
+                {
+                    Unit u = (Unit)c.target;
+                    if (c.b==1) {
+                        pgs.insertUnit(u, c.a);
+                        gs.unitAdded(u);
+                        c.b = 0;
+                    } else {
+                        gs.unitRemoved(u);
+                        pgs.removeUnit(u);
+                        c.b = 1;
+                    }
+                }
+                break;
+            case CHANGE_PLAYER:
+                {
+                    Player p = (Player)c.target;
+                    int r = p.getResources();
+                    p.setResources(c.a);
+                    c.a = r;
+                }
+                break;
+            case CHANGE_TIME:
+                {
+                    int t = gs.time, counter = gs.unitCancelationCounter;
+                    gs.time = c.a;
+                    gs.unitCancelationCounter = c.b;
+                    c.a = t;
+                    c.b = counter;
+                }
+                break;
+            case CHANGE_ASSIGNMENT:
+                {
+                    Unit u = (Unit)c.target;
+                    UnitActionAssignment current = gs.unitActions.get(u);
+                    if (c.value==null) {
+                        gs.unitActions.remove(u);
+                    } else {
+                        gs.unitActions.put(u, (UnitActionAssignment)c.value);
+                    }
+                    c.value = current;
+                }
+                break;
+            case CHANGE_ASSIGNMENTS:
+                {
+                    UnitActionTable current = gs.unitActions;
+                    gs.unitActions = (UnitActionTable)c.value;
+                    c.value = current;
+                }
+                break;
+            case CHANGE_RESERVED:
+                {
+                    Unit current = gs.reservedCells[c.a];
+                    gs.reservedCells[c.a] = (Unit)c.value;
+                    c.value = current;
+                }
+                break;
+            case CHANGE_RESERVED_GRID:
+                {
+                    Unit current[] = gs.reservedCells;
+                    gs.reservedCells = (Unit[])c.value;
+                    c.value = current;
+                }
+                break;
+        }
+    }
+}
@@ -2,12 +2,17 @@ package rts;
 
 import com.eclipsesource.json.Json;
 import com.eclipsesource.json.JsonObject;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Random;
 
 import org.jdom.Element;
 import rts.units.*;
+import util.ByteBufferWriter;
+import util.JSONReader;
 import util.XMLWriter;
 
 /**
@@ -121,9 +126,22 @@ public class UnitAction {
     UnitType unitType = null;
     
     /**
-     * Amount of resources associated with this action
+     * Amount of resources associated with this action (volatile, since actions
+     * can be shared by several search threads, see resourceUsage)
      */
-    ResourceUsage r_cache = null;
+    volatile ResourceUsage r_cache = null;
+    
+    /**
+     * The cache this action belongs to, if it is a canonical instance shared by
+     * several units (see UnitActionCache), in which case its resource usage
+     * (which depends on the unit) is cached there instead of in "r_cache"
+     */
+    UnitActionCache cache = null;
+    
+    /**
+     * Resource usage of the shared actions that do not use any resource
+     */
+    static final ResourceUsage NO_RESOURCES = new ResourceUsage();
     
     /**
      * Creates an action with specified type
@@ -181,6 +199,7 @@ public class UnitAction {
     
     @Override
     public boolean equals(Object o) {
+        if (o == this) return true;
         if (!(o instanceof UnitAction)) return false;
         UnitAction a = (UnitAction)o;
         
@@ -234,10 +253,28 @@ public class UnitAction {
      * @return
      */
     public ResourceUsage resourceUsage(Unit u, PhysicalGameState pgs) {
-		if (r_cache != null)
-			return r_cache;
+		ResourceUsage ru = r_cache;
+		if (ru != null)
+			return ru;
+		if (cache != null)
+			return cache.resourceUsage(this, u, pgs);
 		
-        r_cache = new ResourceUsage();
+        // (built before being stored in r_cache, since actions can be shared by
+        // several search threads):
+        ru = newResourceUsage(u, pgs);
+        r_cache = ru;
+        return ru;
+    }
+    
+    /**
+     * Creates a new ResourceUsage with the resources used by this action when
+     * executed by "u"
+     * @param u
+     * @param pgs
+     * @return
+     */
+    ResourceUsage newResourceUsage(Unit u, PhysicalGameState pgs) {
+        ResourceUsage ru = new ResourceUsage();
         
         switch(type) {
             case TYPE_MOVE:
@@ -249,12 +286,12 @@ public class UnitAction {
                         case DIRECTION_DOWN: pos += pgs.getWidth(); break;
                         case DIRECTION_LEFT: pos--; break;
                     }
-                    r_cache.positionsUsed.add(pos);
+                    ru.addPosition(pos);
                 }
                 break;
             case TYPE_PRODUCE:
                 {
-                    r_cache.resourcesUsed[u.getPlayer()] += unitType.cost;
+                    ru.resourcesUsed[u.getPlayer()] += unitType.cost;
                     int pos = u.getX() + u.getY()*pgs.getWidth();
                     switch(parameter) {
                         case DIRECTION_UP: pos -= pgs.getWidth(); break;
@@ -262,12 +299,12 @@ public class UnitAction {
                         case DIRECTION_DOWN: pos += pgs.getWidth(); break;
                         case DIRECTION_LEFT: pos --; break;
                     }
-                    r_cache.positionsUsed.add(pos);
+                    ru.addPosition(pos);
                 }
                 break;
         }
         
-        return r_cache;
+        return ru;
     }
     
     /**
@@ -314,17 +351,19 @@ public class UnitAction {
                 break;
                 
             case TYPE_MOVE: //moves the unit in the intended direction
+                u = s.getWritableUnit(u);
                 switch(parameter) {
-                    case DIRECTION_UP:      u.setY(u.getY()-1); break;
-                    case DIRECTION_RIGHT:   u.setX(u.getX()+1); break;
-                    case DIRECTION_DOWN:    u.setY(u.getY()+1); break;
-                    case DIRECTION_LEFT:    u.setX(u.getX()-1); break;
+                    case DIRECTION_UP:      pgs.moveUnit(u, u.getX(), u.getY()-1); break;
+                    case DIRECTION_RIGHT:   pgs.moveUnit(u, u.getX()+1, u.getY()); break;
+                    case DIRECTION_DOWN:    pgs.moveUnit(u, u.getX(), u.getY()+1); break;
+                    case DIRECTION_LEFT:    pgs.moveUnit(u, u.getX()-1, u.getY()); break;
                 }
                 break;
             case TYPE_ATTACK_LOCATION: //if there's a unit in the target location, damages it
                 {
                     Unit other = pgs.getUnitAt(x, y);
                     if (other != null) {
+                        other = s.getWritableUnit(other);
                         int damage;
                         if (u.getMinDamage() == u.getMaxDamage()) {
                             damage = u.getMinDamage();
@@ -350,6 +389,8 @@ public class UnitAction {
                     }
                     if (maybeAResource != null && u.getType().canHarvest && u.getResources()==0) {
                     	//indeed it is a resource, harvest from it
+                        maybeAResource = s.getWritableUnit(maybeAResource);
+                        u = s.getWritableUnit(u);
                         maybeAResource.setResources(maybeAResource.getResources() - u.getHarvestAmount());
                         if (maybeAResource.getResources()<=0) {
                             s.removeUnit(maybeAResource);
@@ -371,7 +412,9 @@ public class UnitAction {
                 	
 					if (base != null && base.getType().isStockpile && u.getResources() > 0) {
 						Player p = pgs.getPlayer(u.getPlayer());
+						s.playerWillChange(p);
 						p.setResources(p.getResources() + u.getResources());
+						u = s.getWritableUnit(u);
 						u.setResources(0);
 					} else {// base is not there
 		
@@ -392,8 +435,9 @@ public class UnitAction {
                         case DIRECTION_LEFT:    targetx--; break;
                     }
                     newUnit = new Unit(u.getPlayer(), unitType, targetx, targety, 0);
-                    pgs.addUnit(newUnit);
+                    s.addUnit(newUnit);
                     Player p = pgs.getPlayer(u.getPlayer());
+                    s.playerWillChange(p);
                     p.setResources(p.getResources() - newUnit.getCost());
                     if (p.getResources()<0) {
                         System.err.print("Illegal action executed! resources of player " + p.ID + " are now " + p.getResources() + "\n");
@@ -485,18 +529,62 @@ public class UnitAction {
      * @throws Exception
      */
     public void toJSON(Writer w) throws Exception {
-        String attributes = "\"type\":" + type + "";
+        w.write("{\"type\":");
+        ByteBufferWriter.writeLong(w, type);
         if (type==TYPE_ATTACK_LOCATION) {
-            attributes += ", \"x\":" + x + ",\"y\":" + y;
+            w.write(", \"x\":");
+            ByteBufferWriter.writeLong(w, x);
+            w.write(",\"y\":");
+            ByteBufferWriter.writeLong(w, y);
         } else {
             if (parameter != DIRECTION_NONE) {
-                attributes += ", \"parameter\":" + parameter;
+                w.write(", \"parameter\":");
+                ByteBufferWriter.writeLong(w, parameter);
+            }
+            if (unitType!=null) {
+                w.write(", \"unitType\":\"");
+                w.write(unitType.name);
+                w.write("\"");
             }
-            if (unitType!=null) attributes += ", \"unitType\":\"" + unitType.name + "\"";
         }
-        w.write("{"+attributes+"}");
+        w.write("}");
     }    
 
+    /**
+     * Writes a compact binary representation of this action (used by the 
+     * binary socket protocol, see ai.socket.BinaryConnection)
+     * @param out
+     * @throws IOException
+     */
+    public void toBinary(DataOutput out) throws IOException {
+        out.writeByte(type);
+        if (type==TYPE_ATTACK_LOCATION) {
+            out.writeShort(x);
+            out.writeShort(y);
+        } else {
+            out.writeShort(parameter);
+            out.writeShort(unitType==null ? -1:unitType.ID);
+        }
+    }
+
+    /**
+     * Reads an action written by toBinary
+     * @param in
+     * @param utt
+     * @return
+     */
+    public static UnitAction fromBinary(ByteBuffer in, UnitTypeTable utt) {
+        int type = in.get();
+        if (type==TYPE_ATTACK_LOCATION) {
+            int x = in.getShort();
+            int y = in.getShort();
+            return new UnitAction(type, x, y);
+        }
+        int parameter = in.getShort();
+        int unitTypeID = in.getShort();
+        return new UnitAction(type, parameter, (unitTypeID<0 ? null:utt.getUnitType(unitTypeID)));
+    }
+
     /**
      * Creates a UnitAction from a XML element
      * @param e
@@ -554,5 +642,38 @@ public class UnitAction {
         
         return ua;
     }
+
+
+    /**
+     * Reads a UnitAction from a JSON object, without building the object first
+     * @param r
+     * @param utt
+     * @return
+     */
+    public static UnitAction fromJSON(JSONReader r, UnitTypeTable utt) {
+        UnitAction ua = new UnitAction(TYPE_NONE);
+        ua.parameter = DIRECTION_NONE;
+        ua.x = DIRECTION_NONE;
+        ua.y = DIRECTION_NONE;
+        r.beginObject();
+        while(r.hasNext()) {
+            String name = r.nextName();
+            switch(name) {
+                case "type": ua.type = r.nextInt(); break;
+                case "parameter": ua.parameter = r.nextInt(); break;
+                case "x": ua.x = r.nextInt(); break;
+                case "y": ua.y = r.nextInt(); break;
+                case "unitType":
+                {
+                    String ut = r.nextString();
+                    if (ut!=null) ua.unitType = utt.getUnitType(ut);
+                    break;
+                }
+                default: r.skipValue();
+            }
+        }
+        r.endObject();
+        return ua;
+    }
     
 }
@@ -10,6 +10,10 @@ public class UnitActionAssignment {
     public Unit unit;
     public UnitAction action;
     public int time;
+    // cached (volatile, since assignments are shared by the states cloned from
+    // each other, which can be used by several search threads):
+    volatile ResourceUsage resourceUsage = null;    // see getResourceUsage
+    volatile long hash = 0;                         // see getHash
     
     public UnitActionAssignment(Unit a_unit, UnitAction a_action, int a_time) {
         unit = a_unit;
@@ -20,6 +24,36 @@ public class UnitActionAssignment {
         time = a_time;
     }
     
+    /**
+     * Returns the resources used by the action (computed only once, since the unit 
+     * does not move while the action is assigned)
+     * @param pgs
+     * @return
+     */
+    public ResourceUsage getResourceUsage(PhysicalGameState pgs) {
+        ResourceUsage ru = resourceUsage;
+        if (ru==null) {
+            ru = action.resourceUsage(unit, pgs);
+            resourceUsage = ru;
+        }
+        return ru;
+    }
+    
+    /**
+     * Returns the Zobrist key of this assignment (see {@link Zobrist#assignmentKey(UnitActionAssignment)}),
+     * computed the first time it is needed (when the hash of a {@link UnitActionTable}
+     * that contains it is requested)
+     * @return
+     */
+    public long getHash() {
+        long h = hash;
+        if (h==0) {
+            h = Zobrist.assignmentKey(this);
+            hash = h;
+        }
+        return h;
+    }
+    
     public String toString() {
         return unit + " assigned action " + action + " at time " + time;
     }
@@ -0,0 +1,196 @@
+package rts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Canonical instances of the unit actions that can be executed with a given
+ * UnitTypeTable in maps of a given size: one instance per action type and
+ * direction, unit type to produce, attack position and (small) idle duration.
+ * Since there is only one instance of each action, they can be compared by
+ * identity, and generating the actions of a unit (see Unit.getUnitActions)
+ * does not create new actions.
+ *
+ * The canonical actions are shared by all the units (and all the threads), so
+ * they must not be modified. Their resource usage (that depends on the unit
+ * executing them) is cached here, by the position they use, instead of in the
+ * actions themselves.
+ * @author santi
+ */
+public class UnitActionCache {
+    public static final int MAX_CACHED_DURATION = 32;
+    static final int MAX_CACHES = 16;
+
+    static final List<UnitActionCache> caches = new ArrayList<>();
+    static volatile UnitActionCache last = null;
+
+    final UnitTypeTable utt;
+    final int width, height;
+    final int nUnitTypes;
+
+    final UnitAction none[] = new UnitAction[MAX_CACHED_DURATION];
+    final UnitAction move[] = new UnitAction[4];
+    final UnitAction harvest[] = new UnitAction[4];
+    final UnitAction ret[] = new UnitAction[4];
+    final UnitAction produce[][];       // by unit type ID and direction
+    final UnitAction attack[];          // by position (x + y*width)
+
+    // resource usages, by the position used (built the first time they are needed,
+    // and stored in atomic arrays, so that threads see them fully built):
+    final AtomicReferenceArray<ResourceUsage> moveUsage;
+    final AtomicReferenceArray<AtomicReferenceArray<ResourceUsage>> produceUsage;   // by unit type ID and player
+
+
+    UnitActionCache(UnitTypeTable a_utt, int a_width, int a_height) {
+        utt = a_utt;
+        width = a_width;
+        height = a_height;
+        nUnitTypes = (utt==null ? 0:utt.getUnitTypes().size());
+        for(int i = 0;i<MAX_CACHED_DURATION;i++) none[i] = intern(new UnitAction(UnitAction.TYPE_NONE, i));
+        for(int d = 0;d<4;d++) {
+            move[d] = intern(new UnitAction(UnitAction.TYPE_MOVE, d));
+            harvest[d] = intern(new UnitAction(UnitAction.TYPE_HARVEST, d));
+            ret[d] = intern(new UnitAction(UnitAction.TYPE_RETURN, d));
+        }
+        produce = new UnitAction[nUnitTypes][4];
+        for(int i = 0;i<nUnitTypes;i++) {
+            UnitType ut = utt.getUnitTypes().get(i);
+            for(int d = 0;d<4;d++) produce[i][d] = intern(new UnitAction(UnitAction.TYPE_PRODUCE, d, ut));
+        }
+        attack = new UnitAction[width*height];
+        for(int y = 0;y<height;y++) {
+            for(int x = 0;x<width;x++) {
+                attack[x+y*width] = intern(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, x, y));
+            }
+        }
+        moveUsage = new AtomicReferenceArray<>(width*height);
+        produceUsage = new AtomicReferenceArray<>(nUnitTypes*2);
+    }
+
+
+    UnitAction intern(UnitAction ua) {
+        ua.cache = this;
+        return ua;
+    }
+
+
+    /**
+     * Returns the cache for "utt" and maps of size "width" x "height" (creating
+     * it if it did not exist)
+     */
+    public static UnitActionCache get(UnitTypeTable utt, int width, int height) {
+        UnitActionCache c = last;
+        if (c!=null && c.utt==utt && c.width==width && c.height==height) return c;
+        synchronized(caches) {
+            for(UnitActionCache c2:caches) {
+                if (c2.utt==utt && c2.width==width && c2.height==height) {
+                    last = c2;
+                    return c2;
+                }
+            }
+            c = new UnitActionCache(utt, width, height);
+            // (caches are only kept for the last few unit type tables and map sizes used):
+            if (caches.size()>=MAX_CACHES) caches.remove(0);
+            caches.add(c);
+            last = c;
+            return c;
+        }
+    }
+
+
+    /**
+     * Returns the cache for the unit type table and map of "gs"
+     */
+    public static UnitActionCache get(GameState gs) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        return get(gs.getUnitTypeTable(), pgs.getWidth(), pgs.getHeight());
+    }
+
+
+    public UnitAction none(int duration) {
+        if (duration>=0 && duration<MAX_CACHED_DURATION) return none[duration];
+        return new UnitAction(UnitAction.TYPE_NONE, duration);
+    }
+
+
+    public UnitAction move(int direction) {
+        return move[direction];
+    }
+
+
+    public UnitAction harvest(int direction) {
+        return harvest[direction];
+    }
+
+
+    public UnitAction ret(int direction) {
+        return ret[direction];
+    }
+
+
+    public UnitAction produce(UnitType ut, int direction) {
+        if (ut.ID<nUnitTypes) {
+            UnitAction ua = produce[ut.ID][direction];
+            if (ua.unitType==ut) return ua;
+        }
+        // unit types not in the table (or added to it after creating the cache) are not cached:
+        return new UnitAction(UnitAction.TYPE_PRODUCE, direction, ut);
+    }
+
+
+    public UnitAction attack(int x, int y) {
+        if (x>=0 && x<width && y>=0 && y<height) return attack[x+y*width];
+        return new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, x, y);
+    }
+
+
+    /**
+     * Returns the canonical instance of an action equal to "ua" (or "ua" itself,
+     * if it is not one of the cached actions)
+     */
+    public UnitAction canonical(UnitAction ua) {
+        if (ua==null || ua.cache==this) return ua;
+        UnitAction c = null;
+        switch(ua.type) {
+            case UnitAction.TYPE_NONE: c = none(ua.parameter); break;
+            case UnitAction.TYPE_MOVE: c = move[ua.parameter]; break;
+            case UnitAction.TYPE_HARVEST: c = harvest[ua.parameter]; break;
+            case UnitAction.TYPE_RETURN: c = ret[ua.parameter]; break;
+            case UnitAction.TYPE_PRODUCE: c = produce(ua.unitType, ua.parameter); break;
+            case UnitAction.TYPE_ATTACK_LOCATION: c = attack(ua.x, ua.y); break;
+        }
+        return (c!=null && c.cache==this ? c:ua);
+    }
+
+
+    /**
+     * Resource usage of the cached action "ua" when executed by "u"
+     */
+    ResourceUsage resourceUsage(UnitAction ua, Unit u, PhysicalGameState pgs) {
+        if (ua.type!=UnitAction.TYPE_MOVE && ua.type!=UnitAction.TYPE_PRODUCE) return UnitAction.NO_RESOURCES;
+        int x = u.getX() + UnitAction.DIRECTION_OFFSET_X[ua.parameter];
+        int y = u.getY() + UnitAction.DIRECTION_OFFSET_Y[ua.parameter];
+        if (pgs.getWidth()!=width || x<0 || x>=width || y<0 || y>=height) return ua.newResourceUsage(u, pgs);
+        int pos = x + y*width;
+        AtomicReferenceArray<ResourceUsage> usages = moveUsage;
+        if (ua.type==UnitAction.TYPE_PRODUCE) {
+            int idx = ua.unitType.ID*2 + u.getPlayer();
+            usages = produceUsage.get(idx);
+            if (usages==null) {
+                produceUsage.compareAndSet(idx, null, new AtomicReferenceArray<ResourceUsage>(width*height));
+                usages = produceUsage.get(idx);
+            }
+        }
+        // (several threads might build the same usage, but they are all equal):
+        ResourceUsage ru = usages.get(pos);
+        if (ru==null) {
+            ru = ua.newResourceUsage(u, pgs);
+            usages.set(pos, ru);
+        }
+        return ru;
+    }
+}
@@ -0,0 +1,404 @@
+package rts;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import rts.units.Unit;
+
+/**
+ * The actions assigned to the units of a {@link GameState}. Assignments are
+ * stored in dense arrays, in the order in which units were first assigned an
+ * action (which is the order in which they are executed and checked for
+ * conflicts), and are indexed by unit ID with an open addressing hash table.
+ * Units are compared by identity, as in the rest of the game state.
+ * It can also be used as a Map from units to their assignments (iterated in
+ * the same order).
+ * @author santi
+ */
+public class UnitActionTable extends AbstractMap<Unit,UnitActionAssignment> {
+    static final Unit NO_UNITS[] = new Unit[0];
+    static final UnitActionAssignment NO_ASSIGNMENTS[] = new UnitActionAssignment[0];
+    static final int NO_INDEX[] = new int[0];
+
+    // assignments, in order (removed ones leave a null slot until the table is compacted):
+    Unit units[] = NO_UNITS;
+    UnitActionAssignment assignments[] = NO_ASSIGNMENTS;
+    int end = 0;        // number of slots used
+    int size = 0;       // number of assignments
+
+    // slots of assignments that use player resources (PRODUCE actions):
+    BitSet producing = new BitSet(0);
+
+    // XOR of the Zobrist keys of the assignments (see UnitActionAssignment.getHash),
+    // only maintained once it has been requested ("hashing"), so that tables
+    // of states that are never hashed do not compute the keys:
+    boolean hashing = false;
+    long assignmentsHash = 0;
+
+    // unit ID -> slot (open addressing with linear probing, "keys" has the unit
+    // of each entry, null if empty):
+    Unit keys[] = NO_UNITS;
+    int index[] = NO_INDEX;
+
+
+    /**
+     * Creates an empty table
+     */
+    public UnitActionTable() {
+    }
+
+
+    /**
+     * Creates an empty table with space for "capacity" assignments
+     * @param capacity
+     */
+    public UnitActionTable(int capacity) {
+        units = new Unit[capacity];
+        assignments = new UnitActionAssignment[capacity];
+    }
+
+
+    /**
+     * Creates a copy of "t" (the assignments themselves are shared)
+     * @param t
+     */
+    public UnitActionTable(UnitActionTable t) {
+        units = Arrays.copyOf(t.units, t.end);
+        assignments = Arrays.copyOf(t.assignments, t.end);
+        end = t.end;
+        size = t.size;
+        producing = (BitSet)t.producing.clone();
+        hashing = t.hashing;
+        assignmentsHash = t.assignmentsHash;
+        keys = t.keys.clone();
+        index = t.index.clone();
+    }
+
+
+    /**
+     * Number of assignments
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size==0;
+    }
+
+
+    /**
+     * Returns the action assigned to a unit, or null if it has none
+     * @param u
+     * @return
+     */
+    public UnitActionAssignment get(Unit u) {
+        int slot = slot(u);
+        if (slot<0) return null;
+        return assignments[slot];
+    }
+
+
+    @Override
+    public UnitActionAssignment get(Object o) {
+        return (o instanceof Unit ? get((Unit)o):null);
+    }
+
+
+    public boolean containsKey(Unit u) {
+        return slot(u)>=0;
+    }
+
+
+    @Override
+    public boolean containsKey(Object o) {
+        return (o instanceof Unit && containsKey((Unit)o));
+    }
+
+
+    /**
+     * Assigns an action to a unit. If the unit already had one, it is replaced
+     * keeping its position in the order, otherwise it is added at the end
+     * @param u
+     * @param uaa
+     * @return the previous assignment of the unit, or null if it had none
+     */
+    public UnitActionAssignment put(Unit u, UnitActionAssignment uaa) {
+        if (keys.length==0) rehash(16);
+        int h = find(u.getID());
+        int slot;
+        UnitActionAssignment old = null;
+        if (keys[h]!=null) {
+            slot = index[h];
+            old = assignments[slot];
+            keys[h] = u;
+            units[slot] = u;
+        } else {
+            if (end==units.length) {
+                if (size<end/2) {
+                    compact();
+                    h = find(u.getID());
+                } else {
+                    units = Arrays.copyOf(units, Math.max(8, end*2));
+                    assignments = Arrays.copyOf(assignments, Math.max(8, end*2));
+                }
+            }
+            slot = end++;
+            units[slot] = u;
+            keys[h] = u;
+            index[h] = slot;
+            size++;
+            if (size*2>keys.length) rehash(keys.length*2);
+        }
+        if (hashing) {
+            if (old!=null) assignmentsHash ^= old.getHash();
+            assignmentsHash ^= uaa.getHash();
+        }
+        assignments[slot] = uaa;
+        producing.set(slot, uaa.action.type==UnitAction.TYPE_PRODUCE);
+        return old;
+    }
+
+
+    /**
+     * Removes the action assigned to a unit
+     * @param u
+     * @return the removed assignment, or null if the unit had none
+     */
+    public UnitActionAssignment remove(Unit u) {
+        if (size==0) return null;
+        int h = find(u.getID());
+        if (keys[h]!=u) return null;
+        int slot = index[h];
+        UnitActionAssignment old = assignments[slot];
+        units[slot] = null;
+        assignments[slot] = null;
+        producing.clear(slot);
+        if (hashing) assignmentsHash ^= old.getHash();
+        size--;
+        while(end>0 && assignments[end-1]==null) end--;
+        deleteKey(h);
+        return old;
+    }
+
+
+    @Override
+    public UnitActionAssignment remove(Object o) {
+        return (o instanceof Unit ? remove((Unit)o):null);
+    }
+
+
+    @Override
+    public void clear() {
+        Arrays.fill(units, 0, end, null);
+        Arrays.fill(assignments, 0, end, null);
+        Arrays.fill(keys, null);
+        producing.clear();
+        assignmentsHash = 0;
+        end = 0;
+        size = 0;
+    }
+
+
+    /**
+     * Returns the assignments in order, in a new list
+     * @return
+     */
+    @Override
+    public List<UnitActionAssignment> values() {
+        List<UnitActionAssignment> l = new ArrayList<>(size);
+        for(int i = 0;i<end;i++) {
+            if (assignments[i]!=null) l.add(assignments[i]);
+        }
+        return l;
+    }
+
+
+    /**
+     * Returns the XOR of the Zobrist keys of the assignments (see 
+     * {@link UnitActionAssignment#getHash()}). The first call computes it from
+     * scratch, and from then on it is updated as assignments are added or removed
+     * @return
+     */
+    public long getHash() {
+        if (!hashing) {
+            assignmentsHash = 0;
+            for(int i = 0;i<end;i++) {
+                if (assignments[i]!=null) assignmentsHash ^= assignments[i].getHash();
+            }
+            hashing = true;
+        }
+        return assignmentsHash;
+    }
+
+
+    /**
+     * Adds all the assignments of another table, in order
+     * @param t
+     */
+    public void putAll(UnitActionTable t) {
+        for(int i = 0;i<t.end;i++) {
+            if (t.assignments[i]!=null) put(t.units[i], t.assignments[i]);
+        }
+    }
+
+
+    /**
+     * The units and their assignments, in order. Removing entries (through the
+     * iterator) and changing their values modify the table
+     * @return
+     */
+    @Override
+    public Set<Map.Entry<Unit,UnitActionAssignment>> entrySet() {
+        return new AbstractSet<Map.Entry<Unit,UnitActionAssignment>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<Unit,UnitActionAssignment>> iterator() {
+                return new Iterator<Map.Entry<Unit,UnitActionAssignment>>() {
+                    int next = nextSlot(0);
+                    int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next<end;
+                    }
+
+                    @Override
+                    public Map.Entry<Unit,UnitActionAssignment> next() {
+                        if (next>=end) throw new NoSuchElementException();
+                        last = next;
+                        next = nextSlot(next+1);
+                        final Unit u = units[last];
+                        return new AbstractMap.SimpleEntry<Unit,UnitActionAssignment>(u, assignments[last]) {
+                            @Override
+                            public UnitActionAssignment setValue(UnitActionAssignment uaa) {
+                                super.setValue(uaa);
+                                return put(u, uaa);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last<0 || units[last]==null) throw new IllegalStateException();
+                        UnitActionTable.this.remove(units[last]);
+                    }
+                };
+            }
+        };
+    }
+
+
+    /**
+     * First slot from "i" on that has an assignment ("end" if there is none)
+     */
+    int nextSlot(int i) {
+        while(i<end && assignments[i]==null) i++;
+        return i;
+    }
+
+
+    /**
+     * Slot of the assignment of a unit, or -1 if it has none
+     * @param u
+     * @return
+     */
+    int slot(Unit u) {
+        if (size==0) return -1;
+        int mask = keys.length-1;
+        int h = hash(u.getID()) & mask;
+        while(true) {
+            Unit k = keys[h];
+            if (k==u) return index[h];
+            if (k==null || k.getID()==u.getID()) return -1;
+            h = (h+1) & mask;
+        }
+    }
+
+
+    /**
+     * Position of a unit ID in the hash table (where it is, or where it should be inserted)
+     * @param ID
+     * @return
+     */
+    int find(long ID) {
+        int mask = keys.length-1;
+        int h = hash(ID) & mask;
+        while(keys[h]!=null && keys[h].getID()!=ID) h = (h+1) & mask;
+        return h;
+    }
+
+
+    static int hash(long ID) {
+        // IDs are mostly consecutive, so they do not need to be mixed:
+        return (int)(ID ^ (ID>>>32));
+    }
+
+
+    void deleteKey(int h) {
+        // backward shift deletion, so that probe sequences stay unbroken:
+        int mask = keys.length-1;
+        keys[h] = null;
+        int j = h;
+        while(true) {
+            j = (j+1) & mask;
+            if (keys[j]==null) return;
+            int k = hash(keys[j].getID()) & mask;
+            // move the entry at j to h unless its home position is cyclically in (h,j]:
+            boolean inPlace = (h<=j ? (h<k && k<=j):(h<k || k<=j));
+            if (!inPlace) {
+                keys[h] = keys[j];
+                index[h] = index[j];
+                keys[j] = null;
+                h = j;
+            }
+        }
+    }
+
+
+    void rehash(int capacity) {
+        keys = new Unit[capacity];
+        index = new int[capacity];
+        for(int i = 0;i<end;i++) {
+            if (units[i]!=null) {
+                int h = find(units[i].getID());
+                keys[h] = units[i];
+                index[h] = i;
+            }
+        }
+    }
+
+
+    /**
+     * Removes the empty slots, preserving the order
+     */
+    void compact() {
+        int j = 0;
+        producing.clear();
+        for(int i = 0;i<end;i++) {
+            if (assignments[i]!=null) {
+                units[j] = units[i];
+                assignments[j] = assignments[i];
+                if (assignments[j].action.type==UnitAction.TYPE_PRODUCE) producing.set(j);
+                j++;
+            }
+        }
+        Arrays.fill(units, j, end, null);
+        Arrays.fill(assignments, j, end, null);
+        end = j;
+        rehash(keys.length);
+    }
+}
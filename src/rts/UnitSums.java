@@ -0,0 +1,186 @@
+package rts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import rts.units.Unit;
+
+/**
+ * Per-player sums of some terms computed for each unit (for example, those
+ * of an evaluation function), which a GameState keeps up to date as units are
+ * created, removed, damaged, or change the resources they carry (see
+ * GameState.getUnitSums), so that they do not need to be recomputed by going
+ * through all the units every time.
+ *
+ * As with the hash of the state, the terms of the units that are about to be
+ * modified (or have just been added) are subtracted, and the units are added
+ * back the next time the sums are requested (units being restored by an undo
+ * might be temporarily in an invalid state, like having negative hit points).
+ * @author santi
+ */
+public class UnitSums {
+
+    /**
+     * Defines the terms added for each unit. The terms of a unit must only
+     * depend on the unit (and on things that do not change during a game, like
+     * the map size or the unit type table).
+     */
+    public interface Terms {
+        int getNumberOfTerms();
+        void unitTerms(Unit u, GameState gs, double terms[]);
+    }
+
+    Terms definition;
+    GameState gs;
+    double sums[][] = new double[2][];
+    int counts[] = new int[2];
+    int nUnits = 0;     // including those of no player (resources)
+    List<Unit> changedUnits = new ArrayList<>();
+    double tmp[];
+
+
+    UnitSums(Terms a_definition, GameState a_gs) {
+        definition = a_definition;
+        gs = a_gs;
+        tmp = new double[definition.getNumberOfTerms()];
+        for(int i = 0;i<sums.length;i++) sums[i] = new double[tmp.length];
+        recompute();
+    }
+
+
+    public Terms getDefinition() {
+        return definition;
+    }
+
+
+    /**
+     * Returns the sum of term "term" over the units of "player"
+     * @param player
+     * @param term
+     * @return
+     */
+    public double getSum(int player, int term) {
+        update();
+        if (player < 0 || player >= sums.length) return 0;
+        return sums[player][term];
+    }
+
+
+    /**
+     * Returns the number of units of "player"
+     * @param player
+     * @return
+     */
+    public int getNumberOfUnits(int player) {
+        update();
+        if (player < 0 || player >= counts.length) return 0;
+        return counts[player];
+    }
+
+
+    /**
+     * Recomputes the sums going through all the units
+     */
+    void recompute() {
+        for(double s[]:sums) Arrays.fill(s, 0);
+        Arrays.fill(counts, 0);
+        nUnits = 0;
+        changedUnits.clear();
+        for(Unit u:gs.getPhysicalGameState().getUnits()) {
+            count(u, 1);
+            add(u, 1);
+        }
+    }
+
+
+    /**
+     * Adds the terms of the units modified since the last call back to the sums
+     */
+    void update() {
+        if (nUnits != gs.getPhysicalGameState().getUnits().size()) {
+            // units were added or removed without going through the GameState:
+            recompute();
+            return;
+        }
+        for(int i = 0;i<changedUnits.size();i++) add(changedUnits.get(i), 1);
+        changedUnits.clear();
+    }
+
+
+    void unitAdded(Unit u) {
+        count(u, 1);
+        changedUnits.add(u);
+    }
+
+
+    void unitRemoved(Unit u) {
+        count(u, -1);
+        for(int i = 0;i<changedUnits.size();i++) {
+            if (changedUnits.get(i)==u) {
+                // its terms were already subtracted:
+                changedUnits.remove(i);
+                return;
+            }
+        }
+        add(u, -1);
+    }
+
+
+    void unitWillChange(Unit u) {
+        for(int i = 0;i<changedUnits.size();i++) {
+            if (changedUnits.get(i)==u) return;
+        }
+        add(u, -1);
+        changedUnits.add(u);
+    }
+
+
+    void count(Unit u, int sign) {
+        int player = u.getPlayer();
+        if (player >= 0) {
+            if (player >= counts.length) grow(player + 1);
+            counts[player] += sign;
+        }
+        nUnits += sign;
+    }
+
+
+    void add(Unit u, double sign) {
+        int player = u.getPlayer();
+        if (player < 0) return;
+        if (player >= sums.length) grow(player + 1);
+        definition.unitTerms(u, gs, tmp);
+        double s[] = sums[player];
+        for(int i = 0;i<tmp.length;i++) s[i] += sign*tmp[i];
+    }
+
+
+    void grow(int nPlayers) {
+        int old = sums.length;
+        sums = Arrays.copyOf(sums, nPlayers);
+        for(int i = old;i<nPlayers;i++) sums[i] = new double[tmp.length];
+        counts = Arrays.copyOf(counts, nPlayers);
+    }
+
+
+    /**
+     * Returns a copy of these sums for "a_gs" (a copy of the state they belong to)
+     * @param a_gs
+     * @return
+     */
+    UnitSums copy(GameState a_gs) {
+        update();
+        return new UnitSums(definition, a_gs, this);
+    }
+
+
+    UnitSums(Terms a_definition, GameState a_gs, UnitSums original) {
+        definition = a_definition;
+        gs = a_gs;
+        tmp = new double[original.tmp.length];
+        sums = new double[original.sums.length][];
+        for(int i = 0;i<sums.length;i++) sums[i] = original.sums[i].clone();
+        counts = original.counts.clone();
+        nUnits = original.nUnits;
+    }
+}
@@ -0,0 +1,181 @@
+package rts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import rts.units.Unit;
+
+/**
+ * The cells that a player can see: for each cell, the number of units of the
+ * player that have it within their sight radius. A GameState keeps it up to
+ * date as units are created, removed or moved (see GameState.getVisibilityMap),
+ * so that checking whether a cell is observable does not need to go through
+ * all the units of the player.
+ *
+ * As with the hash of the state, the units that are about to be modified (or
+ * have just been added) are removed from the map, and stamped back at their
+ * new positions the next time the map is queried. Copies share the counts
+ * until one of them needs to modify them.
+ * @author santi
+ */
+public class VisibilityMap {
+    int player;
+    GameState gs;
+    int width, height;
+    int counts[];
+    boolean sharedCounts = false;
+    int nUnits = 0;     // of all players, to detect units added or removed without going through the GameState
+    List<Unit> changedUnits = new ArrayList<>();
+
+
+    VisibilityMap(int a_player, GameState a_gs) {
+        player = a_player;
+        gs = a_gs;
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        width = pgs.getWidth();
+        height = pgs.getHeight();
+        counts = new int[width*height];
+        recompute();
+    }
+
+
+    public int getPlayer() {
+        return player;
+    }
+
+
+    /**
+     * Returns whether any unit of the player sees the cell (x,y)
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean observable(int x, int y) {
+        update();
+        if (x<0 || y<0 || x>=width || y>=height) {
+            // outside of the map (which callers sometimes ask about):
+            for(Unit u:gs.getPhysicalGameState().getUnits()) {
+                if (u.getPlayer() == player) {
+                    double d = Math.sqrt((u.getX() - x) * (u.getX() - x) + (u.getY() - y) * (u.getY() - y));
+                    if (d <= u.getType().sightRadius) return true;
+                }
+            }
+            return false;
+        }
+        return counts[x + y*width] > 0;
+    }
+
+
+    /**
+     * Recomputes the map going through all the units
+     */
+    void recompute() {
+        unshareCounts();
+        Arrays.fill(counts, 0);
+        changedUnits.clear();
+        nUnits = 0;
+        for(Unit u:gs.getPhysicalGameState().getUnits()) {
+            nUnits++;
+            if (u.getPlayer() == player) stamp(u, 1);
+        }
+    }
+
+
+    /**
+     * Stamps the units modified since the last call back at their current positions
+     */
+    void update() {
+        if (nUnits != gs.getPhysicalGameState().getUnits().size()) {
+            recompute();
+            return;
+        }
+        for(int i = 0;i<changedUnits.size();i++) stamp(changedUnits.get(i), 1);
+        changedUnits.clear();
+    }
+
+
+    void unitAdded(Unit u) {
+        nUnits++;
+        if (u.getPlayer() == player) changedUnits.add(u);
+    }
+
+
+    void unitRemoved(Unit u) {
+        nUnits--;
+        if (u.getPlayer() != player) return;
+        for(int i = 0;i<changedUnits.size();i++) {
+            if (changedUnits.get(i)==u) {
+                // it was already removed from the map:
+                changedUnits.remove(i);
+                return;
+            }
+        }
+        stamp(u, -1);
+    }
+
+
+    void unitWillChange(Unit u) {
+        if (u.getPlayer() != player) return;
+        for(int i = 0;i<changedUnits.size();i++) {
+            if (changedUnits.get(i)==u) return;
+        }
+        stamp(u, -1);
+        changedUnits.add(u);
+    }
+
+
+    /**
+     * Adds "amount" to all the cells within the sight radius of "u" (those at
+     * a distance of at most the radius, as in PartiallyObservableGameState)
+     * @param u
+     * @param amount
+     */
+    void stamp(Unit u, int amount) {
+        unshareCounts();
+        int r = u.getType().sightRadius;
+        int ux = u.getX(), uy = u.getY();
+        int hw = r;     // half width of the rows at "dy" from the unit
+        for(int dy = 0;dy<=r;dy++) {
+            while(hw*hw + dy*dy > r*r) hw--;
+            int x0 = Math.max(0, ux - hw), x1 = Math.min(width-1, ux + hw);
+            if (uy - dy >= 0 && uy - dy < height) {
+                int offset = (uy - dy)*width;
+                for(int x = x0;x<=x1;x++) counts[offset + x] += amount;
+            }
+            if (dy > 0 && uy + dy >= 0 && uy + dy < height) {
+                int offset = (uy + dy)*width;
+                for(int x = x0;x<=x1;x++) counts[offset + x] += amount;
+            }
+        }
+    }
+
+
+    void unshareCounts() {
+        if (sharedCounts) {
+            counts = counts.clone();
+            sharedCounts = false;
+        }
+    }
+
+
+    /**
+     * Returns a copy of this map for "a_gs" (a copy of the state it belongs to)
+     * @param a_gs
+     * @return
+     */
+    VisibilityMap copy(GameState a_gs) {
+        update();
+        return new VisibilityMap(this, a_gs);
+    }
+
+
+    VisibilityMap(VisibilityMap original, GameState a_gs) {
+        player = original.player;
+        gs = a_gs;
+        width = original.width;
+        height = original.height;
+        counts = original.counts;
+        sharedCounts = original.sharedCounts = true;
+        nUnits = original.nUnits;
+    }
+}
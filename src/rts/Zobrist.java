@@ -0,0 +1,91 @@
+package rts;
+
+import rts.units.Unit;
+
+/**
+ * Keys for the Zobrist hash of a game state (see {@link GameState#getHash()}),
+ * which is the XOR of the keys of its units, players, pending action assignments
+ * and game time. Instead of looking the keys up in tables of random numbers
+ * (which would need bounds for hit points, resources, map sizes, etc.), each key
+ * is obtained by scrambling the values that describe the element with a 64 bit
+ * mixing function, which gives keys with the same properties.
+ *
+ * Unit IDs are not part of the keys, so that states that only differ in the IDs
+ * of the units they contain (e.g., units produced in a different order) have
+ * the same hash.
+ * @author santi
+ */
+public class Zobrist {
+    static final long UNIT = 0x6a09e667f3bcc908L;
+    static final long PLAYER = 0xbb67ae8584caa73bL;
+    static final long TIME = 0x3c6ef372fe94f82bL;
+    static final long ASSIGNMENT = 0xa54ff53a5f1d36f1L;
+
+
+    /**
+     * Key of a unit: type, owner, position, hit points and carried resources
+     * @param u
+     * @return
+     */
+    public static long unitKey(Unit u) {
+        long h = mix(UNIT, u.getType().ID);
+        h = mix(h, u.getPlayer());
+        h = mix(h, u.getX());
+        h = mix(h, u.getY());
+        h = mix(h, u.getHitPoints());
+        return mix(h, u.getResources());
+    }
+
+
+    /**
+     * Key of a player: ID and resources
+     * @param p
+     * @return
+     */
+    public static long playerKey(Player p) {
+        return mix(mix(PLAYER, p.getID()), p.getResources());
+    }
+
+
+    /**
+     * Key of the game time
+     * @param time
+     * @return
+     */
+    public static long timeKey(int time) {
+        return mix(TIME, time);
+    }
+
+
+    /**
+     * Key of an action assignment: position of the unit, action and time at
+     * which it was assigned
+     * @param uaa
+     * @return
+     */
+    public static long assignmentKey(UnitActionAssignment uaa) {
+        UnitAction a = uaa.action;
+        long h = mix(ASSIGNMENT, uaa.unit.getX());
+        h = mix(h, uaa.unit.getY());
+        h = mix(h, a.type);
+        h = mix(h, a.parameter);
+        h = mix(h, a.x);
+        h = mix(h, a.y);
+        h = mix(h, (a.unitType==null ? -1:a.unitType.ID));
+        return mix(h, uaa.time);
+    }
+
+
+    /**
+     * Combines a hash with a value (using the finalizer of the SplitMix64 generator)
+     * @param h
+     * @param v
+     * @return
+     */
+    public static long mix(long h, long v) {
+        long z = h + v * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
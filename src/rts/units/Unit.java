@@ -10,6 +10,9 @@ import rts.GameState;
 import rts.PhysicalGameState;
 import rts.Player;
 import rts.UnitAction;
+import rts.UnitActionCache;
+import util.ByteBufferWriter;
+import util.JSONReader;
 import util.XMLWriter;
 
 /**
@@ -28,6 +31,15 @@ public class Unit implements Serializable {
      */
     public static long next_ID = 0;
     
+    /**
+     * Returns a new ID from {@link #next_ID}, incrementing it (synchronized, since 
+     * units can be created by several search threads at once)
+     * @return
+     */
+    static synchronized long newID() {
+        return next_ID++;
+    }
+    
     /**
      * The unique identifier of this unit
      */
@@ -71,7 +83,9 @@ public class Unit implements Serializable {
         resources = a_resources;
         hitpoints = a_type.hp;
         ID = a_ID;
-        if (ID>=next_ID) next_ID = ID+1;
+        synchronized(Unit.class) {
+            if (ID>=next_ID) next_ID = ID+1;
+        }
     }
     
     /**
@@ -90,7 +104,7 @@ public class Unit implements Serializable {
         y = a_y;
         resources = a_resources;
         hitpoints = a_type.hp;
-        ID = next_ID++;
+        ID = newID();
     }
 
     /**
@@ -107,7 +121,7 @@ public class Unit implements Serializable {
         y = a_y;
         resources = 0;
         hitpoints = a_type.hp;
-        ID = next_ID++;
+        ID = newID();
     }
     
     /**
@@ -329,41 +343,21 @@ public class Unit implements Serializable {
 
         PhysicalGameState pgs = s.getPhysicalGameState();
         Player p = pgs.getPlayer(player);
+        UnitActionCache cache = UnitActionCache.get(s);
 
-        /*
+        // retrieves units around me
         Unit uup = pgs.getUnitAt(x,y-1);
         Unit uright = pgs.getUnitAt(x+1,y);
         Unit udown = pgs.getUnitAt(x,y+1);
         Unit uleft = pgs.getUnitAt(x-1,y);
-        */
-        
-        // retrieves units around me
-        Unit uup = null, uright = null, udown = null, uleft = null;
-		for (Unit u : pgs.getUnits()) {
-			if (u.x == x) {
-				if (u.y == y - 1) {
-					uup = u;
-				} else if (u.y == y + 1) {
-					udown = u;
-				}
-			} else {
-				if (u.y == y) {
-					if (u.x == x - 1) {
-						uleft = u;
-					} else if (u.x == x + 1) {
-						uright = u;
-					}
-				}
-			}
-		}
         
 		// if this unit can attack, adds an attack action for each unit around it
         if (type.canAttack) {
             if (type.attackRange==1) {
-                if (y>0 && uup!=null && uup.player!=player && uup.player>=0) l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION,uup.x,uup.y));                
-                if (x<pgs.getWidth()-1 && uright!=null && uright.player!=player && uright.player>=0) l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION,uright.x,uright.y));                
-                if (y<pgs.getHeight()-1 && udown!=null && udown.player!=player && udown.player>=0) l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION,udown.x,udown.y));
-                if (x>0 && uleft!=null && uleft.player!=player && uleft.player>=0) l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION,uleft.x,uleft.y));                
+                if (y>0 && uup!=null && uup.player!=player && uup.player>=0) l.add(cache.attack(uup.x,uup.y));                
+                if (x<pgs.getWidth()-1 && uright!=null && uright.player!=player && uright.player>=0) l.add(cache.attack(uright.x,uright.y));                
+                if (y<pgs.getHeight()-1 && udown!=null && udown.player!=player && udown.player>=0) l.add(cache.attack(udown.x,udown.y));
+                if (x>0 && uleft!=null && uleft.player!=player && uleft.player>=0) l.add(cache.attack(uleft.x,uleft.y));                
             } else {
                 int sqrange = type.attackRange*type.attackRange;
                 for(Unit u:pgs.getUnits()) {
@@ -371,7 +365,7 @@ public class Unit implements Serializable {
                     int sq_dx = (u.x - x)*(u.x - x);
                     int sq_dy = (u.y - y)*(u.y - y);
                     if (sq_dx+sq_dy<=sqrange) {
-                        l.add(new UnitAction(UnitAction.TYPE_ATTACK_LOCATION,u.x,u.y));
+                        l.add(cache.attack(u.x,u.y));
                     }
                 }
             }
@@ -382,17 +376,17 @@ public class Unit implements Serializable {
         if (type.canHarvest) {
             // harvest:
             if (resources==0) {
-                if (y>0 && uup!=null && uup.type.isResource) l.add(new UnitAction(UnitAction.TYPE_HARVEST,UnitAction.DIRECTION_UP));
-                if (x<pgs.getWidth()-1 && uright!=null && uright.type.isResource) l.add(new UnitAction(UnitAction.TYPE_HARVEST,UnitAction.DIRECTION_RIGHT));
-                if (y<pgs.getHeight()-1 && udown!=null && udown.type.isResource) l.add(new UnitAction(UnitAction.TYPE_HARVEST,UnitAction.DIRECTION_DOWN));
-                if (x>0 && uleft!=null && uleft.type.isResource) l.add(new UnitAction(UnitAction.TYPE_HARVEST,UnitAction.DIRECTION_LEFT));
+                if (y>0 && uup!=null && uup.type.isResource) l.add(cache.harvest(UnitAction.DIRECTION_UP));
+                if (x<pgs.getWidth()-1 && uright!=null && uright.type.isResource) l.add(cache.harvest(UnitAction.DIRECTION_RIGHT));
+                if (y<pgs.getHeight()-1 && udown!=null && udown.type.isResource) l.add(cache.harvest(UnitAction.DIRECTION_DOWN));
+                if (x>0 && uleft!=null && uleft.type.isResource) l.add(cache.harvest(UnitAction.DIRECTION_LEFT));
             }
             // return:
             if (resources>0) {
-                if (y>0 && uup!=null && uup.type.isStockpile && uup.player == player) l.add(new UnitAction(UnitAction.TYPE_RETURN,UnitAction.DIRECTION_UP));
-                if (x<pgs.getWidth()-1 && uright!=null && uright.type.isStockpile && uright.player == player) l.add(new UnitAction(UnitAction.TYPE_RETURN,UnitAction.DIRECTION_RIGHT));
-                if (y<pgs.getHeight()-1 && udown!=null && udown.type.isStockpile && udown.player == player) l.add(new UnitAction(UnitAction.TYPE_RETURN,UnitAction.DIRECTION_DOWN));
-                if (x>0 && uleft!=null && uleft.type.isStockpile && uleft.player == player) l.add(new UnitAction(UnitAction.TYPE_RETURN,UnitAction.DIRECTION_LEFT));            
+                if (y>0 && uup!=null && uup.type.isStockpile && uup.player == player) l.add(cache.ret(UnitAction.DIRECTION_UP));
+                if (x<pgs.getWidth()-1 && uright!=null && uright.type.isStockpile && uright.player == player) l.add(cache.ret(UnitAction.DIRECTION_RIGHT));
+                if (y<pgs.getHeight()-1 && udown!=null && udown.type.isStockpile && udown.player == player) l.add(cache.ret(UnitAction.DIRECTION_DOWN));
+                if (x>0 && uleft!=null && uleft.type.isStockpile && uleft.player == player) l.add(cache.ret(UnitAction.DIRECTION_LEFT));            
             }            
         }
         
@@ -405,10 +399,10 @@ public class Unit implements Serializable {
                 int tdown = (y<pgs.getHeight()-1 ? pgs.getTerrain(x, y+1):PhysicalGameState.TERRAIN_WALL);
                 int tleft = (x>0 ? pgs.getTerrain(x-1, y):PhysicalGameState.TERRAIN_WALL);
 
-                if (tup==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x,y-1) == null) l.add(new UnitAction(UnitAction.TYPE_PRODUCE,UnitAction.DIRECTION_UP,ut));
-                if (tright==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x+1,y) == null) l.add(new UnitAction(UnitAction.TYPE_PRODUCE,UnitAction.DIRECTION_RIGHT,ut));
-                if (tdown==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x,y+1) == null) l.add(new UnitAction(UnitAction.TYPE_PRODUCE,UnitAction.DIRECTION_DOWN,ut));
-                if (tleft==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x-1,y) == null) l.add(new UnitAction(UnitAction.TYPE_PRODUCE,UnitAction.DIRECTION_LEFT,ut));
+                if (tup==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x,y-1) == null) l.add(cache.produce(ut,UnitAction.DIRECTION_UP));
+                if (tright==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x+1,y) == null) l.add(cache.produce(ut,UnitAction.DIRECTION_RIGHT));
+                if (tdown==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x,y+1) == null) l.add(cache.produce(ut,UnitAction.DIRECTION_DOWN));
+                if (tleft==PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x-1,y) == null) l.add(cache.produce(ut,UnitAction.DIRECTION_LEFT));
             }
         }
         
@@ -419,14 +413,14 @@ public class Unit implements Serializable {
             int tdown = (y<pgs.getHeight()-1 ? pgs.getTerrain(x, y+1):PhysicalGameState.TERRAIN_WALL);
             int tleft = (x>0 ? pgs.getTerrain(x-1, y):PhysicalGameState.TERRAIN_WALL);
 
-            if (tup==PhysicalGameState.TERRAIN_NONE && uup == null) l.add(new UnitAction(UnitAction.TYPE_MOVE,UnitAction.DIRECTION_UP));
-            if (tright==PhysicalGameState.TERRAIN_NONE && uright == null) l.add(new UnitAction(UnitAction.TYPE_MOVE,UnitAction.DIRECTION_RIGHT));
-            if (tdown==PhysicalGameState.TERRAIN_NONE && udown == null) l.add(new UnitAction(UnitAction.TYPE_MOVE,UnitAction.DIRECTION_DOWN));
-            if (tleft==PhysicalGameState.TERRAIN_NONE && uleft == null) l.add(new UnitAction(UnitAction.TYPE_MOVE,UnitAction.DIRECTION_LEFT));
+            if (tup==PhysicalGameState.TERRAIN_NONE && uup == null) l.add(cache.move(UnitAction.DIRECTION_UP));
+            if (tright==PhysicalGameState.TERRAIN_NONE && uright == null) l.add(cache.move(UnitAction.DIRECTION_RIGHT));
+            if (tdown==PhysicalGameState.TERRAIN_NONE && udown == null) l.add(cache.move(UnitAction.DIRECTION_DOWN));
+            if (tleft==PhysicalGameState.TERRAIN_NONE && uleft == null) l.add(cache.move(UnitAction.DIRECTION_LEFT));
         }
         
         // units can always stay idle:
-        l.add(new UnitAction(UnitAction.TYPE_NONE, noneDuration));
+        l.add(cache.none(noneDuration));
                         
         return l;
     }
@@ -486,16 +480,21 @@ public class Unit implements Serializable {
      * @throws Exception
      */
     public void toJSON(Writer w) throws Exception {
-        w.write(
-			"{\"type\":\""+type.name+"\", " +
-	         "\"ID\":"+ID+", " +
-	         "\"player\":"+player+", " +
-	         "\"x\":"+x+", " +
-	         "\"y\":"+y+", " +
-	         "\"resources\":"+resources+", " +
-	         "\"hitpoints\":"+hitpoints+
-	        "}"
-	     );
+        w.write("{\"type\":\"");
+        w.write(type.name);
+        w.write("\", \"ID\":");
+        ByteBufferWriter.writeLong(w, ID);
+        w.write(", \"player\":");
+        ByteBufferWriter.writeLong(w, player);
+        w.write(", \"x\":");
+        ByteBufferWriter.writeLong(w, x);
+        w.write(", \"y\":");
+        ByteBufferWriter.writeLong(w, y);
+        w.write(", \"resources\":");
+        ByteBufferWriter.writeLong(w, resources);
+        w.write(", \"hitpoints\":");
+        ByteBufferWriter.writeLong(w, hitpoints);
+        w.write("}");
     }
 
     /**
@@ -547,4 +546,34 @@ public class Unit implements Serializable {
         u.hitpoints = o.getInt("hitpoints",1);
         return u;
     }     
+
+    /**
+     * Reads a unit from a JSON object, without building the object first
+     * @param r
+     * @param utt
+     * @return
+     */
+    public static  Unit fromJSON(JSONReader r, UnitTypeTable utt) {
+        long ID = -1;
+        int player = -1, x = 0, y = 0, resources = 0, hitpoints = 1;
+        String typeName = null;
+        r.beginObject();
+        while(r.hasNext()) {
+            String name = r.nextName();
+            switch(name) {
+                case "type": typeName = r.nextString(); break;
+                case "ID": ID = r.nextLong(); break;
+                case "player": player = r.nextInt(); break;
+                case "x": x = r.nextInt(); break;
+                case "y": y = r.nextInt(); break;
+                case "resources": resources = r.nextInt(); break;
+                case "hitpoints": hitpoints = r.nextInt(); break;
+                default: r.skipValue();
+            }
+        }
+        r.endObject();
+        Unit u = new Unit(ID, player, utt.getUnitType(typeName), x, y, resources);
+        u.hitpoints = hitpoints;
+        return u;
+    }
 }
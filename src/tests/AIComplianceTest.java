@@ -11,6 +11,8 @@ import ai.core.AI;
 import ai.core.ParameterSpecification;
 import ai.mcts.informedmcts.InformedNaiveMCTS;
 import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.naivemcts.ParallelNaiveMCTS;
+import ai.mcts.naivemcts.FlatNaiveMCTS;
 import ai.montecarlo.lsi.LSI;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
@@ -36,6 +38,8 @@ public class AIComplianceTest {
     public static void main(String args[]) {
         complianceTest(WorkerRush.class);
         complianceTest(NaiveMCTS.class);
+        complianceTest(ParallelNaiveMCTS.class);
+        complianceTest(FlatNaiveMCTS.class);
         complianceTest(InformedNaiveMCTS.class);
         complianceTest(LSI.class);
     }
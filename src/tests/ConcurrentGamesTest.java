@@ -0,0 +1,106 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.HeavyRush;
+import ai.abstraction.LightRush;
+import ai.abstraction.RangedRush;
+import ai.abstraction.WorkerRush;
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.BFSPathFinding;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.uct.UCT;
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import rts.units.UnitTypeTable;
+import tournaments.RoundRobinTournament;
+
+/**
+ * Checks that the AIs of tournament games played at the same time do not
+ * interfere with each other (each game plays with clones of the AIs, that must
+ * not share path finders, playout policies, etc.): a tournament between
+ * deterministic AIs must have the same results when its games are played one
+ * after another and when several are played at a time, and no AI should crash
+ * in a tournament between search AIs played several games at a time.
+ * @author santi
+ */
+public class ConcurrentGamesTest {
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        int errors = 0;
+        List<String> maps = Arrays.asList("maps/8x8/basesWorkers8x8.xml", "maps/16x16/basesWorkers16x16.xml");
+        // (the budgets are in iterations, so that the games do not depend on the time the AIs take):
+        RoundRobinTournament.USE_CONTINUING_ON_INTERRUPTIBLE = false;
+
+        List<AI> rushes = new ArrayList<>();
+        rushes.add(new WorkerRush(utt, new AStarPathFinding()));
+        rushes.add(new LightRush(utt, new AStarPathFinding()));
+        rushes.add(new HeavyRush(utt, new BFSPathFinding()));
+        rushes.add(new RangedRush(utt, new AStarPathFinding()));
+        String sequential = tournament(rushes, maps, 2, 1, utt);
+        String concurrent = tournament(rushes, maps, 2, 4, utt);
+        if (!sequential.equals(concurrent)) {
+            System.err.println("Different results when playing several games at a time:");
+            System.err.println(sequential);
+            System.err.println("vs");
+            System.err.println(concurrent);
+            errors++;
+        }
+        if (crashes(concurrent)>0) {
+            System.err.println("Crashes when playing several games at a time:\n" + concurrent);
+            errors++;
+        }
+
+        List<AI> searches = new ArrayList<>();
+        searches.add(new NaiveMCTS(-1, 50, 20, 10, 0.3f, 0.0f, 0.4f, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true));
+        searches.add(new UCT(-1, 50, 20, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3()));
+        String results = tournament(searches, maps.subList(0, 1), 2, 4, utt);
+        if (crashes(results)>0) {
+            System.err.println("Crashes when playing several games at a time:\n" + results);
+            errors++;
+        }
+
+        if (errors>0) {
+            System.err.println(errors + " errors");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+
+    /**
+     * Plays a round robin tournament (with self matches), and returns the result
+     * of each game (cycles, winner, crashed and timed out players), in order
+     */
+    static String tournament(List<AI> AIs, List<String> maps, int iterations, int concurrentGames, UnitTypeTable utt) throws Exception {
+        File folder = Files.createTempDirectory("concurrentgames").toFile();
+        StringWriter out = new StringWriter();
+        RoundRobinTournament.runTournament(AIs, -1, maps, iterations, 1000, -1, 50, 0, 0,
+                true, true, false, false, false, utt, null, out, new StringWriter(),
+                folder.getPath(), concurrentGames, null);
+        for(File f:folder.listFiles()) f.delete();
+        folder.delete();
+        StringBuilder sb = new StringBuilder();
+        boolean games = false;
+        for(String line:out.toString().split("\n")) {
+            if (line.startsWith("Wins:")) break;
+            if (games) sb.append(line).append("\n");
+            if (line.startsWith("iteration\t")) games = true;
+        }
+        return sb.toString();
+    }
+
+
+    static int crashes(String results) {
+        int n = 0;
+        for(String line:results.split("\n")) {
+            if (!line.split("\t")[6].equals("-1")) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,169 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.BFSPathFinding;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.minimax.ABCD.ABCD;
+import java.util.ArrayList;
+import java.util.List;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks that GameState.cloneCopyOnWrite does not modify the state being
+ * cloned: neither cloning it, nor cycling the clones (or their own clones)
+ * changes its units (that must stay the same objects, so that AIs can keep
+ * references to them), their action assignments or its time. It also plays
+ * a game calling ABCD (that clones the actual game state with
+ * cloneCopyOnWrite) on the side, and checks that the game does not change.
+ * @author santi
+ */
+public class CopyOnWriteTest {
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        int errors = 0;
+        String maps[] = {"maps/8x8/basesWorkers8x8.xml", "maps/16x16/basesWorkers16x16.xml"};
+        for(String map:maps) {
+            errors += testClones(map, utt);
+            errors += testGame(map, utt);
+        }
+        if (errors>0) {
+            System.err.println(errors + " errors");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+
+    /**
+     * Plays a game, and every few cycles clones the state (the actual game
+     * state and a copy-on-write clone of it) in several ways, cycling the
+     * clones and checking that the state they were cloned from is unchanged
+     */
+    static int testClones(String map, UnitTypeTable utt) throws Exception {
+        int errors = 0;
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AI ai1 = new WorkerRush(utt, new BFSPathFinding());
+        AI ai2 = new LightRush(utt, new BFSPathFinding());
+        RandomBiasedAI playout = new RandomBiasedAI();
+        boolean gameover = false;
+        do {
+            PlayerAction pa1 = ai1.getAction(0, gs);
+            PlayerAction pa2 = ai2.getAction(1, gs);
+            if (gs.getTime()%10==0) {
+                errors += checkClones(gs, playout, "game state, t=" + gs.getTime());
+                GameState cow = gs.cloneCopyOnWrite();
+                errors += checkClones(cow, playout, "copy-on-write clone, t=" + gs.getTime());
+                errors += checkClones(gs.cloneIssue(pa1), playout, "cloneIssue, t=" + gs.getTime());
+                if (gs.getPhysicalGameState().isCopyOnWrite()) {
+                    System.err.println(map + ": the game state became copy-on-write at t=" + gs.getTime());
+                    errors++;
+                }
+            }
+            gs.issueSafe(pa1);
+            gs.issueSafe(pa2);
+            gameover = gs.cycle();
+        }while(!gameover && gs.getTime()<1000 && errors==0);
+        return errors;
+    }
+
+
+    static int checkClones(GameState gs, AI playout, String name) throws Exception {
+        List<Object> before = snapshot(gs);
+        GameState clone = gs.cloneCopyOnWrite();
+        GameState clone2 = clone.cloneCopyOnWrite();
+        if (!before.equals(snapshot(gs))) {
+            System.err.println(name + ": changed by cloneCopyOnWrite");
+            return 1;
+        }
+        List<Object> before2 = snapshot(clone);
+        play(clone2, playout, 20);
+        if (!before2.equals(snapshot(clone))) {
+            System.err.println(name + ": its clone was changed by cycling a clone of the clone");
+            return 1;
+        }
+        play(clone, playout, 20);
+        if (!before.equals(snapshot(gs))) {
+            System.err.println(name + ": changed by cycling its clones");
+            return 1;
+        }
+        return 0;
+    }
+
+
+    static void play(GameState gs, AI playout, int cycles) throws Exception {
+        int end = gs.getTime() + cycles;
+        boolean gameover = false;
+        while(!gameover && gs.getTime()<end) {
+            if (gs.isComplete()) {
+                gameover = gs.cycle();
+            } else {
+                gs.issue(playout.getAction(0, gs));
+                gs.issue(playout.getAction(1, gs));
+            }
+        }
+    }
+
+
+    /**
+     * The units of "gs" (the objects and their state), the actions assigned to
+     * them and the time
+     */
+    static List<Object> snapshot(GameState gs) {
+        List<Object> l = new ArrayList<>();
+        l.add(gs.getTime());
+        for(Unit u:gs.getUnits()) {
+            l.add(u);
+            l.add(u.getType().name + " " + u.getPlayer() + " " + u.getX() + " " + u.getY() + " " + u.getHitPoints() + " " + u.getResources());
+            UnitActionAssignment uaa = gs.getActionAssignment(u);
+            if (uaa!=null) {
+                l.add(uaa.unit);
+                l.add(uaa.action + " " + uaa.time);
+            }
+        }
+        for(int i = 0;i<2;i++) l.add(gs.getPlayer(i).getResources());
+        return l;
+    }
+
+
+    /**
+     * Plays WorkerRush against LightRush, with and without ABCD choosing
+     * actions (that are not issued) for the first player a few times, and
+     * checks that both games end at the same time and with the same winner
+     */
+    static int testGame(String map, UnitTypeTable utt) throws Exception {
+        String result1 = playGame(map, utt, null);
+        AI abcd = new ABCD(2, new WorkerRush(utt, new AStarPathFinding()), 100, new SimpleSqrtEvaluationFunction3());
+        String result2 = playGame(map, utt, abcd);
+        if (!result1.equals(result2)) {
+            System.err.println(map + ": the game changed when calling ABCD: " + result1 + " vs " + result2);
+            return 1;
+        }
+        return 0;
+    }
+
+
+    static String playGame(String map, UnitTypeTable utt, AI observer) throws Exception {
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AI ai1 = new WorkerRush(utt, new BFSPathFinding());
+        AI ai2 = new LightRush(utt, new BFSPathFinding());
+        boolean gameover = false;
+        do {
+            PlayerAction pa1 = ai1.getAction(0, gs);
+            PlayerAction pa2 = ai2.getAction(1, gs);
+            if (observer!=null && gs.getTime()%50==0 && gs.getTime()<200) observer.getAction(0, gs);
+            gs.issueSafe(pa1);
+            gs.issueSafe(pa2);
+            gameover = gs.cycle();
+        }while(!gameover && gs.getTime()<3000);
+        return "t=" + gs.getTime() + " winner=" + gs.winner();
+    }
+}
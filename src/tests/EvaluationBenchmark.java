@@ -0,0 +1,109 @@
+package tests;
+
+import ai.RandomAI;
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.evaluation.EvaluationFunction;
+import ai.evaluation.LanchesterEvaluationFunction;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how many leaf evaluations per second the evaluation functions can
+ * do, as in a search tree: each leaf is a copy of a mid-game state advanced
+ * one cycle. The leaves are evaluated when they inherit the unit sums of the
+ * state they were copied from (see GameState.getUnitSums), so only the units
+ * that changed in that cycle are recomputed, and when they do not, so all the
+ * units are gone through (as evaluation functions did before). Finally, the
+ * leaves are evaluated in batches (see EvaluationFunction.evaluate(int, int,
+ * GameState[], int, float[])).
+ *
+ * Arguments (optional): number of leaves per map, batch size
+ * @author santi
+ */
+public class EvaluationBenchmark {
+    public static void main(String args[]) throws Exception {
+        int leaves = (args.length>0 ? Integer.parseInt(args[0]):100000);
+        int batchSize = (args.length>1 ? Integer.parseInt(args[1]):16);
+        String maps[] = {"maps/8x8/basesWorkers8x8.xml",
+                         "maps/16x16/basesWorkers16x16.xml",
+                         "maps/24x24/basesWorkers24x24.xml",
+                         "maps/BWDistantResources32x32.xml"};
+        EvaluationFunction efs[] = {new SimpleSqrtEvaluationFunction3(), new LanchesterEvaluationFunction()};
+        UnitTypeTable utt = new UnitTypeTable();
+
+        for(String map:maps) {
+            // play for a while, so that there are more units:
+            GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+            AI ai1 = new RandomBiasedAI();
+            AI ai2 = new RandomBiasedAI();
+            for(int i = 0;i<400 && !gs.gameover();i++) {
+                gs.issueSafe(ai1.getAction(0, gs));
+                gs.issueSafe(ai2.getAction(1, gs));
+                gs.cycle();
+            }
+            System.out.println(map + " (" + gs.getUnits().size() + " units, cycle " + gs.getTime() + "):");
+
+            for(EvaluationFunction ef:efs) {
+                GameState incremental = gs.clone();
+                ef.evaluate(0, 1, incremental);    // computes the sums, which the leaves inherit
+                GameState full = gs.clone();
+                // warm up:
+                leafEvaluationsPerSecond(full, ef, leaves/10);
+                leafEvaluationsPerSecond(incremental, ef, leaves/10);
+                batchLeafEvaluationsPerSecond(incremental, ef, leaves/10, batchSize);
+                double rateFull = leafEvaluationsPerSecond(full, ef, leaves);
+                double rateIncremental = leafEvaluationsPerSecond(incremental, ef, leaves);
+                double rateBatch = batchLeafEvaluationsPerSecond(incremental, ef, leaves, batchSize);
+                System.out.println("  " + ef + ": " + String.format("%.0f", rateFull) + " evaluations/s (all units), " +
+                                   String.format("%.0f", rateIncremental) + " evaluations/s (incremental), " +
+                                   String.format("%.0f", rateBatch) + " evaluations/s (incremental, batches of " + batchSize + ")");
+            }
+        }
+    }
+
+
+    static double leafEvaluationsPerSecond(GameState root, EvaluationFunction ef, int leaves) throws Exception {
+        AI ai = new RandomAI();
+        long time = 0;
+        float total = 0;
+        for(int i = 0;i<leaves;i++) {
+            GameState leaf = root.cloneCopyOnWrite();
+            leaf.issue(ai.getAction(0, leaf));
+            leaf.issue(ai.getAction(1, leaf));
+            leaf.cycle();
+            long start = System.nanoTime();
+            total += ef.evaluate(0, 1, leaf);
+            time += System.nanoTime() - start;
+        }
+        if (total == Float.MAX_VALUE) System.out.println();  // so that the evaluations are not optimized away
+        return leaves*1000000000.0/time;
+    }
+
+
+    static double batchLeafEvaluationsPerSecond(GameState root, EvaluationFunction ef, int leaves, int batchSize) throws Exception {
+        AI ai = new RandomAI();
+        GameState batch[] = new GameState[batchSize];
+        float scores[] = new float[batchSize];
+        long time = 0;
+        float total = 0;
+        for(int i = 0;i<leaves;i+=batchSize) {
+            int n = Math.min(batchSize, leaves - i);
+            for(int j = 0;j<n;j++) {
+                GameState leaf = root.cloneCopyOnWrite();
+                leaf.issue(ai.getAction(0, leaf));
+                leaf.issue(ai.getAction(1, leaf));
+                leaf.cycle();
+                batch[j] = leaf;
+            }
+            long start = System.nanoTime();
+            ef.evaluate(0, 1, batch, n, scores);
+            time += System.nanoTime() - start;
+            for(int j = 0;j<n;j++) total += scores[j];
+        }
+        if (total == Float.MAX_VALUE) System.out.println();  // so that the evaluations are not optimized away
+        return leaves*1000000000.0/time;
+    }
+}
@@ -9,6 +9,7 @@ import ai.*;
 import gui.PhysicalGameStateJFrame;
 import gui.PhysicalGameStatePanel;
 
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -20,12 +21,12 @@ import javax.swing.JFrame;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import rts.GameMetrics;
+import rts.GameMetricsWriter;
+import rts.GameRunner;
 import rts.GameState;
-import rts.PartiallyObservableGameState;
 import rts.PhysicalGameState;
-import rts.PlayerAction;
 import rts.Trace;
-import rts.TraceEntry;
 import rts.units.UnitTypeTable;
 import util.XMLWriter;
 
@@ -67,6 +68,16 @@ public class Experimenter {
     public static void runExperiments(List<AI> bots, List<PhysicalGameState> maps, UnitTypeTable utt, int iterations, int max_cycles, int max_inactive_cycles, boolean visualize, PrintStream out, 
                                       int run_only_those_involving_this_AI, boolean skip_self_play, boolean partiallyObservable,
                                       boolean saveTrace, boolean saveZip, String traceDir) throws Exception {
+        runExperiments(bots, maps, utt, iterations, max_cycles, max_inactive_cycles, visualize, out, run_only_those_involving_this_AI, skip_self_play, partiallyObservable,
+                       saveTrace, saveZip, traceDir, null);
+    }
+
+    /**
+     * If "metricsWriter" is not null, the GameMetrics of each game are written to it.
+     */
+    public static void runExperiments(List<AI> bots, List<PhysicalGameState> maps, UnitTypeTable utt, int iterations, int max_cycles, int max_inactive_cycles, boolean visualize, PrintStream out, 
+                                      int run_only_those_involving_this_AI, boolean skip_self_play, boolean partiallyObservable,
+                                      boolean saveTrace, boolean saveZip, String traceDir, GameMetricsWriter metricsWriter) throws Exception {
         int wins[][] = new int[bots.size()][bots.size()];
         int ties[][] = new int[bots.size()][bots.size()];
         int loses[][] = new int[bots.size()][bots.size()];
@@ -78,6 +89,12 @@ public class Experimenter {
         List<AI> bots2 = new LinkedList<>();
         for(AI bot:bots) bots2.add(bot.clone());
         
+        GameRunner runner = new GameRunner(utt, max_cycles);
+        runner.setMaxInactiveCycles(max_inactive_cycles);
+        runner.setPartiallyObservable(partiallyObservable);
+        runner.setCatchCrashes(false);
+        runner.setRunGC(GC_EACH_FRAME);
+
         for (int ai1_idx = 0; ai1_idx < bots.size(); ai1_idx++) 
         {
             for (int ai2_idx = 0; ai2_idx < bots.size(); ai2_idx++) 
@@ -97,7 +114,6 @@ public class Experimenter {
                     	//over several games
                         AI ai1 = bots.get(ai1_idx).clone();
                         AI ai2 = bots2.get(ai2_idx).clone();
-                        long lastTimeActionIssued = 0;
 
                         ai1.reset();
                         ai2.reset();
@@ -108,59 +124,24 @@ public class Experimenter {
 
                         out.println("MATCH UP: " + ai1 + " vs " + ai2);
                         
-                        boolean gameover = false;
                         Trace trace = null;
-                        TraceEntry te;
-                        if(saveTrace){
-                        	trace = new Trace(utt);
-                        	te = new TraceEntry(gs.getPhysicalGameState().clone(),gs.getTime());
-                            trace.addEntry(te);
-                        }
-                        do {
-                            if (GC_EACH_FRAME) System.gc();
-                            PlayerAction pa1 = null, pa2 = null;
-                            if (partiallyObservable) {
-                                pa1 = ai1.getAction(0, new PartiallyObservableGameState(gs,0));
-//                                if (DEBUG>=1) {System.out.println("AI1 done.");out.flush();}
-                                pa2 = ai2.getAction(1, new PartiallyObservableGameState(gs,1));
-//                                if (DEBUG>=1) {System.out.println("AI2 done.");out.flush();}
-                            } else {
-                                pa1 = ai1.getAction(0, gs);
-                                if (DEBUG>=1) {System.out.println("AI1 done.");out.flush();}
-                                pa2 = ai2.getAction(1, gs);
-                                if (DEBUG>=1) {System.out.println("AI2 done.");out.flush();}
-                            }
-                            if (saveTrace && (!pa1.isEmpty() || !pa2.isEmpty())) {
-                                te = new TraceEntry(gs.getPhysicalGameState().clone(),gs.getTime());
-                                te.addPlayerAction(pa1.clone());
-                                te.addPlayerAction(pa2.clone());
-                                trace.addEntry(te);
-                            }
-                            
-                            if (gs.issueSafe(pa1)) lastTimeActionIssued = gs.getTime();
-//                            if (DEBUG>=1) {System.out.println("issue action AI1 done: " + pa1);out.flush();}
-                            if (gs.issueSafe(pa2)) lastTimeActionIssued = gs.getTime();
-//                            if (DEBUG>=1) {System.out.println("issue action AI2 done:" + pa2);out.flush();}
-                            gameover = gs.cycle();
+                        if (saveTrace) trace = new Trace(utt);
+                        final PhysicalGameStateJFrame window = w;
+                        GameMetrics metrics = runner.play(ai1, ai2, gs, trace, gs2 -> {
                             if (DEBUG>=1) {System.out.println("cycle done.");out.flush();}
-                            if (w!=null) {
-                                w.setStateCloning(gs);
-                                w.repaint();
+                            if (window!=null) {
+                                window.setStateCloning(gs2);
+                                window.repaint();
                                 try {
                                     Thread.sleep(1);    // give time to the window to repaint
                                 } catch (Exception e) {
                                     e.printStackTrace();
                                 }
-//                              if (DEBUG>=1) {System.out.println("repaint done.");out.flush();}
                             }
-                        } while (!gameover && 
-                                 (gs.getTime() < max_cycles) && 
-                                 (gs.getTime() - lastTimeActionIssued < max_inactive_cycles));
-                        ai1.gameOver(gs.winner());
-                        ai2.gameOver(gs.winner());
+                        });
+                        metrics.iteration = i;
+                        metrics.map = "" + m;
                         if(saveTrace){
-                        	te = new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime());
-                        	trace.addEntry(te);
                         	XMLWriter xml;
                         	ZipOutputStream zip = null;
                         	String filename=ai1.toString()+"Vs"+ai2.toString()+"-"+m+"-"+i;
@@ -171,9 +152,9 @@ public class Experimenter {
                         	if(saveZip){
                         		zip=new ZipOutputStream(new FileOutputStream(filename+".zip"));
                         		zip.putNextEntry(new ZipEntry("game.xml"));
-                        		xml = new XMLWriter(new OutputStreamWriter(zip));
+                        		xml = new XMLWriter(new BufferedWriter(new OutputStreamWriter(zip)));
                         	}else{
-                        		xml = new XMLWriter(new FileWriter(filename+".xml"));
+                        		xml = new XMLWriter(new BufferedWriter(new FileWriter(filename+".xml")));
                         	}
                         	trace.toxml(xml);
                         	xml.flush();
@@ -183,29 +164,30 @@ public class Experimenter {
                         	}
                         }
                         if (w!=null) w.dispose();
-                        int winner = gs.winner();
-                        out.println("Winner: " + winner + "  in " + gs.getTime() + " cycles");
+                        int winner = metrics.winner;
+                        out.println("Winner: " + winner + "  in " + metrics.cycles + " cycles");
                         out.println(ai1 + " : " + ai1.statisticsString());
                         out.println(ai2 + " : " + ai2.statisticsString());
                         out.flush();
+                        if (metricsWriter!=null) metricsWriter.write(metrics);
                         if (winner == -1) {
                             ties[ai1_idx][ai2_idx]++;
-                            tie_time[ai1_idx][ai2_idx]+=gs.getTime();
+                            tie_time[ai1_idx][ai2_idx]+=metrics.cycles;
 
                             ties[ai2_idx][ai1_idx]++;
-                            tie_time[ai2_idx][ai1_idx]+=gs.getTime();
+                            tie_time[ai2_idx][ai1_idx]+=metrics.cycles;
                         } else if (winner == 0) {
                             wins[ai1_idx][ai2_idx]++;
-                            win_time[ai1_idx][ai2_idx]+=gs.getTime();
+                            win_time[ai1_idx][ai2_idx]+=metrics.cycles;
 
                             loses[ai2_idx][ai1_idx]++;
-                            lose_time[ai2_idx][ai1_idx]+=gs.getTime();
+                            lose_time[ai2_idx][ai1_idx]+=metrics.cycles;
                         } else if (winner == 1) {
                             loses[ai1_idx][ai2_idx]++;
-                            lose_time[ai1_idx][ai2_idx]+=gs.getTime();
+                            lose_time[ai1_idx][ai2_idx]+=metrics.cycles;
 
                             wins[ai2_idx][ai1_idx]++;
-                            win_time[ai2_idx][ai1_idx]+=gs.getTime();
+                            win_time[ai2_idx][ai1_idx]+=metrics.cycles;
                         }                        
                     }  
                     m++;
@@ -8,6 +8,7 @@ import ai.BranchingFactorCalculatorDouble;
 import ai.core.AI;
 import gui.PhysicalGameStatePanel;
 
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.OutputStreamWriter;
@@ -156,9 +157,9 @@ public class ExperimenterAsymmetric {
                         	if(saveZip){
                         		zip=new ZipOutputStream(new FileOutputStream(filename+".zip"));
                         		zip.putNextEntry(new ZipEntry("game.xml"));
-                        		xml = new XMLWriter(new OutputStreamWriter(zip));
+                        		xml = new XMLWriter(new BufferedWriter(new OutputStreamWriter(zip)));
                         	}else{
-                        		xml = new XMLWriter(new FileWriter(filename+".xml"));
+                        		xml = new XMLWriter(new BufferedWriter(new FileWriter(filename+".xml")));
                         	}
                         	trace.toxml(xml);
                         	xml.flush();
@@ -0,0 +1,70 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.naivemcts.FlatNaiveMCTS;
+import ai.mcts.naivemcts.NaiveMCTS;
+import java.util.ArrayList;
+import java.util.List;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Compares the iterations per second of NaiveMCTS (a tree of NaiveMCTSNode
+ * objects) and FlatNaiveMCTS (a NaiveMCTSTree) on the same game states, with
+ * the usual playout lookahead and with a very short one (where the time spent
+ * in the tree matters the most).
+ *
+ * Arguments (optional): iterations per decision, number of decisions per map
+ * @author santi
+ */
+public class NaiveMCTSBenchmark {
+    public static void main(String args[]) throws Exception {
+        int iterations = (args.length>0 ? Integer.parseInt(args[0]):1000);
+        int decisions = (args.length>1 ? Integer.parseInt(args[1]):20);
+        String maps[] = {"maps/16x16/basesWorkers16x16.xml",
+                         "maps/24x24/basesWorkers24x24.xml"};
+        int lookaheads[] = {100, 10};
+        UnitTypeTable utt = new UnitTypeTable();
+
+        for(String map:maps) {
+            // the game states to decide on, from a game between two random AIs:
+            List<GameState> states = new ArrayList<>();
+            GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+            AI ai1 = new RandomBiasedAI();
+            AI ai2 = new RandomBiasedAI();
+            while(states.size()<decisions && !gs.gameover()) {
+                if (gs.getTime()%20==0 && gs.canExecuteAnyAction(0)) states.add(gs.clone());
+                gs.issueSafe(ai1.getAction(0, gs));
+                gs.issueSafe(ai2.getAction(1, gs));
+                gs.cycle();
+            }
+
+            for(int lookahead:lookaheads) {
+                NaiveMCTS naive = new NaiveMCTS(-1, iterations, lookahead, 10, 0.3f, 0.0f, 0.4f,
+                                                new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+                NaiveMCTS flat = new FlatNaiveMCTS(-1, iterations, lookahead, 10, 0.3f, 0.0f, 0.4f,
+                                                   new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+                // warm up:
+                for(GameState state:states) {
+                    naive.getAction(0, state);
+                    flat.getAction(0, state);
+                }
+                long naiveTime = 0, flatTime = 0;
+                for(GameState state:states) {
+                    long start = System.nanoTime();
+                    naive.getAction(0, state);
+                    naiveTime += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    flat.getAction(0, state);
+                    flatTime += System.nanoTime() - start;
+                }
+                double n = (double)iterations*states.size();
+                System.out.println(map + ", lookahead " + lookahead + ": NaiveMCTS " + String.format("%.0f", n*1000000000.0/naiveTime) + " iterations/s, " +
+                                   "FlatNaiveMCTS " + String.format("%.0f", n*1000000000.0/flatTime) + " iterations/s");
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.core.AIWithComputationBudget;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.naivemcts.NaiveMCTS;
+import ai.mcts.uct.UCT;
+import ai.minimax.ABCD.IDABCD;
+import ai.minimax.RTMiniMax.IDRTMinimax;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays the search AIs that can recycle their nodes (see ai.core.NodePool)
+ * against RandomBiasedAI, with and without a node pool, and shows the garbage
+ * collections during their searches (see ai.core.GCStatistics), and how many
+ * decisions took longer than the time budget.
+ *
+ * Arguments (optional): time budget (ms), maximum game cycles, pool capacity
+ * @author santi
+ */
+public class NodePoolBenchmark {
+    public static void main(String args[]) throws Exception {
+        int budget = (args.length>0 ? Integer.parseInt(args[0]):50);
+        int maxCycles = (args.length>1 ? Integer.parseInt(args[1]):500);
+        int capacity = (args.length>2 ? Integer.parseInt(args[2]):100000);
+        String map = "maps/16x16/basesWorkers16x16.xml";
+        UnitTypeTable utt = new UnitTypeTable();
+
+        for(int ai_idx = 0;ai_idx<4;ai_idx++) {
+            for(int pooled = 0;pooled<2;pooled++) {
+                AIWithComputationBudget ai = null;
+                switch(ai_idx) {
+                    case 0: NaiveMCTS naive = new NaiveMCTS(budget, -1, 100, 10, 0.3f, 0.0f, 0.4f, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+                            naive.setNodePoolCapacity(pooled==1 ? capacity:0);
+                            ai = naive;
+                            break;
+                    case 1: UCT uct = new UCT(budget, -1, 100, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3());
+                            uct.setNodePoolCapacity(pooled==1 ? capacity:0);
+                            ai = uct;
+                            break;
+                    case 2: IDABCD abcd = new IDABCD(budget, -1, new RandomBiasedAI(), 100, new SimpleSqrtEvaluationFunction3(), false);
+                            abcd.setNodePoolCapacity(pooled==1 ? capacity:0);
+                            ai = abcd;
+                            break;
+                    case 3: IDRTMinimax minimax = new IDRTMinimax(budget, new SimpleSqrtEvaluationFunction3());
+                            minimax.setNodePoolCapacity(pooled==1 ? capacity:0);
+                            ai = minimax;
+                            break;
+                }
+                AI opponent = new RandomBiasedAI();
+                GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+                long decisions = 0, overBudget = 0, maxTime = 0;
+                while(!gs.gameover() && gs.getTime()<maxCycles) {
+                    if (gs.canExecuteAnyAction(0)) {
+                        long start = System.currentTimeMillis();
+                        gs.issueSafe(ai.getAction(0, gs));
+                        long time = System.currentTimeMillis() - start;
+                        decisions++;
+                        if (time>budget) overBudget++;
+                        if (time>maxTime) maxTime = time;
+                    }
+                    gs.issueSafe(opponent.getAction(1, gs));
+                    gs.cycle();
+                }
+                System.out.println(ai.getClass().getSimpleName() + (pooled==1 ? " with a node pool":" without a node pool") + ": " +
+                                   decisions + " decisions, " + overBudget + " over " + budget + "ms (max " + maxTime + "ms)");
+                System.out.println("    " + ai.statisticsString());
+            }
+        }
+    }
+}
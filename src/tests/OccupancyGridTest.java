@@ -0,0 +1,91 @@
+package tests;
+
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks that PhysicalGameState.getUnitAt finds the units of maps that share
+ * their unit objects (see PhysicalGameState.cloneKeepingUnits) when they are
+ * moved through any of the maps (the source or its clones), by comparing it
+ * with a scan of the units.
+ * @author santi
+ */
+public class OccupancyGridTest {
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        PhysicalGameState pgs = PhysicalGameState.load("maps/16x16/basesWorkers16x16.xml", utt);
+        PhysicalGameState view = pgs.cloneKeepingUnits();
+        // build the grids:
+        check(pgs, "source");
+        check(view, "clone");
+
+        Unit worker = null;
+        for(Unit u:pgs.getUnits()) {
+            if (u.getType().canMove) worker = u;
+        }
+        int errors = 0;
+        for(int i = 0;i<6;i++) {
+            // alternate the map used to move the unit, always to an empty cell:
+            PhysicalGameState mover = (i%2==0 ? view:pgs);
+            int x = worker.getX(), y = worker.getY()+1;
+            if (mover.getUnitAt(x, y)!=null || y>=pgs.getHeight()) {
+                y = worker.getY()-1;
+            }
+            mover.moveUnit(worker, x, y);
+            errors += check(pgs, "source");
+            errors += check(view, "clone");
+        }
+
+        // a unit moved through the source map into a cell that the clone had
+        // seen empty (the clone knows through the source's change counter):
+        int x = worker.getX(), y = worker.getY();
+        int x2 = (x>0 ? x-1:x+1);
+        if (view.getUnitAt(x2, y)==null) {
+            pgs.moveUnit(worker, x2, y);
+            if (view.getUnitAt(x2, y)!=worker || view.getUnitAt(x, y)!=null) {
+                System.err.println("clone: does not see the unit moved through the source to (" + x2 + "," + y + ")");
+                errors++;
+            }
+        }
+
+        // and through another clone of the same map:
+        PhysicalGameState view2 = pgs.cloneKeepingUnits();
+        check(view2, "second clone");
+        for(int i = 0;i<4;i++) {
+            PhysicalGameState mover = (i%2==0 ? view:view2);
+            x = worker.getX();
+            y = worker.getY()+1;
+            if (mover.getUnitAt(x, y)!=null || y>=pgs.getHeight()) {
+                y = worker.getY()-1;
+            }
+            mover.moveUnit(worker, x, y);
+            errors += check(pgs, "source");
+            errors += check(view, "clone");
+            errors += check(view2, "second clone");
+        }
+        if (errors>0) {
+            System.err.println(errors + " errors");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+
+    static int check(PhysicalGameState pgs, String name) {
+        int errors = 0;
+        for(int y = 0;y<pgs.getHeight();y++) {
+            for(int x = 0;x<pgs.getWidth();x++) {
+                Unit expected = null;
+                for(Unit u:pgs.getUnits()) {
+                    if (u.getX()==x && u.getY()==y) expected = u;
+                }
+                if (pgs.getUnitAt(x, y)!=expected) {
+                    System.err.println(name + ": getUnitAt(" + x + "," + y + ") is " + pgs.getUnitAt(x, y) + ", should be " + expected);
+                    errors++;
+                }
+            }
+        }
+        return errors;
+    }
+}
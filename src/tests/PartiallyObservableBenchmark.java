@@ -0,0 +1,73 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import rts.GameState;
+import rts.PartiallyObservableGameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how fast the frames of a partially observable game can be run
+ * (creating a partially observable view of the game for each player, and then
+ * running a game cycle), and how fast the views can then be asked which cells
+ * are observable (as the PO scripted AIs do for every cell of the map). The
+ * actions of the AIs are not included in the times.
+ *
+ * Arguments (optional): number of frames per map
+ * @author santi
+ */
+public class PartiallyObservableBenchmark {
+    public static void main(String args[]) throws Exception {
+        int cycles = (args.length>0 ? Integer.parseInt(args[0]):20000);
+        String maps[] = {"maps/8x8/basesWorkers8x8.xml",
+                         "maps/16x16/basesWorkers16x16.xml",
+                         "maps/24x24/basesWorkers24x24.xml",
+                         "maps/BWDistantResources32x32.xml"};
+        UnitTypeTable utt = new UnitTypeTable();
+
+        for(int i = 0;i<2;i++) {
+            // the first pass is to warm up:
+            for(String map:maps) {
+                long frameTime = 0, queryTime = 0;
+                int frames = 0, units = 0;
+                long queries = 0, observable = 0;
+                while(frames < cycles) {
+                    GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+                    PhysicalGameState pgs = gs.getPhysicalGameState();
+                    AI ai1 = new RandomBiasedAI();
+                    AI ai2 = new RandomBiasedAI();
+                    for(;frames<cycles && !gs.gameover();frames++) {
+                        PlayerAction pa1 = ai1.getAction(0, gs);
+                        PlayerAction pa2 = ai2.getAction(1, gs);
+                        units += gs.getUnits().size();
+
+                        // a frame of a partially observable game: a view for each player, and a cycle
+                        long start = System.nanoTime();
+                        PartiallyObservableGameState pogs1 = new PartiallyObservableGameState(gs, 0);
+                        PartiallyObservableGameState pogs2 = new PartiallyObservableGameState(gs, 1);
+                        gs.issueSafe(pa1);
+                        gs.issueSafe(pa2);
+                        gs.cycle();
+                        frameTime += System.nanoTime() - start;
+
+                        start = System.nanoTime();
+                        for(int y = 0;y<pgs.getHeight();y++) {
+                            for(int x = 0;x<pgs.getWidth();x++) {
+                                if (pogs1.observable(x, y)) observable++;
+                                if (pogs2.observable(x, y)) observable++;
+                            }
+                        }
+                        queryTime += System.nanoTime() - start;
+                        queries += 2*pgs.getWidth()*pgs.getHeight();
+                    }
+                }
+                if (i==0) continue;
+                System.out.println(map + " (" + (units/frames) + " units on average, " + (observable*100/queries) + "% observable):");
+                System.out.println("  " + String.format("%.0f", frames*1000000000.0/frameTime) + " frames/s (a view for each player and a cycle), " +
+                                   String.format("%.0f", queries*1000000000.0/queryTime) + " observable queries/s");
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package tests;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.BFSPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures the time taken by the path-finding algorithms to find paths between
+ * random positions of some of the bundled maps:
+ * - A* without its path cache (the search itself)
+ * - A* with its path cache, when the same paths are requested several times
+ *   (as scripted AIs do every frame)
+ * - BFS, as a reference
+ * @author santi
+ */
+public class PathFindingBenchmark {
+    public static void main(String args[]) throws Exception {
+        String maps[] = {"maps/8x8/basesWorkers8x8.xml",
+                         "maps/16x16/basesWorkers16x16.xml",
+                         "maps/24x24/basesWorkers24x24.xml",
+                         "maps/BWDistantResources32x32.xml",
+                         "maps/BroodWar/(4)Andromeda.scxA.xml"};
+        if (args.length>0) maps = args;
+        int nQueries = 1000;
+        int repetitions = 5;    // number of times each query is repeated
+
+        UnitTypeTable utt = new UnitTypeTable();
+        for(String map:maps) {
+            GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+            List<Unit> units = new ArrayList<>();
+            List<Integer> targets = new ArrayList<>();
+            List<Integer> ranges = new ArrayList<>();
+            randomQueries(gs, nQueries, new Random(0), units, targets, ranges);
+
+            // warm up:
+            for(int i = 0;i<3;i++) {
+                run(new AStarPathFinding(false), gs, units, targets, ranges, 1);
+                run(new AStarPathFinding(), gs, units, targets, ranges, repetitions);
+                run(new BFSPathFinding(), gs, units, targets, ranges, 1);
+            }
+
+            long astar = run(new AStarPathFinding(false), gs, units, targets, ranges, 1);
+            long cached = run(new AStarPathFinding(), gs, units, targets, ranges, repetitions);
+            long bfs = run(new BFSPathFinding(), gs, units, targets, ranges, 1);
+            System.out.println(map + " (" + gs.getPhysicalGameState().getWidth() + "x" + gs.getPhysicalGameState().getHeight() + "):");
+            System.out.println("  A*:                     " + (astar/nQueries) + " ns/query");
+            System.out.println("  A* (cached, " + repetitions + " times):   " + (cached/(nQueries*repetitions)) + " ns/query");
+            System.out.println("  BFS:                    " + (bfs/nQueries) + " ns/query");
+        }
+    }
+
+
+    /*
+     * Generates queries from random units to random free positions
+     */
+    static void randomQueries(GameState gs, int n, Random r, List<Unit> units, List<Integer> targets, List<Integer> ranges) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        List<Unit> all = pgs.getUnits();
+        while(units.size()<n) {
+            int x = r.nextInt(pgs.getWidth());
+            int y = r.nextInt(pgs.getHeight());
+            if (!gs.free(x, y)) continue;
+            units.add(all.get(r.nextInt(all.size())));
+            targets.add(x + y*pgs.getWidth());
+            ranges.add(r.nextInt(2));
+        }
+    }
+
+
+    /*
+     * Runs each query "repetitions" times in a row, and returns the total time in nanoseconds
+     */
+    static long run(PathFinding pf, GameState gs, List<Unit> units, List<Integer> targets, List<Integer> ranges, int repetitions) {
+        long start = System.nanoTime();
+        for(int i = 0;i<units.size();i++) {
+            for(int j = 0;j<repetitions;j++) {
+                pf.findPathToPositionInRange(units.get(i), targets.get(i), ranges.get(i), gs, null);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,62 @@
+package tests;
+
+import ai.RandomAI;
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how many game cycles per second can be simulated in playouts with
+ * RandomAI and RandomBiasedAI, issuing their actions with
+ * "gs.issue(ai.getAction(player, gs))" and with "ai.issueAction(player, gs)"
+ * (that reuses the actions and player actions of rts.PlayoutActionGenerator).
+ *
+ * Arguments (optional): map, milliseconds per measurement, playout length (cycles)
+ * @author santi
+ */
+public class PlayoutBenchmark {
+    public static void main(String args[]) throws Exception {
+        String map = (args.length>0 ? args[0]:"maps/16x16/basesWorkers16x16.xml");
+        long time = (args.length>1 ? Long.parseLong(args[1]):5000);
+        int length = (args.length>2 ? Integer.parseInt(args[2]):100);
+        UnitTypeTable utt = new UnitTypeTable();
+        GameState initial = new GameState(PhysicalGameState.load(map, utt), utt);
+
+        AI policies[] = {new RandomAI(), new RandomBiasedAI()};
+        for(AI policy:policies) {
+            for(int direct = 0;direct<2;direct++) {
+                // warm up:
+                simulate(initial, policy, length, direct==1, time/5);
+                long cycles = simulate(initial, policy, length, direct==1, time);
+                System.out.println(policy + (direct==1 ? " (issueAction)":" (getAction)") + ": " +
+                                   (cycles*1000/time) + " cycles/s");
+            }
+        }
+    }
+
+
+    static long simulate(GameState initial, AI policy, int length, boolean direct, long time) throws Exception {
+        long cycles = 0;
+        long end = System.currentTimeMillis() + time;
+        while(System.currentTimeMillis()<end) {
+            GameState gs = initial.clone();
+            int endTime = gs.getTime() + length;
+            boolean gameover = false;
+            do {
+                if (gs.isComplete()) {
+                    gameover = gs.cycle();
+                    cycles++;
+                } else if (direct) {
+                    policy.issueAction(0, gs);
+                    policy.issueAction(1, gs);
+                } else {
+                    gs.issue(policy.getAction(0, gs));
+                    gs.issue(policy.getAction(1, gs));
+                }
+            }while(!gameover && gs.getTime()<endTime);
+        }
+        return cycles;
+    }
+}
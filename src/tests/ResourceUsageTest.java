@@ -0,0 +1,51 @@
+package tests;
+
+import rts.PhysicalGameState;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks that the positions used by actions that move or produce units out of
+ * the map through its top or left borders (which are negative) are ignored,
+ * also when merging them with other resource usages
+ * @author santi
+ */
+public class ResourceUsageTest {
+    public static void main(String args[]) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        PhysicalGameState pgs = new PhysicalGameState(8, 8);
+        Unit worker = new Unit(0, utt.getUnitType("Worker"), 0, 0);
+        Unit base = new Unit(0, utt.getUnitType("Base"), 0, 0);
+        int errors = 0;
+
+        ResourceUsage up = new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_UP).resourceUsage(worker, pgs);
+        ResourceUsage left = new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_LEFT).resourceUsage(worker, pgs);
+        ResourceUsage produce = new UnitAction(UnitAction.TYPE_PRODUCE, UnitAction.DIRECTION_LEFT, utt.getUnitType("Worker")).resourceUsage(base, pgs);
+        for(ResourceUsage ru:new ResourceUsage[]{up, left}) {
+            if (ru.getNumberOfPositionsUsed()!=0 || !ru.getPositionsUsed().isEmpty() || ru.nextPositionUsed(-10)!=-1) {
+                System.err.println("positions out of the map used: " + ru);
+                errors++;
+            }
+        }
+        // (the resources are still used):
+        if (produce.getNumberOfPositionsUsed()!=0 || produce.getResourcesUsed(0)!=utt.getUnitType("Worker").cost) {
+            System.err.println("wrong resource usage for produce: " + produce);
+            errors++;
+        }
+
+        ResourceUsage down = new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_DOWN).resourceUsage(worker, pgs);
+        ResourceUsage merged = up.mergeIntoNew(left).mergeIntoNew(down);
+        if (merged.getNumberOfPositionsUsed()!=1 || !merged.usesPosition(8) || merged.nextPositionUsed(-1)!=8) {
+            System.err.println("wrong merged resource usage: " + merged);
+            errors++;
+        }
+
+        if (errors>0) {
+            System.err.println(errors + " errors");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,70 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.naivemcts.NaiveMCTS;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays NaiveMCTS, with and without reusing its tree from one decision to the
+ * next (see NaiveMCTS.reuseTree), against NaiveMCTS without reuse, with short
+ * time budgets. For each configuration it shows how often the state of a
+ * decision was found in the previous tree, and how many playouts the root
+ * had when the action was chosen (those carried over plus those of the frame).
+ *
+ * Arguments (optional): number of games per configuration, maximum game cycles
+ * @author santi
+ */
+public class TreeReuseBenchmark {
+    public static void main(String args[]) throws Exception {
+        int games = (args.length>0 ? Integer.parseInt(args[0]):1);
+        int maxCycles = (args.length>1 ? Integer.parseInt(args[1]):1000);
+        String maps[] = {"maps/8x8/basesWorkers8x8.xml",
+                         "maps/16x16/basesWorkers16x16.xml"};
+        int budgets[] = {20, 50};
+        UnitTypeTable utt = new UnitTypeTable();
+
+        for(String map:maps) {
+            for(int budget:budgets) {
+                for(int reuse = 0;reuse<2;reuse++) {
+                    long decisions = 0, reused = 0, carriedPlayouts = 0, rootPlayouts = 0;
+                    int wins = 0, losses = 0;
+                    for(int game = 0;game<games;game++) {
+                        NaiveMCTS ai = new NaiveMCTS(budget, -1, 100, 10, 0.3f, 0.0f, 0.4f,
+                                                     new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+                        ai.setReuseTree(reuse==1);
+                        AI opponent = new NaiveMCTS(budget, -1, 100, 10, 0.3f, 0.0f, 0.4f,
+                                                    new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3(), true);
+                        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+                        while(!gs.gameover() && gs.getTime()<maxCycles) {
+                            PlayerAction pa = new PlayerAction();
+                            if (gs.canExecuteAnyAction(0)) {
+                                ai.startNewComputation(0, gs.clone());
+                                int carried = ai.getTree().visit_count;
+                                ai.computeDuringOneGameFrame();
+                                pa = ai.getBestActionSoFar();
+                                decisions++;
+                                if (carried>0) reused++;
+                                carriedPlayouts += carried;
+                                rootPlayouts += ai.getTree().visit_count;
+                            }
+                            gs.issueSafe(pa);
+                            gs.issueSafe(opponent.getAction(1, gs));
+                            gs.cycle();
+                        }
+                        if (gs.winner()==0) wins++;
+                        if (gs.winner()==1) losses++;
+                    }
+                    System.out.println(map + ", " + budget + "ms, " + (reuse==1 ? "reusing the tree":"new tree each decision") + ": " +
+                                       decisions + " decisions, " + (reused*100/Math.max(1,decisions)) + "% reused, " +
+                                       "root playouts " + (rootPlayouts/Math.max(1,decisions)) + " (" + (carriedPlayouts/Math.max(1,decisions)) + " carried over), " +
+                                       wins + " wins, " + losses + " losses, " + (games - wins - losses) + " draws");
+                }
+            }
+        }
+    }
+}
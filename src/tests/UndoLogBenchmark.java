@@ -0,0 +1,101 @@
+package tests;
+
+import ai.abstraction.WorkerRush;
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.core.AI;
+import ai.evaluation.SimpleSqrtEvaluationFunction3;
+import ai.mcts.uct.UCT;
+import ai.mcts.uct.UCTNode;
+import ai.minimax.ABCD.ABCD;
+import ai.RandomBiasedAI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Compares the search algorithms that can move a single game state along the
+ * tree using its undo log (GameState.getUndoMark/undo) against cloning states,
+ * in nodes searched per second (and, for ABCD, whether both versions choose
+ * the same action). Each version searches its own copy of the game state.
+ *
+ * The undo log pays off in ABCD, that expands every node with a single state.
+ * In UCT, each playout has to be undone too, and the nodes have to replay the
+ * changes from the root, so it is usually slower than cloning states (which is
+ * why it is off by default).
+ * @author santi
+ */
+public class UndoLogBenchmark {
+    public static void main(String args[]) throws Exception {
+        String map = (args.length>0 ? args[0]:"maps/8x8/basesWorkers8x8.xml");
+        int decisions = (args.length>1 ? Integer.parseInt(args[1]):10);
+        int skip = 10;  // game cycles between decisions
+
+        UnitTypeTable utt = new UnitTypeTable();
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AI ai1 = new WorkerRush(utt, new AStarPathFinding());
+        AI ai2 = new WorkerRush(utt, new AStarPathFinding());
+
+        ABCD abcd = new ABCD(2, new WorkerRush(utt, new AStarPathFinding()), 100, new SimpleSqrtEvaluationFunction3());
+        ABCD abcdUndo = (ABCD)abcd.clone();
+        abcdUndo.setUseUndoLog(true);
+        UCT uct = new UCT(100, -1, 100, 10, new RandomBiasedAI(), new SimpleSqrtEvaluationFunction3());
+        UCT uctUndo = (UCT)uct.clone();
+        uctUndo.setUseUndoLog(true);
+
+        long abcdTime = 0, abcdUndoTime = 0, uctTime = 0, uctUndoTime = 0;
+        long uctNodes = 0, uctUndoNodes = 0;
+        int sameActions = 0;
+        int n = 0;
+        while(n<decisions && gs.winner()==-1 && !gs.gameover()) {
+            if (gs.getTime()%skip==0 && gs.canExecuteAnyAction(0)) {
+                GameState gs2 = gs.clone();
+                long start = System.currentTimeMillis();
+                PlayerAction pa1 = abcd.getAction(0, gs2);
+                abcdTime += System.currentTimeMillis() - start;
+                gs2 = gs.clone();
+                start = System.currentTimeMillis();
+                PlayerAction pa2 = abcdUndo.getAction(0, gs2);
+                abcdUndoTime += System.currentTimeMillis() - start;
+                if (pa1.toString().equals(pa2.toString())) sameActions++;
+
+                gs2 = gs.clone();
+                start = System.currentTimeMillis();
+                uct.getAction(0, gs2);
+                uctTime += System.currentTimeMillis() - start;
+                uctNodes += countNodes(uct.tree);
+                gs2 = gs.clone();
+                start = System.currentTimeMillis();
+                uctUndo.getAction(0, gs2);
+                uctUndoTime += System.currentTimeMillis() - start;
+                uctUndoNodes += countNodes(uctUndo.tree);
+                n++;
+            }
+            gs.issueSafe(ai1.getAction(0, gs));
+            gs.issueSafe(ai2.getAction(1, gs));
+            gs.cycle();
+        }
+
+        System.out.println("Decisions: " + n);
+        System.out.println("ABCD (clone) nodes/s: " + nodesPerSecond(abcd.total_nodes, abcdTime) + " (" + abcdTime + "ms)");
+        System.out.println("ABCD (undo)  nodes/s: " + nodesPerSecond(abcdUndo.total_nodes, abcdUndoTime) + " (" + abcdUndoTime + "ms)");
+        System.out.println("ABCD same actions: " + sameActions + "/" + n);
+        System.out.println("UCT (clone) nodes/s: " + nodesPerSecond(uctNodes, uctTime) + " (" + uct.total_runs + " playouts)");
+        System.out.println("UCT (undo)  nodes/s: " + nodesPerSecond(uctUndoNodes, uctUndoTime) + " (" + uctUndo.total_runs + " playouts)");
+    }
+
+
+    static long nodesPerSecond(long nodes, long time) {
+        return (time==0 ? 0:nodes*1000/time);
+    }
+
+
+    static int countNodes(UCTNode node) {
+        if (node==null) return 0;
+        int n = 1;
+        if (node.children!=null) {
+            for(UCTNode child:node.children) n += countNodes(child);
+        }
+        return n;
+    }
+}
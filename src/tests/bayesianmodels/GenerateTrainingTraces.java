@@ -15,6 +15,7 @@ import ai.montecarlo.lsi.Sampling;
 import gui.PhysicalGameStateJFrame;
 import gui.PhysicalGameStatePanel;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.PrintStream;
 import java.util.LinkedList;
@@ -30,6 +31,7 @@ import util.XMLWriter;
 
 public class GenerateTrainingTraces {
     public static int DEBUG = 0;
+    public static boolean BINARY_TRACES = false;   // save traces with Trace.toBinary instead of as XML
     
     public static void main(String args[]) throws Exception 
     {
@@ -165,11 +167,16 @@ public class GenerateTrainingTraces {
                         te = new TraceEntry(gs.getPhysicalGameState().clone(), gs.getTime());
                         trace.addEntry(te);
 
-                        String fileName = tracePrefix+"-map"+maps.indexOf(pgs)+"-AI"+ai1_idx+"-AI"+ai2_idx+"-"+i+".xml";
+                        String fileName = tracePrefix+"-map"+maps.indexOf(pgs)+"-AI"+ai1_idx+"-AI"+ai2_idx+"-"+i+
+                                          (BINARY_TRACES ? Trace.BINARY_EXTENSION:".xml");
                         System.out.println("Saving trace: " + fileName);
-                        XMLWriter xml = new XMLWriter(new FileWriter(fileName));
-                        trace.toxml(xml);
-                        xml.flush();                        
+                        if (BINARY_TRACES) {
+                            trace.toBinary(new FileOutputStream(fileName), true);
+                        } else {
+                            XMLWriter xml = new XMLWriter(new FileWriter(fileName));
+                            trace.toxml(xml);
+                            xml.flush();
+                        }
                         
                         if (w!=null) w.dispose();
                         int winner = gs.winner();
@@ -17,7 +17,6 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
-import org.jdom.input.SAXBuilder;
 import rts.GameState;
 import rts.Trace;
 import rts.TraceEntry;
@@ -114,7 +113,7 @@ public class PretrainNaiveBayesModels {
         File folder = new File(tracesFolder);
         for(File file:folder.listFiles()) {        
             String fileName = file.getAbsolutePath();
-            if (fileName.endsWith(".xml")) {
+            if (fileName.endsWith(".xml") || fileName.endsWith(Trace.BINARY_EXTENSION)) {
                 String justFileName = file.getName();
                 StringTokenizer st = new StringTokenizer(justFileName,"-");
                 st.nextToken();
@@ -129,7 +128,7 @@ public class PretrainNaiveBayesModels {
                 if (ai1.equals(targetAIID)) playerToLearnFrom = 0;
                 if (ai2.equals(targetAIID)) playerToLearnFrom = 1;
                 if (playerToLearnFrom>=0) {                
-                    Trace t = new Trace(new SAXBuilder().build(fileName).getRootElement());                    
+                    Trace t = Trace.load(fileName);
                     for(TraceEntry te:t.getEntries()) {
                         GameState gs = t.getGameStateAtCycle(te.getTime());
                         for(Pair<Unit,UnitAction> tmp:te.getActions()) {
@@ -0,0 +1,78 @@
+package tests.sockets;
+
+import ai.RandomBiasedAI;
+import ai.abstraction.WorkerRush;
+import ai.socket.BinarySocketWrapperAI;
+import ai.socket.JSONSocketWrapperAI;
+import ai.socket.SocketAI;
+import ai.socket.XMLSocketWrapperAI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import rts.PhysicalGameState;
+import rts.RemoteGameServer;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays many games at the same time against a RemoteGameServer, each with its
+ * own client (running WorkerRush through JSONSocketWrapperAI, or the XML or
+ * binary versions), and reports the number of games and cycles per second.
+ *
+ * Arguments (optional): number of simultaneous clients, games per client, and
+ * language (1: XML, 2: JSON, 3: binary).
+ * @author santi
+ */
+public class RemoteGameServerBenchmark {
+    public static void main(String args[]) throws Exception {
+        int nClients = (args.length>0 ? Integer.parseInt(args[0]) : 100);
+        int gamesPerClient = (args.length>1 ? Integer.parseInt(args[1]) : 2);
+        int language = (args.length>2 ? Integer.parseInt(args[2]) : SocketAI.LANGUAGE_JSON);
+        int port = 9898;
+        String map = "maps/16x16/basesWorkers16x16.xml";
+        int maxCycles = 1000;
+
+        UnitTypeTable utt = new UnitTypeTable();
+        RemoteGameServer server = new RemoteGameServer(port, language, utt, PhysicalGameState.load(map, utt),
+                                                       maxCycles, false, new RandomBiasedAI(), nClients,
+                                                       Runtime.getRuntime().availableProcessors());
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        serverThread.setDaemon(true);
+        serverThread.start();
+        Thread.sleep(500);  // give time to the server to start
+
+        AtomicInteger gamesPlayed = new AtomicInteger(0);
+        List<Thread> clients = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for(int i = 0;i<nClients;i++) {
+            Thread t = new Thread(() -> {
+                for(int j = 0;j<gamesPerClient;j++) {
+                    try {
+                        WorkerRush ai = new WorkerRush(utt);
+                        switch(language) {
+                            case SocketAI.LANGUAGE_XML: XMLSocketWrapperAI.runClient(ai, "127.0.0.1", port); break;
+                            case SocketAI.LANGUAGE_BINARY: BinarySocketWrapperAI.runClient(ai, "127.0.0.1", port); break;
+                            default: JSONSocketWrapperAI.runClient(ai, "127.0.0.1", port);
+                        }
+                        gamesPlayed.incrementAndGet();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            t.start();
+            clients.add(t);
+        }
+        for(Thread t:clients) t.join();
+        long time = System.currentTimeMillis() - start;
+
+        System.out.println(gamesPlayed.get() + " games (" + nClients + " at a time) in " + time + " ms: " +
+                           String.format("%.2f", gamesPlayed.get()*1000.0/time) + " games/s");
+        System.exit(0);
+    }
+}
@@ -43,6 +43,7 @@ public class RunClientExample {
 //        SocketAI.DEBUG = 1;
 //        AI ai1 = new SocketAI(100,0, serverIP, serverPort, SocketAI.LANGUAGE_XML, utt);
         AI ai1 = new SocketAI(100,0, serverIP, serverPort, SocketAI.LANGUAGE_JSON, utt);
+//        AI ai1 = new SocketAI(100,0, serverIP, serverPort, SocketAI.LANGUAGE_BINARY, utt);
 //        AI ai2 = new SocketAI(100,0, serverIP, serverPort, SocketAI.LANGUAGE_XML, utt);
         AI ai2 = new RandomBiasedAI();
         
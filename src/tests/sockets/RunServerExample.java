@@ -7,6 +7,7 @@ package tests.sockets;
 
 import ai.abstraction.WorkerRush;
 import ai.core.AIWithComputationBudget;
+import ai.socket.BinarySocketWrapperAI;
 import ai.socket.JSONSocketWrapperAI;
 import ai.socket.XMLSocketWrapperAI;
 import rts.units.UnitTypeTable;
@@ -26,6 +27,8 @@ public class RunServerExample {
         
 //        XMLSocketWrapperAI.DEBUG = 1;
 //        XMLSocketWrapperAI.runServer(ai, port);
+//        BinarySocketWrapperAI.DEBUG = 1;
+//        BinarySocketWrapperAI.runServer(ai, port);
         JSONSocketWrapperAI.DEBUG = 1;
         JSONSocketWrapperAI.runServer(ai, port);
     }
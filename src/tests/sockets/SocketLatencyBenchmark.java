@@ -0,0 +1,107 @@
+package tests.sockets;
+
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import ai.core.AIWithComputationBudget;
+import ai.socket.BinarySocketWrapperAI;
+import ai.socket.JSONSocketWrapperAI;
+import ai.socket.SocketAI;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+import util.LatencyHistogram;
+
+/**
+ * Measures the time taken by SocketAI.getAction with the JSON and the binary
+ * protocols, with local servers running the same AI (so, the difference is the
+ * time spent writing, sending and parsing the game states). Both clients are
+ * asked for an action in the same game states, and their actions are compared.
+ * @author santi
+ */
+public class SocketLatencyBenchmark {
+    public static void main(String args[]) throws Exception {
+        String maps[] = {"maps/8x8/basesWorkers8x8.xml",
+                         "maps/16x16/basesWorkers16x16.xml",
+                         "maps/BWDistantResources32x32.xml",
+                         "maps/BroodWar/(4)BloodBath.scmA.xml"};
+        if (args.length>0) maps = args;
+        int jsonPort = 9898;
+        int binaryPort = 9899;
+        int maxCycles = 1000;
+
+        UnitTypeTable utt = new UnitTypeTable();
+        startServer(new WorkerRush(utt), jsonPort, false);
+        startServer(new WorkerRush(utt), binaryPort, true);
+        Thread.sleep(500);  // give time to the servers to start
+
+        // warm up:
+        play(maps[0], utt, jsonPort, binaryPort, maxCycles, false);
+        for(String map:maps) {
+            play(map, utt, jsonPort, binaryPort, maxCycles, true);
+        }
+        System.exit(0);
+    }
+
+
+    static void startServer(AIWithComputationBudget ai, int port, boolean binary) {
+        Thread t = new Thread(() -> {
+            try {
+                if (binary) {
+                    BinarySocketWrapperAI.runServer(ai, port);
+                } else {
+                    JSONSocketWrapperAI.runServer(ai, port);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+    }
+
+
+    static void play(String map, UnitTypeTable utt, int jsonPort, int binaryPort, int maxCycles, boolean print) throws Exception {
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AI json = new SocketAI(100, 0, "127.0.0.1", jsonPort, SocketAI.LANGUAGE_JSON, utt);
+        AI binary = new SocketAI(100, 0, "127.0.0.1", binaryPort, SocketAI.LANGUAGE_BINARY, utt);
+        AI opponent = new WorkerRush(utt);
+        json.reset();
+        binary.reset();
+        LatencyHistogram jsonTimes = new LatencyHistogram();
+        LatencyHistogram binaryTimes = new LatencyHistogram();
+        int differences = 0;
+        boolean gameover = false;
+        do {
+            long start = System.nanoTime();
+            PlayerAction pa1 = json.getAction(0, gs);
+            long end = System.nanoTime();
+            jsonTimes.add(end - start);
+            start = System.nanoTime();
+            PlayerAction pa2 = binary.getAction(0, gs);
+            end = System.nanoTime();
+            binaryTimes.add(end - start);
+            if (!pa1.toString().equals(pa2.toString())) differences++;
+
+            gs.issueSafe(pa2);
+            gs.issueSafe(opponent.getAction(1, gs));
+            gameover = gs.cycle();
+        } while(!gameover && gs.getTime()<maxCycles);
+        json.gameOver(gs.winner());
+        binary.gameOver(gs.winner());
+
+        if (print) {
+            PhysicalGameState pgs = gs.getPhysicalGameState();
+            System.out.println(map + " (" + pgs.getWidth() + "x" + pgs.getHeight() + "), " + gs.getTime() + " cycles:");
+            System.out.println("  JSON:   " + times(jsonTimes));
+            System.out.println("  binary: " + times(binaryTimes));
+            System.out.println("  frames with different actions: " + differences);
+        }
+    }
+
+
+    static String times(LatencyHistogram h) {
+        return String.format("mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                             h.getMean(), h.getPercentile(0.5), h.getPercentile(0.99), h.getMax());
+    }
+}
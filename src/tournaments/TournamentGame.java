@@ -0,0 +1,206 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package tournaments;
+
+import ai.core.AI;
+import ai.core.AIWithComputationBudget;
+import ai.core.ContinuingAI;
+import ai.core.InterruptibleAI;
+import gui.PhysicalGameStateJFrame;
+import gui.PhysicalGameStatePanel;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import rts.GameMetrics;
+import rts.GameRunner;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Trace;
+import util.XMLWriter;
+
+/**
+ * One of the games of a tournament. Each game plays with its own clones of the
+ * AIs, so that several games can be played at the same time (see GameRunner.runGames).
+ *
+ * @author santi
+ */
+class TournamentGame implements Callable<GameMetrics> {
+
+    // game setup:
+    int iteration, map_idx, ai1_idx, ai2_idx;
+    AI ai1, ai2;
+    PhysicalGameState pgs;
+    String mapName;
+    GameRunner runner;
+    int timeBudget;
+    int iterationsBudget;
+    boolean fullObservability;
+    boolean useContinuingOnInterruptible;
+    boolean visualize = false;
+    boolean preAnalysis = false;
+    long preTime1, preTime2;
+    long preAnalysisBudgetRestOfTimes;
+    String readWriteFolder1, readWriteFolder2;
+    String traceOutputfolder;
+    boolean binaryTraces = false;
+    Writer progress = null;
+
+    // results:
+    GameMetrics metrics = null;
+
+
+    TournamentGame(int a_iteration, int a_map_idx, int a_ai1_idx, int a_ai2_idx,
+                   AI a_ai1, AI a_ai2, PhysicalGameState a_pgs, String a_mapName, GameRunner a_runner,
+                   int a_timeBudget, int a_iterationsBudget, boolean a_fullObservability,
+                   boolean a_useContinuingOnInterruptible, String a_traceOutputfolder) {
+        iteration = a_iteration;
+        map_idx = a_map_idx;
+        ai1_idx = a_ai1_idx;
+        ai2_idx = a_ai2_idx;
+        ai1 = a_ai1;
+        ai2 = a_ai2;
+        pgs = a_pgs;
+        mapName = a_mapName;
+        runner = a_runner;
+        timeBudget = a_timeBudget;
+        iterationsBudget = a_iterationsBudget;
+        fullObservability = a_fullObservability;
+        useContinuingOnInterruptible = a_useContinuingOnInterruptible;
+        traceOutputfolder = a_traceOutputfolder;
+    }
+
+
+    /**
+     * Sets the time for the pre-game analysis of each AI, and the folders they can use
+     */
+    void setPreAnalysis(long a_preTime1, long a_preTime2, long a_preAnalysisBudgetRestOfTimes,
+                        String a_readWriteFolder1, String a_readWriteFolder2) {
+        preAnalysis = true;
+        preTime1 = a_preTime1;
+        preTime2 = a_preTime2;
+        preAnalysisBudgetRestOfTimes = a_preAnalysisBudgetRestOfTimes;
+        readWriteFolder1 = a_readWriteFolder1;
+        readWriteFolder2 = a_readWriteFolder2;
+    }
+
+
+    /**
+     * Plays the game, writing progress messages to "progress" (if not null)
+     */
+    public GameMetrics call() throws Exception {
+        ai1 = ai1.clone();
+        ai2 = ai2.clone();
+
+        if (ai1 instanceof AIWithComputationBudget) {
+            ((AIWithComputationBudget) ai1).setTimeBudget(timeBudget);
+            ((AIWithComputationBudget) ai1).setIterationsBudget(iterationsBudget);
+        }
+        if (ai2 instanceof AIWithComputationBudget) {
+            ((AIWithComputationBudget) ai2).setTimeBudget(timeBudget);
+            ((AIWithComputationBudget) ai2).setIterationsBudget(iterationsBudget);
+        }
+
+        if (useContinuingOnInterruptible) {
+            if (ai1 instanceof InterruptibleAI) ai1 = new ContinuingAI(ai1);
+            if (ai2 instanceof InterruptibleAI) ai2 = new ContinuingAI(ai2);
+        }
+
+        ai1.reset();
+        ai2.reset();
+
+        GameState gs = new GameState(pgs.clone(), runner.getUnitTypeTable());
+        PhysicalGameStateJFrame w = null;
+        if (visualize) w = PhysicalGameStatePanel.newVisualizer(gs, 600, 600, !fullObservability);
+
+        if (progress != null) {
+            progress.write("MATCH UP: " + ai1 + " vs " + ai2 + "\n");
+        }
+
+        if (preAnalysis) {
+            long pre_start1 = System.currentTimeMillis();
+            ai1.preGameAnalysis(gs, preAnalysisBudgetRestOfTimes, readWriteFolder1);
+            long pre_end1 = System.currentTimeMillis();
+            if (progress != null) {
+                progress.write("preGameAnalysis player 1 took " + (pre_end1 - pre_start1) + "\n");
+                if ((pre_end1 - pre_start1)>preTime1) progress.write("TIMEOUT PLAYER 1!\n");
+            }
+            long pre_start2 = System.currentTimeMillis();
+            ai2.preGameAnalysis(gs, preTime2, readWriteFolder2);
+            long pre_end2 = System.currentTimeMillis();
+            if (progress != null) {
+                progress.write("preGameAnalysis player 2 took " + (pre_end2 - pre_start2) + "\n");
+                if ((pre_end2 - pre_start2)>preTime2) progress.write("TIMEOUT PLAYER 2!\n");
+            }
+        }
+
+        Trace trace = null;
+        if (traceOutputfolder != null) trace = new Trace(runner.getUnitTypeTable());
+        final PhysicalGameStateJFrame window = w;
+        metrics = runner.play(ai1, ai2, gs, trace, (w == null ? null : gs2 -> {
+            window.setStateCloning(gs2);
+            window.repaint();
+            try {
+                Thread.sleep(1);    // give time to the window to repaint
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }));
+        metrics.iteration = iteration;
+        metrics.map = mapName;
+
+        if (w!=null) w.dispose();
+
+        if (traceOutputfolder != null) {
+            File folder = new File(traceOutputfolder);
+            if (!folder.exists()) folder.mkdirs();
+            XMLWriter xml;
+            ZipOutputStream zip = null;
+            String filename = ai1_idx + "-vs-" + ai2_idx + "-" + map_idx + "-" + iteration;
+            filename = filename.replace("/", "");
+            filename = filename.replace(")", "");
+            filename = filename.replace("(", "");
+            filename = traceOutputfolder + "/" + filename;
+            if (binaryTraces) {
+                trace.toBinary(new FileOutputStream(filename + Trace.BINARY_EXTENSION), true);
+            } else {
+                zip = new ZipOutputStream(new FileOutputStream(filename + ".zip"));
+                zip.putNextEntry(new ZipEntry("game.xml"));
+                xml = new XMLWriter(new BufferedWriter(new OutputStreamWriter(zip)));
+                trace.toxml(xml);
+                xml.flush();
+                zip.closeEntry();
+                zip.close();
+            }
+        }
+        return metrics;
+    }
+
+
+    /**
+     * Writes the winner and the time usage statistics of the AIs
+     */
+    void writeResult(Writer progress) throws Exception {
+        progress.write("Winner: " + metrics.winner + "  in " + metrics.cycles + " cycles\n");
+        progress.write(ai1 + " : " + ai1.statisticsString() + "\n");
+        progress.write(ai2 + " : " + ai2.statisticsString() + "\n");
+        progress.write("AI1 time usage, " + metrics.timeUsageString(0) + "\n");
+        progress.write("AI2 time usage, " + metrics.timeUsageString(1) + "\n");
+    }
+
+
+    /**
+     * Frees the memory used by the game once its results have been recorded
+     */
+    void release() {
+        ai1 = null;
+        ai2 = null;
+    }
+}
@@ -0,0 +1,195 @@
+package util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A Writer that encodes what is written (as UTF-8) into a growable byte array,
+ * which can then be sent to an OutputStream or wrapped in a ByteBuffer in a
+ * single call. It is meant to be reused (see reset()), so that serializing a
+ * game state every frame does not allocate new buffers. Numbers can be written
+ * through writeLong without converting them to strings first.
+ * @author santi
+ */
+public class ByteBufferWriter extends Writer {
+    byte buf[];
+    int count = 0;
+
+
+    public ByteBufferWriter() {
+        this(4096);
+    }
+
+
+    public ByteBufferWriter(int initialCapacity) {
+        buf = new byte[initialCapacity];
+    }
+
+
+    /**
+     * Discards the content, keeping the buffer for the next use
+     */
+    public void reset() {
+        count = 0;
+    }
+
+
+    public int size() {
+        return count;
+    }
+
+
+    public void write(int c) {
+        if (c < 0x80) {
+            ensureCapacity(1);
+            buf[count++] = (byte)c;
+        } else {
+            writeChar((char)c);
+        }
+    }
+
+
+    public void write(String s) {
+        write(s, 0, s.length());
+    }
+
+
+    public void write(String s, int off, int len) {
+        ensureCapacity(len);
+        for(int i = off;i<off+len;i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[count++] = (byte)c;
+            } else {
+                // rare, so the rest is written through the general method:
+                write(s.substring(i, off+len).toCharArray(), 0, off+len-i);
+                return;
+            }
+        }
+    }
+
+
+    public void write(char cbuf[], int off, int len) {
+        ensureCapacity(len);
+        for(int i = off;i<off+len;i++) {
+            char c = cbuf[i];
+            if (c < 0x80) {
+                if (count == buf.length) ensureCapacity(1);   // multi-byte characters may have used the space
+                buf[count++] = (byte)c;
+            } else if (Character.isHighSurrogate(c) && i+1<off+len && Character.isLowSurrogate(cbuf[i+1])) {
+                writeCodePoint(Character.toCodePoint(c, cbuf[i+1]));
+                i++;
+            } else {
+                writeChar(c);
+            }
+        }
+    }
+
+
+    /**
+     * Writes the decimal representation of "v" (same as write(Long.toString(v)))
+     * @param v
+     */
+    public void writeLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            write(Long.toString(v));
+            return;
+        }
+        ensureCapacity(20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for(long tmp = v/10;tmp>0;tmp/=10) digits++;
+        for(int i = count+digits-1;i>=count;i--) {
+            buf[i] = (byte)('0' + v%10);
+            v /= 10;
+        }
+        count += digits;
+    }
+
+
+    /**
+     * Writes the decimal representation of "v" to "w", without creating a
+     * string if "w" is a ByteBufferWriter
+     * @param w
+     * @param v
+     * @throws IOException
+     */
+    public static void writeLong(Writer w, long v) throws IOException {
+        if (w instanceof ByteBufferWriter) {
+            ((ByteBufferWriter)w).writeLong(v);
+        } else {
+            w.write(Long.toString(v));
+        }
+    }
+
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+
+    /**
+     * Returns a buffer with the content (which shares the byte array of this
+     * writer, so it is only valid until the next time it is written to)
+     * @return
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+
+    public String toString() {
+        return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+
+
+    public void flush() {
+    }
+
+
+    public void close() {
+    }
+
+
+    void writeChar(char c) {
+        if (Character.isSurrogate(c)) {
+            writeCodePoint('?');    // unpaired surrogate
+        } else {
+            writeCodePoint(c);
+        }
+    }
+
+
+    void writeCodePoint(int cp) {
+        ensureCapacity(4);
+        if (cp < 0x80) {
+            buf[count++] = (byte)cp;
+        } else if (cp < 0x800) {
+            buf[count++] = (byte)(0xc0 | (cp>>6));
+            buf[count++] = (byte)(0x80 | (cp & 0x3f));
+        } else if (cp < 0x10000) {
+            buf[count++] = (byte)(0xe0 | (cp>>12));
+            buf[count++] = (byte)(0x80 | ((cp>>6) & 0x3f));
+            buf[count++] = (byte)(0x80 | (cp & 0x3f));
+        } else {
+            buf[count++] = (byte)(0xf0 | (cp>>18));
+            buf[count++] = (byte)(0x80 | ((cp>>12) & 0x3f));
+            buf[count++] = (byte)(0x80 | ((cp>>6) & 0x3f));
+            buf[count++] = (byte)(0x80 | (cp & 0x3f));
+        }
+    }
+
+
+    void ensureCapacity(int n) {
+        if (count + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length*2, count + n));
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package util;
+
+/**
+ * A minimal pull parser for JSON, used to parse the game states and actions
+ * received through sockets without building a tree of JSON objects first.
+ * Values are read in the order they appear, for example:
+ *
+ *   r.beginObject();
+ *   while(r.hasNext()) {
+ *       String name = r.nextName();
+ *       if (name.equals("time")) time = r.nextInt();
+ *                           else r.skipValue();
+ *   }
+ *   r.endObject();
+ *
+ * @author santi
+ */
+public class JSONReader {
+    String json;
+    int pos = 0;
+    StringBuilder tmp = new StringBuilder();
+
+
+    public JSONReader(String a_json) {
+        json = a_json;
+    }
+
+
+    /**
+     * Returns the next (non white space) character, without consuming it
+     * @return
+     */
+    public char peek() {
+        skipWhiteSpace();
+        if (pos >= json.length()) throw error("unexpected end of input");
+        return json.charAt(pos);
+    }
+
+
+    public void beginObject() {
+        expect('{');
+    }
+
+
+    public void endObject() {
+        expect('}');
+    }
+
+
+    public void beginArray() {
+        expect('[');
+    }
+
+
+    public void endArray() {
+        expect(']');
+    }
+
+
+    /**
+     * Returns whether the current object or array has more elements (and
+     * consumes the comma before them)
+     * @return
+     */
+    public boolean hasNext() {
+        char c = peek();
+        if (c == '}' || c == ']') return false;
+        if (c == ',') pos++;
+        return true;
+    }
+
+
+    /**
+     * Reads the name of the next member of an object, and the colon after it
+     * @return
+     */
+    public String nextName() {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+
+    public String nextString() {
+        if (peek() == 'n') {
+            expectWord("null");
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        // fast path, for strings without escape sequences:
+        while(pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '"') return json.substring(start, pos++);
+            if (c == '\\') break;
+            pos++;
+        }
+        tmp.setLength(0);
+        tmp.append(json, start, pos);
+        while(pos < json.length()) {
+            char c = json.charAt(pos++);
+            if (c == '"') return tmp.toString();
+            if (c == '\\') {
+                if (pos >= json.length()) break;
+                c = json.charAt(pos++);
+                switch(c) {
+                    case 'b': tmp.append('\b'); break;
+                    case 'f': tmp.append('\f'); break;
+                    case 'n': tmp.append('\n'); break;
+                    case 'r': tmp.append('\r'); break;
+                    case 't': tmp.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > json.length()) throw error("invalid escape sequence");
+                        tmp.append((char)Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: tmp.append(c);
+                }
+            } else {
+                tmp.append(c);
+            }
+        }
+        throw error("unterminated string");
+    }
+
+
+    public int nextInt() {
+        return (int)nextLong();
+    }
+
+
+    /**
+     * Reads a number (numbers with decimals are truncated)
+     * @return
+     */
+    public long nextLong() {
+        skipWhiteSpace();
+        int start = pos;
+        boolean negative = false;
+        if (pos < json.length() && json.charAt(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        long v = 0;
+        int digitsStart = pos;
+        while(pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c < '0' || c > '9') break;
+            v = v*10 + (c - '0');
+            pos++;
+        }
+        if (pos == digitsStart) throw error("expected a number");
+        if (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                while(pos < json.length() && "0123456789.eE+-".indexOf(json.charAt(pos)) >= 0) pos++;
+                return (long)Double.parseDouble(json.substring(start, pos));
+            }
+        }
+        return negative ? -v : v;
+    }
+
+
+    public boolean nextBoolean() {
+        if (peek() == 't') {
+            expectWord("true");
+            return true;
+        }
+        expectWord("false");
+        return false;
+    }
+
+
+    /**
+     * Skips the next value (of any type, including objects and arrays)
+     */
+    public void skipValue() {
+        char c = peek();
+        switch(c) {
+            case '{':
+                beginObject();
+                while(hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case '[':
+                beginArray();
+                while(hasNext()) skipValue();
+                endArray();
+                break;
+            case '"': nextString(); break;
+            case 't':
+            case 'f': nextBoolean(); break;
+            case 'n': expectWord("null"); break;
+            default: nextLong();
+        }
+    }
+
+
+    void expect(char c) {
+        if (peek() != c) throw error("expected '" + c + "'");
+        pos++;
+    }
+
+
+    void expectWord(String word) {
+        skipWhiteSpace();
+        if (!json.startsWith(word, pos)) throw error("expected " + word);
+        pos += word.length();
+    }
+
+
+    void skipWhiteSpace() {
+        while(pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return;
+            pos++;
+        }
+    }
+
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSONReader: " + message + " at position " + pos);
+    }
+}
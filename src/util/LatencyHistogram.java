@@ -0,0 +1,84 @@
+package util;
+
+/**
+ * A histogram of durations (in nanoseconds) with logarithmic buckets, so that
+ * percentiles can be estimated (within ~3%) without storing all the values.
+ * The mean and the maximum are exact.
+ * @author santi
+ */
+public class LatencyHistogram {
+    // values are kept with 5 bits of precision:
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1<<SUB_BUCKET_BITS;
+
+    int counts[] = new int[(64-SUB_BUCKET_BITS)*SUB_BUCKETS];
+    long count = 0;
+    long total = 0;
+    long max = 0;
+
+
+    public void add(long nanos) {
+        long v = nanos/1000;    // buckets are in microseconds
+        counts[bucket(v)]++;
+        count++;
+        total += nanos;
+        if (nanos>max) max = nanos;
+    }
+
+
+    public long getCount() {
+        return count;
+    }
+
+
+    /**
+     * @return the mean in milliseconds
+     */
+    public double getMean() {
+        if (count==0) return 0;
+        return (total/(double)count)/1000000.0;
+    }
+
+
+    /**
+     * @return the maximum in milliseconds
+     */
+    public double getMax() {
+        return max/1000000.0;
+    }
+
+
+    /**
+     * @param p a number in [0,1]
+     * @return the value (in milliseconds) below which a fraction "p" of the values lie
+     */
+    public double getPercentile(double p) {
+        if (count==0) return 0;
+        long rank = (long)Math.ceil(p*count);
+        if (rank<1) rank = 1;
+        long accum = 0;
+        for(int i = 0;i<counts.length;i++) {
+            accum += counts[i];
+            if (accum>=rank) return Math.min(bucketValue(i)/1000.0, getMax());
+        }
+        return getMax();
+    }
+
+
+    static int bucket(long v) {
+        if (v<2*SUB_BUCKETS) return (int)v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+        return (shift+1)*SUB_BUCKETS + (int)((v>>shift) - SUB_BUCKETS);
+    }
+
+
+    /*
+     * Returns the middle of the range of values that fall in bucket "b"
+     */
+    static double bucketValue(int b) {
+        if (b<2*SUB_BUCKETS) return b;
+        int shift = b/SUB_BUCKETS - 1;
+        long low = ((long)(b%SUB_BUCKETS + SUB_BUCKETS))<<shift;
+        return low + ((1L<<shift) - 1)/2.0;
+    }
+}
@@ -78,16 +78,25 @@ public class Sampler {
      * Returns an element in the distribution, using the weights as their relative probabilities
      */
     public static int weighted(double[] distribution) throws Exception {
+        return weighted(distribution, distribution.length);
+    }
+
+
+    /*
+     * The same as "weighted", but only considering the first "n" elements of the
+     * distribution (so that the same array can be reused for distributions of different sizes)
+     */
+    public static int weighted(double[] distribution, int n) throws Exception {
         double total = 0, accum = 0, tmp;
 
-        for (double f : distribution) {
-            total += f;
+        for (int i = 0; i < n; i++) {
+            total += distribution[i];
         }
         
-        if (total==0) return random(distribution);
+        if (total==0) return generator.nextInt(n);
 
         tmp = generator.nextDouble() * total;
-        for (int i = 0; i < distribution.length; i++) {
+        for (int i = 0; i < n; i++) {
             accum += distribution[i];
             if (accum >= tmp) {
                 return i;
@@ -95,7 +95,14 @@ public class XMLWriter {
 	public void tag(String tagname, String value) {
 		indent();
 		try {
-			writer.write("<"+tagname+">"+value+"</"+tagname+">" + lineSeparator);
+			writer.write("<");
+			writer.write(tagname);
+			writer.write(">");
+			writer.write(value);
+			writer.write("</");
+			writer.write(tagname);
+			writer.write(">");
+			writer.write(lineSeparator);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -130,7 +137,12 @@ public class XMLWriter {
 		if (tagname.charAt(0) == '/') untab();
 		indent();
 		try {
-			writer.write("<"+tagname+" "+attributesString+">" + lineSeparator);
+			writer.write("<");
+			writer.write(tagname);
+			writer.write(" ");
+			writer.write(attributesString);
+			writer.write(">");
+			writer.write(lineSeparator);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}